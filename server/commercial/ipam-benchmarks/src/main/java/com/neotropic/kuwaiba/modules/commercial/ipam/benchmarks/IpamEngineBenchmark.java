@@ -0,0 +1,140 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ * Licensed under the EPL License, Version 1.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.neotropic.kuwaiba.modules.commercial.ipam.benchmarks;
+
+import com.neotropic.kuwaiba.modules.commercial.ipam.IpamService;
+import com.neotropic.kuwaiba.modules.commercial.ipam.engine.IpamEngine;
+import com.neotropic.kuwaiba.modules.commercial.ipam.engine.Ipv4Arithmetic;
+import com.neotropic.kuwaiba.modules.commercial.ipam.engine.SubnetDetail;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the string-based subnet calculations formerly done by the IpamEngine
+ * (see {@link LegacyIpamEngine}) with the current ones, built on top of
+ * {@link Ipv4Arithmetic} and Ipv6Address. The scenarios are the ones that hurt
+ * the most in the IPAM UI: calculating a subnet, splitting a /16 and sorting
+ * the 65k addresses of a /16.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IpamEngineBenchmark {
+    private static final String IPV4_SUBNET = "172.16.0.0/16"; //NOI18N
+    private static final String IPV6_SUBNET = "2001:db8:acad:1200::/56"; //NOI18N
+    /**
+     * All the addresses of the /16, shuffled
+     */
+    private List<BusinessObjectLight> ipAddresses;
+    /**
+     * The comparator currently used to sort IP addresses
+     */
+    private IpamService.IPAddressComparator ipAddressComparator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ipAddresses = new ArrayList<>(1 << 16);
+        long networkAddress = Ipv4Arithmetic.parse("172.16.0.0"); //NOI18N
+        for (int i = 0; i < (1 << 16); i++) {
+            String ipAddr = Ipv4Arithmetic.toString(networkAddress + i);
+            ipAddresses.add(new BusinessObjectLight(Constants.CLASS_IP_ADDRESS, Integer.toString(i), ipAddr));
+        }
+        Collections.shuffle(ipAddresses, new Random(42));
+        ipAddressComparator = new IpamService().new IPAddressComparator();
+    }
+
+    @Benchmark
+    public SubnetDetail legacyIpv4SubnetCalculation() throws InvalidArgumentException {
+        SubnetDetail subnetDetail = new SubnetDetail(IPV4_SUBNET);
+        LegacyIpamEngine.ipv4SubnetCalculation(subnetDetail);
+        return subnetDetail;
+    }
+
+    @Benchmark
+    public SubnetDetail ipv4SubnetCalculation() throws InvalidArgumentException {
+        SubnetDetail subnetDetail = new SubnetDetail(IPV4_SUBNET);
+        IpamEngine.ipv4SubnetCalculation(subnetDetail);
+        return subnetDetail;
+    }
+
+    @Benchmark
+    public SubnetDetail legacyIpv6SubnetCalculation() {
+        SubnetDetail subnetDetail = new SubnetDetail(IPV6_SUBNET);
+        LegacyIpamEngine.ipv6SubnetCalculation(subnetDetail);
+        return subnetDetail;
+    }
+
+    @Benchmark
+    public SubnetDetail ipv6SubnetCalculation() {
+        SubnetDetail subnetDetail = new SubnetDetail(IPV6_SUBNET);
+        IpamEngine.ipv6SubnetCalculation(subnetDetail);
+        return subnetDetail;
+    }
+
+    @Benchmark
+    public List<SubnetDetail> legacyIpv4Split(SplitParameters parameters) throws InvalidArgumentException {
+        return LegacyIpamEngine.ipv4Split("172.16.0.0", 16, "172.16.255.255", parameters.splitMaskBits); //NOI18N
+    }
+
+    @Benchmark
+    public List<SubnetDetail> ipv4Split(SplitParameters parameters) throws InvalidArgumentException {
+        return IpamEngine.ipv4Split("172.16.0.0", 16, "172.16.255.255", parameters.splitMaskBits); //NOI18N
+    }
+
+    @Benchmark
+    public List<BusinessObjectLight> legacyIpv4Sort() {
+        List<BusinessObjectLight> sortedIpAddresses = new ArrayList<>(ipAddresses);
+        sortedIpAddresses.sort((a, b) -> LegacyIpamEngine.compareIpv4(a.getName(), b.getName()));
+        return sortedIpAddresses;
+    }
+
+    @Benchmark
+    public List<BusinessObjectLight> ipv4Sort() {
+        List<BusinessObjectLight> sortedIpAddresses = new ArrayList<>(ipAddresses);
+        sortedIpAddresses.sort(ipAddressComparator);
+        return sortedIpAddresses;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SplitParameters {
+        /**
+         * The mask bits of the subnets the /16 is split into
+         */
+        @Param({"24", "30"})
+        public int splitMaskBits;
+    }
+}
@@ -17,11 +17,13 @@
 package com.neotropic.kuwaiba.modules.commercial.ipam;
 
 import com.neotropic.kuwaiba.modules.commercial.ipam.engine.IpamEngine;
+import com.neotropic.kuwaiba.modules.commercial.ipam.engine.Ipv4Arithmetic;
+import com.neotropic.kuwaiba.modules.commercial.ipam.engine.Ipv6Address;
 import static com.neotropic.kuwaiba.modules.commercial.ipam.IpamModule.RELATIONSHIP_IPAMBELONGSTOVLAN;
 import static com.neotropic.kuwaiba.modules.commercial.ipam.IpamModule.RELATIONSHIP_IPAMBELONGSTOVRFINSTACE;
 import static com.neotropic.kuwaiba.modules.commercial.ipam.IpamModule.RELATIONSHIP_IPAMHASADDRESS;
 import static com.neotropic.kuwaiba.modules.commercial.ipam.IpamModule.RELATIONSHIP_IPAMPORTRELATEDTOINTERFACE;
-import com.neotropic.kuwaiba.modules.commercial.ipam.engine.SubnetDetail;
+import com.neotropic.kuwaiba.modules.commercial.ipam.engine.SubnetIndex;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -32,6 +34,9 @@ import org.neotropic.kuwaiba.core.apis.persistence.application.InventoryObjectPo
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObject;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEvent;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEventBus;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeSubscription;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ApplicationObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ArraySizeMismatchException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.BusinessObjectNotFoundException;
@@ -42,6 +47,8 @@ import org.neotropic.kuwaiba.core.apis.persistence.exceptions.OperationNotPermit
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -56,6 +63,10 @@ public class IpamService {
      * default mask for individual IP addresses created in folders
      */
     public static final String DEFAULT_MASK = "255.255.255.255";
+    /**
+     * Name of the subscriber to the change events that keeps the subnet index up to date
+     */
+    private static final String SUBSCRIBER_NAME = "ipam-subnet-index"; //NOI18N
     /**
      * Reference to the Translation Service
      */
@@ -76,6 +87,16 @@ public class IpamService {
      */
     @Autowired
     private MetadataEntityManager mem;
+    /**
+     * Reference to the change event bus
+     */
+    @Autowired
+    private ChangeEventBus changeEventBus;
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
     /**
      * default ipv4 root
      */
@@ -84,6 +105,15 @@ public class IpamService {
      *  default ipv6
      */
     private InventoryObjectPool ipv6Root;
+    /**
+     * Index of all the subnets in the inventory, used to detect duplicated and overlapping subnets
+     */
+    private final SubnetIndex subnetIndex = new SubnetIndex();
+    /**
+     * The subscription to the changes committed to the inventory. The subnets created, renamed or deleted 
+     * outside this service (by the synchronization providers, scripts, etc) are applied to the index through it
+     */
+    private ChangeSubscription subnetChangesSubscription;
     
     /**
      * Get the default pool nodes for IPv4 and IPv6 subnets
@@ -126,6 +156,97 @@ public class IpamService {
         return ipv6Root;
     }
     
+    /**
+     * Loads all the IPv4 and IPv6 subnets in the inventory into the subnet index. 
+     * It's called at startup, and again whenever the index is used after being 
+     * invalidated (e.g. after deleting a folder). From then on, the subnets changed 
+     * anywhere else are applied to the index as their transactions are committed
+     * @throws InvalidArgumentException If the subnets can not be retrieved
+     * @throws MetadataObjectNotFoundException If the subnet classes can not be found
+     */
+    public void loadSubnetIndex() throws InvalidArgumentException, MetadataObjectNotFoundException {
+        synchronized (subnetIndex) {
+            // The subscription is made before reading the subnets, so the changes committed meanwhile 
+            // are not lost: they wait for the lock and are applied once the index is loaded
+            if (subnetChangesSubscription == null)
+                subnetChangesSubscription = changeEventBus.subscribe(SUBSCRIBER_NAME, this::applySubnetChanges);
+            List<BusinessObjectLight> subnets = new ArrayList<>(bem.getObjectsOfClassLight(Constants.CLASS_SUBNET_IPV4, -1, -1));
+            subnets.addAll(bem.getObjectsOfClassLight(Constants.CLASS_SUBNET_IPV6, -1, -1));
+            subnetIndex.load(subnets);
+        }
+    }
+    
+    /**
+     * Gets the subnet index, loading it first if necessary
+     * @return the subnet index
+     * @throws InvalidArgumentException If the subnets can not be retrieved
+     * @throws MetadataObjectNotFoundException If the subnet classes can not be found
+     */
+    private SubnetIndex getSubnetIndex() throws InvalidArgumentException, MetadataObjectNotFoundException {
+        if (!subnetIndex.isLoaded()) {
+            synchronized (subnetIndex) {
+                if (!subnetIndex.isLoaded())
+                    loadSubnetIndex();
+            }
+        }
+        return subnetIndex;
+    }
+    
+    /**
+     * Applies the changes committed to the subnets to the subnet index
+     * @param events the changes committed by a transaction
+     */
+    private void applySubnetChanges(List<ChangeEvent> events) {
+        synchronized (subnetIndex) {
+            if (!subnetIndex.isLoaded()) // It will be loaded from scratch when it's used
+                return;
+            for (ChangeEvent anEvent : events) {
+                switch (anEvent.getType()) {
+                    case EVENTS_LOST:
+                        log.writeLogMessage(LoggerType.WARN, IpamService.class, 
+                                "Some changes were lost, the subnet index will be loaded again");
+                        subnetIndex.invalidate();
+                        return;
+                    case OBJECT_DELETED: // The class name may not be known, but removing an id not indexed is harmless
+                        subnetIndex.remove(anEvent.getObjectId());
+                        break;
+                    case OBJECT_CREATED:
+                    case OBJECT_UPDATED:
+                        if (!Constants.CLASS_SUBNET_IPV4.equals(anEvent.getClassName()) 
+                                && !Constants.CLASS_SUBNET_IPV6.equals(anEvent.getClassName()))
+                            break;
+                        if (anEvent.getType() == ChangeEvent.Type.OBJECT_UPDATED 
+                                && !anEvent.getAttributes().contains(Constants.PROPERTY_NAME))
+                            break;
+                        try {
+                            subnetIndex.add(bem.getObjectLight(anEvent.getClassName(), anEvent.getObjectId()));
+                        } catch (BusinessObjectNotFoundException ex) { // Deleted by a later transaction
+                            subnetIndex.remove(anEvent.getObjectId());
+                        } catch (MetadataObjectNotFoundException | InvalidArgumentException ex) {
+                            log.writeLogMessage(LoggerType.ERROR, IpamService.class, ex.getMessage());
+                            subnetIndex.invalidate();
+                            return;
+                        }
+                        break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds the most specific subnets an IP address (or a subnet) belongs to (longest prefix match)
+     * @param ipAddrOrCidr an IP address or a subnet in CIDR format
+     * @param className the class of the subnets to look in, SubnetIPv4 or SubnetIPv6
+     * @return the subnets with the longest mask that contain the given address. Usually only one
+     * @throws InvalidArgumentException If the subnets can not be retrieved
+     * @throws MetadataObjectNotFoundException If the subnet classes can not be found
+     */
+    public List<BusinessObjectLight> getContainingSubnets(String ipAddrOrCidr, String className) 
+            throws InvalidArgumentException, MetadataObjectNotFoundException
+    {
+        return getSubnetIndex().getContainingSubnets(ipAddrOrCidr, className);
+    }
+    
     /**
      * Create the IPv4 and IPv6 default nodes if they don't exist.
      * @throws MetadataObjectNotFoundException If the class IPAddress don't exist
@@ -332,15 +453,22 @@ public class IpamService {
             MetadataObjectNotFoundException, OperationNotPermittedException, 
             BusinessObjectNotFoundException, ApplicationObjectNotFoundException
     {
-        try { // we creeate a subnet insde a folder
-            getOverlapedSubnets(attributes.get(Constants.PROPERTY_NAME)
-                , className
-                , attributes.get(Constants.PROPERTY_NETWORK_IP)
-                , attributes.get(Constants.PROPERTY_BROADCAST_IP));
-                
-            return bem.createPoolItem(parentId, className, attributes, null);
-        } catch (ApplicationObjectNotFoundException ex) {
-            return bem.createSpecialObject(className, className, parentId, attributes, null);
+        // The overlap check and the creation are made holding the index lock, so two overlapping 
+        // subnets created at the same time can't both pass the check
+        synchronized (subnetIndex) {
+            String subnetId;
+            try { // we creeate a subnet insde a folder
+                getOverlapedSubnets(attributes.get(Constants.PROPERTY_NAME)
+                    , className
+                    , attributes.get(Constants.PROPERTY_NETWORK_IP)
+                    , attributes.get(Constants.PROPERTY_BROADCAST_IP));
+
+                subnetId = bem.createPoolItem(parentId, className, attributes, null);
+            } catch (ApplicationObjectNotFoundException ex) {
+                subnetId = bem.createSpecialObject(className, className, parentId, attributes, null);
+            }
+            getSubnetIndex().add(new BusinessObjectLight(className, subnetId, attributes.get(Constants.PROPERTY_NAME)));
+            return subnetId;
         }
     }
     
@@ -363,18 +491,22 @@ public class IpamService {
             MetadataObjectNotFoundException, OperationNotPermittedException, 
             BusinessObjectNotFoundException, ApplicationObjectNotFoundException
     {
-        for (HashMap<String, String> attributes : subnetsAttributes){
-            getOverlapedSubnets(attributes.get(Constants.PROPERTY_NAME)
-                    , className
-                    , attributes.get(Constants.PROPERTY_NETWORK_IP)
-                    , attributes.get(Constants.PROPERTY_BROADCAST_IP));
+        synchronized (subnetIndex) {
+            for (HashMap<String, String> attributes : subnetsAttributes){
+                getOverlapedSubnets(attributes.get(Constants.PROPERTY_NAME)
+                        , className
+                        , attributes.get(Constants.PROPERTY_NETWORK_IP)
+                        , attributes.get(Constants.PROPERTY_BROADCAST_IP));
+            }
+
+            List<String> createdIds = new ArrayList<>();
+            for (HashMap<String, String> subnetAttributes : subnetsAttributes) {
+                String subnetId = bem.createSpecialObject(className, className, parentId, subnetAttributes, null);
+                getSubnetIndex().add(new BusinessObjectLight(className, subnetId, subnetAttributes.get(Constants.PROPERTY_NAME)));
+                createdIds.add(subnetId);
+            }
+            return createdIds;
         }
-        
-        List<String> createdIds = new ArrayList<>();
-        for (HashMap<String, String> subnetAttributes : subnetsAttributes)
-            createdIds.add(bem.createSpecialObject(className, className, parentId, subnetAttributes, null));
-        
-        return createdIds;
     }
     
    
@@ -406,9 +538,29 @@ public class IpamService {
     public void deleteSubnets(String className, List<String> subnetIds, boolean releaseRelationships) 
             throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, 
             OperationNotPermittedException, InvalidArgumentException {
-        HashMap<String, List<String>> objectsToBeDeleted = new HashMap<>();
-        objectsToBeDeleted.put(className, subnetIds);
-        bem.deleteObjects(objectsToBeDeleted, releaseRelationships);
+        // The subnets are read and deleted holding the index lock, so no subnet can be created 
+        // in or renamed between the time they are read and the time they are removed from the index
+        synchronized (subnetIndex) {
+            // The nested subnets are deleted along with their parents, so they have to be removed from the index as well
+            List<BusinessObjectLight> subnetsToBeDeleted = new ArrayList<>();
+            for (String subnetId : subnetIds) 
+                subnetsToBeDeleted.add(bem.getObjectLight(className, subnetId));
+
+            HashMap<String, List<String>> objectsToBeDeleted = new HashMap<>();
+            objectsToBeDeleted.put(className, subnetIds);
+            bem.deleteObjects(objectsToBeDeleted, releaseRelationships);
+
+            for (BusinessObjectLight subnet : subnetsToBeDeleted) {
+                subnetIndex.remove(subnet);
+                for (BusinessObjectLight nestedSubnet : subnetIndex.getContainedSubnets(subnet.getName(), className, -1)) {
+                    try {
+                        bem.getObjectLight(className, nestedSubnet.getId());
+                    } catch (BusinessObjectNotFoundException ex) {
+                        subnetIndex.remove(nestedSubnet);
+                    }
+                }
+            }
+        }
     }
     
     /**
@@ -422,6 +574,8 @@ public class IpamService {
             ApplicationObjectNotFoundException
     {
         aem.deletePools(subnetPoolsId);
+        // The subnets inside the folders are gone too, the index will be loaded again when it's needed
+        subnetIndex.invalidate();
     }
     
     /**
@@ -473,6 +627,8 @@ public class IpamService {
                  , Constants.CLASS_IP_ADDRESS);
             if(!exists.isEmpty())
                 throw new InvalidArgumentException(ts.getTranslatedString("module.ipam.actions.add-ip-addr.error.already-exists"));
+            
+            checkIpAddressBelongsToSubnet(attributes.get(Constants.PROPERTY_NAME), parentSubnetId, parentSubnetClassName);
 
             //TODO look for a proper way to set this property or any new attribute added to the ip address if is a listype
             String reservedId = null;
@@ -517,6 +673,8 @@ public class IpamService {
                  , Constants.CLASS_IP_ADDRESS);
             if(!exists.isEmpty())
                 throw new InvalidArgumentException(ts.getTranslatedString("module.ipam.actions.add-ip-addr.error.already-exists"));
+            
+            checkIpAddressBelongsToSubnet(attributes.get(Constants.PROPERTY_NAME), parentSubnetId, parentSubnetClassName);
 
             //TODO look for a proper way to set this property or any new attribute added to the ip address if is a listype
             String reservedId = null;
@@ -813,66 +971,51 @@ public class IpamService {
     }
    
     /**
-     * Checks if the new subnet exists or overlaps with in other created subnets
+     * Checks if the new subnet exists or overlaps with in other created subnets. 
+     * A new subnet can be nested in an existing one, but it can't contain 
+     * subnets that were created before
      * @param cidr subnet's cidr format
      * @param className if is subnet ip v4 or ip v6
      * @param newNetworkIpAddress
      * @param newBroadcastIpAddress
      * @throws InvalidArgumentException if a subnet with the exact cidr already 
      * exists or if it overlaps with others created subnets
+     * @throws MetadataObjectNotFoundException If the subnet classes can not be found while loading the subnet index
      */
     public void getOverlapedSubnets(String cidr, String className
             , String newNetworkIpAddress
-            , String newBroadcastIpAddress) throws InvalidArgumentException
+            , String newBroadcastIpAddress) throws InvalidArgumentException, MetadataObjectNotFoundException
     {
-        String address = IpamEngine.getPartialSubnetIpAddr(cidr
-                , className.equals(Constants.CLASS_SUBNET_IPV4) ? 4 : (className.equals(Constants.CLASS_SUBNET_IPV6) ? 6 : 0));
+        SubnetIndex index = getSubnetIndex();
+        if (!index.getSubnets(cidr, className).isEmpty())
+            throw new InvalidArgumentException(ts.getTranslatedString("module.ipam.actions.add-subnet.error-subnet-exists"));
+        
         List<String> overlapedSubnets = new ArrayList<>();
+        for (BusinessObjectLight subnet : index.getContainedSubnets(cidr, className, -1))
+            overlapedSubnets.add(subnet.getName());
         
-        if(address != null){
-            List<BusinessObjectLight> currentSubnets = 
-                    bem.getSuggestedObjectsWithFilter(address
-                        , -1, -1, className);
-
-            String spliter = "\\.";
-            if(className.equals(Constants.CLASS_SUBNET_IPV4)){
-                long newNetworkIpAddr = Long.valueOf(newNetworkIpAddress.replaceAll(spliter, ""));
-                long newBroadcastIpAddr = Long.valueOf(newBroadcastIpAddress.replaceAll(spliter, ""));
-
-                for (BusinessObjectLight subnet : currentSubnets) {
-                    if(subnet.getName().equals(cidr))
-                        throw new InvalidArgumentException(ts.getTranslatedString("module.ipam.actions.add-subnet.error-subnet-exists"));
-
-                    SubnetDetail subnetDetail = new SubnetDetail(subnet.getName());
-                    IpamEngine.ipv4SubnetCalculation(subnetDetail);
-
-                    long networkIpAddr = Long.valueOf(subnetDetail.getNetworkIpAddr().replaceAll(spliter, ""));
-                    long broadcastIpAddr = Long.valueOf(subnetDetail.getBroadCastIpAddr().replaceAll(spliter, ""));
-
-                    if(Integer.valueOf(cidr.split("/")[1]) <= subnetDetail.getMaskBits() 
-                            && (newNetworkIpAddr >= networkIpAddr || newBroadcastIpAddr <= broadcastIpAddr))
-                        overlapedSubnets.add(subnet.getName());
-                }
-            }
-            else if(className.equals(Constants.CLASS_SUBNET_IPV6)){
-                                
-                for (BusinessObjectLight subnet : currentSubnets) {
-                    if(subnet.getName().equals(cidr))
-                        throw new InvalidArgumentException(ts.getTranslatedString("module.ipam.actions.add-subnet.error-subnet-exists"));
-
-                    SubnetDetail subnetDetail = new SubnetDetail(subnet.getName());
-                    IpamEngine.ipv4SubnetCalculation(subnetDetail);
-                    
-                    if(IpamEngine.ipv6SubnetsOvelaps(cidr, subnetDetail.getNetworkIpAddr(), subnetDetail.getBroadCastIpAddr()))
-                        overlapedSubnets.add(subnet.getName());
-                }
-            }
-        }
         if(!overlapedSubnets.isEmpty())
             throw new InvalidArgumentException(
                     String.format(ts.getTranslatedString("module.ipam.actions.add-subnet.error-subnet-overlaps")
                     , cidr, String.join(" - ", overlapedSubnets)));
-        
+    }
+    
+    /**
+     * Checks if an IP address can be added to a subnet
+     * @param ipAddr the IP address
+     * @param subnetId the subnet id
+     * @param subnetClassName if is subnet ip v4 or ip v6
+     * @throws InvalidArgumentException If the IP address is out of the subnet range
+     * @throws MetadataObjectNotFoundException If the subnet class can not be found
+     * @throws BusinessObjectNotFoundException If the subnet can not be found
+     */
+    private void checkIpAddressBelongsToSubnet(String ipAddr, String subnetId, String subnetClassName) 
+            throws InvalidArgumentException, MetadataObjectNotFoundException, BusinessObjectNotFoundException
+    {
+        BusinessObjectLight subnet = bem.getObjectLight(subnetClassName, subnetId);
+        if (!SubnetIndex.contains(subnet.getName(), subnetClassName, ipAddr))
+            throw new InvalidArgumentException(String.format(
+                    ts.getTranslatedString("module.ipam.actions.add-ipddr-not-belongs-to-subnet.warning"), subnet.getName()));
     }
     
     /**
@@ -884,25 +1027,15 @@ public class IpamService {
             String ipAddr1 = ipAddrA.getName();
             String ipAddr2 = ipAddrB.getName();
 
-            if(IpamEngine.isIpv4Address(ipAddr1) && IpamEngine.isIpv4Address(ipAddr2)){
-                ipAddr1 = IpamEngine.getIpv4Completed(ipAddr1).replaceAll("\\.", "");
-                ipAddr2 = IpamEngine.getIpv4Completed(ipAddr2).replaceAll("\\.", "");
-                return Double.valueOf(ipAddr1).compareTo(Double.valueOf(ipAddr2));
-            }
-            else if(IpamEngine.isIpv6Address(ipAddr1) && IpamEngine.isIpv6Address(ipAddr2)){
-                String[] aIp = IpamEngine.completeIPv6(ipAddr1);
-                String[] bIp = IpamEngine.completeIPv6(ipAddr2);
-                if(Arrays.equals(aIp, bIp))
-                    return 0;
-
-                for(int k=0; k < 8; k++){
-                    int x = Integer.parseInt(aIp[k],16);
-                    int y = Integer.parseInt(bIp[k],16);
-                    int compare = Integer.compare(x, y);
-                    if(compare != 0)
-                        return compare;
-                }
-            }
+            long ipv4Addr1 = Ipv4Arithmetic.parse(ipAddr1);
+            long ipv4Addr2 = Ipv4Arithmetic.parse(ipAddr2);
+            if(ipv4Addr1 != Ipv4Arithmetic.INVALID_ADDRESS && ipv4Addr2 != Ipv4Arithmetic.INVALID_ADDRESS)
+                return Long.compare(ipv4Addr1, ipv4Addr2);
+            
+            Ipv6Address ipv6Addr1 = Ipv6Address.parse(ipAddr1);
+            Ipv6Address ipv6Addr2 = Ipv6Address.parse(ipAddr2);
+            if(ipv6Addr1 != null && ipv6Addr2 != null)
+                return ipv6Addr1.compareTo(ipv6Addr2);
             return 0;    
         }
     }
@@ -916,30 +1049,18 @@ public class IpamService {
             String cidrSubnet1 = subnetA.getName(); //retrieves 
             String cidrSubnet2 = subnetB.getName();
 
-            if(IpamEngine.isIpv4Address(IpamEngine.getSubnetIpAddr(cidrSubnet1)) 
-                    && IpamEngine.isIpv4Address(IpamEngine.getSubnetIpAddr(cidrSubnet2)))
-            {
-               String subnet1 = IpamEngine.getSubnetIpAddr(cidrSubnet1).replaceAll("\\.", "");
-               String subnet2 = IpamEngine.getSubnetIpAddr(cidrSubnet2).replaceAll("\\.", "");
-
-               return Long.compare(Long.valueOf(subnet1), Long.valueOf(subnet2));
-            }
-            else if(IpamEngine.isIpv6Address(IpamEngine.getSubnetIpAddr(cidrSubnet1)) 
-                    && IpamEngine.isIpv6Address(IpamEngine.getSubnetIpAddr(cidrSubnet2)))
-            {
-                String[] aSubnetSplit = IpamEngine.completeIPv6(IpamEngine.getSubnetIpAddr(cidrSubnet1));
-                String[] bSubnetSplit = IpamEngine.completeIPv6(IpamEngine.getSubnetIpAddr(cidrSubnet2));
-                if(Arrays.equals(aSubnetSplit, bSubnetSplit))
-                    return 0;
-
-                for(int k=0; k<8; k++){
-                    int x = Integer.parseInt(aSubnetSplit[k],16);
-                    int y = Integer.parseInt(bSubnetSplit[k],16);
-                    int compare = Integer.compare(x, y);
-                    if(compare != 0)
-                        return compare;
-                }
-            }
+            String subnet1 = IpamEngine.getSubnetIpAddr(cidrSubnet1);
+            String subnet2 = IpamEngine.getSubnetIpAddr(cidrSubnet2);
+            
+            long ipv4Subnet1 = Ipv4Arithmetic.parse(subnet1);
+            long ipv4Subnet2 = Ipv4Arithmetic.parse(subnet2);
+            if(ipv4Subnet1 != Ipv4Arithmetic.INVALID_ADDRESS && ipv4Subnet2 != Ipv4Arithmetic.INVALID_ADDRESS)
+                return Long.compare(ipv4Subnet1, ipv4Subnet2);
+            
+            Ipv6Address ipv6Subnet1 = Ipv6Address.parse(subnet1);
+            Ipv6Address ipv6Subnet2 = Ipv6Address.parse(subnet2);
+            if(ipv6Subnet1 != null && ipv6Subnet2 != null)
+                return ipv6Subnet1.compareTo(ipv6Subnet2);
             return 0;
         }
     }
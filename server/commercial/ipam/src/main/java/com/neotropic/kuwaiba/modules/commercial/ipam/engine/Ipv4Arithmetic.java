@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ * Licensed under the EPL License, Version 1.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.neotropic.kuwaiba.modules.commercial.ipam.engine;
+
+/**
+ * Bit-level IPv4 arithmetic. Addresses are handled as unsigned 32-bit values
+ * stored in a <code>long</code> (0 to 2^32 - 1), so they can be compared and
+ * sorted with plain numeric operations and no strings are created until
+ * an address has to be displayed.
+ */
+public final class Ipv4Arithmetic {
+    /**
+     * Number of bits in an IPv4 address
+     */
+    public static final int BITS = 32;
+    /**
+     * Value returned when a string is not a valid IPv4 address
+     */
+    public static final long INVALID_ADDRESS = -1;
+    /**
+     * All the 32 bits set
+     */
+    private static final long ALL_ONES = 0xFFFFFFFFL;
+
+    private Ipv4Arithmetic() { }
+
+    /**
+     * Parses an IPv4 address in dotted decimal notation (e.g. 192.168.0.1)
+     * @param ipAddr the IP address
+     * @return the address as an unsigned 32-bit value, or {@link #INVALID_ADDRESS} if the string is not a valid IPv4 address
+     */
+    public static long parse(String ipAddr) {
+        if (ipAddr == null)
+            return INVALID_ADDRESS;
+
+        long address = 0;
+        int octet = -1; // -1 means that no digits have been read for the current octet
+        int octets = 0;
+        for (int i = 0; i < ipAddr.length(); i++) {
+            char c = ipAddr.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet == -1 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255)
+                    return INVALID_ADDRESS;
+            } else if (c == '.') {
+                if (octet == -1 || octets == 3)
+                    return INVALID_ADDRESS;
+                address = (address << 8) | octet;
+                octets++;
+                octet = -1;
+            } else
+                return INVALID_ADDRESS;
+        }
+        if (octet == -1 || octets != 3)
+            return INVALID_ADDRESS;
+        return (address << 8) | octet;
+    }
+
+    /**
+     * Formats an address in dotted decimal notation
+     * @param address the address as an unsigned 32-bit value
+     * @return the address in dotted decimal notation
+     */
+    public static String toString(long address) {
+        return new StringBuilder(15)
+                .append((address >>> 24) & 0xFF).append('.')
+                .append((address >>> 16) & 0xFF).append('.')
+                .append((address >>> 8) & 0xFF).append('.')
+                .append(address & 0xFF).toString();
+    }
+
+    /**
+     * Gets the value of one of the octets of an address
+     * @param address the address as an unsigned 32-bit value
+     * @param octet the octet position, from 0 (leftmost) to 3 (rightmost)
+     * @return the octet value
+     */
+    public static int getOctet(long address, int octet) {
+        return (int) ((address >>> (8 * (3 - octet))) & 0xFF);
+    }
+
+    /**
+     * Creates the subnet mask for a given number of mask bits
+     * @param maskBits the mask bits (0 to 32)
+     * @return the mask as an unsigned 32-bit value
+     */
+    public static long mask(int maskBits) {
+        return maskBits == 0 ? 0 : (ALL_ONES << (BITS - maskBits)) & ALL_ONES;
+    }
+
+    /**
+     * Gets the network address of the subnet an address belongs to
+     * @param address the address
+     * @param maskBits the subnet mask bits
+     * @return the network address
+     */
+    public static long networkAddress(long address, int maskBits) {
+        return address & mask(maskBits);
+    }
+
+    /**
+     * Gets the broadcast address of the subnet an address belongs to
+     * @param address the address
+     * @param maskBits the subnet mask bits
+     * @return the broadcast address
+     */
+    public static long broadcastAddress(long address, int maskBits) {
+        return address | (~mask(maskBits) & ALL_ONES);
+    }
+
+    /**
+     * Checks if an address belongs to a subnet
+     * @param networkAddress the subnet network address
+     * @param maskBits the subnet mask bits
+     * @param address the address to check
+     * @return true if the first <code>maskBits</code> bits of the address and the network address are the same
+     */
+    public static boolean contains(long networkAddress, int maskBits, long address) {
+        return ((networkAddress ^ address) & mask(maskBits)) == 0;
+    }
+
+    /**
+     * Checks if two subnets share at least one address. In CIDR, two subnets either
+     * do not overlap at all or one of them contains the other one
+     * @param networkAddressA the first subnet network address
+     * @param maskBitsA the first subnet mask bits
+     * @param networkAddressB the second subnet network address
+     * @param maskBitsB the second subnet mask bits
+     * @return true if the subnets overlap
+     */
+    public static boolean overlaps(long networkAddressA, int maskBitsA, long networkAddressB, int maskBitsB) {
+        return contains(networkAddressA, Math.min(maskBitsA, maskBitsB), networkAddressB);
+    }
+
+    /**
+     * Gets the number of addresses in a subnet, including the network and broadcast addresses
+     * @param maskBits the subnet mask bits
+     * @return 2^(32 - maskBits)
+     */
+    public static long size(int maskBits) {
+        return 1L << (BITS - maskBits);
+    }
+
+    /**
+     * Gets the number of usable host addresses in a subnet
+     * @param maskBits the subnet mask bits
+     * @return the size of the subnet minus the network and the broadcast addresses
+     */
+    public static long numberOfHosts(int maskBits) {
+        return size(maskBits) - 2;
+    }
+
+    /**
+     * Gets the address that follows a given one
+     * @param address the address
+     * @return the next address, or {@link #INVALID_ADDRESS} if the given address is 255.255.255.255
+     */
+    public static long next(long address) {
+        return address == ALL_ONES ? INVALID_ADDRESS : address + 1;
+    }
+
+    /**
+     * Splits a subnet in smaller subnets of the same size
+     * @param networkAddress the subnet network address
+     * @param maskBits the subnet mask bits
+     * @param newMaskBits the mask bits of the resulting subnets. It must be greater or equal than <code>maskBits</code>
+     * @return the network addresses of the resulting subnets, in ascending order
+     */
+    public static long[] split(long networkAddress, int maskBits, int newMaskBits) {
+        long[] subnets = new long[1 << (newMaskBits - maskBits)];
+        long step = size(newMaskBits);
+        long subnet = networkAddress(networkAddress, maskBits);
+        for (int i = 0; i < subnets.length; i++, subnet += step)
+            subnets[i] = subnet;
+        return subnets;
+    }
+}
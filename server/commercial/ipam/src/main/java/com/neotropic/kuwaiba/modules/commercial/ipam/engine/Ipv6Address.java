@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ * Licensed under the EPL License, Version 1.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.neotropic.kuwaiba.modules.commercial.ipam.engine;
+
+/**
+ * An immutable IPv6 address stored as two unsigned 64-bit halves. All the subnet
+ * arithmetic (masks, network and broadcast addresses, containment, next address)
+ * is done with bitwise operations on those two values.
+ */
+public final class Ipv6Address implements Comparable<Ipv6Address> {
+    /**
+     * Number of bits in an IPv6 address
+     */
+    public static final int BITS = 128;
+    /**
+     * The 64 most significant bits
+     */
+    private final long high;
+    /**
+     * The 64 least significant bits
+     */
+    private final long low;
+
+    public Ipv6Address(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Parses an IPv6 address in any of its text representations (full or compressed)
+     * @param ipAddr the IP address
+     * @return the address or null if the string is not a valid IPv6 address
+     */
+    public static Ipv6Address parse(String ipAddr) {
+        if (ipAddr == null || ipAddr.isEmpty())
+            return null;
+
+        int[] groups = new int[8];
+        int groupCount = 0;
+        int compressionAt = -1; // Position of the "::", if any
+        int i = 0;
+        int length = ipAddr.length();
+
+        if (ipAddr.startsWith("::")) { //NOI18N
+            compressionAt = 0;
+            i = 2;
+        }
+        while (i < length) {
+            if (groupCount == 8)
+                return null;
+            int group = 0;
+            int digits = 0;
+            while (i < length && digits < 5) {
+                int digit = Character.digit(ipAddr.charAt(i), 16);
+                if (digit == -1)
+                    break;
+                group = (group << 4) | digit;
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 4)
+                return null;
+            groups[groupCount++] = group;
+
+            if (i == length)
+                break;
+            if (ipAddr.charAt(i) != ':')
+                return null;
+            i++;
+            if (i < length && ipAddr.charAt(i) == ':') {
+                if (compressionAt != -1)
+                    return null;
+                compressionAt = groupCount;
+                i++;
+            } else if (i == length) // A single trailing colon
+                return null;
+        }
+
+        if (compressionAt == -1 && groupCount != 8)
+            return null;
+        if (compressionAt != -1) {
+            if (groupCount == 8)
+                return null;
+            // Moves the groups after the "::" to the end
+            int tail = groupCount - compressionAt;
+            System.arraycopy(groups, compressionAt, groups, 8 - tail, tail);
+            for (int j = compressionAt; j < 8 - tail; j++)
+                groups[j] = 0;
+        }
+
+        long high = 0, low = 0;
+        for (int j = 0; j < 4; j++) {
+            high = (high << 16) | groups[j];
+            low = (low << 16) | groups[j + 4];
+        }
+        return new Ipv6Address(high, low);
+    }
+
+    /**
+     * Gets the value of one of the 16-bit groups of the address
+     * @param group the group position, from 0 (leftmost) to 7 (rightmost)
+     * @return the group value
+     */
+    public int getGroup(int group) {
+        return (int) (((group < 4 ? high : low) >>> (16 * (3 - (group % 4)))) & 0xFFFF);
+    }
+
+    /**
+     * Gets the 64 most significant bits of a mask
+     * @param maskBits the mask bits (0 to 128)
+     * @return the mask high half
+     */
+    private static long maskHigh(int maskBits) {
+        if (maskBits <= 0)
+            return 0;
+        return maskBits >= 64 ? -1L : -1L << (64 - maskBits);
+    }
+
+    /**
+     * Gets the 64 least significant bits of a mask
+     * @param maskBits the mask bits (0 to 128)
+     * @return the mask low half
+     */
+    private static long maskLow(int maskBits) {
+        if (maskBits <= 64)
+            return 0;
+        return maskBits >= BITS ? -1L : -1L << (BITS - maskBits);
+    }
+
+    /**
+     * Gets the network address of the subnet this address belongs to
+     * @param maskBits the subnet mask bits
+     * @return the network address
+     */
+    public Ipv6Address networkAddress(int maskBits) {
+        return new Ipv6Address(high & maskHigh(maskBits), low & maskLow(maskBits));
+    }
+
+    /**
+     * Gets the last address of the subnet this address belongs to (there are
+     * no broadcast addresses in IPv6, but the name is kept for consistency with IPv4)
+     * @param maskBits the subnet mask bits
+     * @return the last address in the subnet
+     */
+    public Ipv6Address broadcastAddress(int maskBits) {
+        return new Ipv6Address(high | ~maskHigh(maskBits), low | ~maskLow(maskBits));
+    }
+
+    /**
+     * Checks if an address belongs to the subnet whose network address is this address
+     * @param maskBits the subnet mask bits
+     * @param address the address to check
+     * @return true if the first <code>maskBits</code> bits of both addresses are the same
+     */
+    public boolean contains(int maskBits, Ipv6Address address) {
+        return ((high ^ address.high) & maskHigh(maskBits)) == 0
+                && ((low ^ address.low) & maskLow(maskBits)) == 0;
+    }
+
+    /**
+     * Checks if the subnet whose network address is this address and another subnet share at least one address
+     * @param maskBits this subnet mask bits
+     * @param networkAddress the other subnet network address
+     * @param otherMaskBits the other subnet mask bits
+     * @return true if the subnets overlap
+     */
+    public boolean overlaps(int maskBits, Ipv6Address networkAddress, int otherMaskBits) {
+        return contains(Math.min(maskBits, otherMaskBits), networkAddress);
+    }
+
+    /**
+     * Gets the address that follows this one
+     * @return the next address, or null if this is the last IPv6 address
+     */
+    public Ipv6Address next() {
+        if (low != -1L)
+            return new Ipv6Address(high, low + 1);
+        if (high != -1L)
+            return new Ipv6Address(high + 1, 0);
+        return null;
+    }
+
+    /**
+     * Formats the address with all its groups padded to four hex digits
+     * (e.g. 2001:0db8:0000:0000:0000:0000:0000:0001)
+     * @return the uncompressed address
+     */
+    public String toFullString() {
+        StringBuilder ipAddr = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i > 0)
+                ipAddr.append(':');
+            String group = Integer.toHexString(getGroup(i));
+            for (int j = group.length(); j < 4; j++)
+                ipAddr.append('0');
+            ipAddr.append(group);
+        }
+        return ipAddr.toString();
+    }
+
+    /**
+     * Formats the address in its canonical compressed form as per RFC 5952: no leading
+     * zeros and the longest run of two or more zero groups replaced by "::" (e.g. 2001:db8::1)
+     * @return the compressed address
+     */
+    @Override
+    public String toString() {
+        // Finds the longest run of zero groups (the first one if there's a tie)
+        int bestStart = -1, bestLength = 0;
+        for (int i = 0; i < 8; ) {
+            if (getGroup(i) == 0) {
+                int j = i;
+                while (j < 8 && getGroup(j) == 0)
+                    j++;
+                if (j - i > bestLength) {
+                    bestStart = i;
+                    bestLength = j - i;
+                }
+                i = j;
+            } else
+                i++;
+        }
+        if (bestLength < 2)
+            bestStart = -1;
+
+        StringBuilder ipAddr = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                ipAddr.append("::"); //NOI18N
+                i += bestLength - 1;
+                continue;
+            }
+            if (ipAddr.length() > 0 && ipAddr.charAt(ipAddr.length() - 1) != ':')
+                ipAddr.append(':');
+            ipAddr.append(Integer.toHexString(getGroup(i)));
+        }
+        return ipAddr.toString();
+    }
+
+    @Override
+    public int compareTo(Ipv6Address other) {
+        int compare = Long.compareUnsigned(high, other.high);
+        return compare != 0 ? compare : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Ipv6Address))
+            return false;
+        return high == ((Ipv6Address) obj).high && low == ((Ipv6Address) obj).low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+}
@@ -41,11 +41,11 @@ public class SubnetDetail {
      */
     private int maskBits;
     /**
-     * Mask of the subnet in binary
+     * Mask of the subnet in binary, calculated from the mask bits if it is not set
      */
     private List<List<String>> binaryMask;
     /**
-     * Mask of the subnet
+     * Mask of the subnet, calculated from the mask bits if it is not set
      */
     private List<String> mask;
     /**
@@ -143,6 +143,8 @@ public class SubnetDetail {
     }
 
     public List<List<String>> getBinaryMask() {
+        if(binaryMask == null && ipAddrV == 4)
+            binaryMask = IpamEngine.ipv4CreateBinaryMask(maskBits);
         return binaryMask;
     }
 
@@ -151,8 +153,11 @@ public class SubnetDetail {
     }
 
     public String getMask() {
-        if(ipAddrV == 4)
+        if(ipAddrV == 4){
+            if(mask == null)
+                mask = IpamEngine.ipv4CreateMask(maskBits);
             return String.join(". ", mask);
+        }
         return "";
     }
 
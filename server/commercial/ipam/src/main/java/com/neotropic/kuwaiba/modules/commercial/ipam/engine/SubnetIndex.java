@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ * Licensed under the EPL License, Version 1.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.neotropic.kuwaiba.modules.commercial.ipam.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+
+/**
+ * In-memory index of the IPv4 and IPv6 subnets in the inventory, used to find
+ * duplicated, overlapping and containing subnets without scanning the database.
+ * The subnets are indexed by their name, which is expected to be in CIDR format,
+ * and every subnet is indexed only once, no matter how many times it's added, 
+ * so a renamed subnet can be updated by adding it again.
+ * It's safe to use from several threads at the same time.
+ */
+public class SubnetIndex {
+    private final SubnetTrie<BusinessObjectLight> ipv4Subnets = new SubnetTrie<>();
+    private final SubnetTrie<BusinessObjectLight> ipv6Subnets = new SubnetTrie<>();
+    /**
+     * The indexed subnets by id, as they were added. Used to remove them without knowing their current name
+     */
+    private final HashMap<String, BusinessObjectLight> subnetsById = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * If the index has been populated since it was created or invalidated
+     */
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Replaces the contents of the index
+     * @param subnets all the subnets in the inventory
+     */
+    public void load(List<BusinessObjectLight> subnets) {
+        lock.writeLock().lock();
+        try {
+            ipv4Subnets.clear();
+            ipv6Subnets.clear();
+            subnetsById.clear();
+            for (BusinessObjectLight subnet : subnets)
+                put(subnet);
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the index as outdated, so it's loaded again the next time it's used
+     */
+    public void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * Adds a subnet to the index, replacing the entry it had if it was already indexed. 
+     * Subnets whose name is not a valid CIDR are ignored
+     * @param subnet the subnet
+     */
+    public void add(BusinessObjectLight subnet) {
+        lock.writeLock().lock();
+        try {
+            put(subnet);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a subnet from the index
+     * @param subnet the subnet
+     * @return true if the subnet was in the index
+     */
+    public boolean remove(BusinessObjectLight subnet) {
+        return remove(subnet.getId());
+    }
+    
+    /**
+     * Removes a subnet from the index
+     * @param subnetId the subnet id
+     * @return true if the subnet was in the index
+     */
+    public boolean remove(String subnetId) {
+        lock.writeLock().lock();
+        try {
+            return unput(subnetId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the subnets with exactly the given CIDR
+     * @param cidr the subnet in CIDR format
+     * @param className the subnet class, SubnetIPv4 or SubnetIPv6
+     * @return the subnets, an empty list if there are none or if the CIDR is not valid
+     */
+    public List<BusinessObjectLight> getSubnets(String cidr, String className) {
+        Prefix prefix = Prefix.parse(cidr, className);
+        if (prefix == null)
+            return new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            return trieOf(className).get(prefix.high, prefix.low, prefix.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the subnets contained in a given subnet (with a longer mask), no matter how deep they are nested
+     * @param cidr the subnet in CIDR format
+     * @param className the subnet class, SubnetIPv4 or SubnetIPv6
+     * @param limit the maximum number of subnets to return, -1 to return them all
+     * @return the contained subnets, an empty list if there are none or if the CIDR is not valid
+     */
+    public List<BusinessObjectLight> getContainedSubnets(String cidr, String className, int limit) {
+        Prefix prefix = Prefix.parse(cidr, className);
+        if (prefix == null)
+            return new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            return trieOf(className).getContained(prefix.high, prefix.low, prefix.length, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the most specific subnets that contain a given IP address or subnet (longest prefix match)
+     * @param ipAddrOrCidr an IP address or a subnet in CIDR format. A subnet matches itself
+     * @param className the subnet class, SubnetIPv4 or SubnetIPv6
+     * @return the subnets with the longest mask that contain the address, an empty list if there are none
+     */
+    public List<BusinessObjectLight> getContainingSubnets(String ipAddrOrCidr, String className) {
+        Prefix prefix = Prefix.parse(ipAddrOrCidr.contains("/") ? ipAddrOrCidr //NOI18N
+                : ipAddrOrCidr + "/" + (Constants.CLASS_SUBNET_IPV4.equals(className) ? Ipv4Arithmetic.BITS : Ipv6Address.BITS), className); //NOI18N
+        if (prefix == null)
+            return new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            return trieOf(className).longestPrefixMatch(prefix.high, prefix.low, prefix.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if an IP address belongs to a subnet
+     * @param cidr the subnet in CIDR format
+     * @param className the subnet class, SubnetIPv4 or SubnetIPv6
+     * @param ipAddr the IP address
+     * @return true if the address is in the subnet range, false if it's not or if either of them is not valid
+     */
+    public static boolean contains(String cidr, String className, String ipAddr) {
+        Prefix subnet = Prefix.parse(cidr, className);
+        Prefix address = ipAddr == null ? null : Prefix.parse(ipAddr + "/" //NOI18N
+                + (Constants.CLASS_SUBNET_IPV4.equals(className) ? Ipv4Arithmetic.BITS : Ipv6Address.BITS), className);
+        if (subnet == null || address == null)
+            return false;
+        return subnet.contains(address);
+    }
+
+    private void put(BusinessObjectLight subnet) {
+        unput(subnet.getId());
+        Prefix prefix = Prefix.parse(subnet.getName(), subnet.getClassName());
+        if (prefix != null) {
+            trieOf(subnet.getClassName()).put(prefix.high, prefix.low, prefix.length, subnet);
+            subnetsById.put(subnet.getId(), subnet);
+        }
+    }
+    
+    private boolean unput(String subnetId) {
+        BusinessObjectLight subnet = subnetsById.remove(subnetId);
+        if (subnet == null)
+            return false;
+        Prefix prefix = Prefix.parse(subnet.getName(), subnet.getClassName());
+        return trieOf(subnet.getClassName()).remove(prefix.high, prefix.low, prefix.length, subnet);
+    }
+
+    private SubnetTrie<BusinessObjectLight> trieOf(String className) {
+        return Constants.CLASS_SUBNET_IPV4.equals(className) ? ipv4Subnets : ipv6Subnets;
+    }
+
+    /**
+     * A subnet as a left-aligned 128-bit prefix
+     */
+    private static class Prefix {
+        private final long high;
+        private final long low;
+        private final int length;
+
+        private Prefix(long high, long low, int length) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+        }
+
+        /**
+         * Checks if another prefix is this one or is nested in it
+         * @param other the other prefix
+         * @return true if the first <code>length</code> bits of both prefixes are the same and the other one is not shorter
+         */
+        private boolean contains(Prefix other) {
+            if (other.length < length)
+                return false;
+            long maskHigh = length == 0 ? 0 : (length >= 64 ? -1L : -1L << (64 - length));
+            long maskLow = length <= 64 ? 0 : (length >= 128 ? -1L : -1L << (128 - length));
+            return ((high ^ other.high) & maskHigh) == 0 && ((low ^ other.low) & maskLow) == 0;
+        }
+
+        /**
+         * Parses a subnet in CIDR format
+         * @param cidr the subnet
+         * @param className the subnet class, SubnetIPv4 or SubnetIPv6
+         * @return the prefix or null if the CIDR is not valid
+         */
+        private static Prefix parse(String cidr, String className) {
+            if (cidr == null)
+                return null;
+            int slash = cidr.indexOf('/');
+            if (slash == -1)
+                return null;
+            int length;
+            try {
+                length = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+
+            if (Constants.CLASS_SUBNET_IPV4.equals(className)) {
+                long address = Ipv4Arithmetic.parse(cidr.substring(0, slash));
+                if (address == Ipv4Arithmetic.INVALID_ADDRESS || length < 0 || length > Ipv4Arithmetic.BITS)
+                    return null;
+                return new Prefix(address << 32, 0, length);
+            } else if (Constants.CLASS_SUBNET_IPV6.equals(className)) {
+                Ipv6Address address = Ipv6Address.parse(cidr.substring(0, slash));
+                if (address == null || length < 0 || length > Ipv6Address.BITS)
+                    return null;
+                return new Prefix(address.getHigh(), address.getLow(), length);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ * Licensed under the EPL License, Version 1.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.neotropic.kuwaiba.modules.commercial.ipam.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A path-compressed binary (Patricia) trie of subnets. Prefixes are up to 128 bits
+ * long and are stored left-aligned in two longs, so the same structure serves IPv6
+ * subnets and IPv4 subnets (whose 32 bits go in the most significant half).
+ * Lookups, insertions and removals walk at most one node per bit of the prefix.
+ * Several values can be stored under the same prefix. This class is not thread-safe.
+ * @param <V> The type of the values stored in the trie
+ */
+public class SubnetTrie<V> {
+    /**
+     * The node of the empty prefix (/0). It's never removed
+     */
+    private final Node<V> root = new Node<>(0, 0, 0, null);
+    /**
+     * Number of values in the trie
+     */
+    private int size;
+
+    /**
+     * Adds a value under a given prefix
+     * @param high the 64 most significant bits of the prefix
+     * @param low the 64 least significant bits of the prefix
+     * @param length the prefix length (0 to 128)
+     * @param value the value to store
+     */
+    public void put(long high, long low, int length, V value) {
+        high &= maskHigh(length);
+        low &= maskLow(length);
+        Node<V> node = root;
+        while (node.length < length) {
+            int bit = bit(high, low, node.length);
+            Node<V> child = node.children[bit];
+            if (child == null) {
+                child = new Node<>(high, low, length, node);
+                node.children[bit] = child;
+                node = child;
+                break;
+            }
+            int common = commonPrefixLength(high, low, child.high, child.low, Math.min(length, child.length));
+            if (common == child.length) {
+                node = child;
+                continue;
+            }
+            // The new prefix diverges from the child's (or is shorter), an intermediate node has to be created
+            Node<V> intermediate = new Node<>(high & maskHigh(common), low & maskLow(common), common, node);
+            node.children[bit] = intermediate;
+            intermediate.children[bit(child.high, child.low, common)] = child;
+            child.parent = intermediate;
+            node = intermediate;
+        }
+        node.values.add(value);
+        size++;
+    }
+
+    /**
+     * Removes a value stored under a given prefix
+     * @param high the 64 most significant bits of the prefix
+     * @param low the 64 least significant bits of the prefix
+     * @param length the prefix length
+     * @param value the value to remove
+     * @return true if the value was found and removed
+     */
+    public boolean remove(long high, long low, int length, V value) {
+        Node<V> node = find(high & maskHigh(length), low & maskLow(length), length);
+        if (node == null || !node.values.remove(value))
+            return false;
+        size--;
+        // Nodes with no values and less than two children are not needed anymore
+        while (node != root && node.values.isEmpty()) {
+            Node<V> parent = node.parent;
+            int position = parent.children[0] == node ? 0 : 1;
+            if (node.children[0] != null && node.children[1] != null)
+                break;
+            Node<V> onlyChild = node.children[0] != null ? node.children[0] : node.children[1];
+            parent.children[position] = onlyChild;
+            if (onlyChild != null) {
+                onlyChild.parent = parent;
+                break;
+            }
+            node = parent;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the values stored under exactly the given prefix
+     * @param high the 64 most significant bits of the prefix
+     * @param low the 64 least significant bits of the prefix
+     * @param length the prefix length
+     * @return the values, an empty list if there are none
+     */
+    public List<V> get(long high, long low, int length) {
+        Node<V> node = find(high & maskHigh(length), low & maskLow(length), length);
+        return node == null ? new ArrayList<>() : new ArrayList<>(node.values);
+    }
+
+    /**
+     * Gets the values stored under the longest prefix that contains the given one
+     * (including the prefix itself). Use a length of 32 or 128 to look up a single address
+     * @param high the 64 most significant bits of the prefix
+     * @param low the 64 least significant bits of the prefix
+     * @param length the prefix length
+     * @return the values of the longest matching prefix, an empty list if no prefix matches
+     */
+    public List<V> longestPrefixMatch(long high, long low, int length) {
+        Node<V> match = null;
+        Node<V> node = root;
+        while (node != null && node.length <= length
+                && commonPrefixLength(high, low, node.high, node.low, node.length) == node.length) {
+            if (!node.values.isEmpty())
+                match = node;
+            if (node.length == length)
+                break;
+            node = node.children[bit(high, low, node.length)];
+        }
+        return match == null ? new ArrayList<>() : new ArrayList<>(match.values);
+    }
+
+    /**
+     * Gets the values stored under prefixes strictly longer than the given one and contained in it
+     * @param high the 64 most significant bits of the prefix
+     * @param low the 64 least significant bits of the prefix
+     * @param length the prefix length
+     * @param limit the maximum number of values to return, -1 to return them all
+     * @return the values, an empty list if there are none
+     */
+    public List<V> getContained(long high, long low, int length, int limit) {
+        List<V> values = new ArrayList<>();
+        Node<V> node = root;
+        // Finds the shortest node whose prefix starts with the given one
+        while (node.length < length) {
+            node = node.children[bit(high, low, node.length)];
+            if (node == null)
+                return values;
+            int common = commonPrefixLength(high, low, node.high, node.low, Math.min(length, node.length));
+            if (common < Math.min(length, node.length))
+                return values;
+        }
+        Deque<Node<V>> pending = new ArrayDeque<>();
+        if (node.length > length)
+            pending.push(node);
+        else {
+            for (Node<V> child : node.children)
+                if (child != null)
+                    pending.push(child);
+        }
+        while (!pending.isEmpty()) {
+            Node<V> current = pending.pop();
+            for (V value : current.values) {
+                if (limit >= 0 && values.size() == limit)
+                    return values;
+                values.add(value);
+            }
+            for (Node<V> child : current.children)
+                if (child != null)
+                    pending.push(child);
+        }
+        return values;
+    }
+
+    /**
+     * Removes all the values
+     */
+    public void clear() {
+        root.children[0] = null;
+        root.children[1] = null;
+        root.values.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the number of values stored in the trie
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the node of an exact prefix
+     * @param high the 64 most significant bits of the prefix, already masked
+     * @param low the 64 least significant bits of the prefix, already masked
+     * @param length the prefix length
+     * @return the node or null if the prefix is not in the trie
+     */
+    private Node<V> find(long high, long low, int length) {
+        Node<V> node = root;
+        while (node.length < length) {
+            node = node.children[bit(high, low, node.length)];
+            if (node == null || node.length > length
+                    || commonPrefixLength(high, low, node.high, node.low, node.length) < node.length)
+                return null;
+        }
+        return node.length == length ? node : null;
+    }
+
+    private static int bit(long high, long low, int position) {
+        return (int) (position < 64 ? (high >>> (63 - position)) & 1 : (low >>> (127 - position)) & 1);
+    }
+
+    private static long maskHigh(int length) {
+        if (length <= 0)
+            return 0;
+        return length >= 64 ? -1L : -1L << (64 - length);
+    }
+
+    private static long maskLow(int length) {
+        if (length <= 64)
+            return 0;
+        return length >= 128 ? -1L : -1L << (128 - length);
+    }
+
+    /**
+     * Counts the leading bits two prefixes have in common
+     * @param max the maximum number of bits to compare
+     * @return the number of common leading bits, up to <code>max</code>
+     */
+    private static int commonPrefixLength(long highA, long lowA, long highB, long lowB, int max) {
+        long high = highA ^ highB;
+        int common = high != 0 ? Long.numberOfLeadingZeros(high) : 64 + Long.numberOfLeadingZeros(lowA ^ lowB);
+        return Math.min(common, max);
+    }
+
+    /**
+     * A node of the trie, it represents a prefix
+     * @param <V> The type of the values stored in the trie
+     */
+    private static class Node<V> {
+        private final long high;
+        private final long low;
+        private final int length;
+        private Node<V> parent;
+        @SuppressWarnings("unchecked")
+        private final Node<V>[] children = new Node[2];
+        private final List<V> values = new ArrayList<>(1);
+
+        private Node(long high, long low, int length, Node<V> parent) {
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.parent = parent;
+        }
+    }
+}
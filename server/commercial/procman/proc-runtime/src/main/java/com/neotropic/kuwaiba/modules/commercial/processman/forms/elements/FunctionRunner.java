@@ -108,25 +108,25 @@ public class FunctionRunner implements Runner {
     @Override
     public Object run(List parameters) {
         
-        Binding binding = new Binding();
+        HashMap<String, Object> variables = new HashMap<>();
         
-        binding.setVariable("scriptQueryExecutor", scriptQueryExecutor);
-        binding.setVariable("elementScript", elementScript);
+        variables.put("scriptQueryExecutor", scriptQueryExecutor);
+        variables.put("elementScript", elementScript);
         if (funcRunnerParams != null) {
             funcRunnerParams.forEach((key, value) -> {
                 if (key != null && value != null)
-                    binding.setVariable(key, value);
+                    variables.put(key, value);
             });
         }
         if (parameterNames != null && parameters != null && parameterNames.size() == parameters.size()) {
             
             for (int i = 0; i < parameters.size(); i++)
-                binding.setVariable(parameterNames.get(i), parameters.get(i));
+                variables.put(parameterNames.get(i), parameters.get(i));
         }
-        GroovyShell shell = new GroovyShell(FunctionRunner.class.getClassLoader(), binding);
-        
         try {
-            return shell.evaluate(script);
+            if (scriptQueryExecutor != null)
+                return scriptQueryExecutor.runScript(script, FunctionRunner.class.getClassLoader(), variables);
+            return new GroovyShell(FunctionRunner.class.getClassLoader(), new Binding(variables)).evaluate(script);
         } catch(Exception ex) {
             if (consumerFuncRunnerEx != null)
                 consumerFuncRunnerEx.accept(new FunctionRunnerException(functionName, ex));
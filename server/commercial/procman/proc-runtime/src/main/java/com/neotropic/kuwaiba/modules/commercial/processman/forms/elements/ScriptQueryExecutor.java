@@ -14,6 +14,7 @@
  */
 package com.neotropic.kuwaiba.modules.commercial.processman.forms.elements;
 
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -30,4 +31,13 @@ public interface ScriptQueryExecutor {
     void setDebug(boolean debug);
     
     void openMessage(String message);
+    /**
+     * Runs the script of a function or validator of the form. The script is compiled 
+     * only once and reused while its source doesn't change
+     * @param script The source of the script
+     * @param parentClassLoader The class loader used to find the classes referenced by the script
+     * @param variables The variables the script will have access to
+     * @return The value returned by the script
+     */
+    Object runScript(String script, ClassLoader parentClassLoader, HashMap<String, Object> variables);
 }
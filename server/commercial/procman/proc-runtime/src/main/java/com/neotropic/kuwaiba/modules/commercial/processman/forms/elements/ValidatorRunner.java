@@ -18,6 +18,7 @@ import groovy.lang.Binding;
 import groovy.lang.GroovyShell;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -81,22 +82,17 @@ public class ValidatorRunner implements Runner {
             
     @Override
     public Object run(List parameters) {
-        GroovyShell shell = null;
-        
-        Binding binding = new Binding();        
-        
-        binding.setVariable("scriptQueryExecutor", scriptQueryExecutor);
+        HashMap<String, Object> variables = new HashMap<>();
                 
         if (parameterNames != null && parameters != null && parameterNames.size() == parameters.size()) {
+            variables.put("scriptQueryExecutor", scriptQueryExecutor);
             
             for (int i = 0; i < parameters.size(); i++)
-                binding.setVariable(parameterNames.get(i), parameters.get(i));
-            
-            shell = new GroovyShell(FunctionRunner.class.getClassLoader(), binding);
-        } else
-            shell = new GroovyShell(FunctionRunner.class.getClassLoader());
-                
-        return shell.evaluate(script);
+                variables.put(parameterNames.get(i), parameters.get(i));
+        }
+        if (scriptQueryExecutor != null)
+            return scriptQueryExecutor.runScript(script, FunctionRunner.class.getClassLoader(), variables);
+        return new GroovyShell(FunctionRunner.class.getClassLoader(), new Binding(variables)).evaluate(script);
     }
 
     @Override
@@ -19,6 +19,7 @@ import com.neotropic.kuwaiba.modules.commercial.processman.forms.elements.Consta
 import com.neotropic.kuwaiba.modules.commercial.processman.forms.elements.FileInformation;
 import com.neotropic.kuwaiba.modules.commercial.processman.forms.elements.ScriptQueryExecutor;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
@@ -303,4 +304,9 @@ public class ScriptQueryExecutorImpl implements ScriptQueryExecutor {
             ).open();
         }
     }
+    
+    @Override
+    public Object runScript(String script, ClassLoader parentClassLoader, HashMap<String, Object> variables) {
+        return aem.runScript(script, parentClassLoader, variables);
+    }
 }
@@ -15,7 +15,10 @@
  */
 package org.neotropic.kuwaiba.modules.commercial.sync;
 
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
+import org.neotropic.kuwaiba.core.services.threading.ManagedJob;
+import org.neotropic.kuwaiba.core.services.threading.ThreadingService;
 import org.neotropic.kuwaiba.modules.commercial.sync.components.AsyncAnalizeDataJob;
 import org.neotropic.kuwaiba.modules.commercial.sync.components.AsyncFetchDataJob;
 import org.neotropic.kuwaiba.modules.commercial.sync.components.EAsyncStep;
@@ -28,16 +31,24 @@ import org.neotropic.kuwaiba.modules.commercial.sync.model.SyncResult;
 import org.neotropic.kuwaiba.modules.commercial.sync.notification.Broadcaster;
 import org.neotropic.kuwaiba.modules.commercial.sync.notification.ProgressBroadcaster;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
 
 /**
  * The service creates asynchronous jobs to obtain and deliver information about a synchronization process.
@@ -65,18 +76,79 @@ public class JobService {
      */
     @Autowired
     private LoggingService log;
-        
     /**
-     * Async thread to fetch data using a data source configuration
+     * Reference to the Threading Service, where the synchronization jobs are registered so they can be tracked and killed
+     */
+    @Autowired
+    private ThreadingService threadingService;
+    /**
+     * Reference to the metrics service
+     */
+    @Autowired
+    private MetricsService metrics;
+    /**
+     * Number of threads used to fetch and analyze data
+     */
+    @Value("${sync.executor.max-threads:16}")
+    private int maxThreads;
+    /**
+     * Max number of tasks waiting for a thread. When the queue is full, the job submitting tasks waits
+     */
+    @Value("${sync.executor.queue-size:100}")
+    private int queueSize;
+    /**
+     * Max number of data sources of the same synchronization job fetched at the same time
+     */
+    @Value("${sync.executor.max-jobs-per-group:32}")
+    private int maxJobsPerGroup;
+    /**
+     * Max number of fetch tasks running against the same device at the same time
+     */
+    @Value("${sync.executor.max-jobs-per-device:1}")
+    private int maxJobsPerDevice;
+    /**
+     * The pool the fetch and analysis tasks are run in
+     */
+    private SyncExecutor syncExecutor;
+
+    @PostConstruct
+    public void init() {
+        syncExecutor = new SyncExecutor(maxThreads, queueSize, maxJobsPerDevice);
+        metrics.gauge("kuwaiba_sync_queue_depth", "Synchronization tasks waiting to be run", //NOI18N
+                () -> syncExecutor.getStatistics().getQueueDepth());
+        metrics.gauge("kuwaiba_sync_tasks_in_flight", "Synchronization tasks running", //NOI18N
+                () -> syncExecutor.getStatistics().getInFlightJobs());
+        metrics.gauge("kuwaiba_sync_fetch_tasks", "Fetch tasks completed", //NOI18N
+                () -> syncExecutor.getStatistics().getFetchCount());
+        metrics.gauge("kuwaiba_sync_analysis_tasks", "Analysis tasks completed", //NOI18N
+                () -> syncExecutor.getStatistics().getAnalyzeCount());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        syncExecutor.shutdown();
+    }
+
+    /**
+     * Takes a snapshot of the queue depth, the tasks in progress and the fetch/analysis latencies of the synchronization executor
+     * @return The executor statistics
+     */
+    public SyncExecutorStatistics getStatistics() {
+        return syncExecutor.getStatistics();
+    }
+
+    /**
+     * Async thread to fetch data using a data source configuration. If the device is being fetched by
+     * another job or the executor queue is full, this method waits until the task can be queued
      * @param syncProvider synchronization provider
      * @param dataSourceConfiguration data source configuration
      * @return completale future thread
+     * @throws InterruptedException If the thread was interrupted while waiting
      */
-    @Async
     public CompletableFuture<PollResult> createAsyncFetchJob(AbstractSyncProvider syncProvider
-            , SyncDataSourceConfiguration dataSourceConfiguration) {
+            , SyncDataSourceConfiguration dataSourceConfiguration) throws InterruptedException {
         AsyncFetchDataJob newJob = new AsyncFetchDataJob(syncProvider, dataSourceConfiguration, log);
-        return CompletableFuture.supplyAsync(() -> {
+        return syncExecutor.submitFetch(getDeviceKey(dataSourceConfiguration), () -> {
             newJob.run();
             return newJob.getValue();
         });
@@ -89,90 +161,76 @@ public class JobService {
      * @param totalElements total jobs
      * @param currentElement current job
      * @return completale future thread
+     * @throws InterruptedException If the thread was interrupted while waiting for room in the executor queue
      */
-    @Async
     public CompletableFuture<List<SyncResult>> createAsyncActionsJob(PollResult pollResult
             , AbstractSyncProvider syncProvider
             , int totalElements
-            , int currentElement) {
+            , int currentElement) throws InterruptedException {
         AsyncAnalizeDataJob newJob = new AsyncAnalizeDataJob(pollResult, syncProvider, log);
         newJob.setProgressBroadcaster(progressBroadcaster);
         newJob.setTotalJobs(totalElements);
         newJob.setJobNumber(currentElement);
-        return CompletableFuture.supplyAsync(() -> {
+        return syncExecutor.submitAnalysis(() -> {
             newJob.run();
             return newJob.getValue();
         });
     }
 
     /**
-     * Create a thread to execute a result capture to be sent to the user in a dialog.
+     * Create a thread to execute a result capture to be sent to the user in a dialog. The synchronization
+     * is registered in the threading service, so it can be killed from there. This method returns once
+     * the data has been fetched from all the data sources, the analysis continues in the background
      * @param syncProvider synchronization provider
      * @param datasources data soruce sonfiguration
      * @return completale future thread
+     * @throws InterruptedException If the job could not be started, if it was killed while fetching or if
+     * any of the data sources could not be fetched
      */
     public CompletableFuture<List<SyncResult>> createJob(AbstractSyncProvider syncProvider
             , List<SyncDataSourceConfiguration> datasources) throws InterruptedException {
-        // create contents of all users asynchronously
-        List<CompletableFuture<PollResult>> firstStepFetchData = datasources.stream()
-                .map(item -> createAsyncFetchJob(syncProvider, item).exceptionally(ex -> {
-                    log.writeLogMessage(LoggerType.ERROR, JobService.class, 
-                            String.format("Exception in createAsyncFetchJob: %s", ex.getMessage()));
-                    return new PollResult(); // or handle it according to your use case
-                })).collect(Collectors.toList());
+        SyncJob syncJob = new SyncJob(syncProvider, datasources);
+        CompletableFuture<List<SyncResult>> syncFuture;
+        try {
+            syncFuture = threadingService.submitJob(syncJob);
+        } catch (IllegalArgumentException ex) {
+            throw new InterruptedException(ex.getMessage());
+        }
+        String jobId = syncJob.getDescriptor().getId();
+        long start = System.nanoTime();
+        syncFuture.whenComplete((syncResults, ex) -> {
+            metrics.timer("kuwaiba_sync_job_seconds", "Time spent running synchronization jobs", //NOI18N
+                    "outcome", ex == null ? "success" : "error") //NOI18N
+                    .record(System.nanoTime() - start, String.format("Synchronization job %s", jobId));
+            if (ex != null)
+                log.writeLogMessage(LoggerType.ERROR, JobService.class, "Exception in listCompletableFuture: " + ex.getMessage());
+            try {
+                threadingService.removeJob(jobId);
+            } catch (IllegalArgumentException iae) {
+                // The job table was cleaned up already
+            }
+            log.writeLogMessage(LoggerType.INFO, JobService.class, 
+                    "Synchronization job %s finished. Executor: %s", jobId, syncExecutor.getStatistics());
+        });
 
-        // Create a combined Future using allOf()
-        CompletableFuture<Void> allFutures = CompletableFuture.allOf(firstStepFetchData.toArray(new CompletableFuture[0]));
+        List<PollResult> firstStepFetchData;
+        try {
+            firstStepFetchData = syncJob.fetchStep.join();
+        } catch (CancellationException | CompletionException ex) {
+            throw new InterruptedException(ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage());
+        }
 
         // Validate if there are exceptions in the first step before continuing
         if (hasExceptions(firstStepFetchData)) {
             List<Exception> allExceptions = new ArrayList<>();
-            firstStepFetchData.forEach(future -> {
-                try {
-                    PollResult pollResult = future.join();
-                    allExceptions.addAll(pollResult.getExceptions().values().stream()
-                            .flatMap(List::stream)
-                            .collect(Collectors.toList()));
-                } catch (Exception e) {
-                    log.writeLogMessage(LoggerType.ERROR, JobService.class, e.getMessage(), e);
-                }
-            });
+            firstStepFetchData.forEach(pollResult -> allExceptions.addAll(pollResult.getExceptions().values().stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList())));
             throw new InterruptedException(allExceptions.stream()
                     .map(Throwable::getMessage)
                     .collect(Collectors.joining(",\n ")));
         }
-
-        // When all futures complete, use whenComplete for logging and handling exceptions
-        CompletableFuture<PollResult> secondStepData = allFutures.thenApplyAsync(v -> {
-            PollResult pollResult = new PollResult();
-            firstStepFetchData.forEach(future -> pollResult.merge(future.join()));
-            log.writeLogMessage(LoggerType.INFO, JobService.class, 
-                    String.format("PollResult collected %s",pollResult.getResult().size()));
-            return pollResult;
-        }).whenComplete((result, ex) -> {
-            if (ex != null)
-                log.writeLogMessage(LoggerType.ERROR, JobService.class, "Exception in secondStepData: " + ex.getMessage());
-        });
-
-        // update progess for fetching tasks
-        AtomicInteger completedTasks = new AtomicInteger(0); // completed tasks counter
-        firstStepFetchData.forEach((future) -> {
-            int taskIndex = firstStepFetchData.indexOf(future);
-            future.thenAccept(result -> fecthUpdateProgress(taskIndex, completedTasks, firstStepFetchData.size()));
-        });
-
-        // Apply the second step once the first step has been completed.
-        try {
-            AtomicInteger secondJobCounter = new AtomicInteger(1);
-            return secondStepData.thenComposeAsync(
-                            item -> createAsyncActionsJob(item, syncProvider, 1, secondJobCounter.getAndIncrement()))
-                    .whenComplete((syncResults, ex) -> {
-                        if (ex != null)
-                            log.writeLogMessage(LoggerType.ERROR, JobService.class, "Exception in listCompletableFuture: " + ex.getMessage());
-                    });
-        } catch (Exception e) {
-            throw new InterruptedException(e.getMessage());
-        }
+        return syncFuture;
     }
 
     /**
@@ -184,7 +242,7 @@ public class JobService {
     private void fecthUpdateProgress(int taskIndex, AtomicInteger completedTasks, int taskSize) {
         completedTasks.incrementAndGet(); // incrementar el contador de tareas completadas
         float progress = (float)  completedTasks.get()/taskSize;
-        log.writeLogMessage(LoggerType.INFO, JobService.class, String.format("Task %d completed. Progress: %s\n", taskIndex+1,  progress));
+        log.writeLogMessage(LoggerType.INFO, JobService.class, "Task %d completed. Progress: %s\n", taskIndex+1,  progress);
         JobProgressMessage temp = new JobProgressMessage("job_"+taskIndex);
         temp.setProgress(progress);
         if(completedTasks.get() < taskSize)
@@ -202,10 +260,152 @@ public class JobService {
     /**
      * Checks if any of the asynchronous tasks in the first step has exceptions.
      *
-     * @param firstStepFetchData A list of CompletableFuture objects representing asynchronous tasks.
+     * @param firstStepFetchData The results of the tasks of the first step.
      * @return {@code true} if at least one task has exceptions, {@code false} otherwise.
      */
-    private boolean hasExceptions(List<CompletableFuture<PollResult>> firstStepFetchData) {
-        return firstStepFetchData.stream().anyMatch(future -> future.join().getExceptions().values().stream().noneMatch(List::isEmpty));
+    private boolean hasExceptions(List<PollResult> firstStepFetchData) {
+        return firstStepFetchData.stream().anyMatch(pollResult -> pollResult.getExceptions().values().stream().noneMatch(List::isEmpty));
+    }
+
+    /**
+     * Builds the key used to limit the number of tasks running against the same device
+     * @param dataSourceConfiguration The data source configuration
+     * @return The class and id of the device the data source belongs to, or the data source id if it's not associated to any
+     */
+    private static String getDeviceKey(SyncDataSourceConfiguration dataSourceConfiguration) {
+        BusinessObjectLight device = dataSourceConfiguration.getBusinessObjectLight();
+        return device != null ? device.getClassName() + "-" + device.getId() //NOI18N
+                : "datasource-" + dataSourceConfiguration.getId(); //NOI18N
+    }
+
+    /**
+     * A synchronization run, managed by the threading service. The data sources are fetched in the
+     * synchronization executor, at most {@link #maxJobsPerGroup} at a time, and then the merged
+     * result is analyzed. When the job is killed, the tasks queued or in progress are cancelled.
+     */
+    private class SyncJob extends ManagedJob<List<SyncResult>> {
+        private final AbstractSyncProvider syncProvider;
+        private final List<SyncDataSourceConfiguration> datasources;
+        /**
+         * Completed when all the data sources have been fetched, with the result of each of them
+         */
+        private final CompletableFuture<List<PollResult>> fetchStep = new CompletableFuture<>();
+        /**
+         * The tasks submitted to the executor, cancelled if the job is killed
+         */
+        private final List<CompletableFuture<?>> tasks = new CopyOnWriteArrayList<>();
+        /**
+         * The thread running the job, interrupted if it's killed while waiting
+         */
+        private Thread runner;
+        private boolean killed;
+
+        private SyncJob(AbstractSyncProvider syncProvider, List<SyncDataSourceConfiguration> datasources) {
+            super(null);
+            this.syncProvider = syncProvider;
+            this.datasources = datasources;
+            this.descriptor.setDescription(String.format("Synchronization of %s data sources using %s", //NOI18N
+                    datasources.size(), syncProvider.getDisplayName()));
+        }
+
+        @Override
+        public List<SyncResult> get() {
+            synchronized (this) {
+                if (killed)
+                    throw new CancellationException();
+                runner = Thread.currentThread();
+            }
+            try {
+                List<PollResult> fetchedData = fetch();
+                fetchStep.complete(fetchedData);
+                if (hasExceptions(fetchedData))
+                    throw new IllegalStateException("The data could not be fetched from all the data sources"); //NOI18N
+
+                PollResult pollResult = new PollResult();
+                fetchedData.forEach(pollResult::merge);
+                log.writeLogMessage(LoggerType.INFO, JobService.class, 
+                        "PollResult collected %s", pollResult.getResult().size());
+                return track(createAsyncActionsJob(pollResult, syncProvider, 1, 1)).join();
+            } catch (InterruptedException ex) {
+                CancellationException cancellation = new CancellationException();
+                fetchStep.completeExceptionally(cancellation);
+                throw cancellation;
+            } catch (RuntimeException ex) {
+                fetchStep.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    Thread.interrupted(); // The thread goes back to the pool, it must not stay interrupted
+                }
+            }
+        }
+
+        @Override
+        public synchronized void kill() {
+            killed = true;
+            tasks.forEach(task -> task.cancel(true));
+            if (runner != null)
+                runner.interrupt();
+        }
+
+        /**
+         * Submits a fetch task per data source and waits for all of them to finish
+         * @return The result of each data source
+         * @throws InterruptedException If the job was killed
+         */
+        private List<PollResult> fetch() throws InterruptedException {
+            Semaphore groupPermits = new Semaphore(maxJobsPerGroup);
+            List<CompletableFuture<PollResult>> firstStepFetchData = new ArrayList<>();
+            AtomicInteger completedTasks = new AtomicInteger(0); // completed tasks counter
+            for (int i = 0; i < datasources.size(); i++) {
+                groupPermits.acquire();
+                CompletableFuture<PollResult> fetchTask;
+                try {
+                    fetchTask = track(createAsyncFetchJob(syncProvider, datasources.get(i)));
+                } catch (InterruptedException | RuntimeException ex) {
+                    groupPermits.release();
+                    throw ex;
+                }
+                int taskIndex = i;
+                fetchTask.whenComplete((result, ex) -> groupPermits.release());
+                firstStepFetchData.add(fetchTask.handle((result, ex) -> {
+                    if (ex != null) {
+                        log.writeLogMessage(LoggerType.ERROR, JobService.class, 
+                                String.format("Exception in createAsyncFetchJob: %s", ex.getMessage()));
+                        result = new PollResult(); // or handle it according to your use case
+                    }
+                    // update progess for fetching tasks
+                    fecthUpdateProgress(taskIndex, completedTasks, datasources.size());
+                    descriptor.setProgress(100f * completedTasks.get() / datasources.size());
+                    return result;
+                }));
+            }
+
+            List<PollResult> fetchedData = new ArrayList<>();
+            for (CompletableFuture<PollResult> fetchTask : firstStepFetchData) {
+                try {
+                    fetchedData.add(fetchTask.get());
+                } catch (ExecutionException ex) {
+                    fetchedData.add(new PollResult());
+                }
+            }
+            return fetchedData;
+        }
+
+        /**
+         * Keeps track of a task so it can be cancelled if the job is killed
+         */
+        private <T> CompletableFuture<T> track(CompletableFuture<T> task) throws InterruptedException {
+            synchronized (this) {
+                if (killed) {
+                    task.cancel(true);
+                    throw new InterruptedException();
+                }
+                tasks.add(task);
+            }
+            task.whenComplete((result, ex) -> tasks.remove(task));
+            return task;
+        }
     }
 }
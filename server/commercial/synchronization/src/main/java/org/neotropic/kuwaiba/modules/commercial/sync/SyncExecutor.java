@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010-2024. Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.neotropic.kuwaiba.modules.commercial.sync;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The pool the synchronization tasks (fetching data from the devices and analyzing it) are run in.
+ * Synchronization tasks block on network I/O for long periods, so they are kept apart from the
+ * common fork-join pool and from the default task executor. The pool has a fixed number of threads
+ * and a bounded queue. When the queue is full, the thread submitting a task waits until there's room
+ * for it (backpressure) instead of the task being rejected or run by the caller. The number of tasks
+ * running against the same device at the same time is bounded too.
+ */
+public class SyncExecutor {
+    private static final String SHUT_DOWN_MESSAGE = "The synchronization executor has been shut down"; //NOI18N
+    /**
+     * How often, in milliseconds, a thread waiting for room in the queue checks if the executor has been shut down
+     */
+    private static final long SHUT_DOWN_CHECK_INTERVAL = 500;
+    /**
+     * The worker threads
+     */
+    private final ThreadPoolExecutor workers;
+    /**
+     * Max number of fetch tasks running against the same device at the same time
+     */
+    private final int maxJobsPerDevice;
+    /**
+     * Permits of each device. The key is the device key provided when a fetch task is submitted. The entry
+     * of a device is removed once no task holds or waits for its permits
+     */
+    private final ConcurrentHashMap<String, DevicePermits> devicePermits = new ConcurrentHashMap<>();
+    /**
+     * Number of tasks being executed
+     */
+    private final AtomicInteger inFlightJobs = new AtomicInteger();
+    private final Latency fetchLatency = new Latency();
+    private final Latency analyzeLatency = new Latency();
+
+    /**
+     * Creates the executor
+     * @param maxThreads Number of worker threads
+     * @param queueSize Max number of tasks waiting for a worker
+     * @param maxJobsPerDevice Max number of fetch tasks running against the same device at the same time
+     */
+    public SyncExecutor(int maxThreads, int queueSize, int maxJobsPerDevice) {
+        this.maxJobsPerDevice = maxJobsPerDevice;
+        this.workers = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new SyncThreadFactory(), SyncExecutor::waitForRoom);
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a task that fetches data from a device. If the device has reached its limit of
+     * running tasks or the queue is full, this method blocks until the task can be queued
+     * @param <T> The type of the result
+     * @param deviceKey The key of the device the task connects to
+     * @param task The task
+     * @return The future of the task. Cancelling it interrupts the task if it's running. It completes exceptionally 
+     * with a {@link RejectedExecutionException} if the executor is shut down before the task runs
+     * @throws InterruptedException If the calling thread was interrupted while waiting
+     */
+    public <T> CompletableFuture<T> submitFetch(String deviceKey, Supplier<T> task) throws InterruptedException {
+        DevicePermits permits = devicePermits.compute(deviceKey, (aDeviceKey, somePermits) -> {
+            DevicePermits thePermits = somePermits == null ? new DevicePermits(maxJobsPerDevice) : somePermits;
+            thePermits.users++;
+            return thePermits;
+        });
+        try {
+            permits.semaphore.acquire();
+        } catch (InterruptedException ex) {
+            releaseDevice(deviceKey, permits, false);
+            throw ex;
+        }
+        return submit(task, fetchLatency, () -> releaseDevice(deviceKey, permits, true));
+    }
+
+    /**
+     * Submits a task that analyzes the data fetched previously. If the queue is full, this method blocks until there's room for the task
+     * @param <T> The type of the result
+     * @param task The task
+     * @return The future of the task. Cancelling it interrupts the task if it's running. It completes exceptionally 
+     * with a {@link RejectedExecutionException} if the executor is shut down before the task runs
+     * @throws InterruptedException If the calling thread was interrupted while waiting
+     */
+    public <T> CompletableFuture<T> submitAnalysis(Supplier<T> task) throws InterruptedException {
+        return submit(task, analyzeLatency, () -> { });
+    }
+
+    /**
+     * Takes a snapshot of the queue, the tasks in progress and the latency counters
+     * @return The statistics
+     */
+    public SyncExecutorStatistics getStatistics() {
+        return new SyncExecutorStatistics(workers.getQueue().size(), inFlightJobs.get(),
+                fetchLatency.count.sum(), fetchLatency.total.sum(), fetchLatency.max.get(),
+                analyzeLatency.count.sum(), analyzeLatency.total.sum(), analyzeLatency.max.get());
+    }
+
+    /**
+     * Stops the workers. The tasks in progress are interrupted and the queued ones discarded. The futures 
+     * of the discarded tasks complete exceptionally with a {@link RejectedExecutionException}
+     */
+    public void shutdown() {
+        for (Runnable aTask : workers.shutdownNow())
+            ((SyncTask<?>) aTask).discard(new RejectedExecutionException(SHUT_DOWN_MESSAGE));
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task, Latency latency, Runnable onFinish) throws InterruptedException {
+        SyncTask<T> syncTask = new SyncTask<>(task, latency, onFinish);
+        try {
+            workers.execute(syncTask);
+        } catch (RejectedExecutionException ex) {
+            syncTask.discard(ex);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            return syncTask.result;
+        }
+        syncTask.result.whenComplete((value, ex) -> {
+            if (syncTask.result.isCancelled())
+                syncTask.interrupt();
+        });
+        return syncTask.result;
+    }
+
+    /**
+     * Releases a permit of a device taken by {@link #submitFetch(java.lang.String, java.util.function.Supplier)}, 
+     * and removes the entry of the device if no one else holds or waits for its permits
+     * @param deviceKey The key of the device
+     * @param permits The permits of the device
+     * @param acquired If the permit was actually acquired, or the thread was interrupted while waiting for it
+     */
+    private void releaseDevice(String deviceKey, DevicePermits permits, boolean acquired) {
+        if (acquired)
+            permits.semaphore.release();
+        devicePermits.computeIfPresent(deviceKey, (aDeviceKey, somePermits) -> 
+                somePermits == permits && --somePermits.users == 0 ? null : somePermits);
+    }
+
+    /**
+     * Rejection policy: waits until there's room in the queue, unless the executor has been shut down. 
+     * The executor may be shut down while waiting, and the queue drained by then, so the task 
+     * is taken back if that happened after it was queued
+     */
+    private static void waitForRoom(Runnable task, ThreadPoolExecutor executor) {
+        try {
+            while (!executor.isShutdown()) {
+                if (executor.getQueue().offer(task, SHUT_DOWN_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown() && executor.getQueue().remove(task))
+                        break;
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ex);
+        }
+        throw new RejectedExecutionException(SHUT_DOWN_MESSAGE);
+    }
+
+    /**
+     * A task and its future. The permit of the device, if any, is released by the task itself once it
+     * has run (or skipped, if it was cancelled while queued), so a task that ignores the interruption after 
+     * being cancelled keeps holding it until it actually stops
+     */
+    private class SyncTask<T> implements Runnable {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Supplier<T> task;
+        private final Latency latency;
+        private final Runnable onFinish;
+        /**
+         * The worker running the task, if it's running. Guarded by this
+         */
+        private Thread runner;
+
+        private SyncTask(Supplier<T> task, Latency latency, Runnable onFinish) {
+            this.task = task;
+            this.latency = latency;
+            this.onFinish = onFinish;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    if (result.isDone()) // Cancelled while it was queued
+                        return;
+                    runner = Thread.currentThread();
+                }
+                inFlightJobs.incrementAndGet();
+                long start = System.currentTimeMillis();
+                try {
+                    result.complete(task.get());
+                } catch (Throwable ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    latency.record(System.currentTimeMillis() - start);
+                    inFlightJobs.decrementAndGet();
+                    synchronized (this) {
+                        runner = null;
+                        Thread.interrupted(); // A late cancellation must not interrupt the next task of the worker
+                    }
+                }
+            } finally {
+                onFinish.run();
+            }
+        }
+
+        /**
+         * Interrupts the worker running the task, if it's still running
+         */
+        private synchronized void interrupt() {
+            if (runner != null)
+                runner.interrupt();
+        }
+
+        /**
+         * Called when the task is not going to run: completes its future exceptionally and releases its permit
+         */
+        private void discard(RejectedExecutionException reason) {
+            result.completeExceptionally(reason);
+            onFinish.run();
+        }
+    }
+
+    /**
+     * The permits of a device and the number of tasks holding or waiting for them. Updated only within the
+     * compute methods of the device permits map
+     */
+    private static class DevicePermits {
+        private final Semaphore semaphore;
+        private int users;
+
+        private DevicePermits(int maxJobs) {
+            this.semaphore = new Semaphore(maxJobs, true);
+        }
+    }
+
+    /**
+     * Number of tasks finished, total and max duration in milliseconds
+     */
+    private static class Latency {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long time) {
+            count.increment();
+            total.add(time);
+            max.accumulateAndGet(time, Math::max);
+        }
+    }
+
+    /**
+     * Creates named daemon threads, so the workers are easy to spot in a thread dump and don't prevent the JVM from stopping
+     */
+    private static class SyncThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread aThread = new Thread(task, "kuwaiba-sync-" + threadCount.incrementAndGet()); //NOI18N
+            aThread.setDaemon(true);
+            return aThread;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010-2024. Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.neotropic.kuwaiba.modules.commercial.sync;
+
+/**
+ * A snapshot of the state and the latency counters of the synchronization executor
+ */
+public class SyncExecutorStatistics {
+    /**
+     * Number of tasks waiting in the executor queue
+     */
+    private final int queueDepth;
+    /**
+     * Number of tasks being executed
+     */
+    private final int inFlightJobs;
+    /**
+     * Number of fetch tasks finished (successfully or not)
+     */
+    private final long fetchCount;
+    /**
+     * Total time spent in fetch tasks in milliseconds
+     */
+    private final long fetchTotalTime;
+    /**
+     * Longest fetch task in milliseconds
+     */
+    private final long fetchMaxTime;
+    /**
+     * Number of analysis tasks finished (successfully or not)
+     */
+    private final long analyzeCount;
+    /**
+     * Total time spent in analysis tasks in milliseconds
+     */
+    private final long analyzeTotalTime;
+    /**
+     * Longest analysis task in milliseconds
+     */
+    private final long analyzeMaxTime;
+
+    public SyncExecutorStatistics(int queueDepth, int inFlightJobs, long fetchCount, long fetchTotalTime, long fetchMaxTime,
+            long analyzeCount, long analyzeTotalTime, long analyzeMaxTime) {
+        this.queueDepth = queueDepth;
+        this.inFlightJobs = inFlightJobs;
+        this.fetchCount = fetchCount;
+        this.fetchTotalTime = fetchTotalTime;
+        this.fetchMaxTime = fetchMaxTime;
+        this.analyzeCount = analyzeCount;
+        this.analyzeTotalTime = analyzeTotalTime;
+        this.analyzeMaxTime = analyzeMaxTime;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getInFlightJobs() {
+        return inFlightJobs;
+    }
+
+    public long getFetchCount() {
+        return fetchCount;
+    }
+
+    public long getFetchMaxTime() {
+        return fetchMaxTime;
+    }
+
+    /**
+     * The average duration of the fetch tasks
+     * @return The average in milliseconds, 0 if no task has finished
+     */
+    public double getFetchAverageTime() {
+        return fetchCount == 0 ? 0 : (double) fetchTotalTime / fetchCount;
+    }
+
+    public long getAnalyzeCount() {
+        return analyzeCount;
+    }
+
+    public long getAnalyzeMaxTime() {
+        return analyzeMaxTime;
+    }
+
+    /**
+     * The average duration of the analysis tasks
+     * @return The average in milliseconds, 0 if no task has finished
+     */
+    public double getAnalyzeAverageTime() {
+        return analyzeCount == 0 ? 0 : (double) analyzeTotalTime / analyzeCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queued: %s, in flight: %s, fetch: %s (avg %.1f ms, max %s ms), analyze: %s (avg %.1f ms, max %s ms)", //NOI18N
+                queueDepth, inFlightJobs, fetchCount, getFetchAverageTime(), fetchMaxTime,
+                analyzeCount, getAnalyzeAverageTime(), analyzeMaxTime);
+    }
+}
@@ -89,8 +89,8 @@ public class AsyncAnalizeDataJob implements DetailedJob {
         temp.setTotalElements(totalJobs);
         temp.setElement(jobNumber);
         log.writeLogMessage(LoggerType.INFO, AsyncAnalizeDataJob.class, 
-                String.format("%s => job (%s / %s) progress: %s - %s - State: %s\n", jobName, jobNumber, totalJobs
-                , progress, temp.getStep(), state));
+                "%s => job (%s / %s) progress: %s - %s - State: %s\n", jobName, jobNumber, totalJobs
+                , progress, temp.getStep(), state);
         if (progressBroadcaster != null && value != null && !value.isEmpty()) {
             progressBroadcaster.broadcast(temp, value);
         } else if (progressBroadcaster != null) {
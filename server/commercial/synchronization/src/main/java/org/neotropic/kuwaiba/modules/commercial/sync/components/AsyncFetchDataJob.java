@@ -60,7 +60,7 @@ public class AsyncFetchDataJob implements DetailedJob {
     @Override
     public void run() {
         log.writeLogMessage(LoggerType.INFO, AsyncFetchDataJob.class, 
-                String.format("Run fetch Job %s - datasource %s", jobName, dataSourceConfiguration.getName()));
+                "Run fetch Job %s - datasource %s", jobName, dataSourceConfiguration.getName());
         state = EJobState.IN_PROGRESS;
         value = syncProvider.fetchData(dataSourceConfiguration);
         state = EJobState.FINISH;
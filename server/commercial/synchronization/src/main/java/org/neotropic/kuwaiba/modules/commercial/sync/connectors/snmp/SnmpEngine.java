@@ -0,0 +1,274 @@
+/*
+ * Copyright 2010-2024. Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp;
+
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.UserTarget;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityModels;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.TableEvent;
+import org.snmp4j.util.TableListener;
+import org.snmp4j.util.TableUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The SNMP client shared by all the SNMP synchronization providers. A single UDP transport
+ * is opened the first time the engine is used and every request is sent through it, so
+ * polling thousands of devices does not require a socket per device or per table. Table walks
+ * are asynchronous (GETBULK), and the number of walks in progress at the same time is bounded,
+ * so a large synchronization group does not flood the network or the agents.
+ * The per-device parameters are provided as {@link SnmpSession}s. Since the transport, and so
+ * the USM, are shared, the SNMP version 3 users are registered along with the authoritative engine ID
+ * of the agent they're used with, so sessions with the same security name and different credentials
+ * don't overwrite each other.
+ */
+public class SnmpEngine {
+    /**
+     * Default max number of rows requested per GETBULK PDU
+     */
+    public static final int DEFAULT_MAX_REPETITIONS = 10;
+    /**
+     * Default max number of table walks in progress at the same time
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 64;
+    /**
+     * Singleton instance
+     */
+    private static SnmpEngine instance;
+    /**
+     * SNMP client, created the first time a request is sent
+     */
+    private Snmp snmp;
+    /**
+     * Permits for the walks in progress
+     */
+    private final Semaphore inFlightRequests;
+    /**
+     * The size of the in-flight window
+     */
+    private final int maxInFlightRequests;
+    /**
+     * The authoritative engine IDs of the SNMP version 3 agents, by address. They're discovered the first
+     * time an agent is polled, and discovered again if a walk fails
+     */
+    private final Map<String, OctetString> engineIds = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an engine. The shared instance should be used instead (see {@link #getInstance()}),
+     * unless a separate transport is really needed (e.g. to test against a local agent stub)
+     * @param maxInFlightRequests Max number of table walks in progress at the same time.
+     * Callers requesting more walks wait until one of the previous ones finishes
+     */
+    public SnmpEngine(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests, true);
+    }
+
+    public static synchronized SnmpEngine getInstance() {
+        return instance == null ? instance = new SnmpEngine(DEFAULT_MAX_IN_FLIGHT_REQUESTS) : instance;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    /**
+     * Gets the number of table walks in progress
+     * @return The number of walks in progress
+     */
+    public int getInFlightRequests() {
+        return maxInFlightRequests - inFlightRequests.availablePermits();
+    }
+
+    /**
+     * Walks a table using the default max-repetitions
+     * (see {@link #getTableAsStringAsync(org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpSession, org.snmp4j.smi.OID[], int)})
+     * @param session The agent session
+     * @param oids The columns to retrieve
+     * @return A future with the rows of the table
+     */
+    public CompletableFuture<List<List<String>>> getTableAsStringAsync(SnmpSession session, OID[] oids) {
+        return getTableAsStringAsync(session, oids, DEFAULT_MAX_REPETITIONS);
+    }
+
+    /**
+     * Walks a table asynchronously. If the in-flight window is full, this method blocks until a
+     * previous walk finishes, the walk itself is not waited for. The first time an SNMP version 3 agent
+     * is polled, it also blocks while its engine ID is discovered
+     * @param session The agent session
+     * @param oids The columns to retrieve
+     * @param maxRepetitions Max number of rows requested per GETBULK PDU
+     * @return A future with the rows of the table, one list per row where the columns follow the
+     * order of the oids and the last element is the row index. The future is never completed exceptionally,
+     * if the agent could not be reached, returned an error or the parameters were not valid, it's completed with null
+     */
+    public CompletableFuture<List<List<String>>> getTableAsStringAsync(SnmpSession session, OID[] oids, int maxRepetitions) {
+        CompletableFuture<List<List<String>>> result = new CompletableFuture<>();
+        if (oids == null || oids.length < 1) {
+            result.complete(null);
+            return result;
+        }
+
+        Target target = session.createTarget();
+        if (target == null) {
+            result.complete(null);
+            return result;
+        }
+
+        try {
+            inFlightRequests.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            result.complete(null);
+            return result;
+        }
+        result.whenComplete((rows, ex) -> inFlightRequests.release());
+
+        try {
+            Snmp client = getClient();
+            UsmUser usmUser = session.createUsmUser();
+            if (usmUser != null) {
+                String address = target.getAddress().toString();
+                OctetString engineId = engineIds.get(address);
+                if (engineId == null) {
+                    byte[] discoveredEngineId = client.discoverAuthoritativeEngineID(target.getAddress(), target.getTimeout());
+                    if (discoveredEngineId == null) { // The agent could not be reached
+                        result.complete(null);
+                        return result;
+                    }
+                    engineId = new OctetString(discoveredEngineId);
+                    engineIds.put(address, engineId);
+                }
+                // The user entry is keyed by engine ID and security name, so it only applies to this agent
+                client.getUSM().addUser(usmUser.getSecurityName(), engineId, usmUser);
+                ((UserTarget) target).setAuthoritativeEngineID(engineId.getValue());
+                // The engine ID may have changed (e.g. the agent was replaced), it's discovered again next time
+                result.thenAccept(rows -> {
+                    if (rows == null)
+                        engineIds.remove(address);
+                });
+            }
+
+            TableUtils tableUtils = new TableUtils(client, session.createBulkPDUFactory(maxRepetitions));
+            tableUtils.setMaxNumRowsPerPDU(maxRepetitions);
+            tableUtils.getTable(target, oids, new RowCollector(result), null, null, null);
+        } catch (IOException | RuntimeException ex) {
+            result.complete(null);
+        }
+        return result;
+    }
+
+    /**
+     * Walks a table and waits for the result
+     * @param session The agent session
+     * @param oids The columns to retrieve
+     * @return A list of rows where the columns follow the order of the oids and the last element is the row index,
+     * or null if the table could not be retrieved
+     */
+    public List<List<String>> getTableAsString(SnmpSession session, OID[] oids) {
+        return getTableAsStringAsync(session, oids).join();
+    }
+
+    /**
+     * Closes the transport. The next request opens a new one
+     */
+    public synchronized void close() {
+        engineIds.clear();
+        if (snmp != null) {
+            try {
+                snmp.close();
+            } catch (IOException ex) {
+                //Nothing to do, the transport is discarded anyway
+            }
+            snmp = null;
+        }
+    }
+
+    private synchronized Snmp getClient() throws IOException {
+        if (snmp == null) {
+            //The USM has to be registered before the message processing models are created
+            USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+            SecurityModels.getInstance().addSecurityModel(usm);
+
+            Snmp newSnmp = new Snmp(new DefaultUdpTransportMapping());
+            newSnmp.listen();
+            snmp = newSnmp;
+        }
+        return snmp;
+    }
+
+    /**
+     * Collects the rows of a table walk and completes a future when it finishes
+     */
+    private static class RowCollector implements TableListener {
+        private final CompletableFuture<List<List<String>>> result;
+        private final List<List<String>> rows = new ArrayList<>();
+        private volatile boolean finished;
+
+        private RowCollector(CompletableFuture<List<List<String>>> result) {
+            this.result = result;
+        }
+
+        @Override
+        public synchronized boolean next(TableEvent event) {
+            if (event.isError()) {
+                finish(null);
+                return false;
+            }
+
+            List<String> row = new ArrayList<>();
+            for (VariableBinding vb : event.getColumns())
+                row.add(vb != null ? vb.getVariable().toString() : ""); //NOI18N
+            row.add(event.getIndex().toString());
+            rows.add(row);
+            return true;
+        }
+
+        @Override
+        public synchronized void finished(TableEvent event) {
+            //The last event may also carry a row
+            if (!event.isError() && event.getColumns() != null && event.getIndex() != null)
+                next(event);
+            finish(event.isError() ? null : rows);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        private void finish(List<List<String>> value) {
+            finished = true;
+            result.complete(value);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2010-2024. Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp;
+
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+import org.snmp4j.UserTarget;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.AuthMD5;
+import org.snmp4j.security.PrivDES;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.util.DefaultPDUFactory;
+import org.snmp4j.util.PDUFactory;
+
+import java.util.Map;
+
+/**
+ * The connection parameters of a single SNMP agent. Sessions are immutable, so they can be
+ * created once per device and used from several threads at the same time. The requests are
+ * sent through the shared {@link SnmpEngine}
+ */
+public final class SnmpSession {
+    public static final String NONE = "None";
+    public static final String VERSION_2C = "2c";
+    public static final String VERSION_3 = "3";
+    public static final String AUTH_MD5 = "MD5";
+    public static final String AUTH_SHA = "SHA";
+    public static final String PRIV_DES = "DES";
+    public static final String PRIV_AES = "AES";
+    public static final String NO_AUTH_NO_PRIV = "noAuthNoPriv";
+    public static final String AUTH_NO_PRIV = "authNoPriv";
+    public static final String AUTH_PRIV = "authPriv";
+
+    public static final int DEFAULT_RETRIES = 2;
+    public static final int DEFAULT_TIMEOUT = 5000;
+    /**
+     * e.g. udp:127.0.0.1/161
+     */
+    private final String address;
+    /**
+     * SNMP version. Possible values: 2c, 3
+     */
+    private final String version;
+    /**
+     * SNMP Version 2c attribute community
+     */
+    private final String community;
+    /**
+     * SNMP version 3 attribute authentication protocol. Possible values: MD5, SHA, None
+     */
+    private final String authProtocol;
+    /**
+     * SNMP version 3 attribute authentication protocol pass phrase
+     */
+    private final String authPass;
+    /**
+     * SNMP version 3 attribute security level. Possible values: noAuthNoPriv, authNoPriv, authPriv
+     */
+    private final String securityLevel;
+    /**
+     * SNMP version 3 attribute context name
+     */
+    private final String contextName;
+    /**
+     * SNMP version 3 attribute security name
+     */
+    private final String securityName;
+    /**
+     * SNMP version 3 attribute privacy protocol. Possible values: DES, AES, None
+     */
+    private final String privacyProtocol;
+    /**
+     * SNMP version 3 attribute privacy protocol pass phrase
+     */
+    private final String privacyPass;
+    /**
+     * Number of times a request is retried after a time out
+     */
+    private final int retries;
+    /**
+     * Time in milliseconds to wait for a response
+     */
+    private final int timeout;
+
+    private SnmpSession(String address, String version, String community, String authProtocol, String authPass,
+            String securityLevel, String contextName, String securityName, String privacyProtocol, String privacyPass,
+            int retries, int timeout) {
+        this.address = address;
+        this.version = version;
+        this.community = community;
+        this.authProtocol = authProtocol;
+        this.authPass = authPass;
+        this.securityLevel = securityLevel;
+        this.contextName = contextName;
+        this.securityName = securityName;
+        this.privacyProtocol = privacyProtocol;
+        this.privacyPass = privacyPass;
+        this.retries = retries;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates a session for an SNMP version 2c agent
+     * @param address e.g. udp:127.0.0.1/161
+     * @param community The community, public if null
+     * @return The session
+     */
+    public static SnmpSession createVersion2cSession(String address, String community) {
+        return new SnmpSession(address, VERSION_2C, community == null ? "public" : community, //NOI18N
+                null, null, null, null, null, null, null, DEFAULT_RETRIES, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a session for an SNMP version 3 agent
+     * @param address e.g. udp:127.0.0.1/161
+     * @param authProtocol The authentication protocol. Possible values: MD5, SHA, None
+     * @param authPass The authentication protocol pass phrase
+     * @param securityLevel The security level. Possible values: noAuthNoPriv, authNoPriv, authPriv
+     * @param contextName The context name
+     * @param securityName The security name
+     * @param privacyProtocol The privacy protocol. Possible values: DES, AES, None
+     * @param privacyPass The privacy protocol pass phrase
+     * @return The session
+     */
+    public static SnmpSession createVersion3Session(String address, String authProtocol, String authPass, String securityLevel,
+            String contextName, String securityName, String privacyProtocol, String privacyPass) {
+        return new SnmpSession(address, VERSION_3, null, authProtocol, authPass, securityLevel,
+                contextName == null ? "" : contextName, securityName == null ? "" : securityName, //NOI18N
+                privacyProtocol, privacyPass, DEFAULT_RETRIES, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a session from the parameters of a sync data source configuration
+     * @param ipAddress The agent IP address
+     * @param port The agent port
+     * @param parameters The data source parameters (snmpVersion, community, authProtocol, etc)
+     * @return The session. If no version is set, 2c is assumed
+     */
+    public static SnmpSession fromParameters(String ipAddress, String port, Map<String, String> parameters) {
+        String address = String.format("udp:%s/%s", ipAddress, port); //NOI18N
+        if (VERSION_3.equals(parameters.get(Constants.PROPERTY_SNMP_VERSION)))
+            return createVersion3Session(address,
+                    parameters.get(Constants.PROPERTY_AUTH_PROTOCOL),
+                    parameters.get(Constants.PROPERTY_AUTH_PASS),
+                    parameters.get(Constants.PROPERTY_SECURITY_LEVEL),
+                    parameters.get(Constants.PROPERTY_CONTEXT_NAME),
+                    parameters.get(Constants.PROPERTY_SECURITY_NAME),
+                    parameters.get(Constants.PROPERTY_PRIVACY_PROTOCOL),
+                    parameters.get(Constants.PROPERTY_PRIVACY_PASS));
+        return createVersion2cSession(address, parameters.get(Constants.PROPERTY_COMMUNITY));
+    }
+
+    /**
+     * Creates a copy of this session with a different retry policy
+     * @param retries Number of times a request is retried after a time out
+     * @param timeout Time in milliseconds to wait for a response
+     * @return The new session
+     */
+    public SnmpSession withRetryPolicy(int retries, int timeout) {
+        return new SnmpSession(address, version, community, authProtocol, authPass, securityLevel,
+                contextName, securityName, privacyProtocol, privacyPass, retries, timeout);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getCommunity() {
+        return community;
+    }
+
+    public String getAuthProtocol() {
+        return authProtocol;
+    }
+
+    public String getSecurityLevel() {
+        return securityLevel;
+    }
+
+    public String getContextName() {
+        return contextName;
+    }
+
+    public String getSecurityName() {
+        return securityName;
+    }
+
+    public String getPrivacyProtocol() {
+        return privacyProtocol;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Builds the SNMP4J target of the agent
+     * @return The target, or null if the address or the version are not valid
+     */
+    Target createTarget() {
+        Address targetAddress = address == null ? null : GenericAddress.parse(address);
+        if (targetAddress == null)
+            return null;
+
+        switch (version) {
+            case VERSION_2C:
+                CommunityTarget communityTarget = new CommunityTarget();
+                communityTarget.setCommunity(new OctetString(community));
+                communityTarget.setVersion(SnmpConstants.version2c);
+                communityTarget.setAddress(targetAddress);
+                communityTarget.setRetries(retries);
+                communityTarget.setTimeout(timeout);
+                return communityTarget;
+            case VERSION_3:
+                UserTarget userTarget = new UserTarget();
+                userTarget.setAddress(targetAddress);
+                userTarget.setRetries(retries);
+                userTarget.setTimeout(timeout);
+                userTarget.setVersion(SnmpConstants.version3);
+                switch (securityLevel == null ? NO_AUTH_NO_PRIV : securityLevel) {
+                    case AUTH_NO_PRIV:
+                        userTarget.setSecurityLevel(SecurityLevel.AUTH_NOPRIV);
+                        break;
+                    case AUTH_PRIV:
+                        userTarget.setSecurityLevel(SecurityLevel.AUTH_PRIV);
+                        break;
+                    case NO_AUTH_NO_PRIV:
+                    default:
+                        userTarget.setSecurityLevel(SecurityLevel.NOAUTH_NOPRIV);
+                        break;
+                }
+                userTarget.setSecurityName(new OctetString(securityName));
+                return userTarget;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Builds the USM user of an SNMP version 3 session
+     * @return The user, or null if this is not a version 3 session
+     */
+    UsmUser createUsmUser() {
+        if (!VERSION_3.equals(version))
+            return null;
+
+        OID authProtocolOID = null;
+        if (AUTH_MD5.equals(authProtocol))
+            authProtocolOID = AuthMD5.ID;
+        //TODO: Manage SHA
+
+        OID privacyProtocolOID = null;
+        if (PRIV_DES.equals(privacyProtocol))
+            privacyProtocolOID = PrivDES.ID;
+        //TODO: Manage AES
+
+        return new UsmUser(new OctetString(securityName),
+                authProtocolOID,
+                authProtocolOID == null || authPass == null ? null : new OctetString(authPass),
+                privacyProtocolOID,
+                privacyProtocolOID == null || privacyPass == null ? null : new OctetString(privacyPass));
+    }
+
+    /**
+     * Builds the factory of the GETBULK requests used to walk tables
+     * @param maxRepetitions The max number of rows requested per PDU
+     * @return The PDU factory
+     */
+    PDUFactory createBulkPDUFactory(int maxRepetitions) {
+        DefaultPDUFactory pduFactory = VERSION_3.equals(version)
+                ? new DefaultPDUFactory(PDU.GETBULK, null, new OctetString(contextName))
+                : new DefaultPDUFactory(PDU.GETBULK);
+        pduFactory.setMaxRepetitions(maxRepetitions);
+        return pduFactory;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (SNMP v%s)", address, version); //NOI18N
+    }
+}
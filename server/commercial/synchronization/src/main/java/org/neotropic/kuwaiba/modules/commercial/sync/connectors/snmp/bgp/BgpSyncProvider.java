@@ -25,7 +25,8 @@ import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
-import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpManager;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpEngine;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpSession;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractDataEntity;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractSyncProvider;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.PollResult;
@@ -41,8 +42,10 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
 
 /**
@@ -103,6 +106,13 @@ public class BgpSyncProvider extends AbstractSyncProvider {
     @Override
     public PollResult mappedPoll(SynchronizationGroup syncGroup) {
         PollResult pollResult = new PollResult();
+        //The tables of all the agents are requested before processing any of them, so the devices are polled concurrently
+        SnmpEngine snmpEngine = SnmpEngine.getInstance();
+        SnmpBgpResourceDefinition bgpTable = new SnmpBgpResourceDefinition();
+        SnmpBgpLocalResourceDefinition bgpLocalTable = new SnmpBgpLocalResourceDefinition();
+        Map<SyncDataSourceConfiguration, BusinessObjectLight> mappedObjects = new LinkedHashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> bgpTables = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> bgpLocalTables = new HashMap<>();
         /**
          * uncomment, fix and replace
          * BusinessEntityManager bem = PersistenceService.getInstance().getBusinessEntityManager();
@@ -146,7 +156,7 @@ public class BgpSyncProvider extends AbstractSyncProvider {
 
             String snmpVersion = agent.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-            if (SnmpManager.VERSION_2C.equals(snmpVersion)) {
+            if (SnmpSession.VERSION_2C.equals(snmpVersion)) {
                 if (!agent.getParameters().containsKey(Constants.PROPERTY_COMMUNITY)) {
                     pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
@@ -155,7 +165,7 @@ public class BgpSyncProvider extends AbstractSyncProvider {
                 }
             }
 
-            if (SnmpManager.VERSION_3.equals(snmpVersion)) {
+            if (SnmpSession.VERSION_3.equals(snmpVersion)) {
                 if (!agent.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL)) {
                     pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -173,54 +183,44 @@ public class BgpSyncProvider extends AbstractSyncProvider {
 
             try {
                 BusinessObjectLight mappedObjLight = bem.getObjectLight(agent.getParameters().get("deviceClass"), agent.getParameters().get("deviceId"));
-                SnmpManager snmpManager = SnmpManager.getInstance();
-
-                snmpManager.setAddress(String.format("udp:%s/%s", agent.getParameters().get("ipAddress"), agent.getParameters().get("port"))); //NOI18N
-                snmpManager.setVersion(snmpVersion);
-
-                if (SnmpManager.VERSION_2C.equals(snmpVersion))
-                    snmpManager.setCommunity(agent.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-                if (SnmpManager.VERSION_3.equals(snmpVersion)) {
-                    snmpManager.setAuthProtocol(agent.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                    snmpManager.setAuthPass(agent.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                    snmpManager.setSecurityLevel(agent.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                    snmpManager.setContextName(agent.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                    snmpManager.setSecurityName(agent.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                    snmpManager.setPrivacyProtocol(agent.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                    snmpManager.setPrivacyPass(agent.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-                }
-                //ipAddrTable table
-                SnmpBgpResourceDefinition bgpTable = new SnmpBgpResourceDefinition();
-                List<List<String>> tableAsString = snmpManager.getTableAsString(bgpTable.values().toArray(new org.snmp4j.smi.OID[0]));
+                SnmpSession snmpSession = SnmpSession.fromParameters(agent.getParameters().get("ipAddress"), agent.getParameters().get("port"), agent.getParameters()); //NOI18N
 
-                if (tableAsString == null) {
-                    pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
-                            new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
-                                    , mappedObjLight.toString())));
-                    return pollResult;
-                }
+                mappedObjects.put(agent, mappedObjLight);
+                bgpTables.put(agent, snmpEngine.getTableAsStringAsync(snmpSession, bgpTable.values().toArray(new org.snmp4j.smi.OID[0])));
+                bgpLocalTables.put(agent, snmpEngine.getTableAsStringAsync(snmpSession, bgpLocalTable.values().toArray(new org.snmp4j.smi.OID[0])));
+            } catch (InventoryException ex) {
+                pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
+                        new InvalidArgumentException(String.format(ts.getTranslatedString("snmp_sync_object_not_found"), ex.getMessage())));
+            }
+        }
 
-                pollResult.getResult().put(agent, new ArrayList<>());
-                pollResult.getResult().get(agent).add(
-                        new TableData("bgpTable", SyncUtil.parseMibTable("instance", bgpTable, tableAsString))); //NOI18N
-                //
-                SnmpBgpLocalResourceDefinition bgpLocalTable = new SnmpBgpLocalResourceDefinition();
-                List<List<String>> bgpLocalTableAsString = snmpManager.getTableAsString(bgpLocalTable.values().toArray(new org.snmp4j.smi.OID[0]));
+        for (Map.Entry<SyncDataSourceConfiguration, BusinessObjectLight> mappedObject : mappedObjects.entrySet()) {
+            SyncDataSourceConfiguration agent = mappedObject.getKey();
+            //bgpTable table
+            List<List<String>> tableAsString = bgpTables.get(agent).join();
 
-                if (bgpLocalTableAsString == null) {
-                    pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
-                            new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
-                                    , mappedObjLight.toString())));
-                    return pollResult;
-                }
+            if (tableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
+                                , mappedObject.getValue().toString())));
+                continue;
+            }
 
-                pollResult.getResult().get(agent).add(
-                        new TableData("bgpLocalTable", SyncUtil.parseMibTable("instance", bgpLocalTable, bgpLocalTableAsString))); //NOI18N
-            } catch (InventoryException ex) {
+            pollResult.getResult().put(agent, new ArrayList<>());
+            pollResult.getResult().get(agent).add(
+                    new TableData("bgpTable", SyncUtil.parseMibTable("instance", bgpTable, tableAsString))); //NOI18N
+            //
+            List<List<String>> bgpLocalTableAsString = bgpLocalTables.get(agent).join();
+
+            if (bgpLocalTableAsString == null) {
                 pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
-                        new InvalidArgumentException(String.format(ts.getTranslatedString("snmp_sync_object_not_found"), ex.getMessage())));
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
+                                , mappedObject.getValue().toString())));
+                continue;
             }
+
+            pollResult.getResult().get(agent).add(
+                    new TableData("bgpLocalTable", SyncUtil.parseMibTable("instance", bgpLocalTable, bgpLocalTableAsString))); //NOI18N
         }
         return pollResult;
     }
@@ -260,7 +260,7 @@ public class BgpSyncProvider extends AbstractSyncProvider {
 
         String snmpVersion = dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-        if (SnmpManager.VERSION_2C.equals(snmpVersion)) {
+        if (SnmpSession.VERSION_2C.equals(snmpVersion)) {
             if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_COMMUNITY)) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
@@ -268,7 +268,7 @@ public class BgpSyncProvider extends AbstractSyncProvider {
             }
         }
 
-        if (SnmpManager.VERSION_3.equals(snmpVersion)) {
+        if (SnmpSession.VERSION_3.equals(snmpVersion)) {
             if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL)) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -285,27 +285,16 @@ public class BgpSyncProvider extends AbstractSyncProvider {
         try {
             BusinessObjectLight mappedObjLight = bem.getObjectLight(dataSourceConfiguration.getParameters().get("deviceClass")
                     , dataSourceConfiguration.getParameters().get("deviceId"));
-            SnmpManager snmpManager = SnmpManager.getInstance();
-
-            snmpManager.setAddress(String.format("udp:%s/%s", dataSourceConfiguration.getParameters().get("ipAddress")
-                    , dataSourceConfiguration.getParameters().get("port"))); //NOI18N
-            snmpManager.setVersion(snmpVersion);
-
-            if (SnmpManager.VERSION_2C.equals(snmpVersion))
-                snmpManager.setCommunity(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-            if (SnmpManager.VERSION_3.equals(snmpVersion)) {
-                snmpManager.setAuthProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                snmpManager.setAuthPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                snmpManager.setSecurityLevel(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                snmpManager.setContextName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                snmpManager.setSecurityName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                snmpManager.setPrivacyProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                snmpManager.setPrivacyPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-            }
-            //ipAddrTable table
+            SnmpEngine snmpEngine = SnmpEngine.getInstance();
+            SnmpSession snmpSession = SnmpSession.fromParameters(dataSourceConfiguration.getParameters().get("ipAddress")
+                    , dataSourceConfiguration.getParameters().get("port"), dataSourceConfiguration.getParameters()); //NOI18N
+            //Both tables are requested at once
             SnmpBgpResourceDefinition bgpTable = new SnmpBgpResourceDefinition();
-            List<List<String>> tableAsString = snmpManager.getTableAsString(bgpTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            CompletableFuture<List<List<String>>> bgpTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, bgpTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            SnmpBgpLocalResourceDefinition bgpLocalTable = new SnmpBgpLocalResourceDefinition();
+            CompletableFuture<List<List<String>>> bgpLocalTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, bgpLocalTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            //bgpTable table
+            List<List<String>> tableAsString = bgpTableRequest.join();
 
             if (tableAsString == null) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -318,8 +307,7 @@ public class BgpSyncProvider extends AbstractSyncProvider {
             pollResult.getResult().get(dataSourceConfiguration).add(
                     new TableData("bgpTable", SyncUtil.parseMibTable("instance", bgpTable, tableAsString))); //NOI18N
             //
-            SnmpBgpLocalResourceDefinition bgpLocalTable = new SnmpBgpLocalResourceDefinition();
-            List<List<String>> bgpLocalTableAsString = snmpManager.getTableAsString(bgpLocalTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            List<List<String>> bgpLocalTableAsString = bgpLocalTableRequest.join();
 
             if (bgpLocalTableAsString == null) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
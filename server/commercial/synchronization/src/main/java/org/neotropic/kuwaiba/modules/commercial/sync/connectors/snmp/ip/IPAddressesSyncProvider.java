@@ -24,7 +24,8 @@ import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentExc
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
-import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpManager;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpEngine;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpSession;
 import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.reference.SnmpifXTableResocurceDefinition;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractDataEntity;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractSyncProvider;
@@ -41,8 +42,10 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This provider finds IP address and relates them to physical interfaces, organizing them in subnets
@@ -91,6 +94,13 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
     @Override
     public PollResult mappedPoll(SynchronizationGroup syncGroup) {
         PollResult pollResult = new PollResult();
+        //The tables of all the agents are requested before processing any of them, so the devices are polled concurrently
+        SnmpEngine snmpEngine = SnmpEngine.getInstance();
+        SnmpIPResourceDefinition ipAddrTable = new SnmpIPResourceDefinition();
+        SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
+        Map<SyncDataSourceConfiguration, BusinessObjectLight> mappedObjects = new LinkedHashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> ipAddrTables = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> ifMibTables = new HashMap<>();
 
         for (SyncDataSourceConfiguration agent : syncGroup.getSyncDataSourceConfigurations()) {
 
@@ -129,7 +139,7 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
 
             String snmpVersion = agent.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-            if (SnmpManager.VERSION_2C.equals(snmpVersion)) {
+            if (SnmpSession.VERSION_2C.equals(snmpVersion)) {
                 if (!agent.getParameters().containsKey(Constants.PROPERTY_COMMUNITY)) {
                     pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
@@ -138,7 +148,7 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
                 }
             }
 
-            if (SnmpManager.VERSION_3.equals(snmpVersion)) {
+            if (SnmpSession.VERSION_3.equals(snmpVersion)) {
                 if (!agent.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL)) {
                     pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -157,56 +167,46 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
             try {
                 BusinessObjectLight mappedObjLight = bem.getObjectLight(agent.getParameters().get("deviceClass")
                         , agent.getParameters().get("deviceId"));
-                SnmpManager snmpManager = SnmpManager.getInstance();
-
-                snmpManager.setAddress(String.format("udp:%s/%s", agent.getParameters().get("ipAddress")
-                        , agent.getParameters().get("port"))); //NOI18N
-                snmpManager.setVersion(snmpVersion);
-
-                if (SnmpManager.VERSION_2C.equals(snmpVersion))
-                    snmpManager.setCommunity(agent.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-                if (SnmpManager.VERSION_3.equals(snmpVersion)) {
-                    snmpManager.setAuthProtocol(agent.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                    snmpManager.setAuthPass(agent.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                    snmpManager.setSecurityLevel(agent.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                    snmpManager.setContextName(agent.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                    snmpManager.setSecurityName(agent.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                    snmpManager.setPrivacyProtocol(agent.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                    snmpManager.setPrivacyPass(agent.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-                }
-                //ipAddrTable table
-                SnmpIPResourceDefinition ipAddrTable = new SnmpIPResourceDefinition();
-                List<List<String>> tableAsString = snmpManager.getTableAsString(ipAddrTable.values().toArray(new org.snmp4j.smi.OID[0]));
+                SnmpSession snmpSession = SnmpSession.fromParameters(agent.getParameters().get("ipAddress")
+                        , agent.getParameters().get("port"), agent.getParameters()); //NOI18N
 
-                if (tableAsString == null) {
-                    pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
-                            new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
-                                    , mappedObjLight.toString())));
-                    return pollResult;
-                }
+                mappedObjects.put(agent, mappedObjLight);
+                ipAddrTables.put(agent, snmpEngine.getTableAsStringAsync(snmpSession, ipAddrTable.values().toArray(new org.snmp4j.smi.OID[0])));
+                ifMibTables.put(agent, snmpEngine.getTableAsStringAsync(snmpSession, ifMibTable.values().toArray(new org.snmp4j.smi.OID[0])));
+            } catch (InventoryException ex) {
+                pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
+                        new InvalidArgumentException(String.format(ts.getTranslatedString("snmp_sync_object_not_found"), ex.getMessage())));
+            }
+        }
 
-                pollResult.getResult().put(agent, new ArrayList<>());
-                pollResult.getResult().get(agent).add(
-                        new TableData("ipAddrTable", SyncUtil.parseMibTable("instance", ipAddrTable
-                                , tableAsString))); //NOI18N
-                //
-                SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
-                List<List<String>> ifMibTableAsString = snmpManager.getTableAsString(ifMibTable.values().toArray(new org.snmp4j.smi.OID[0]));
+        for (Map.Entry<SyncDataSourceConfiguration, BusinessObjectLight> mappedObject : mappedObjects.entrySet()) {
+            SyncDataSourceConfiguration agent = mappedObject.getKey();
+            //ipAddrTable table
+            List<List<String>> tableAsString = ipAddrTables.get(agent).join();
 
-                if (ifMibTableAsString == null) {
-                    pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
-                            new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
-                                    , mappedObjLight.toString())));
-                    return pollResult;
-                }
+            if (tableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
+                                , mappedObject.getValue().toString())));
+                continue;
+            }
 
-                pollResult.getResult().get(agent).add(
-                        new TableData("ifMibTable", SyncUtil.parseMibTable("instance", ifMibTable, ifMibTableAsString))); //NOI18N
-            } catch (InventoryException ex) {
+            pollResult.getResult().put(agent, new ArrayList<>());
+            pollResult.getResult().get(agent).add(
+                    new TableData("ipAddrTable", SyncUtil.parseMibTable("instance", ipAddrTable
+                            , tableAsString))); //NOI18N
+            //
+            List<List<String>> ifMibTableAsString = ifMibTables.get(agent).join();
+
+            if (ifMibTableAsString == null) {
                 pollResult.getSyncDataSourceConfigurationExceptions(agent).add(
-                        new InvalidArgumentException(String.format(ts.getTranslatedString("snmp_sync_object_not_found"), ex.getMessage())));
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception")
+                                , mappedObject.getValue().toString())));
+                continue;
             }
+
+            pollResult.getResult().get(agent).add(
+                    new TableData("ifMibTable", SyncUtil.parseMibTable("instance", ifMibTable, ifMibTableAsString))); //NOI18N
         }
         return pollResult;
     }
@@ -244,7 +244,7 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
 
         String snmpVersion = dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-        if (SnmpManager.VERSION_2C.equals(snmpVersion)) {
+        if (SnmpSession.VERSION_2C.equals(snmpVersion)) {
             if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_COMMUNITY)) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
@@ -252,7 +252,7 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
             }
         }
 
-        if (SnmpManager.VERSION_3.equals(snmpVersion)) {
+        if (SnmpSession.VERSION_3.equals(snmpVersion)) {
             if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL)) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -269,27 +269,16 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
         try {
             BusinessObjectLight mappedObjLight = bem.getObjectLight(dataSourceConfiguration.getParameters().get("deviceClass")
                     , dataSourceConfiguration.getParameters().get("deviceId"));
-            SnmpManager snmpManager = SnmpManager.getInstance();
-
-            snmpManager.setAddress(String.format("udp:%s/%s", dataSourceConfiguration.getParameters().get("ipAddress")
-                    , dataSourceConfiguration.getParameters().get("port"))); //NOI18N
-            snmpManager.setVersion(snmpVersion);
-
-            if (SnmpManager.VERSION_2C.equals(snmpVersion))
-                snmpManager.setCommunity(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-            if (SnmpManager.VERSION_3.equals(snmpVersion)) {
-                snmpManager.setAuthProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                snmpManager.setAuthPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                snmpManager.setSecurityLevel(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                snmpManager.setContextName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                snmpManager.setSecurityName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                snmpManager.setPrivacyProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                snmpManager.setPrivacyPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-            }
-            //ipAddrTable table
+            SnmpEngine snmpEngine = SnmpEngine.getInstance();
+            SnmpSession snmpSession = SnmpSession.fromParameters(dataSourceConfiguration.getParameters().get("ipAddress")
+                    , dataSourceConfiguration.getParameters().get("port"), dataSourceConfiguration.getParameters()); //NOI18N
+            //Both tables are requested at once
             SnmpIPResourceDefinition ipAddrTable = new SnmpIPResourceDefinition();
-            List<List<String>> tableAsString = snmpManager.getTableAsString(ipAddrTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            CompletableFuture<List<List<String>>> ipAddrTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, ipAddrTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
+            CompletableFuture<List<List<String>>> ifMibTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, ifMibTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            //ipAddrTable table
+            List<List<String>> tableAsString = ipAddrTableRequest.join();
 
             if (tableAsString == null) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -303,8 +292,7 @@ public class IPAddressesSyncProvider extends AbstractSyncProvider {
                     new TableData("ipAddrTable", SyncUtil.parseMibTable("instance", ipAddrTable
                             , tableAsString))); //NOI18N
             //
-            SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
-            List<List<String>> ifMibTableAsString = snmpManager.getTableAsString(ifMibTable.values().toArray(new org.snmp4j.smi.OID[0]));
+            List<List<String>> ifMibTableAsString = ifMibTableRequest.join();
 
             if (ifMibTableAsString == null) {
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -25,7 +25,8 @@ import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
-import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpManager;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpEngine;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpSession;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractDataEntity;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractSyncProvider;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.ESyncParameters;
@@ -43,8 +44,10 @@ import org.springframework.stereotype.Component;
 import javax.json.Json;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
 
@@ -109,6 +112,14 @@ public class ReferenceSnmpSyncProvider extends AbstractSyncProvider {
     @Override
     public PollResult mappedPoll(SynchronizationGroup syncGroup) {
         PollResult pollResult = new PollResult();
+        //The tables of all the agents are requested before processing any of them, so the devices are polled concurrently
+        SnmpEngine snmpEngine = SnmpEngine.getInstance();
+        ReferenceSnmpEntPhysicalTableResourceDefinition entPhysicalTable = new ReferenceSnmpEntPhysicalTableResourceDefinition();
+        SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
+        Map<SyncDataSourceConfiguration, BusinessObjectLight> mappedObjects = new LinkedHashMap<>();
+        Map<SyncDataSourceConfiguration, String> addresses = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> entPhysicalTables = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> ifMibTables = new HashMap<>();
 
         for (SyncDataSourceConfiguration dsConfig : syncGroup.getSyncDataSourceConfigurations()) {
             String id = null;
@@ -145,17 +156,17 @@ public class ReferenceSnmpSyncProvider extends AbstractSyncProvider {
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_port_no_defined")
                                 , syncGroup.getName(), syncGroup.getId())));
 
-            String version = SnmpManager.VERSION_2C;
+            String version = SnmpSession.VERSION_2C;
             if (dsConfig.getParameters().containsKey(Constants.PROPERTY_SNMP_VERSION))
                 version = dsConfig.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-            if (SnmpManager.VERSION_2C.equals(version)) {
+            if (SnmpSession.VERSION_2C.equals(version)) {
                 if (!dsConfig.getParameters().containsKey(Constants.PROPERTY_COMMUNITY))
                     pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
                                     , syncGroup.getName(), syncGroup.getId())));
             }
-            if (SnmpManager.VERSION_3.equals(version)) {
+            if (SnmpSession.VERSION_3.equals(version)) {
                 if (!dsConfig.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL))
                     pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -178,58 +189,44 @@ public class ReferenceSnmpSyncProvider extends AbstractSyncProvider {
                             new InvalidArgumentException(String.format("Can not connect to the synchronization data source due to: %s", ex.getMessage())));
                 }
                 if (mappedObjLight != null) {
-                    SnmpManager snmpManager = SnmpManager.getInstance();
-
-                    snmpManager.setAddress(String.format("udp:%s/%s", address, port)); //NOI18N
-                    snmpManager.setVersion(version);
-
-                    if (SnmpManager.VERSION_2C.equals(version))
-                        snmpManager.setCommunity(dsConfig.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-                    if (SnmpManager.VERSION_3.equals(version)) {
-                        snmpManager.setAuthProtocol(dsConfig.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                        snmpManager.setAuthPass(dsConfig.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                        snmpManager.setSecurityLevel(dsConfig.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                        snmpManager.setContextName(dsConfig.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                        snmpManager.setSecurityName(dsConfig.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                        snmpManager.setPrivacyProtocol(dsConfig.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                        snmpManager.setPrivacyPass(dsConfig.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-                    }
-                    boolean firstSnmpConnectionAttemptFail = false;
-                    //ENTITY-MIB table
-                    ReferenceSnmpEntPhysicalTableResourceDefinition entPhysicalTable = new ReferenceSnmpEntPhysicalTableResourceDefinition();
-                    List<List<String>> tableAsString = snmpManager.getTableAsString(entPhysicalTable.values().toArray(new org.snmp4j.smi.OID[0]));
+                    SnmpSession snmpSession = SnmpSession.fromParameters(address, port, dsConfig.getParameters());
 
-                    if (tableAsString == null) {
-                        pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
-                                new ConnectionException(String.format("Can not connect to the synchronization data source in %s, due to: %s"
-                                        , address, mappedObjLight.toString())));
-                        firstSnmpConnectionAttemptFail = true;
-                    } else {
-                        pollResult.getResult().put(dsConfig, new ArrayList<>());
-                        pollResult.getResult().get(dsConfig).add(
-                                new TableData("entPhysicalTable", SyncUtil.parseMibTable("instance"
-                                        , entPhysicalTable, tableAsString))); //NOI18N
-                    }
-                    //IF_MIB
-                    SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
-                    List<List<String>> ifMibTableAsString;
-                    //if the first attempt fails it will not be possible to make the sync, so we avoid the reading of others MIB tables
-                    if (!firstSnmpConnectionAttemptFail) {
-                        ifMibTableAsString = snmpManager.getTableAsString(ifMibTable.values().toArray(new org.snmp4j.smi.OID[0]));
-                        //if something goes wrong with reading the second MIB table.
-                        if (ifMibTableAsString == null) {
-                            pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
-                                    new ConnectionException(String.format("Can not connect to the synchronization data source in %s, due to: %s"
-                                            , address, mappedObjLight)));
-                        } else {
-                            pollResult.getResult().get(dsConfig).add(
-                                    new TableData("ifMibTable", SyncUtil.parseMibTable("instance", ifMibTable, ifMibTableAsString))); //NOI18N
-                        }
-                    }
+                    mappedObjects.put(dsConfig, mappedObjLight);
+                    addresses.put(dsConfig, address);
+                    entPhysicalTables.put(dsConfig, snmpEngine.getTableAsStringAsync(snmpSession, entPhysicalTable.values().toArray(new org.snmp4j.smi.OID[0])));
+                    ifMibTables.put(dsConfig, snmpEngine.getTableAsStringAsync(snmpSession, ifMibTable.values().toArray(new org.snmp4j.smi.OID[0])));
                 }
             }
         }
+
+        for (Map.Entry<SyncDataSourceConfiguration, BusinessObjectLight> mappedObject : mappedObjects.entrySet()) {
+            SyncDataSourceConfiguration dsConfig = mappedObject.getKey();
+            //ENTITY-MIB table
+            List<List<String>> tableAsString = entPhysicalTables.get(dsConfig).join();
+
+            if (tableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
+                        new ConnectionException(String.format("Can not connect to the synchronization data source in %s, due to: %s"
+                                , addresses.get(dsConfig), mappedObject.getValue().toString())));
+                //if the first attempt fails it will not be possible to make the sync, so the other MIB tables are ignored
+                continue;
+            }
+            pollResult.getResult().put(dsConfig, new ArrayList<>());
+            pollResult.getResult().get(dsConfig).add(
+                    new TableData("entPhysicalTable", SyncUtil.parseMibTable("instance"
+                            , entPhysicalTable, tableAsString))); //NOI18N
+            //IF_MIB
+            List<List<String>> ifMibTableAsString = ifMibTables.get(dsConfig).join();
+            //if something goes wrong with reading the second MIB table.
+            if (ifMibTableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
+                        new ConnectionException(String.format("Can not connect to the synchronization data source in %s, due to: %s"
+                                , addresses.get(dsConfig), mappedObject.getValue())));
+            } else {
+                pollResult.getResult().get(dsConfig).add(
+                        new TableData("ifMibTable", SyncUtil.parseMibTable("instance", ifMibTable, ifMibTableAsString))); //NOI18N
+            }
+        }
         return pollResult;
     }
 
@@ -270,17 +267,17 @@ public class ReferenceSnmpSyncProvider extends AbstractSyncProvider {
                     new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_port_no_defined")
                             , ESyncParameters.SNMP_PORT.getValue(), null)));
         if (className != null && id != null && port != null) {
-            String version = SnmpManager.VERSION_2C;
+            String version = SnmpSession.VERSION_2C;
             if (dataSourceConfiguration.getCommonParameters().getParameters().containsKey(Constants.PROPERTY_SNMP_VERSION))
                 version = dataSourceConfiguration.getCommonParameters().getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-            if (SnmpManager.VERSION_2C.equals(version)) {
+            if (SnmpSession.VERSION_2C.equals(version)) {
                 if (!dataSourceConfiguration.getCommonParameters().getParameters().containsKey(Constants.PROPERTY_COMMUNITY))
                     pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
                                     , Constants.PROPERTY_COMMUNITY, null )));
             }
-            if (SnmpManager.VERSION_3.equals(version)) {
+            if (SnmpSession.VERSION_3.equals(version)) {
                 if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL))
                     pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -303,27 +300,29 @@ public class ReferenceSnmpSyncProvider extends AbstractSyncProvider {
                             new InvalidArgumentException(String.format("Can not connect to the synchronization data source due to: %s", ex.getMessage())));
                 }
                 if (mappedObjLight != null) {
-                    SnmpManager snmpManager = SnmpManager.getInstance();
-
-                    snmpManager.setAddress(String.format("udp:%s/%s", address, port)); //NOI18N
-                    snmpManager.setVersion(version);
-
-                    if (SnmpManager.VERSION_2C.equals(version))
-                        snmpManager.setCommunity(dataSourceConfiguration.getCommonParameters().getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-                    if (SnmpManager.VERSION_3.equals(version)) {
-                        snmpManager.setAuthProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                        snmpManager.setAuthPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                        snmpManager.setSecurityLevel(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                        snmpManager.setContextName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                        snmpManager.setSecurityName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                        snmpManager.setPrivacyProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                        snmpManager.setPrivacyPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-                    }
+                    String snmpAddress = String.format("udp:%s/%s", address, port); //NOI18N
+                    SnmpSession snmpSession;
+                    if (SnmpSession.VERSION_3.equals(version))
+                        snmpSession = SnmpSession.createVersion3Session(snmpAddress,
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL),
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PASS),
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL),
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_CONTEXT_NAME),
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_NAME),
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL),
+                                dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
+                    else
+                        snmpSession = SnmpSession.createVersion2cSession(snmpAddress,
+                                dataSourceConfiguration.getCommonParameters().getParameters().get(Constants.PROPERTY_COMMUNITY));
+                    //Both tables are requested at once
+                    SnmpEngine snmpEngine = SnmpEngine.getInstance();
+                    ReferenceSnmpEntPhysicalTableResourceDefinition entPhysicalTable = new ReferenceSnmpEntPhysicalTableResourceDefinition();
+                    CompletableFuture<List<List<String>>> entPhysicalTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, entPhysicalTable.values().toArray(new org.snmp4j.smi.OID[0]));
+                    SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
+                    CompletableFuture<List<List<String>>> ifMibTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, ifMibTable.values().toArray(new org.snmp4j.smi.OID[0]));
                     boolean firstSnmpConnectionAttemptFail = false;
                     //ENTITY-MIB table
-                    ReferenceSnmpEntPhysicalTableResourceDefinition entPhysicalTable = new ReferenceSnmpEntPhysicalTableResourceDefinition();
-                    List<List<String>> tableAsString = snmpManager.getTableAsString(entPhysicalTable.values().toArray(new org.snmp4j.smi.OID[0]));
+                    List<List<String>> tableAsString = entPhysicalTableRequest.join();
 
                     if (tableAsString == null) {
                         pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -337,11 +336,10 @@ public class ReferenceSnmpSyncProvider extends AbstractSyncProvider {
                                         , entPhysicalTable, tableAsString))); //NOI18N
                     }
                     //IF_MIB
-                    SnmpifXTableResocurceDefinition ifMibTable = new SnmpifXTableResocurceDefinition();
                     List<List<String>> ifMibTableAsString = null;
-                    //if the first attempt fails it will not be possible to make the sync, so we avoid the reading of others MIB tables
+                    //if the first attempt fails it will not be possible to make the sync, so the other MIB tables are ignored
                     if (!firstSnmpConnectionAttemptFail) {
-                        ifMibTableAsString = snmpManager.getTableAsString(ifMibTable.values().toArray(new org.snmp4j.smi.OID[0]));
+                        ifMibTableAsString = ifMibTableRequest.join();
                         //if something goes wrong with reading the second MIB table.
                         if (ifMibTableAsString == null) {
                             pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -24,7 +24,8 @@ import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentExc
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
-import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpManager;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpEngine;
+import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.SnmpSession;
 import org.neotropic.kuwaiba.modules.commercial.sync.connectors.snmp.reference.SnmpifXTableResocurceDefinition;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractDataEntity;
 import org.neotropic.kuwaiba.modules.commercial.sync.model.AbstractSyncProvider;
@@ -42,8 +43,10 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Hardy Ryan Chingal Martinez <ryan.chingal@neotropic.co>
@@ -90,6 +93,17 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
     @Override
     public PollResult mappedPoll(SynchronizationGroup syncGroup) {
         PollResult pollResult = new PollResult();
+        //The tables of all the agents are requested before processing any of them, so the devices are polled concurrently
+        SnmpEngine snmpEngine = SnmpEngine.getInstance();
+        SnmpVlanTrunkPortsTableResourceDefinition VlanTrunkPortsTable = new SnmpVlanTrunkPortsTableResourceDefinition();
+        SnmpifXTableResocurceDefinition ifXTable = new SnmpifXTableResocurceDefinition();
+        SnmpVtpVlanTableResourceDefinition vlanInfo = new SnmpVtpVlanTableResourceDefinition();
+        SnmpvmMembershipTableResourceDefinition vmMembershipTable = new SnmpvmMembershipTableResourceDefinition();
+        Map<SyncDataSourceConfiguration, BusinessObjectLight> mappedObjects = new LinkedHashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> vlansMibTables = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> ifXTables = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> vlanInfoTables = new HashMap<>();
+        Map<SyncDataSourceConfiguration, CompletableFuture<List<List<String>>>> vmMembershipTables = new HashMap<>();
 
         for (SyncDataSourceConfiguration dsConfig : syncGroup.getSyncDataSourceConfigurations()) {
             String id = null;
@@ -121,16 +135,16 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                 pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_port_no_defined"), syncGroup.getName(), syncGroup.getId())));
 
-            String version = SnmpManager.VERSION_2C;
+            String version = SnmpSession.VERSION_2C;
             if (dsConfig.getParameters().containsKey(Constants.PROPERTY_SNMP_VERSION))
                 version = dsConfig.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-            if (SnmpManager.VERSION_2C.equals(version)) {
+            if (SnmpSession.VERSION_2C.equals(version)) {
                 if (!dsConfig.getParameters().containsKey(Constants.PROPERTY_COMMUNITY))
                     pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined"), syncGroup.getName(), syncGroup.getId())));
             }
-            if (SnmpManager.VERSION_3.equals(version)) {
+            if (SnmpSession.VERSION_3.equals(version)) {
                 if (!dsConfig.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL))
                     pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
                             new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined"), syncGroup.getName(), syncGroup.getId())));
@@ -149,75 +163,65 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                             new InvalidArgumentException(String.format(ts.getTranslatedString("snmp_sync_object_not_found"), ex.getMessage())));
                 }
                 if (mappedObjLight != null) {
-                    SnmpManager snmpManager = SnmpManager.getInstance();
-
-                    snmpManager.setAddress(String.format("udp:%s/%s", address, port)); //NOI18N
-                    snmpManager.setVersion(version);
-
-                    if (SnmpManager.VERSION_2C.equals(version))
-                        snmpManager.setCommunity(dsConfig.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-                    if (SnmpManager.VERSION_3.equals(version)) {
-                        snmpManager.setAuthProtocol(dsConfig.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                        snmpManager.setAuthPass(dsConfig.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                        snmpManager.setSecurityLevel(dsConfig.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                        snmpManager.setContextName(dsConfig.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                        snmpManager.setSecurityName(dsConfig.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                        snmpManager.setPrivacyProtocol(dsConfig.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                        snmpManager.setPrivacyPass(dsConfig.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-                    }
-                    //VlanTrunkPortsTable
-                    SnmpVlanTrunkPortsTableResourceDefinition VlanTrunkPortsTable = new SnmpVlanTrunkPortsTableResourceDefinition();
-                    List<List<String>> vlansMibTableAsString = snmpManager.getTableAsString(VlanTrunkPortsTable.values().toArray(new OID[0]));
-
-                    if (vlansMibTableAsString == null) {
-                        pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
-                                new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObjLight)));
-                        return pollResult;
-                    }
-                    pollResult.getResult().put(dsConfig, new ArrayList<>());
-                    pollResult.getResult().get(dsConfig).add(
-                            new TableData("vlansMibTable", SyncUtil.parseMibTable("instance", VlanTrunkPortsTable, vlansMibTableAsString))); //NOI18N
-                    //ifXTable
-                    SnmpifXTableResocurceDefinition ifXTable = new SnmpifXTableResocurceDefinition();
-                    List<List<String>> ifXTableAsString = snmpManager.getTableAsString(ifXTable.values().toArray(new OID[0]));
-
-                    if (ifXTableAsString == null) {
-                        pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
-                                new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObjLight)));
-                        return pollResult;
-                    }
-
-                    pollResult.getResult().get(dsConfig).add(
-                            new TableData("ifXTable", SyncUtil.parseMibTable("instance", ifXTable, ifXTableAsString))); //NOI18N
-                    //VlanInfo
-                    SnmpVtpVlanTableResourceDefinition vlanInfo = new SnmpVtpVlanTableResourceDefinition();
-                    List<List<String>> vlanInfoAsString = snmpManager.getTableAsString(vlanInfo.values().toArray(new OID[0]));
-
-                    if (vlanInfoAsString == null) {
-                        pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
-                                new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObjLight)));
-                        return pollResult;
-                    }
-
-                    pollResult.getResult().get(dsConfig).add(
-                            new TableData("vlanInfo", SyncUtil.parseMibTable("instance", vlanInfo, vlanInfoAsString))); //NOI18N
-
-                    //vmMemberShipTable
-                    SnmpvmMembershipTableResourceDefinition vmMembershipTable = new SnmpvmMembershipTableResourceDefinition();
-                    List<List<String>> vmMembershipTableAsString = snmpManager.getTableAsString(vmMembershipTable.values().toArray(new OID[0]));
-
-                    if (vmMembershipTableAsString == null) {
-                        pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
-                                new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObjLight)));
-                        return pollResult;
-                    }
-
-                    pollResult.getResult().get(dsConfig).add(
-                            new TableData("vmMembershipTable", SyncUtil.parseMibTable("instance", vmMembershipTable, vmMembershipTableAsString))); //NOI18N
+                    SnmpSession snmpSession = SnmpSession.fromParameters(address, port, dsConfig.getParameters());
+
+                    mappedObjects.put(dsConfig, mappedObjLight);
+                    vlansMibTables.put(dsConfig, snmpEngine.getTableAsStringAsync(snmpSession, VlanTrunkPortsTable.values().toArray(new OID[0])));
+                    ifXTables.put(dsConfig, snmpEngine.getTableAsStringAsync(snmpSession, ifXTable.values().toArray(new OID[0])));
+                    vlanInfoTables.put(dsConfig, snmpEngine.getTableAsStringAsync(snmpSession, vlanInfo.values().toArray(new OID[0])));
+                    vmMembershipTables.put(dsConfig, snmpEngine.getTableAsStringAsync(snmpSession, vmMembershipTable.values().toArray(new OID[0])));
                 }
             }
         }
+
+        for (Map.Entry<SyncDataSourceConfiguration, BusinessObjectLight> mappedObject : mappedObjects.entrySet()) {
+            SyncDataSourceConfiguration dsConfig = mappedObject.getKey();
+            //VlanTrunkPortsTable
+            List<List<String>> vlansMibTableAsString = vlansMibTables.get(dsConfig).join();
+
+            if (vlansMibTableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObject.getValue())));
+                continue;
+            }
+            pollResult.getResult().put(dsConfig, new ArrayList<>());
+            pollResult.getResult().get(dsConfig).add(
+                    new TableData("vlansMibTable", SyncUtil.parseMibTable("instance", VlanTrunkPortsTable, vlansMibTableAsString))); //NOI18N
+            //ifXTable
+            List<List<String>> ifXTableAsString = ifXTables.get(dsConfig).join();
+
+            if (ifXTableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObject.getValue())));
+                continue;
+            }
+
+            pollResult.getResult().get(dsConfig).add(
+                    new TableData("ifXTable", SyncUtil.parseMibTable("instance", ifXTable, ifXTableAsString))); //NOI18N
+            //VlanInfo
+            List<List<String>> vlanInfoAsString = vlanInfoTables.get(dsConfig).join();
+
+            if (vlanInfoAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObject.getValue())));
+                continue;
+            }
+
+            pollResult.getResult().get(dsConfig).add(
+                    new TableData("vlanInfo", SyncUtil.parseMibTable("instance", vlanInfo, vlanInfoAsString))); //NOI18N
+
+            //vmMemberShipTable
+            List<List<String>> vmMembershipTableAsString = vmMembershipTables.get(dsConfig).join();
+
+            if (vmMembershipTableAsString == null) {
+                pollResult.getSyncDataSourceConfigurationExceptions(dsConfig).add(
+                        new ConnectionException(String.format(ts.getTranslatedString("snmp_agent_connection_exception"), mappedObject.getValue())));
+                continue;
+            }
+
+            pollResult.getResult().get(dsConfig).add(
+                    new TableData("vmMembershipTable", SyncUtil.parseMibTable("instance", vmMembershipTable, vmMembershipTableAsString))); //NOI18N
+        }
         return pollResult;
     }
 
@@ -295,17 +299,17 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                     new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_port_no_defined")
                             , dataSourceConfiguration.getName(), dataSourceConfiguration.getId())));
 
-        String version = SnmpManager.VERSION_2C;
+        String version = SnmpSession.VERSION_2C;
         if (dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_SNMP_VERSION))
             version = dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SNMP_VERSION);
 
-        if (SnmpManager.VERSION_2C.equals(version)) {
+        if (SnmpSession.VERSION_2C.equals(version)) {
             if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_COMMUNITY))
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_community_no_defined")
                                 , dataSourceConfiguration.getName(), dataSourceConfiguration.getId())));
         }
-        if (SnmpManager.VERSION_3.equals(version)) {
+        if (SnmpSession.VERSION_3.equals(version)) {
             if (!dataSourceConfiguration.getParameters().containsKey(Constants.PROPERTY_AUTH_PROTOCOL))
                 pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
                         new InvalidArgumentException(String.format(ts.getTranslatedString("parameter_auth_protocol_no_defined")
@@ -326,26 +330,19 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                         new InvalidArgumentException(String.format(ts.getTranslatedString("snmp_sync_object_not_found"), ex.getMessage())));
             }
             if (mappedObjLight != null) {
-                SnmpManager snmpManager = SnmpManager.getInstance();
-
-                snmpManager.setAddress(String.format("udp:%s/%s", address, port)); //NOI18N
-                snmpManager.setVersion(version);
-
-                if (SnmpManager.VERSION_2C.equals(version))
-                    snmpManager.setCommunity(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_COMMUNITY));
-
-                if (SnmpManager.VERSION_3.equals(version)) {
-                    snmpManager.setAuthProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PROTOCOL));
-                    snmpManager.setAuthPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_AUTH_PASS));
-                    snmpManager.setSecurityLevel(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_LEVEL));
-                    snmpManager.setContextName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_CONTEXT_NAME));
-                    snmpManager.setSecurityName(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_SECURITY_NAME));
-                    snmpManager.setPrivacyProtocol(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PROTOCOL));
-                    snmpManager.setPrivacyPass(dataSourceConfiguration.getParameters().get(Constants.PROPERTY_PRIVACY_PASS));
-                }
-                //VlanTrunkPortsTable
+                SnmpEngine snmpEngine = SnmpEngine.getInstance();
+                SnmpSession snmpSession = SnmpSession.fromParameters(address, port, dataSourceConfiguration.getParameters());
+                //All the tables are requested at once
                 SnmpVlanTrunkPortsTableResourceDefinition VlanTrunkPortsTable = new SnmpVlanTrunkPortsTableResourceDefinition();
-                List<List<String>> vlansMibTableAsString = snmpManager.getTableAsString(VlanTrunkPortsTable.values().toArray(new OID[0]));
+                CompletableFuture<List<List<String>>> vlansMibTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, VlanTrunkPortsTable.values().toArray(new OID[0]));
+                SnmpifXTableResocurceDefinition ifXTable = new SnmpifXTableResocurceDefinition();
+                CompletableFuture<List<List<String>>> ifXTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, ifXTable.values().toArray(new OID[0]));
+                SnmpVtpVlanTableResourceDefinition vlanInfo = new SnmpVtpVlanTableResourceDefinition();
+                CompletableFuture<List<List<String>>> vlanInfoRequest = snmpEngine.getTableAsStringAsync(snmpSession, vlanInfo.values().toArray(new OID[0]));
+                SnmpvmMembershipTableResourceDefinition vmMembershipTable = new SnmpvmMembershipTableResourceDefinition();
+                CompletableFuture<List<List<String>>> vmMembershipTableRequest = snmpEngine.getTableAsStringAsync(snmpSession, vmMembershipTable.values().toArray(new OID[0]));
+                //VlanTrunkPortsTable
+                List<List<String>> vlansMibTableAsString = vlansMibTableRequest.join();
 
                 if (vlansMibTableAsString == null) {
                     pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -356,8 +353,7 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                 pollResult.getResult().get(dataSourceConfiguration).add(
                         new TableData("vlansMibTable", SyncUtil.parseMibTable("instance", VlanTrunkPortsTable, vlansMibTableAsString))); //NOI18N
                 //ifXTable
-                SnmpifXTableResocurceDefinition ifXTable = new SnmpifXTableResocurceDefinition();
-                List<List<String>> ifXTableAsString = snmpManager.getTableAsString(ifXTable.values().toArray(new OID[0]));
+                List<List<String>> ifXTableAsString = ifXTableRequest.join();
 
                 if (ifXTableAsString == null) {
                     pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -368,8 +364,7 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                 pollResult.getResult().get(dataSourceConfiguration).add(
                         new TableData("ifXTable", SyncUtil.parseMibTable("instance", ifXTable, ifXTableAsString))); //NOI18N
                 //VlanInfo
-                SnmpVtpVlanTableResourceDefinition vlanInfo = new SnmpVtpVlanTableResourceDefinition();
-                List<List<String>> vlanInfoAsString = snmpManager.getTableAsString(vlanInfo.values().toArray(new OID[0]));
+                List<List<String>> vlanInfoAsString = vlanInfoRequest.join();
 
                 if (vlanInfoAsString == null) {
                     pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
@@ -381,8 +376,7 @@ public class SnmpCiscoVlansSyncProvider extends AbstractSyncProvider {
                         new TableData("vlanInfo", SyncUtil.parseMibTable("instance", vlanInfo, vlanInfoAsString))); //NOI18N
 
                 //vmMemberShipTable
-                SnmpvmMembershipTableResourceDefinition vmMembershipTable = new SnmpvmMembershipTableResourceDefinition();
-                List<List<String>> vmMembershipTableAsString = snmpManager.getTableAsString(vmMembershipTable.values().toArray(new OID[0]));
+                List<List<String>> vmMembershipTableAsString = vmMembershipTableRequest.join();
 
                 if (vmMembershipTableAsString == null) {
                     pollResult.getSyncDataSourceConfigurationExceptions(dataSourceConfiguration).add(
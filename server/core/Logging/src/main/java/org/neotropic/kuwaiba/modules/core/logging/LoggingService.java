@@ -38,6 +38,25 @@ public interface LoggingService {
      */
     public void writeLogMessage(LoggerType type, Class source, String message, Throwable ex);
     
+    /**
+     * Write entries in the log. The message is only formatted if the level is enabled for the source, 
+     * so it's cheaper than formatting it before calling {@link #writeLogMessage(org.neotropic.kuwaiba.modules.core.logging.LoggerType, java.lang.Class, java.lang.String) }
+     * @param type Type of message (e.g. info, debug)
+     * @param source Log message source class
+     * @param format Format of the message to be written in the log, as in {@link String#format(java.lang.String, java.lang.Object...) }
+     * @param args The arguments referenced in the format
+     */
+    public void writeLogMessage(LoggerType type, Class source, String format, Object... args);
+    
+    /**
+     * Checks if the messages of a given type and source are written in the log. 
+     * Useful to skip building messages that are expensive to compute.
+     * @param type Type of message (e.g. info, debug)
+     * @param source Log message source class
+     * @return If the messages would be written
+     */
+    public boolean isLogEnabled(LoggerType type, Class source);
+    
     /**
      * Register a log channel with a log rotation by file size.
      * @param loggerName Log name to be taken into account. 
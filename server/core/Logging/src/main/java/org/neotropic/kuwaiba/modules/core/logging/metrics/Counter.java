@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.modules.core.logging.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A value that only goes up, like the number of errors. Use {@link MetricsService#counter(java.lang.String, java.lang.String, java.lang.String...)} to get one
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    Counter() { }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void increment(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
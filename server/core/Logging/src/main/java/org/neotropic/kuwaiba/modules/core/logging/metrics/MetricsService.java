@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.modules.core.logging.metrics;
+
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the timers, counters and gauges used to measure the application, and exposes them in the Prometheus text format.
+ * A metric is identified by its name and its tags. Asking twice for the same metric returns the same instance,
+ * so the metrics can be looked up every time they are used, although it's cheaper to keep a reference to them.
+ * Timers record the duration of operations. Those that take longer than the slow operation threshold of the
+ * timer are written to the log.
+ */
+public interface MetricsService {
+    /**
+     * Gets or creates a timer
+     * @param name The name of the metric. By convention, it ends with _seconds
+     * @param help A short description of the metric
+     * @param tags The tags of this timer as key, value pairs
+     * @return The timer
+     * @throws IllegalArgumentException If the tags are not in pairs or the name is already used by a metric of another type
+     */
+    public Timer timer(String name, String help, String... tags);
+
+    /**
+     * Gets or creates a counter
+     * @param name The name of the metric. By convention, it ends with _total
+     * @param help A short description of the metric
+     * @param tags The tags of this counter as key, value pairs
+     * @return The counter
+     * @throws IllegalArgumentException If the tags are not in pairs or the name is already used by a metric of another type
+     */
+    public Counter counter(String name, String help, String... tags);
+
+    /**
+     * Registers a value that is read every time the metrics are exported. If there's already a gauge with the same name and tags, it's replaced
+     * @param name The name of the metric
+     * @param help A short description of the metric
+     * @param value Supplies the current value
+     * @param tags The tags of this gauge as key, value pairs
+     * @throws IllegalArgumentException If the tags are not in pairs or the name is already used by a metric of another type
+     */
+    public void gauge(String name, String help, Supplier<Number> value, String... tags);
+
+    /**
+     * Sets the slow operation thresholds
+     * @param configuration The configuration properties: slowOperationThreshold, the default threshold in milliseconds
+     * (0 disables the slow operation log), and slowOperationThresholds, a comma-separated list of metricName=milliseconds
+     * with the thresholds of specific timers
+     * @throws IllegalArgumentException If a threshold is not a number
+     */
+    public void configure(Properties configuration);
+
+    /**
+     * Exports the current value of all the metrics
+     * @return The metrics in the Prometheus text exposition format (version 0.0.4)
+     */
+    public String scrape();
+}
@@ -0,0 +1,235 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.modules.core.logging.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Default implementation of the metrics service. The metrics are kept in memory and exported on demand.
+ */
+@Service
+public class MetricsServiceImpl implements MetricsService, Timer.SlowOperationListener {
+    /**
+     * Configuration property with the default slow operation threshold in milliseconds
+     */
+    public static final String PROPERTY_SLOW_OPERATION_THRESHOLD = "slowOperationThreshold"; //NOI18N
+    /**
+     * Configuration property with the thresholds of specific timers, as a comma-separated list of metricName=milliseconds
+     */
+    public static final String PROPERTY_SLOW_OPERATION_THRESHOLDS = "slowOperationThresholds"; //NOI18N
+    /**
+     * Default slow operation threshold in milliseconds
+     */
+    public static final long DEFAULT_SLOW_OPERATION_THRESHOLD = 1000;
+    /**
+     * Max length of the details of a slow operation written to the log
+     */
+    private static final int MAX_DETAILS_LENGTH = 1000;
+    private static final String TYPE_HISTOGRAM = "histogram"; //NOI18N
+    private static final String TYPE_COUNTER = "counter"; //NOI18N
+    private static final String TYPE_GAUGE = "gauge"; //NOI18N
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * Metric name, metric family. Sorted, so the export is stable
+     */
+    private final ConcurrentSkipListMap<String, Family> families = new ConcurrentSkipListMap<>();
+    /**
+     * Slow operation thresholds in nanoseconds
+     */
+    private volatile long defaultSlowOperationThreshold = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_OPERATION_THRESHOLD);
+    private volatile Map<String, Long> slowOperationThresholds = Collections.emptyMap();
+
+    @Override
+    public Timer timer(String name, String help, String... tags) {
+        return (Timer) getFamily(name, help, TYPE_HISTOGRAM).metrics.computeIfAbsent(toLabels(tags), labels -> {
+            Timer timer = new Timer(name, labels, this);
+            timer.setSlowOperationThreshold(getSlowOperationThreshold(name));
+            return timer;
+        });
+    }
+
+    @Override
+    public Counter counter(String name, String help, String... tags) {
+        return (Counter) getFamily(name, help, TYPE_COUNTER).metrics.computeIfAbsent(toLabels(tags), labels -> new Counter());
+    }
+
+    @Override
+    public void gauge(String name, String help, Supplier<Number> value, String... tags) {
+        getFamily(name, help, TYPE_GAUGE).metrics.put(toLabels(tags), value);
+    }
+
+    @Override
+    public void configure(Properties configuration) {
+        Object defaultThresholdValue = configuration.get(PROPERTY_SLOW_OPERATION_THRESHOLD);
+        long defaultThreshold = defaultThresholdValue == null ? DEFAULT_SLOW_OPERATION_THRESHOLD
+                : Long.valueOf(defaultThresholdValue.toString().trim());
+        Object thresholdsValue = configuration.get(PROPERTY_SLOW_OPERATION_THRESHOLDS);
+        Map<String, Long> thresholds = new HashMap<>();
+        for (String aThreshold : (thresholdsValue == null ? "" : thresholdsValue.toString()).split(",")) { //NOI18N
+            if (aThreshold.trim().isEmpty())
+                continue;
+            String[] tokens = aThreshold.split("=", 2); //NOI18N
+            if (tokens.length != 2)
+                throw new IllegalArgumentException(String.format("Wrong slow operation threshold %s. It is expected metricName=milliseconds", aThreshold));
+            thresholds.put(tokens[0].trim(), TimeUnit.MILLISECONDS.toNanos(Long.valueOf(tokens[1].trim())));
+        }
+        defaultSlowOperationThreshold = TimeUnit.MILLISECONDS.toNanos(Math.max(0, defaultThreshold));
+        slowOperationThresholds = thresholds;
+
+        families.values().stream().filter(family -> TYPE_HISTOGRAM.equals(family.type)).forEach(family -> {
+            long threshold = getSlowOperationThreshold(family.name);
+            family.metrics.values().forEach(timer -> ((Timer) timer).setSlowOperationThreshold(threshold));
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String scrape() {
+        StringBuilder output = new StringBuilder();
+        for (Family family : families.values()) {
+            output.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n'); //NOI18N
+            output.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n'); //NOI18N
+            family.metrics.forEach((labels, metric) -> {
+                switch (family.type) {
+                    case TYPE_HISTOGRAM:
+                        writeTimer(output, (Timer) metric);
+                        break;
+                    case TYPE_COUNTER:
+                        writeSample(output, family.name, labels, String.valueOf(((Counter) metric).get()));
+                        break;
+                    default:
+                        Number value;
+                        try {
+                            value = ((Supplier<Number>) metric).get();
+                        } catch (RuntimeException ex) { // A broken gauge shouldn't break the export
+                            value = null;
+                        }
+                        if (value != null)
+                            writeSample(output, family.name, labels, formatNumber(value.doubleValue()));
+                }
+            });
+        }
+        return output.toString();
+    }
+
+    @Override
+    public void slowOperation(Timer timer, long duration, String details) {
+        String abbreviatedDetails = details == null ? "" : ": " + (details.length() > MAX_DETAILS_LENGTH //NOI18N
+                ? details.substring(0, MAX_DETAILS_LENGTH) + "..." : details); //NOI18N
+        log.writeLogMessage(LoggerType.WARN, MetricsServiceImpl.class, String.format("Slow operation %s{%s} took %s ms%s", //NOI18N
+                timer.getName(), timer.getLabels(), TimeUnit.NANOSECONDS.toMillis(duration), abbreviatedDetails));
+    }
+
+    private Family getFamily(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, aName -> new Family(aName, help, type));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException(String.format("Metric %s is a %s, not a %s", name, family.type, type));
+        return family;
+    }
+
+    private long getSlowOperationThreshold(String name) {
+        Long threshold = slowOperationThresholds.get(name);
+        return threshold == null ? defaultSlowOperationThreshold : threshold;
+    }
+
+    private void writeTimer(StringBuilder output, Timer timer) {
+        long[] bucketCounts = timer.getBucketCounts();
+        String labelPrefix = timer.getLabels().isEmpty() ? "" : timer.getLabels() + ","; //NOI18N
+        long cumulativeCount = 0;
+        for (int i = 0; i < Timer.BUCKETS.length; i++) {
+            cumulativeCount += bucketCounts[i];
+            writeSample(output, timer.getName() + "_bucket", labelPrefix + "le=\"" + formatNumber(Timer.BUCKETS[i]) + "\"", //NOI18N
+                    String.valueOf(cumulativeCount));
+        }
+        cumulativeCount += bucketCounts[Timer.BUCKETS.length];
+        writeSample(output, timer.getName() + "_bucket", labelPrefix + "le=\"+Inf\"", String.valueOf(cumulativeCount)); //NOI18N
+        writeSample(output, timer.getName() + "_sum", timer.getLabels(), //NOI18N
+                formatNumber((double) timer.getTotalTime() / TimeUnit.SECONDS.toNanos(1)));
+        writeSample(output, timer.getName() + "_count", timer.getLabels(), String.valueOf(cumulativeCount)); //NOI18N
+    }
+
+    private static void writeSample(StringBuilder output, String name, String labels, String value) {
+        output.append(name);
+        if (!labels.isEmpty())
+            output.append('{').append(labels).append('}');
+        output.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Writes the tags as Prometheus labels
+     */
+    private static String toLabels(String... tags) {
+        if (tags.length % 2 != 0)
+            throw new IllegalArgumentException("The tags must be key, value pairs");
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0)
+                labels.append(',');
+            labels.append(tags[i]).append("=\"").append(escapeLabelValue(tags[i + 1])).append('"'); //NOI18N
+        }
+        return labels.toString();
+    }
+
+    private static String escapeLabelValue(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"); //NOI18N
+    }
+
+    private static String escapeHelp(String help) {
+        return String.valueOf(help).replace("\\", "\\\\").replace("\n", "\\n"); //NOI18N
+    }
+
+    private static String formatNumber(double value) {
+        if (Double.isNaN(value))
+            return "NaN"; //NOI18N
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf"; //NOI18N
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     * The metrics with the same name
+     */
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        /**
+         * Labels, timer, counter or gauge supplier
+         */
+        private final ConcurrentHashMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
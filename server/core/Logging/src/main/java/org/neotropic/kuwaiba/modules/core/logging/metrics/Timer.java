@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.modules.core.logging.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long an operation takes: the number of times it's been done, the total and max time, and a histogram
+ * of the durations. Use {@link MetricsService#timer(java.lang.String, java.lang.String, java.lang.String...)} to get one.
+ * Typical usage:
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ */
+public class Timer {
+    /**
+     * Upper bounds of the histogram buckets, in seconds
+     */
+    static final double[] BUCKETS = { 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    /**
+     * Upper bounds of the histogram buckets, in nanoseconds
+     */
+    private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+    static {
+        for (int i = 0; i < BUCKETS.length; i++)
+            BUCKET_NANOS[i] = (long) (BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+    /**
+     * Informs of the operations that took longer than the threshold
+     */
+    interface SlowOperationListener {
+        void slowOperation(Timer timer, long duration, String details);
+    }
+    private final String name;
+    /**
+     * The tags, as they are written in the Prometheus format, without the braces
+     */
+    private final String labels;
+    private final SlowOperationListener listener;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalTime = new LongAdder();
+    private final AtomicLong maxTime = new AtomicLong();
+    /**
+     * The number of durations in every bucket. The last one has those longer than the largest bound
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+    /**
+     * Slow operation threshold in nanoseconds. 0 if the slow operations are not logged
+     */
+    private volatile long slowOperationThreshold;
+
+    Timer(String name, String labels, SlowOperationListener listener) {
+        this.name = name;
+        this.labels = labels;
+        this.listener = listener;
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Marks the start of an operation
+     * @return The value to pass to {@link #stop(long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of an operation
+     * @param start The value returned by {@link #start()}
+     * @return The duration in nanoseconds
+     */
+    public long stop(long start) {
+        return stop(start, null);
+    }
+
+    /**
+     * Records the duration of an operation
+     * @param start The value returned by {@link #start()}
+     * @param details What was done (e.g. the query executed), written to the log if the operation was slow. It may be null
+     * @return The duration in nanoseconds
+     */
+    public long stop(long start, String details) {
+        long duration = System.nanoTime() - start;
+        record(duration, details);
+        return duration;
+    }
+
+    /**
+     * Records the duration of an operation
+     * @param duration The duration in nanoseconds
+     * @param details What was done, written to the log if the operation was slow. It may be null
+     */
+    public void record(long duration, String details) {
+        count.increment();
+        totalTime.add(duration);
+        maxTime.accumulateAndGet(duration, Math::max);
+        int bucket = 0;
+        while (bucket < BUCKET_NANOS.length && duration > BUCKET_NANOS[bucket])
+            bucket++;
+        buckets[bucket].increment();
+
+        long threshold = slowOperationThreshold;
+        if (threshold > 0 && duration >= threshold)
+            listener.slowOperation(this, duration, details);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String getLabels() {
+        return labels;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of the durations in nanoseconds
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * @return The longest duration in nanoseconds
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * @return The number of durations in every bucket (not cumulative). The last one has those longer than the largest bound
+     */
+    long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++)
+            counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    void setSlowOperationThreshold(long slowOperationThreshold) {
+        this.slowOperationThreshold = slowOperationThreshold;
+    }
+}
@@ -16,37 +16,130 @@
 package org.neotropic.kuwaiba.modules.core.logging.slf4j;
 
 
+import ch.qos.logback.classic.AsyncAppender;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 import ch.qos.logback.core.util.FileSize;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 
 /**
  * Implements the methods that allow logging messages.
+ * In asynchronous mode (<code>logging.mode=asynchronous</code>), the appenders of the root logger and of the 
+ * logs registered with <code>registerLog</code> are put behind a bounded queue, and the messages are written 
+ * to the files and the console by a background thread, so the callers don't wait for the I/O.
  * @author Lina Sofia Cardona Martinez {@literal <lina.cardona@kuwaiba.org>}
  */
 @Service
 public class LoggingServiceImpl implements LoggingService {
+    /**
+     * The messages are written by the caller
+     */
+    public static final String MODE_SYNCHRONOUS = "synchronous"; //NOI18N
+    /**
+     * The messages are queued and written by a background thread
+     */
+    public static final String MODE_ASYNCHRONOUS = "asynchronous"; //NOI18N
+    /**
+     * When the queue is full, the callers wait until there's room. No message is lost
+     */
+    public static final String QUEUE_FULL_BLOCK = "block"; //NOI18N
+    /**
+     * When the queue is full, the new messages are discarded. Debug, trace and info messages are discarded 
+     * earlier, when the queue is 80% full, to leave room for warnings and errors
+     */
+    public static final String QUEUE_FULL_DROP = "drop"; //NOI18N
     
     private static final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
-    
-    private final HashMap<String, Logger> loggers;
+    /**
+     * Source class name, logger. Read without locking, since it's looked up on every message
+     */
+    private final ConcurrentHashMap<String, Logger> loggers;
     
     private final String filePattern;
+    /**
+     * How the messages are written. See {@link #MODE_SYNCHRONOUS} and {@link #MODE_ASYNCHRONOUS}
+     */
+    @Value("${logging.mode:synchronous}")
+    private String mode;
+    /**
+     * Max number of messages waiting to be written per appender in asynchronous mode
+     */
+    @Value("${logging.queue-size:8192}")
+    private int queueSize;
+    /**
+     * What to do when the queue is full in asynchronous mode. See {@link #QUEUE_FULL_BLOCK} and {@link #QUEUE_FULL_DROP}
+     */
+    @Value("${logging.queue-full-policy:block}")
+    private String queueFullPolicy;
+    /**
+     * The asynchronous appenders put in front of the actual appenders, so they can be removed on shutdown
+     */
+    private final List<AsyncChannel> asyncChannels;
 
     public LoggingServiceImpl() {
         this.filePattern = "%d{yyyy-MM-dd HH:mm:ss} %-5level %logger{36} - %msg%n";
-        this.loggers = new HashMap<>();
+        this.loggers = new ConcurrentHashMap<>();
+        this.asyncChannels = new CopyOnWriteArrayList<>();
+    }
+    
+    @PostConstruct
+    public void init() {
+        if (!MODE_SYNCHRONOUS.equals(mode) && !MODE_ASYNCHRONOUS.equals(mode))
+            throw new IllegalArgumentException(String.format("Unknown logging mode %s. Use %s or %s", mode, MODE_SYNCHRONOUS, MODE_ASYNCHRONOUS));
+        if (!QUEUE_FULL_BLOCK.equals(queueFullPolicy) && !QUEUE_FULL_DROP.equals(queueFullPolicy))
+            throw new IllegalArgumentException(String.format("Unknown logging queue full policy %s. Use %s or %s", queueFullPolicy, QUEUE_FULL_BLOCK, QUEUE_FULL_DROP));
+        
+        if (isAsynchronous()) {
+            ch.qos.logback.classic.Logger rootLogger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+            List<Appender<ILoggingEvent>> rootAppenders = new ArrayList<>();
+            rootLogger.iteratorForAppenders().forEachRemaining(rootAppenders::add);
+            for (Appender<ILoggingEvent> rootAppender : rootAppenders) {
+                if (!(rootAppender instanceof AsyncAppender)) {
+                    rootLogger.addAppender(createAsyncAppender(rootLogger, rootAppender));
+                    rootLogger.detachAppender(rootAppender);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Puts the actual appenders back and writes the messages still in the queues.
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (AsyncChannel asyncChannel : asyncChannels) {
+            // The new messages are written directly, while the queued ones are flushed
+            asyncChannel.logger.addAppender(asyncChannel.appender);
+            asyncChannel.logger.detachAppender(asyncChannel.asyncAppender);
+            long deadline = System.currentTimeMillis() + asyncChannel.asyncAppender.getMaxFlushTime();
+            try {
+                while (asyncChannel.asyncAppender.getNumberOfElementsInQueue() > 0 && System.currentTimeMillis() < deadline)
+                    Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            // Stopping the asynchronous appender would stop the actual one too
+            asyncChannel.asyncAppender.detachAppender(asyncChannel.appender);
+            asyncChannel.asyncAppender.stop();
+        }
+        asyncChannels.clear();
     }
     
     @Override
@@ -61,6 +154,18 @@ public class LoggingServiceImpl implements LoggingService {
         sendMessageThrowable(type, currentLogger, message, ex);
     }
     
+    @Override
+    public void writeLogMessage(LoggerType type, Class source, String format, Object... args) {
+        Logger currentLogger = getLogger(source);
+        if (isEnabled(type, currentLogger))
+            sendMessage(type, currentLogger, String.format(format, args));
+    }
+    
+    @Override
+    public boolean isLogEnabled(LoggerType type, Class source) {
+        return isEnabled(type, getLogger(source));
+    }
+    
     @Override
     public void registerLog(String loggerName, String filePath, String fileName, int maxIndex) {
         
@@ -91,10 +196,7 @@ public class LoggingServiceImpl implements LoggingService {
 
         // Configure the specific logger
         ch.qos.logback.classic.Logger specificLogger = context.getLogger(loggerName);
-        specificLogger.detachAndStopAllAppenders();  // Delete existing appender
-        specificLogger.addAppender(rollingFileAppender);
-        specificLogger.setLevel(ch.qos.logback.classic.Level.TRACE);
-        specificLogger.setAdditive(false);
+        attachAppender(specificLogger, rollingFileAppender);
     }
     
     @Override
@@ -135,14 +237,46 @@ public class LoggingServiceImpl implements LoggingService {
 
             // Configure the specific logger
             ch.qos.logback.classic.Logger specificLogger = context.getLogger(loggerName);
-            specificLogger.detachAndStopAllAppenders(); 
-            specificLogger.addAppender(rollingFileAppender);
-            specificLogger.setLevel(ch.qos.logback.classic.Level.TRACE);
-            specificLogger.setAdditive(false);
+            attachAppender(specificLogger, rollingFileAppender);
         } else
             registerLog(loggerName, filePath, fileName, maxIndex);
     }
     
+    /**
+     * Replaces the appenders of a registered log with a new one, which is put behind a queue in asynchronous mode.
+     */
+    private void attachAppender(ch.qos.logback.classic.Logger specificLogger, Appender<ILoggingEvent> appender) {
+        asyncChannels.removeIf(asyncChannel -> asyncChannel.logger == specificLogger);
+        specificLogger.detachAndStopAllAppenders();  // Delete existing appender
+        specificLogger.addAppender(isAsynchronous() ? createAsyncAppender(specificLogger, appender) : appender);
+        specificLogger.setLevel(ch.qos.logback.classic.Level.TRACE);
+        specificLogger.setAdditive(false);
+    }
+    
+    /**
+     * Puts an appender behind a bounded queue. The appender is not stopped when the queue is stopped.
+     */
+    private AsyncAppender createAsyncAppender(ch.qos.logback.classic.Logger logger, Appender<ILoggingEvent> appender) {
+        AsyncAppender asyncAppender = new AsyncAppender();
+        asyncAppender.setContext(context);
+        asyncAppender.setName("ASYNC-" + appender.getName()); //NOI18N
+        asyncAppender.setQueueSize(queueSize);
+        // The caller data (file, line) is expensive to get and it's not part of the patterns
+        asyncAppender.setIncludeCallerData(false);
+        if (QUEUE_FULL_DROP.equals(queueFullPolicy))
+            asyncAppender.setNeverBlock(true); // The default discarding threshold drops the messages below WARN when the queue is 80% full
+        else
+            asyncAppender.setDiscardingThreshold(0);
+        asyncAppender.addAppender(appender);
+        asyncAppender.start();
+        asyncChannels.add(new AsyncChannel(logger, asyncAppender, appender));
+        return asyncAppender;
+    }
+    
+    private boolean isAsynchronous() {
+        return MODE_ASYNCHRONOUS.equals(mode);
+    }
+    
     private boolean isValidFileSize(String maxFileSize) {
         String regex = "^[0-9]+[kKmMgG][bB]$";
         
@@ -209,18 +343,51 @@ public class LoggingServiceImpl implements LoggingService {
         }
     }
     
+    /**
+    * Checks if a level is enabled for a logger.
+    */
+    private boolean isEnabled(LoggerType type, Logger logger) {
+        switch (type) {
+            case WARN:
+                return logger.isWarnEnabled();
+            case DEBUG:
+                return logger.isDebugEnabled();
+            case ERROR:
+                return logger.isErrorEnabled();
+            case INFO:
+                return logger.isInfoEnabled();
+            case TRACE:
+                return logger.isTraceEnabled();
+            default:
+                throw new AssertionError();
+        }
+    }
+    
     /**
      * Sets the Logger to use.
      * If not found, create a new one.
     */
     private Logger getLogger(Class source) {
-        if(loggers.containsKey(source.getName()))
-            return loggers.get(source.getName());
-        org.slf4j.Logger newLogger = LoggerFactory.getLogger(source.getName());
-        loggers.put(source.getName(), newLogger);
-        return newLogger;
+        Logger logger = loggers.get(source.getName());
+        if (logger != null)
+            return logger;
+        return loggers.computeIfAbsent(source.getName(), LoggerFactory::getLogger);
     }
     
+    /**
+     * An asynchronous appender and the logger and actual appender it was put between.
+     */
+    private static class AsyncChannel {
+        private final ch.qos.logback.classic.Logger logger;
+        private final AsyncAppender asyncAppender;
+        private final Appender<ILoggingEvent> appender;
+
+        private AsyncChannel(ch.qos.logback.classic.Logger logger, AsyncAppender asyncAppender, Appender<ILoggingEvent> appender) {
+            this.logger = logger;
+            this.asyncAppender = asyncAppender;
+            this.appender = appender;
+        }
+    }
 }
 
 
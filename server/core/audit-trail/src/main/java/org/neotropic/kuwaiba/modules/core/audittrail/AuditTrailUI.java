@@ -17,6 +17,7 @@ package org.neotropic.kuwaiba.modules.core.audittrail;
 
 import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.combobox.ComboBox;
+import com.vaadin.flow.component.html.Anchor;
 import com.vaadin.flow.component.html.Label;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
@@ -24,12 +25,15 @@ import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.data.provider.DataProvider;
 import com.vaadin.flow.router.HasDynamicTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.StreamResource;
 import org.neotropic.kuwaiba.core.apis.integration.dashboards.AbstractUI;
 import org.neotropic.kuwaiba.core.apis.integration.modules.actions.ActionCompletedListener;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogEntry;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogPage;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.UserProfile;
 import org.neotropic.kuwaiba.core.apis.persistence.application.UserProfileLight;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.modules.core.audittrail.tools.AuditTrailType;
 import org.neotropic.util.visual.button.ActionButton;
@@ -38,10 +42,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.vaadin.tatu.BeanTable;
 import org.vaadin.tatu.BeanTableVariant;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Main for the Audit Trail module. This class manages how the pages corresponding
@@ -176,7 +188,19 @@ public class AuditTrailUI extends VerticalLayout implements ActionCompletedListe
         });
         btnRefresh.setHeight("32px");
 
-        lytHeader.add(header, btnRefresh);
+        // The file is generated when it's downloaded, with the filters applied at that moment
+        ActionButton btnExport = new ActionButton(new ActionIcon(VaadinIcon.DOWNLOAD),
+                ts.getTranslatedString("module.audit-trail.actions.export"));
+        btnExport.setHeight("32px");
+        Anchor lnkExport = new Anchor(new StreamResource("audit-trail.csv", (stream, session) -> { //NOI18N
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            exportAuditTrail(writer);
+            writer.flush();
+        }), "");
+        lnkExport.getElement().setAttribute("download", true);
+        lnkExport.add(btnExport);
+
+        lytHeader.add(header, btnRefresh, lnkExport);
     }
 
     /**
@@ -335,12 +359,72 @@ public class AuditTrailUI extends VerticalLayout implements ActionCompletedListe
      * @return DataProvider for the audit trail grid.
      */
     private DataProvider<ActivityLogEntry, Void> loadDataProvider() {
+        // The cursor of the page starting at every offset reached so far. Moving to the next page, no matter how 
+        // deep into the log, takes the same time. Jumping to a page not reached yet (e.g. the last one) needs the offset
+        HashMap<Integer, String> cursors = new HashMap<>();
+        cursors.put(0, null);
         return DataProvider.fromFilteringCallbacks(
-            query -> aem.getGeneralActivityAuditTrail(query.getOffset(), query.getLimit(), filters).stream(),
+            query -> {
+                if (query.getLimit() > 0 && cursors.containsKey(query.getOffset())) {
+                    try {
+                        ActivityLogPage page = aem.getGeneralActivityAuditTrailPage(cursors.get(query.getOffset()), query.getLimit(), filters);
+                        if (page.getNextCursor() != null)
+                            cursors.put(query.getOffset() + page.getEntries().size(), page.getNextCursor());
+                        return page.getEntries().stream();
+                    } catch (InvalidArgumentException ex) { } // Not expected, the cursors are the ones returned. Use the offset instead
+                }
+                return aem.getGeneralActivityAuditTrail(query.getOffset(), query.getLimit(), filters).stream();
+            },
             query -> (int) aem.getGeneralActivityAuditTrailCount(query.getOffset(), query.getLimit(), filters)
         );
     }
 
+    /**
+     * Writes the entries matching the current filters as CSV, newest first. The entries are read 
+     * in chunks as they are written, so large logs can be exported.
+     * @param writer Where the entries will be written to. It's not closed.
+     * @throws IOException If the entries could not be written or the filters are not valid.
+     */
+    private void exportAuditTrail(Writer writer) throws IOException {
+        writer.write(toCsvLine(
+                ts.getTranslatedString("module.audit-trail.activity-timestamp"),
+                ts.getTranslatedString("module.audit-trail.activity-type"),
+                ts.getTranslatedString("module.audit-trail.activity-user"),
+                ts.getTranslatedString("module.audit-trail.activity-property"),
+                ts.getTranslatedString("module.audit-trail.activity-oldValue"),
+                ts.getTranslatedString("module.audit-trail.activity-newValue"),
+                ts.getTranslatedString("module.audit-trail.activity-notes")));
+        try {
+            aem.exportGeneralActivityAuditTrail(new HashMap<>(filters), entry -> {
+                try {
+                    writer.write(toCsvLine(
+                            new Date(entry.getTimestamp()).toString(),
+                            types.containsKey(entry.getType()) ? ts.getTranslatedString(types.get(entry.getType())) : String.valueOf(entry.getType()),
+                            entry.getUserName(),
+                            entry.getAffectedProperty(),
+                            entry.getOldValue(),
+                            entry.getNewValue(),
+                            entry.getNotes()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } catch (InvalidArgumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Builds a CSV line. Every value is quoted, so the separators and line breaks in the values are kept.
+     */
+    private static String toCsvLine(String... values) {
+        return Arrays.stream(values)
+                .map(value -> value == null ? "" : "\"" + value.replace("\"", "\"\"") + "\"") //NOI18N
+                .collect(Collectors.joining(",", "", "\r\n")); //NOI18N
+    }
+
     /**
      * Updates the data provider for the audit trail grid.
      */
@@ -20,17 +20,18 @@ import com.vaadin.flow.data.provider.hierarchy.HierarchicalDataProvider;
 import com.vaadin.flow.data.provider.hierarchy.HierarchicalQuery;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
-import org.neotropic.kuwaiba.core.apis.persistence.exceptions.BusinessObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
-import org.neotropic.kuwaiba.core.apis.persistence.exceptions.MetadataObjectNotFoundException;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.modules.core.navigation.navtree.nodes.InventoryObjectNode;
 import org.neotropic.util.visual.notifications.AbstractNotification;
 import org.neotropic.util.visual.notifications.SimpleNotification;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 /**
@@ -38,7 +39,11 @@ import java.util.stream.Stream;
  * @author Mauricio Ruiz Beltrán {@literal <mauricio.ruiz@kuwaiba.org>}
  */
 public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
-    
+    /**
+     * Max number of rows kept. The provider lives in the session of a user, and a tree can be scrolled through
+     * as many objects as the inventory has.
+     */
+    public static final int MAX_ROWS = 10000;
     /**
      * Reference to the Business Entity Manager.
      */
@@ -48,9 +53,10 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
      */
     private final TranslationService ts;
     /**
-     * Saves all the data rows in which the tree has been expanded.
+     * Saves the data rows in which the tree has been expanded, by id, the least recently used first. 
+     * Only the last MAX_ROWS rows used are kept.
      */
-    private final List<InventoryObjectNode> allRowsData;
+    private final LinkedHashMap<String, InventoryObjectNode> allRowsData;
     
     /**
      * Creates a new instance of ObjectChildrenProvider.
@@ -60,7 +66,12 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
     public ObjectChildrenProvider(BusinessEntityManager bem, TranslationService ts) {
         this.bem = bem;
         this.ts = ts;
-        allRowsData = new ArrayList<>();
+        allRowsData = new LinkedHashMap<String, InventoryObjectNode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, InventoryObjectNode> eldest) {
+                return size() > MAX_ROWS;
+            }
+        };
     }
     
     /**
@@ -80,27 +91,31 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
                 try {
                     List<BusinessObjectLight> childrenQuery = new ArrayList<>();
                    
+                        // Only the page the grid asks for is fetched, so large nodes can be expanded. Unlike the unpaged 
+                        // call, the children are sorted by name ignoring the case, and a parent deleted in the meantime 
+                        // has no children instead of raising an error (its count is zero too, so the grid asks for nothing)
                         if (parent != null) {
                             addToRows(parent);
                             childrenQuery = bem.getObjectChildren(parent.getObject().getClassName(),
-                                    parent.getObject().getId(), -1);
+                                    parent.getObject().getId(), null, query.getOffset(), query.getLimit());
                         } else if (includedSelf) {
                             addToRows(rootNode);
                             return Stream.of(rootNode);
                         } else
                             childrenQuery = bem.getObjectChildren(rootNode.getClassName(), 
-                                    rootNode.getId(), null, -1, -1);
+                                    rootNode.getId(), null, query.getOffset(), query.getLimit());
                     
                     for (BusinessObjectLight child : childrenQuery) {
-                        listChildren.add(new InventoryObjectNode(child));
-                        addToRows(new InventoryObjectNode(child));
+                        InventoryObjectNode childNode = new InventoryObjectNode(child);
+                        listChildren.add(childNode);
+                        addToRows(childNode);
                     }
                         
-                } catch (MetadataObjectNotFoundException | BusinessObjectNotFoundException | InvalidArgumentException ex) {
+                } catch (InvalidArgumentException ex) {
                     new SimpleNotification(ts.getTranslatedString("module.general.messages.error"),
                             ex.getMessage(), AbstractNotification.NotificationType.ERROR, ts).open();
                 }
-                return listChildren.stream().skip(query.getOffset()).limit(query.getLimit());
+                return listChildren.stream();
             }
 
             @Override
@@ -139,14 +154,13 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
     }   
 
     /**
-     * Adds a node to the list of all expanded rows.
+     * Adds a node to the list of all expanded rows. If the list is full, the least recently used row is dropped.
      * 
      * @param node The node to add to the list.
      */
     @Override
     public void addToRows(InventoryObjectNode node) {
-        if(!containsNode(node))
-            allRowsData.add(node);
+        allRowsData.putIfAbsent(node.getId(), node);
     }
     
     /**
@@ -156,8 +170,7 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
      */
     @Override
     public void removeFromRows(InventoryObjectNode node) {
-        if(!containsNode(node))
-            allRowsData.remove(node);
+        allRowsData.remove(node.getId());
     }
 
     /**
@@ -167,7 +180,7 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
      */
     @Override
     public List<InventoryObjectNode> getAllDataRows() {
-        return allRowsData == null ? new ArrayList<>() : allRowsData;
+        return new ArrayList<>(allRowsData.values());
     }
 
     /**
@@ -178,7 +191,7 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
      */
     @Override
     public boolean containsNode(InventoryObjectNode node) {
-        return allRowsData.stream().anyMatch(childNode -> childNode.equals(node));
+        return node != null && allRowsData.containsKey(node.getId());
     }
 
     /**
@@ -190,9 +203,7 @@ public class ObjectChildrenProvider extends InventoryObjectNodeTreeProvider {
     @Override
     public InventoryObjectNode getNodeById(String nodeId) {
         try {
-            return allRowsData.stream()
-                    .filter(n -> n.getId().equals(nodeId))
-                    .findFirst().get();
+            return Optional.ofNullable(allRowsData.get(nodeId)).get();
         } catch (NoSuchElementException ex) {
             new SimpleNotification(ts.getTranslatedString("module.general.messages.error"),
                     ex.getMessage(), AbstractNotification.NotificationType.ERROR, ts).open();
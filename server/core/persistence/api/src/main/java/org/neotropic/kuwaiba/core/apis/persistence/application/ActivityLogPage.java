@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.application;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of activity log entries, and the cursor to get the page that follows it
+ */
+public class ActivityLogPage implements Serializable {
+    /**
+     * Filter by user name (a String)
+     */
+    public static final String FILTER_USER = "user"; //NOI18N
+    /**
+     * Filter by activity type (an integer, see the ActivityLogEntry.ACTIVITY_TYPE_* constants)
+     */
+    public static final String FILTER_TYPE = "type"; //NOI18N
+    /**
+     * Filter by the id of the affected object
+     */
+    public static final String FILTER_OBJECT = "objectId"; //NOI18N
+    /**
+     * Entries created at or after this time (a timestamp or a Date)
+     */
+    public static final String FILTER_FROM = "from"; //NOI18N
+    /**
+     * Entries created at or before this time (a timestamp or a Date)
+     */
+    public static final String FILTER_TO = "to"; //NOI18N
+    /**
+     * The entries, newest first
+     */
+    private List<ActivityLogEntry> entries;
+    /**
+     * Cursor to get the next page, null if this is the last one
+     */
+    private String nextCursor;
+
+    public ActivityLogPage(List<ActivityLogEntry> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<ActivityLogEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<ActivityLogEntry> entries) {
+        this.entries = entries;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -46,6 +46,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * This is the entity in charge of manipulating application objects such as users, views, etc
@@ -854,6 +855,31 @@ public interface ApplicationEntityManager extends AbstractEntityManager {
      */
     public List<ActivityLogEntry> getGeneralActivityAuditTrail(int page, int limit, HashMap<String, Object> filters);
     
+    /**
+     * Retrieves a page of general activity log entries, newest first. Unlike {@link #getGeneralActivityAuditTrail(int, int, java.util.HashMap)}, 
+     * the pages are not addressed by offset, but by the position of the last entry of the previous page, so getting a page takes 
+     * the same time no matter how deep into the log it is, and the entries added in the meantime don't shift the pages
+     * @param cursor The cursor returned with the previous page. Null to get the first page
+     * @param limit Max number of entries in the page
+     * @param filters The response may be filtered by user, event type, affected object and time range (see the ActivityLogPage.FILTER_XXXX 
+     * constants for the keys and values). If this parameter is null, no filters will be applied. If several are present, a logical AND will be applied
+     * @return The entries and the cursor of the next page (null if this is the last page)
+     * @throws InvalidArgumentException If the cursor or the time range are not valid or the limit is not a positive number
+     */
+    public ActivityLogPage getGeneralActivityAuditTrailPage(String cursor, int limit, HashMap<String, Object> filters) 
+            throws InvalidArgumentException;
+    
+    /**
+     * Streams the general activity log entries, newest first, e.g. to export them. The entries are read in chunks, 
+     * so the whole log is never held in memory
+     * @param filters The filters. See {@link #getGeneralActivityAuditTrailPage(java.lang.String, int, java.util.HashMap)}
+     * @param consumer Receives the entries, one at a time
+     * @return The number of entries exported
+     * @throws InvalidArgumentException If the time range is not valid
+     */
+    public long exportGeneralActivityAuditTrail(HashMap<String, Object> filters, Consumer<ActivityLogEntry> consumer) 
+            throws InvalidArgumentException;
+    
     /**
      * Validates if a user is allowed to call a given a northbound interface method
      * @param methodName The method to check if the user is allowed to call it.
@@ -939,7 +965,7 @@ public interface ApplicationEntityManager extends AbstractEntityManager {
      * @param notes Additional notes associated with the change
      * @throws ApplicationObjectNotFoundException If the object activity log could no be found
      * @throws BusinessObjectNotFoundException  If the modified object itself could not be found
-     * @return The id of the object activity log entry
+     * @return The id of the object activity log entry, or -1 if the implementation has been configured to write the log entries asynchronously (opt-in)
      */
     public long createObjectActivityLogEntry(String userName, String className, String oid, int type, 
         String affectedProperties, String oldValues, String newValues, String notes) throws ApplicationObjectNotFoundException, BusinessObjectNotFoundException;
@@ -2058,6 +2084,15 @@ public interface ApplicationEntityManager extends AbstractEntityManager {
      * @throws InvalidArgumentException If the scripted query id is null or empty.
      */
     public ScriptedQueryResult executeScriptedQuery(String scriptedQueryId, ScriptedQueryParameter... parameters) throws InvalidArgumentException, ApplicationObjectNotFoundException, ExecutionException;
+    /**
+     * Runs a Groovy script that is not stored in the database, such as the functions and validators of the process forms. 
+     * The script is compiled the first time it's run and the compiled version is reused while the source doesn't change.
+     * @param script The source of the script.
+     * @param parentClassLoader The class loader used to find the classes referenced by the script.
+     * @param variables The variables the script will have access to.
+     * @return The value returned by the script.
+     */
+    public Object runScript(String script, ClassLoader parentClassLoader, HashMap<String, Object> variables);
     /**
      * Creates a scripted query parameter.
      * @param scriptedQueryId The scripted query id.
@@ -61,12 +61,17 @@ public class Session implements Serializable {
      * Session token
      */
     private String token;
+    /**
+     * Last time the session was used, in milliseconds since the epoch
+     */
+    private volatile long lastAccessTime;
 
     public Session(UserProfile user, int sessionType) {
         this.user = user;
         this.loginTime = Calendar.getInstance().getTime();
         this.token = generateSessionToken();
         this.sessionType = sessionType;
+        this.lastAccessTime = loginTime.getTime();
     }
 
     public Date getLoginTime() {
@@ -93,6 +98,14 @@ public class Session implements Serializable {
         this.user = user;
     }
 
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public void setLastAccessTime(long lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+    }
+
     public int getSessionType() {
         return sessionType;
     }
@@ -16,6 +16,8 @@
 
 package org.neotropic.kuwaiba.core.apis.persistence.application;
 
+import java.util.HashMap;
+import java.util.List;
 import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
@@ -134,4 +136,25 @@ public class ValidatorDefinition implements Comparable<ValidatorDefinition> {
             MetadataEntityManager mem, BusinessEntityManager bem, ApplicationEntityManager aem) {
         return null; //The default implemention
     }
+    
+    /**
+     * Evaluates the condition for several objects of the same class at once, e.g. all the children of an object. 
+     * Validator definition scripts that can check all the objects with a single query should override this method. 
+     * The default implementation calls {@link #run(java.lang.String, java.lang.String, org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager, org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager, org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager, org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager)} 
+     * once per object.
+     * @param objectClass The class of the objects to be evaluated.
+     * @param objectIds The ids of the objects to be evaluated.
+     * @param cm Reference to the connection manager. Mainly useful to run raw queries in the database.
+     * @param mem Reference to the Metadata Entity Manager.
+     * @param bem Reference to the Business Entity Manager.
+     * @param aem Reference to the Application Entity Manager.
+     * @return The validator of every object, the key is the object id. Objects with no validator can be left out.
+     */
+    public HashMap<String, Validator> run(String objectClass, List<String> objectIds, ConnectionManager cm, 
+            MetadataEntityManager mem, BusinessEntityManager bem, ApplicationEntityManager aem) {
+        HashMap<String, Validator> validators = new HashMap<>();
+        for (String objectId : objectIds)
+            validators.put(objectId, run(objectClass, objectId, cm, mem, bem, aem));
+        return validators;
+    }
 }
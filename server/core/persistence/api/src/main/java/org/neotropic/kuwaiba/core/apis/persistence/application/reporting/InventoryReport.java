@@ -15,6 +15,9 @@
  */
 package org.neotropic.kuwaiba.core.apis.persistence.application.reporting;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * All report types must inherit from this abstract class. It describes the general behavior of a report. 
  * Do not mistake this class for {@link ReportMetadata}: Instances of this class represent the reports after being generated, 
@@ -70,4 +73,14 @@ public abstract class InventoryReport {
      * @return 
      */
     public abstract byte[] asByteArray();
+    
+    /**
+     * Writes the result of the report to a stream. By default, it writes the result of {@link #asByteArray()}. 
+     * Report types that can be generated piece by piece should override it, so large reports are not held in memory as a whole.
+     * @param out The stream. It is not closed
+     * @throws IOException If the stream can not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(asByteArray());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.application.reporting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The result of a report submitted to be generated in the background. The methods that read the result wait
+ * until the report is finished, so they are meant to be called from the thread that serves the download, not from the UI one.
+ * If the report fails, the result is a page with the error message, as it has always been.
+ */
+public interface ReportResult {
+    /**
+     * Gets the id of the execution of the report.
+     * @return The id.
+     */
+    public String getId();
+
+    /**
+     * Checks if the report has finished, whether it succeeded, failed or was cancelled.
+     * @return True if the result will not change anymore.
+     */
+    public boolean isDone();
+
+    /**
+     * Waits until the report is finished and opens its result.
+     * @return A stream to read the result. The caller must close it.
+     * @throws IOException If the report was cancelled, the wait was interrupted or the result could not be read.
+     */
+    public InputStream openStream() throws IOException;
+
+    /**
+     * Waits until the report is finished and copies its result to a stream.
+     * @param out The stream. It is not closed.
+     * @throws IOException If the report was cancelled, the wait was interrupted or the result could not be read.
+     */
+    public void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Waits until the report is finished and reads its whole result. Use {@link #openStream()} for large reports.
+     * @return The result.
+     * @throws IOException If the report was cancelled, the wait was interrupted or the result could not be read.
+     */
+    public byte[] asByteArray() throws IOException;
+
+    /**
+     * Cancels the report. If it's being generated already, the script may not stop right away.
+     * @return False if the report had already finished.
+     */
+    public boolean cancel();
+
+    /**
+     * Builds the page shown instead of the result of a report that could not be generated.
+     * @param message The error message.
+     * @return The page as UTF-8 bytes.
+     */
+    public static byte[] getErrorPage(String message) {
+        return ("<html><head><title>Error</title></head><body><center>" + message + "</center></body></html>").getBytes(StandardCharsets.UTF_8); //NOI18N
+    }
+}
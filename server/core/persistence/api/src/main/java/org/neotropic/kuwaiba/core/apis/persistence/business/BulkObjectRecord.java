@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.business;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * An object to be created by {@link BusinessEntityManager#createBulkObjects(java.util.stream.Stream)}
+ */
+public class BulkObjectRecord implements Serializable {
+    private final String className;
+    private final String parentClassName;
+    /**
+     * The id of the parent, -1 to create the object under the root of the navigation tree
+     */
+    private final String parentOid;
+    /**
+     * The name of the new object. If null, the name is taken from the attributes or the template
+     */
+    private final String name;
+    /**
+     * The initial attributes. Ignored if a template is provided
+     */
+    private final HashMap<String, String> attributes;
+    /**
+     * The template the object will be created from, null or empty for none
+     */
+    private final String templateId;
+    /**
+     * If the object is created as a special child of its parent
+     */
+    private final boolean special;
+
+    public BulkObjectRecord(String className, String parentClassName, String parentOid, String name, 
+            HashMap<String, String> attributes, String templateId, boolean special) {
+        this.className = className;
+        this.parentClassName = parentClassName;
+        this.parentOid = parentOid;
+        this.name = name;
+        this.attributes = attributes;
+        this.templateId = templateId;
+        this.special = special;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getParentClassName() {
+        return parentClassName;
+    }
+
+    public String getParentOid() {
+        return parentOid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HashMap<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public boolean isSpecial() {
+        return special;
+    }
+}
@@ -21,6 +21,7 @@ import org.neotropic.kuwaiba.core.apis.persistence.application.FileObjectLight;
 import org.neotropic.kuwaiba.core.apis.persistence.application.InventoryObjectPool;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadata;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadataLight;
+import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportResult;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ApplicationObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.BusinessObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
@@ -30,6 +31,7 @@ import org.neotropic.kuwaiba.core.apis.persistence.util.StringPair;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 import org.neotropic.kuwaiba.core.apis.persistence.AbstractEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.FileObject;
 
@@ -188,6 +190,20 @@ public interface BusinessEntityManager extends AbstractEntityManager {
      */
     public String[] createBulkSpecialObjects(String className, String parentClassName, String parentId, String namePattern, String templateId) 
         throws MetadataObjectNotFoundException, BusinessObjectNotFoundException, OperationNotPermittedException, InvalidArgumentException, ApplicationObjectNotFoundException;
+    /**
+     * Creates a potentially large number of objects, like the ones read from an import file. Meant for imports that 
+     * can not be held in memory at once, so the implementations are not required to be atomic: the objects may be 
+     * committed in chunks, in which case a failed record leaves the objects of the previous chunks in the database.
+     * @param records The objects to be created
+     * @return The ids of the new objects, in the same order as the records
+     * @throws MetadataObjectNotFoundException If the class of an object or its parent can not be found
+     * @throws OperationNotPermittedException If the class is abstract, marked as inDesign, it's not an inventory class or the containment is not allowed
+     * @throws BusinessObjectNotFoundException If a parent object can not be found
+     * @throws InvalidArgumentException If a parent id is null, a template is malformed or not applicable to the class of the object, or the attributes are not valid
+     * @throws ApplicationObjectNotFoundException If a template can not be found
+     */
+    public List<String> createBulkObjects(Stream<BulkObjectRecord> records) 
+        throws MetadataObjectNotFoundException, OperationNotPermittedException, BusinessObjectNotFoundException, InvalidArgumentException, ApplicationObjectNotFoundException;
     
     /**
      * Gets the detailed information about an object
@@ -409,6 +425,16 @@ public interface BusinessEntityManager extends AbstractEntityManager {
     public List<BusinessObjectLight> getParents(String objectClassName, String oid)
         throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, InvalidArgumentException;
     
+    /**
+     * Retrieves the parents of a set of objects in one call, e.g. to show the location of every port in a list. 
+     * The ancestors shared by the objects are fetched only once
+     * @param oids The ids of the objects. The class is not needed
+     * @return A map with the object ids as keys and their parents (as returned by {@link #getParents(java.lang.String, java.lang.String)}) as values. 
+     * The objects that could not be found have an empty list of parents
+     * @throws InvalidArgumentException If the list of ids is null
+     */
+    public HashMap<String, List<BusinessObjectLight>> getParentsOfObjects(List<String> oids) throws InvalidArgumentException;
+    
     /**
      * Gets the list of parents (according to the special and standard containment hierarchy) until it finds an instance of class 
      * objectToMatchClassName (for example "give me the parents of this port until you find the nearest rack")
@@ -926,17 +952,31 @@ public interface BusinessEntityManager extends AbstractEntityManager {
             throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, InvalidArgumentException;
     
     /**
-     * Finds all possible routes between two given inventory objects
+     * Finds the shortest routes (in number of hops) between two given inventory objects, as many as the maxRoutes configuration variable says
      * @param objectAClassName Inventory object A class name
      * @param objectAId  Inventory object A id
      * @param objectBClassName  Inventory object B class name
      * @param objectBId  Inventory object B id
      * @param relationshipName The name of the relationship used to navigate through nodes and find the route
-     * @return A list of the routes, including only the nodes as RemoteBusinessObjectLights
+     * @return A list of the routes, shortest first, including only the nodes as RemoteBusinessObjectLights
      * @throws InvalidArgumentException If any of the inventory objects does not have uuid
      */
     public List<BusinessObjectLightList> findRoutesThroughSpecialRelationships (String objectAClassName, String objectAId, String objectBClassName, String objectBId, String relationshipName) throws InvalidArgumentException;
     
+    /**
+     * Finds the cheapest loopless routes between two given inventory objects, according to a cost model and some constraints
+     * @param objectAClassName Inventory object A class name
+     * @param objectAId  Inventory object A id
+     * @param objectBClassName  Inventory object B class name
+     * @param objectBId  Inventory object B id
+     * @param relationshipName The name of the relationship used to navigate through nodes and find the route
+     * @param constraints The max number of routes and hops, the cost model and the objects to be included or excluded
+     * @return A list of the routes, cheapest first, including only the nodes as RemoteBusinessObjectLights
+     * @throws InvalidArgumentException If any of the inventory objects does not have uuid, or the constraints are not valid
+     */
+    public List<BusinessObjectLightList> findRoutesThroughSpecialRelationships (String objectAClassName, String objectAId, String objectBClassName, 
+            String objectBId, String relationshipName, RouteConstraints constraints) throws InvalidArgumentException;
+    
     //Attachments management
     /**
      * Relates a file to an inventory object
@@ -1342,6 +1382,35 @@ public interface BusinessEntityManager extends AbstractEntityManager {
      */
     public byte[] executeInventoryLevelReport(long reportId, List<StringPair> parameters)
             throws ApplicationObjectNotFoundException, InvalidArgumentException;
+    
+    /**
+     * Submits a class level report to be generated in the background and returns right away. The result can be 
+     * streamed once the report finishes (see {@link ReportResult#openStream()}). If the same report was run recently 
+     * for the same object, its result may be reused.
+     * @param objectClassName The class of the instance that will be used as input for the report.
+     * @param objectId The id of the instance that will be used as input for the report.
+     * @param reportId The id of the report.
+     * @return The handle to the result of the report.
+     * @throws MetadataObjectNotFoundException If the class could not be found.
+     * @throws ApplicationObjectNotFoundException If the report could not be found.
+     * @throws BusinessObjectNotFoundException If the inventory object could not be found.
+     * @throws InvalidArgumentException If there are too many reports waiting to be generated.
+     */
+    public ReportResult submitClassLevelReport(String objectClassName, String objectId, long reportId) 
+            throws MetadataObjectNotFoundException, ApplicationObjectNotFoundException, BusinessObjectNotFoundException, InvalidArgumentException;
+    
+    /**
+     * Submits an inventory level report to be generated in the background and returns right away. The result can be 
+     * streamed once the report finishes (see {@link ReportResult#openStream()}). If the same report was run recently 
+     * with the same parameters, its result may be reused.
+     * @param reportId The id of the report.
+     * @param parameters List of pairs param name - param value.
+     * @return The handle to the result of the report.
+     * @throws ApplicationObjectNotFoundException If the report could not be found.
+     * @throws InvalidArgumentException If there are too many reports waiting to be generated.
+     */
+    public ReportResult submitInventoryLevelReport(long reportId, List<StringPair> parameters)
+            throws ApplicationObjectNotFoundException, InvalidArgumentException;
     //</editor-fold>
     
     //<editor-fold desc="Warehouse" defaultstate="collapsed">
@@ -1390,13 +1459,15 @@ public interface BusinessEntityManager extends AbstractEntityManager {
     public long getObjectChildrenCount(String className, String oid, HashMap <String, String> filters) throws InvalidArgumentException;
     
     /**
-     * Get a set of children to the given the parent class name and id.
+     * Get a set of children to the given the parent class name and id. The children are sorted by name ignoring 
+     * the case, so the pages are stable. Unlike the unpaged versions, a parent that doesn't exist is not an error, 
+     * it has no children.
      * @param className Parent class name
      * @param oid Parent id
      * @param filters null for no filter, map of filters key: attribute name, value: attribute value
      * @param skip Skip index
      * @param limit Max count of child
-     * @return Set of children
+     * @return Set of children, empty if the parent doesn't exist
      * @throws InvalidArgumentException If the class name is null
      */
     public List<BusinessObjectLight> getObjectChildren(String className, String oid, HashMap <String, String> filters, long skip, long limit) throws InvalidArgumentException;
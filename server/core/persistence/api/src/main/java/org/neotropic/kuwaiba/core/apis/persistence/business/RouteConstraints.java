@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.business;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The constraints and the cost model of a route search through special relationships.
+ * The cost of a route is the sum of the costs of the objects it goes through, except the first one. Since the links of
+ * the domain specific models (like the transport and container links of SDH) are objects in the route too, their
+ * length, capacity or utilization can be used as costs by naming the corresponding attribute.
+ */
+public class RouteConstraints implements Serializable {
+    /**
+     * How the cost of the objects in a route is calculated
+     */
+    public enum CostType {
+        /**
+         * Every object costs 1, so the routes with fewer hops come first
+         */
+        HOPS,
+        /**
+         * The cost is the value of a numeric attribute, e.g. a length or a utilization
+         */
+        ATTRIBUTE,
+        /**
+         * The cost is the inverse of the value of a numeric attribute, e.g. a capacity, so the objects with the largest values come first
+         */
+        INVERSE_ATTRIBUTE
+    }
+    /**
+     * Default max number of hops in a route
+     */
+    public static final int DEFAULT_MAX_HOPS = 30;
+    /**
+     * Max number of routes to be returned
+     */
+    private int maxRoutes;
+    /**
+     * Max number of relationships traversed by a route
+     */
+    private int maxHops = DEFAULT_MAX_HOPS;
+    private CostType costType = CostType.HOPS;
+    /**
+     * The attribute used as cost if the cost type is not HOPS
+     */
+    private String costAttribute;
+    /**
+     * The cost of the objects whose cost attribute is not set or is not a positive number
+     */
+    private double defaultCost = 1;
+    /**
+     * Ids of the objects every route must go through
+     */
+    private Set<String> includedObjects = new HashSet<>();
+    /**
+     * Ids of the objects no route can go through
+     */
+    private Set<String> excludedObjects = new HashSet<>();
+
+    /**
+     * @param maxRoutes Max number of routes to be returned
+     */
+    public RouteConstraints(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+    }
+
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    public void setMaxRoutes(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+    }
+
+    public int getMaxHops() {
+        return maxHops;
+    }
+
+    public void setMaxHops(int maxHops) {
+        this.maxHops = maxHops;
+    }
+
+    public CostType getCostType() {
+        return costType;
+    }
+
+    public String getCostAttribute() {
+        return costAttribute;
+    }
+
+    /**
+     * Sets how the cost of the objects in a route is calculated
+     * @param costType The cost type
+     * @param costAttribute The attribute used as cost. Ignored if the cost type is HOPS
+     */
+    public void setCost(CostType costType, String costAttribute) {
+        this.costType = costType;
+        this.costAttribute = costAttribute;
+    }
+
+    public double getDefaultCost() {
+        return defaultCost;
+    }
+
+    public void setDefaultCost(double defaultCost) {
+        this.defaultCost = defaultCost;
+    }
+
+    public Set<String> getIncludedObjects() {
+        return includedObjects;
+    }
+
+    public void setIncludedObjects(Set<String> includedObjects) {
+        this.includedObjects = includedObjects;
+    }
+
+    public Set<String> getExcludedObjects() {
+        return excludedObjects;
+    }
+
+    public void setExcludedObjects(Set<String> excludedObjects) {
+        this.excludedObjects = excludedObjects;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.events;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A committed change to the inventory, as seen by the database. The events are derived from what the transaction
+ * actually wrote, so they describe the changes made through any of the entity managers, scripts or queries alike.
+ * Which fields are set depends on the type of the event.
+ */
+public class ChangeEvent {
+    /**
+     * The types of change
+     */
+    public enum Type {
+        /**
+         * An inventory object was created. The class name and the object id are set
+         */
+        OBJECT_CREATED,
+        /**
+         * Attributes of an inventory object changed. The class name, the object id and the attributes are set.
+         * The list type attributes are reported too
+         */
+        OBJECT_UPDATED,
+        /**
+         * An inventory object was deleted. The class name (if known) and the object id are set
+         */
+        OBJECT_DELETED,
+        /**
+         * An existing inventory object got a new parent. The class name and the object id are set, and the
+         * related object is the new parent, if it's an inventory object (it's not set if it's the navigation tree root or a pool)
+         */
+        OBJECT_MOVED,
+        /**
+         * A special relationship was created. The object is the start of the relationship, the related object the end,
+         * and the relationship name is set
+         */
+        SPECIAL_RELATIONSHIP_ADDED,
+        /**
+         * A special relationship was released. Same fields as {@link #SPECIAL_RELATIONSHIP_ADDED}
+         */
+        SPECIAL_RELATIONSHIP_RELEASED,
+        /**
+         * The metadata of a class changed (the class itself, its attributes, its hierarchy or its containment rules).
+         * Only the class name is set
+         */
+        CLASS_CHANGED,
+        /**
+         * Some events were not delivered to the subscriber because its queue was full. Whatever was derived
+         * from the events must be refreshed. No other fields are set
+         */
+        EVENTS_LOST
+    }
+
+    private final Type type;
+    private final String className;
+    private final String objectId;
+    private final Set<String> attributes;
+    private final String relatedClassName;
+    private final String relatedObjectId;
+    private final String relationshipName;
+    private final long transactionId;
+    private final long commitTime;
+
+    public ChangeEvent(Type type, String className, String objectId, Set<String> attributes,
+            String relatedClassName, String relatedObjectId, String relationshipName) {
+        this.type = type;
+        this.className = className;
+        this.objectId = objectId;
+        this.attributes = attributes == null ? Collections.emptySet() : Collections.unmodifiableSet(attributes);
+        this.relatedClassName = relatedClassName;
+        this.relatedObjectId = relatedObjectId;
+        this.relationshipName = relationshipName;
+        this.transactionId = 0;
+        this.commitTime = 0;
+    }
+
+    public ChangeEvent(Type type, String className, String objectId) {
+        this(type, className, objectId, null, null, null, null);
+    }
+
+    /**
+     * Copies an event and sets the transaction it belongs to, which is known only once the transaction has committed
+     * @param event The event
+     * @param transactionId The id of the transaction
+     * @param commitTime When it was committed
+     */
+    public ChangeEvent(ChangeEvent event, long transactionId, long commitTime) {
+        this.type = event.type;
+        this.className = event.className;
+        this.objectId = event.objectId;
+        this.attributes = event.attributes;
+        this.relatedClassName = event.relatedClassName;
+        this.relatedObjectId = event.relatedObjectId;
+        this.relationshipName = event.relationshipName;
+        this.transactionId = transactionId;
+        this.commitTime = commitTime;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+    /**
+     * @return The names of the attributes that changed. Empty if the event is not an update
+     */
+    public Set<String> getAttributes() {
+        return attributes;
+    }
+
+    public String getRelatedClassName() {
+        return relatedClassName;
+    }
+
+    public String getRelatedObjectId() {
+        return relatedObjectId;
+    }
+
+    public String getRelationshipName() {
+        return relationshipName;
+    }
+
+    /**
+     * @return The id of the transaction that made the change. All the events of a transaction share it, and it grows with every commit
+     */
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * @return When the transaction was committed, in milliseconds since the epoch
+     */
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(type.toString());
+        if (className != null || objectId != null)
+            builder.append(" ").append(className).append(" ").append(objectId); //NOI18N
+        if (!attributes.isEmpty())
+            builder.append(" ").append(attributes); //NOI18N
+        if (relationshipName != null)
+            builder.append(" ").append(relationshipName); //NOI18N
+        if (relatedClassName != null || relatedObjectId != null)
+            builder.append(" -> ").append(relatedClassName).append(" ").append(relatedObjectId); //NOI18N
+        return builder.toString();
+    }
+}
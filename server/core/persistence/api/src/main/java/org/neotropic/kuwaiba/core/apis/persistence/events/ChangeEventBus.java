@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.events;
+
+/**
+ * Publishes the changes committed to the inventory to the interested parties (caches, views, the synchronization
+ * framework, etc), so they can refresh only what changed instead of querying again or polling.
+ * Every subscriber has its own bounded queue: when a subscriber can't keep up and its queue fills up, the
+ * transactions that don't fit are not delivered. In their place, once the transactions queued before them have been 
+ * delivered, the subscriber gets a single {@link ChangeEvent.Type#EVENTS_LOST} event, so it knows it has to refresh everything. The transactions that change the inventory never
+ * wait for the subscribers.
+ */
+public interface ChangeEventBus {
+    /**
+     * Subscribes a listener with the default queue size
+     * @param name A name for the subscriber, used in the logs and the metrics
+     * @param listener The listener
+     * @return The subscription. Close it to unsubscribe
+     */
+    public ChangeSubscription subscribe(String name, ChangeEventListener listener);
+    /**
+     * Subscribes a listener
+     * @param name A name for the subscriber, used in the logs and the metrics
+     * @param listener The listener
+     * @param queueSize Max number of transactions waiting to be delivered to the listener
+     * @return The subscription. Close it to unsubscribe
+     * @throws IllegalArgumentException If the queue size is not positive
+     */
+    public ChangeSubscription subscribe(String name, ChangeEventListener listener, int queueSize);
+}
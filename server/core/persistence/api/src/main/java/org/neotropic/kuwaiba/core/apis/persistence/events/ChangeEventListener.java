@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.events;
+
+import java.util.List;
+
+/**
+ * Receives the changes committed to the inventory. See {@link ChangeEventBus}
+ */
+@FunctionalInterface
+public interface ChangeEventListener {
+    /**
+     * Called once per committed transaction that changed the inventory, in a thread of the bus, never
+     * in the thread that made the change. The calls to a listener are never concurrent, and they come
+     * in the order the transactions were published. A slow listener only delays itself
+     * @param events The changes made by the transaction
+     */
+    public void onChanges(List<ChangeEvent> events);
+}
@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.apis.persistence.events;
+
+/**
+ * A listener subscribed to a {@link ChangeEventBus}. Closing it unsubscribes the listener
+ */
+public interface ChangeSubscription extends AutoCloseable {
+    /**
+     * @return The name the listener was subscribed with
+     */
+    public String getName();
+    /**
+     * @return Number of transactions waiting to be delivered to the listener
+     */
+    public int getPendingTransactions();
+    /**
+     * @return Number of transactions not delivered to the listener because its queue was full
+     */
+    public long getLostTransactions();
+    /**
+     * Unsubscribes the listener. The transactions still queued are discarded
+     */
+    @Override
+    public void close();
+}
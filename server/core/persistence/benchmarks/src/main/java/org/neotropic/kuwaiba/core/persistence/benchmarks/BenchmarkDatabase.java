@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ConnectionException;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.ConnectionManagerImpl;
+
+/**
+ * An embedded database created in a temporary directory that is wiped out when closed.
+ * The benchmarks use it the same way the application does, through a {@link ConnectionManagerImpl}.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    /**
+     * The temporary directory the database lives in.
+     */
+    private final Path dbPath;
+    /**
+     * The connection manager.
+     */
+    private final ConnectionManagerImpl connectionManager;
+
+    public BenchmarkDatabase() throws IOException, ConnectionException {
+        dbPath = Files.createTempDirectory("kuwaiba-benchmark"); //NOI18N
+        Properties configuration = new Properties();
+        configuration.put("dbPath", dbPath.toString()); //NOI18N
+        configuration.put("dbHost", "localhost"); //NOI18N
+        configuration.put("dbPort", getFreePort()); //NOI18N
+        connectionManager = new ConnectionManagerImpl();
+        connectionManager.setConfiguration(configuration);
+        connectionManager.openConnection();
+    }
+
+    public ConnectionManagerImpl getConnectionManager() {
+        return connectionManager;
+    }
+
+    public GraphDatabaseService getGraphDb() {
+        return connectionManager.getConnectionHandler();
+    }
+
+    @Override
+    public void close() throws IOException {
+        connectionManager.closeConnection();
+        deleteDirectory(dbPath);
+    }
+
+    /**
+     * Deletes a directory and its contents.
+     * @param directory The directory.
+     * @throws IOException If the directory could not be read.
+     */
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Finds a free port for the Bolt connector, so several forks can run at the same time.
+     * @return A port number.
+     * @throws IOException If no port could be allocated.
+     */
+    static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
+import org.neotropic.kuwaiba.core.persistence.PersistenceService;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectGraphMappingService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * The persistence service, with its entity managers, running on an embedded database created in a
+ * temporary directory that is wiped out when closed. The services are wired by Spring the same way
+ * they are in the application, and the connection is opened by the {@link PersistenceService}
+ * through the ConnectionManagerImpl.
+ */
+public class BenchmarkPersistence implements AutoCloseable {
+    /**
+     * The packages of the services the persistence service depends on.
+     */
+    private static final String[] PACKAGES = {
+        "org.neotropic.kuwaiba.core.persistence", //NOI18N
+        "org.neotropic.kuwaiba.core.i18n", //NOI18N
+        "org.neotropic.kuwaiba.core.notifications", //NOI18N
+        "org.neotropic.kuwaiba.modules.core.logging" //NOI18N
+    };
+    /**
+     * The temporary directory the database and the attachments live in.
+     */
+    private final Path dataPath;
+    /**
+     * The Spring context with the persistence services.
+     */
+    private final AnnotationConfigApplicationContext context;
+    /**
+     * The persistence service.
+     */
+    private final PersistenceService persistenceService;
+
+    public BenchmarkPersistence() throws IOException {
+        dataPath = Files.createTempDirectory("kuwaiba-benchmark"); //NOI18N
+        // The connection manager expects the database directory to exist
+        Files.createDirectories(dataPath.resolve("db")); //NOI18N
+        context = new AnnotationConfigApplicationContext(PACKAGES);
+        persistenceService = context.getBean(PersistenceService.class);
+
+        Properties generalProperties = new Properties();
+        generalProperties.put("enableSecurityManager", false); //NOI18N
+        // The benchmarks measure the operations, not the log
+        generalProperties.put("slowOperationThreshold", "0"); //NOI18N
+        persistenceService.setGeneralProperties(generalProperties);
+
+        Properties connectionProperties = new Properties();
+        connectionProperties.put("dbPath", dataPath.resolve("db").toString()); //NOI18N
+        connectionProperties.put("dbHost", "localhost"); //NOI18N
+        connectionProperties.put("dbPort", BenchmarkDatabase.getFreePort()); //NOI18N
+        persistenceService.setConnectionProperties(connectionProperties);
+
+        persistenceService.setMetadataProperties(new Properties());
+
+        Properties applicationProperties = new Properties();
+        applicationProperties.put("enforceBusinessRules", "false"); //NOI18N
+        applicationProperties.put("maxRoutes", "10"); //NOI18N
+        applicationProperties.put("backgroundsPath", dataPath.resolve("backgrounds").toString()); //NOI18N
+        persistenceService.setApplicationProperties(applicationProperties);
+
+        Properties businessProperties = new Properties();
+        businessProperties.put("attachmentsPath", dataPath.resolve("attachments").toString()); //NOI18N
+        businessProperties.put("maxAttachmentSize", "10"); //NOI18N
+        persistenceService.setBusinessProperties(businessProperties);
+
+        persistenceService.start();
+        if (persistenceService.getState() != PersistenceService.EXECUTION_STATE.RUNNING) {
+            close();
+            throw new IllegalStateException("The persistence service could not be started. Check the log for details");
+        }
+    }
+
+    public MetadataEntityManager getMem() {
+        return persistenceService.getMem();
+    }
+
+    public ApplicationEntityManager getAem() {
+        return persistenceService.getAem();
+    }
+
+    public BusinessEntityManager getBem() {
+        return persistenceService.getBem();
+    }
+
+    public ObjectGraphMappingService getOgmService() {
+        return context.getBean(ObjectGraphMappingService.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public GraphDatabaseService getGraphDb() {
+        return ((ConnectionManager<GraphDatabaseService>) persistenceService.getConnectionManager()).getConnectionHandler();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (persistenceService.getState() == PersistenceService.EXECUTION_STATE.RUNNING)
+            persistenceService.stop();
+        context.close();
+        BenchmarkDatabase.deleteDirectory(dataPath);
+    }
+}
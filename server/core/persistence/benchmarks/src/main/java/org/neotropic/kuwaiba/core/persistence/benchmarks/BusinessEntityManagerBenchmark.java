@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ExtendedQuery;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ResultRecord;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectGraphMappingService;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.PhysicalPathTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the most used calls of the {@link BusinessEntityManager} on a {@link SyntheticInventory}.
+ * The reads go through the objects of the inventory in turn, so they are not served from the same
+ * cached pages over and over. The default inventory has about 3000 objects, a larger one can be used with e.g.
+ * <code>-p depth=4 -p fanOut=10</code> (about 100000 objects).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BusinessEntityManagerBenchmark {
+    /**
+     * Number of levels of locations.
+     */
+    @Param({"3"})
+    public int depth;
+    /**
+     * Number of child locations of every location.
+     */
+    @Param({"5"})
+    public int fanOut;
+    /**
+     * Number of devices in every location of the last level.
+     */
+    @Param({"2"})
+    public int devicesPerLocation;
+    /**
+     * Number of ports of every device.
+     */
+    @Param({"8"})
+    public int portsPerDevice;
+    /**
+     * Number of devices chained by physical links, that is, the length of the physical paths.
+     */
+    @Param({"10"})
+    public int devicesPerPath;
+    /**
+     * Number of objects created per call to createBulkObjects.
+     */
+    @Param({"10"})
+    public int bulkSize;
+
+    private BenchmarkPersistence persistence;
+
+    private BusinessEntityManager bem;
+
+    private ApplicationEntityManager aem;
+
+    private ObjectGraphMappingService ogmService;
+
+    private GraphDatabaseService graphDb;
+
+    private SyntheticInventory inventory;
+    /**
+     * The objects created by the createBulkObjects benchmark in the current iteration, deleted after it.
+     */
+    private final List<String> createdObjects = new ArrayList<>();
+    /**
+     * Where the next read starts, so every call reads a different object.
+     */
+    private int nextObject;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        persistence = new BenchmarkPersistence();
+        bem = persistence.getBem();
+        aem = persistence.getAem();
+        ogmService = persistence.getOgmService();
+        graphDb = persistence.getGraphDb();
+        inventory = new SyntheticInventory(depth, fanOut, devicesPerLocation, portsPerDevice, devicesPerPath);
+        inventory.create(persistence.getMem(), bem, graphDb);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCreatedObjects() throws Exception {
+        if (!createdObjects.isEmpty()) {
+            HashMap<String, List<String>> objects = new HashMap<>();
+            objects.put(SyntheticInventory.CLASS_PORT, new ArrayList<>(createdObjects));
+            bem.deleteObjects(objects, true);
+            createdObjects.clear();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (persistence != null)
+            persistence.close();
+    }
+
+    @Benchmark
+    public BusinessObjectLight getObjectLight() throws InventoryException {
+        BusinessObjectLight object = next(inventory.getPorts());
+        return bem.getObjectLight(object.getClassName(), object.getId());
+    }
+
+    @Benchmark
+    public List<BusinessObjectLight> getObjectChildren() throws InventoryException {
+        BusinessObjectLight location = next(inventory.getLocations());
+        return bem.getObjectChildren(location.getClassName(), location.getId(), -1);
+    }
+
+    @Benchmark
+    public List<BusinessObjectLight> getParents() throws InventoryException {
+        BusinessObjectLight port = next(inventory.getPorts());
+        return bem.getParents(port.getClassName(), port.getId());
+    }
+
+    @Benchmark
+    public List<BusinessObjectLight> getSuggestedObjectsWithFilter() {
+        BusinessObjectLight device = next(inventory.getDevices());
+        return bem.getSuggestedObjectsWithFilter(device.getName(), 10);
+    }
+
+    @Benchmark
+    public List<ResultRecord> executeQuery() throws InventoryException {
+        BusinessObjectLight device = next(inventory.getDevices());
+        ExtendedQuery query = new ExtendedQuery(SyntheticInventory.CLASS_DEVICE, ExtendedQuery.CONNECTOR_AND,
+                new ArrayList<>(Collections.singletonList(Constants.PROPERTY_NAME)),
+                new ArrayList<>(Collections.singletonList(Constants.PROPERTY_NAME)),
+                new ArrayList<>(Collections.singletonList(device.getName())),
+                new ArrayList<>(Collections.singletonList(ExtendedQuery.EQUAL)), null, 1, 10);
+        return aem.executeQuery(query);
+    }
+
+    /**
+     * Traces a physical path the way the physical connections service does, since that service
+     * is part of an optional module the persistence layer does not depend on.
+     * @return The objects in the path.
+     */
+    @Benchmark
+    public List<BusinessObjectLight> getPhysicalPath() throws InventoryException {
+        BusinessObjectLight port = next(inventory.getPathStartPorts());
+        List<BusinessObjectLight> path = new ArrayList<>();
+        try (Transaction tx = graphDb.beginTx()) {
+            Node portNode = graphDb.findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, port.getId());
+            for (Node node : PhysicalPathTracer.getPhysicalPath(portNode))
+                path.add(ogmService.createObjectLightFromNode(node));
+        }
+        return path;
+    }
+
+    @Benchmark
+    public String[] createBulkObjects() throws InventoryException {
+        BusinessObjectLight device = next(inventory.getDevices());
+        String[] ids = bem.createBulkObjects(SyntheticInventory.CLASS_PORT, SyntheticInventory.CLASS_DEVICE, device.getId(),
+                String.format("bulk-[sequence(1,%s)]", bulkSize), null); //NOI18N
+        createdObjects.addAll(Arrays.asList(ids));
+        return ids;
+    }
+
+    @Benchmark
+    public void deleteObjects(DeletionState state) throws InventoryException {
+        HashMap<String, List<String>> objects = new HashMap<>();
+        objects.put(SyntheticInventory.CLASS_DEVICE, Collections.singletonList(state.deviceId));
+        bem.deleteObjects(objects, true);
+    }
+
+    private <T> T next(List<T> objects) {
+        nextObject = (nextObject + 1) % objects.size();
+        return objects.get(nextObject);
+    }
+
+    /**
+     * A device with its ports, created before every call to deleteObjects.
+     */
+    @State(Scope.Thread)
+    public static class DeletionState {
+        private String deviceId;
+
+        @Setup(Level.Invocation)
+        public void createDevice(BusinessEntityManagerBenchmark benchmark) throws InventoryException {
+            BusinessObjectLight location = benchmark.inventory.getLocations().get(benchmark.inventory.getLocations().size() - 1);
+            HashMap<String, String> attributes = new HashMap<>();
+            attributes.put(Constants.PROPERTY_NAME, "disposable"); //NOI18N
+            deviceId = benchmark.bem.createObject(SyntheticInventory.CLASS_DEVICE, location.getClassName(), location.getId(), attributes, null);
+            benchmark.bem.createBulkObjects(SyntheticInventory.CLASS_PORT, SyntheticInventory.CLASS_DEVICE, deviceId,
+                    String.format("port-[sequence(1,%s)]", benchmark.portsPerDevice), null); //NOI18N
+        }
+    }
+}
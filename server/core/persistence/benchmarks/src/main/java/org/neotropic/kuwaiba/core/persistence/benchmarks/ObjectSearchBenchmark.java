@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the CONTAINS scan formerly used to suggest objects in the search boxes with the 
+ * {@link ObjectSearchIndex}. The synthetic data set has a few classes and objects with random 
+ * alphanumeric names. Creating the largest data set takes a while and needs a large heap, 
+ * e.g. run with <code>-p objects=10000000 -jvmArgsAppend -Xmx8g</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectSearchBenchmark {
+    /**
+     * The query used by getSuggestedObjectsWithFilter before the index was introduced.
+     */
+    private static final String LEGACY_QUERY = "MATCH (object:" + Constants.LABEL_INVENTORY_OBJECTS + ")-[:INSTANCE_OF]->(class)" 
+            + " WHERE TOLOWER(object.name) CONTAINS TOLOWER($searchString) OR TOLOWER(class.name) "
+            + "CONTAINS TOLOWER($searchString) OR TOLOWER(class.displayName) CONTAINS TOLOWER($searchString) " 
+            + "RETURN object.name as oname, object._uuid as oid, class.name as cname, class.displayName as cdisplay ORDER BY object.name ASC LIMIT $limit"; //NOI18N
+    /**
+     * Number of objects in the database.
+     */
+    @Param({"100000", "1000000", "10000000"})
+    public int objects;
+    /**
+     * The string typed in the search box. Short strings match many objects, long ones just a few.
+     */
+    @Param({"k7", "k7q2"})
+    public String filter;
+    /**
+     * Number of suggestions requested.
+     */
+    @Param({"10"})
+    public int limit;
+
+    private BenchmarkDatabase database;
+
+    private GraphDatabaseService graphDb;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase();
+        graphDb = database.getGraphDb();
+        ObjectSearchIndex.createIndexes(graphDb);
+
+        Label inventoryObjectLabel = Label.label(Constants.LABEL_INVENTORY_OBJECTS);
+        List<Node> classes = new ArrayList<>();
+        try (Transaction tx = graphDb.beginTx()) {
+            for (String className : new String[] { "Router", "Switch", "OpticalPort", "ElectricalPort", "Building", "Rack" }) { //NOI18N
+                Node classNode = graphDb.createNode(Label.label(Constants.LABEL_CLASS));
+                classNode.setProperty(Constants.PROPERTY_NAME, className);
+                classNode.setProperty(Constants.PROPERTY_DISPLAY_NAME, className);
+                classes.add(classNode);
+            }
+            tx.success();
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < objects; i += 50000) {
+            try (Transaction tx = graphDb.beginTx()) {
+                for (int j = i; j < Math.min(i + 50000, objects); j++) {
+                    Node object = graphDb.createNode(inventoryObjectLabel);
+                    object.setProperty(Constants.PROPERTY_UUID, UUID.randomUUID().toString());
+                    object.setProperty(Constants.PROPERTY_NAME, String.format("obj-%s", Long.toString(random.nextLong() & Long.MAX_VALUE, 36))); //NOI18N
+                    object.createRelationshipTo(classes.get(j % classes.size()), RelTypes.INSTANCE_OF);
+                }
+                tx.success();
+            }
+        }
+        graphDb.execute("CALL db.awaitIndexes(86400)").close(); //NOI18N
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public List<String> legacySearch() {
+        try (Transaction tx = graphDb.beginTx()) {
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put("searchString", filter); //NOI18N
+            parameters.put("limit", limit); //NOI18N
+            List<String> res = new ArrayList<>();
+            try (Result result = graphDb.execute(LEGACY_QUERY, parameters)) {
+                result.<String>columnAs("oid").forEachRemaining(res::add); //NOI18N
+            }
+            return res;
+        }
+    }
+
+    @Benchmark
+    public List<String> indexedSearch() {
+        try (Transaction tx = graphDb.beginTx()) {
+            List<String> res = new ArrayList<>();
+            for (Node object : ObjectSearchIndex.search(graphDb, filter, ObjectSearchIndex.MatchMode.INFIX, null, true, 0, limit))
+                res.add((String) object.getProperty(Constants.PROPERTY_UUID));
+            return res;
+        }
+    }
+}
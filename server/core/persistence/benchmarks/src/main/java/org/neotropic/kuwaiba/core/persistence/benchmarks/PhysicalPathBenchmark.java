@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.Iterators;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.PhysicalPathTracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the variable-length Cypher query formerly used to trace physical paths with the
+ * {@link PhysicalPathTracer}. The synthetic data set is a chain of patch panels connected by links.
+ * In every panel, the first two ports are mirrors of each other, and the remaining ones are
+ * mirrored (mirrorMultiple) to both of them, which is what makes the number of paths
+ * enumerated by the Cypher query grow exponentially with the length of the chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhysicalPathBenchmark {
+    /**
+     * The query used by PhysicalConnectionsService before the tracer was introduced.
+     */
+    private static final String LEGACY_QUERY = "MATCH paths = (o)-[r:" + RelTypes.RELATED_TO_SPECIAL + "*]-(c) "
+                + "WHERE o._uuid = $objectId AND all(rel in r where rel.name IN ['mirror','mirrorMultiple'] "
+                + "or rel.name = 'endpointA' or rel.name = 'endpointB') "
+                + "WITH nodes(paths) as path "
+                + "RETURN path ORDER BY length(path) DESC"; //NOI18N
+    /**
+     * Number of patch panels in the chain.
+     */
+    @Param({"4", "8", "12"})
+    public int panels;
+    /**
+     * Number of mirrored ports per patch panel. 2 means a plain chain.
+     */
+    @Param({"2", "3"})
+    public int portsPerPanel;
+
+    private BenchmarkDatabase database;
+
+    private GraphDatabaseService graphDb;
+    /**
+     * The id of the first port in the chain, where all traces start.
+     */
+    private String startPortId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = new BenchmarkDatabase();
+        graphDb = database.getGraphDb();
+
+        Label inventoryObjectLabel = Label.label(Constants.LABEL_INVENTORY_OBJECTS);
+        try (Transaction tx = graphDb.beginTx()) {
+            Node previousPort = null;
+            for (int i = 0; i < panels; i++) {
+                Node[] ports = new Node[portsPerPanel];
+                for (int j = 0; j < portsPerPanel; j++) {
+                    ports[j] = graphDb.createNode(inventoryObjectLabel);
+                    ports[j].setProperty(Constants.PROPERTY_UUID, UUID.randomUUID().toString());
+                    ports[j].setProperty(Constants.PROPERTY_NAME, String.format("panel%s-port%s", i, j)); //NOI18N
+                }
+                if (startPortId == null)
+                    startPortId = (String) ports[0].getProperty(Constants.PROPERTY_UUID);
+
+                relate(ports[0], ports[1], "mirror"); //NOI18N
+                for (int j = 2; j < portsPerPanel; j++) {
+                    relate(ports[0], ports[j], "mirrorMultiple"); //NOI18N
+                    relate(ports[1], ports[j], "mirrorMultiple"); //NOI18N
+                }
+
+                if (previousPort != null) {
+                    Node link = graphDb.createNode(inventoryObjectLabel);
+                    link.setProperty(Constants.PROPERTY_UUID, UUID.randomUUID().toString());
+                    link.setProperty(Constants.PROPERTY_NAME, String.format("link%s", i)); //NOI18N
+                    relate(link, previousPort, "endpointA"); //NOI18N
+                    relate(link, ports[0], "endpointB"); //NOI18N
+                }
+                previousPort = ports[1];
+            }
+            tx.success();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Node> legacyPhysicalPath() {
+        try (Transaction tx = graphDb.beginTx()) {
+            Result result = graphDb.execute(LEGACY_QUERY + " LIMIT 1", singleParameter()); //NOI18N
+            Iterator<List<Node>> column = result.columnAs("path"); //NOI18N
+            List<Node> path = new ArrayList<>();
+            for (List<Node> listOfNodes : Iterators.asIterable(column))
+                path.addAll(listOfNodes);
+            return path;
+        }
+    }
+
+    @Benchmark
+    public List<Node> tracerPhysicalPath() throws InvalidArgumentException {
+        try (Transaction tx = graphDb.beginTx()) {
+            return PhysicalPathTracer.getPhysicalPath(graphDb.findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, startPortId));
+        }
+    }
+
+    @Benchmark
+    public LinkedHashMap<Node, List<Node>> legacyPhysicalTree() {
+        try (Transaction tx = graphDb.beginTx()) {
+            Result result = graphDb.execute(LEGACY_QUERY, singleParameter());
+            Iterator<List<Node>> column = result.columnAs("path"); //NOI18N
+            LinkedHashMap<Node, List<Node>> tree = new LinkedHashMap<>();
+            for (List<Node> listOfNodes : Iterators.asIterable(column)) {
+                for (int i = 0; i < listOfNodes.size(); i++) {
+                    List<Node> nextNodes = tree.computeIfAbsent(listOfNodes.get(i), node -> new ArrayList<>());
+                    if (i < listOfNodes.size() - 1 && !nextNodes.contains(listOfNodes.get(i + 1)))
+                        nextNodes.add(listOfNodes.get(i + 1));
+                }
+            }
+            return tree;
+        }
+    }
+
+    @Benchmark
+    public LinkedHashMap<Node, List<Node>> tracerPhysicalTree() throws InvalidArgumentException {
+        try (Transaction tx = graphDb.beginTx()) {
+            return PhysicalPathTracer.getPhysicalTree(graphDb.findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, startPortId));
+        }
+    }
+
+    private Map<String, Object> singleParameter() {
+        return Collections.singletonMap("objectId", startPortId); //NOI18N
+    }
+
+    private static Relationship relate(Node source, Node target, String relationshipName) {
+        Relationship rel = source.createRelationshipTo(target, RelTypes.RELATED_TO_SPECIAL);
+        rel.setProperty(Constants.PROPERTY_NAME, relationshipName);
+        return rel;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException;
+import org.neotropic.kuwaiba.core.apis.persistence.metadata.AttributeMetadata;
+import org.neotropic.kuwaiba.core.apis.persistence.metadata.ClassMetadata;
+import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+
+/**
+ * A synthetic data model and inventory. The containment hierarchy is a tree of locations with a
+ * configurable depth and fan-out. Every location in the last level has some devices, and every device
+ * has some ports. The ports of a device are mirrored in pairs, and the devices are chained by physical links
+ * (port 2 of a device to port 1 of the next one), so physical paths of a configurable length can be traced.
+ * Its main purpose is feeding the benchmarks, but it can be used to populate a test database too.
+ */
+public class SyntheticInventory {
+    /**
+     * Prefix of the location classes. The location class of the first level is Location1, the one of the second level, Location2 and so on.
+     */
+    public static final String CLASS_LOCATION_PREFIX = "Location"; //NOI18N
+    /**
+     * Device class.
+     */
+    public static final String CLASS_DEVICE = "Router"; //NOI18N
+    /**
+     * Port class.
+     */
+    public static final String CLASS_PORT = "OpticalPort"; //NOI18N
+    /**
+     * Physical link class.
+     */
+    public static final String CLASS_LINK = "OpticalLink"; //NOI18N
+    /**
+     * Number of levels of locations.
+     */
+    private final int depth;
+    /**
+     * Number of child locations of every location (and of the navigation tree root).
+     */
+    private final int fanOut;
+    /**
+     * Number of devices in every location of the last level.
+     */
+    private final int devicesPerLocation;
+    /**
+     * Number of ports of every device. Rounded up to an even number, since they are mirrored in pairs.
+     */
+    private final int portsPerDevice;
+    /**
+     * Number of devices chained by physical links.
+     */
+    private final int devicesPerPath;
+    /**
+     * All the locations, from the first level to the last one.
+     */
+    private final List<BusinessObjectLight> locations = new ArrayList<>();
+    private final List<BusinessObjectLight> devices = new ArrayList<>();
+    private final List<BusinessObjectLight> ports = new ArrayList<>();
+    private final List<BusinessObjectLight> links = new ArrayList<>();
+    /**
+     * The first port of every chain of devices, where the physical paths start.
+     */
+    private final List<BusinessObjectLight> pathStartPorts = new ArrayList<>();
+
+    public SyntheticInventory(int depth, int fanOut, int devicesPerLocation, int portsPerDevice, int devicesPerPath) {
+        if (depth < 1 || fanOut < 1 || devicesPerLocation < 1 || portsPerDevice < 1 || devicesPerPath < 1)
+            throw new IllegalArgumentException("The size of the inventory must be positive");
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.devicesPerLocation = devicesPerLocation;
+        this.portsPerDevice = portsPerDevice + portsPerDevice % 2;
+        this.devicesPerPath = devicesPerPath;
+    }
+
+    /**
+     * Creates the data model and the inventory on an empty database.
+     * @param mem The metadata entity manager.
+     * @param bem The business entity manager.
+     * @param graphDb The database, to create the navigation tree root.
+     * @throws InventoryException If the data model or the inventory could not be created.
+     */
+    public void create(MetadataEntityManager mem, BusinessEntityManager bem, GraphDatabaseService graphDb) throws InventoryException {
+        createDataModel(mem, graphDb);
+        createInventory(bem);
+    }
+
+    private void createDataModel(MetadataEntityManager mem, GraphDatabaseService graphDb) throws InventoryException {
+        try (Transaction tx = graphDb.beginTx()) {
+            Node dummyRoot = graphDb.createNode(Label.label(Constants.LABEL_SPECIAL_NODE));
+            dummyRoot.setProperty(Constants.PROPERTY_NAME, Constants.NODE_DUMMYROOT);
+            tx.success();
+        }
+
+        createClass(mem, Constants.CLASS_ROOTOBJECT, null, true,
+                attribute(Constants.PROPERTY_NAME, Constants.DATA_TYPE_STRING),
+                attribute(Constants.PROPERTY_DESCRIPTION, Constants.DATA_TYPE_STRING),
+                attribute(Constants.PROPERTY_CREATION_DATE, Constants.DATA_TYPE_DATE));
+        createClass(mem, Constants.CLASS_INVENTORYOBJECT, Constants.CLASS_ROOTOBJECT, true);
+        createClass(mem, Constants.CLASS_GENERICLOCATION, Constants.CLASS_INVENTORYOBJECT, true);
+        createClass(mem, Constants.CLASS_GENERICCOMMUNICATIONSELEMENT, Constants.CLASS_INVENTORYOBJECT, true);
+        createClass(mem, Constants.CLASS_GENERICPORT, Constants.CLASS_INVENTORYOBJECT, true);
+        createClass(mem, Constants.CLASS_GENERICPHYSICALLINK, Constants.CLASS_INVENTORYOBJECT, true);
+        for (int i = 1; i <= depth; i++)
+            createClass(mem, CLASS_LOCATION_PREFIX + i, Constants.CLASS_GENERICLOCATION, false);
+        createClass(mem, CLASS_DEVICE, Constants.CLASS_GENERICCOMMUNICATIONSELEMENT, false);
+        createClass(mem, CLASS_PORT, Constants.CLASS_GENERICPORT, false);
+        createClass(mem, CLASS_LINK, Constants.CLASS_GENERICPHYSICALLINK, false);
+
+        mem.addPossibleChildren(null, new String[] { CLASS_LOCATION_PREFIX + 1 });
+        for (int i = 1; i < depth; i++)
+            mem.addPossibleChildren(CLASS_LOCATION_PREFIX + i, new String[] { CLASS_LOCATION_PREFIX + (i + 1) });
+        mem.addPossibleChildren(CLASS_LOCATION_PREFIX + 1, new String[] { CLASS_LINK });
+        mem.addPossibleChildren(CLASS_LOCATION_PREFIX + depth, new String[] { CLASS_DEVICE });
+        mem.addPossibleChildren(CLASS_DEVICE, new String[] { CLASS_PORT });
+    }
+
+    private void createInventory(BusinessEntityManager bem) throws InventoryException {
+        List<BusinessObjectLight> parents = Collections.singletonList(null);
+        for (int level = 1; level <= depth; level++) {
+            String className = CLASS_LOCATION_PREFIX + level;
+            List<BusinessObjectLight> levelLocations = new ArrayList<>();
+            for (BusinessObjectLight parent : parents) {
+                for (int i = 1; i <= fanOut; i++) {
+                    String name = parent == null ? String.format("loc%s", i) : String.format("%s.%s", parent.getName(), i); //NOI18N
+                    levelLocations.add(createObject(bem, className, parent, name));
+                }
+            }
+            locations.addAll(levelLocations);
+            parents = levelLocations;
+        }
+
+        for (BusinessObjectLight location : parents) {
+            for (int i = 1; i <= devicesPerLocation; i++) {
+                BusinessObjectLight device = createObject(bem, CLASS_DEVICE, location, String.format("%s-router%s", location.getName(), i)); //NOI18N
+                devices.add(device);
+                String[] portIds = bem.createBulkObjects(CLASS_PORT, CLASS_DEVICE, device.getId(),
+                        String.format("port-[sequence(1,%s)]", portsPerDevice), null); //NOI18N
+                for (String portId : portIds)
+                    ports.add(bem.getObjectLight(CLASS_PORT, portId));
+            }
+        }
+        // The bulk creation returns the ports in the order of their names
+        for (int i = 0; i < ports.size(); i += 2)
+            bem.createSpecialRelationship(CLASS_PORT, ports.get(i).getId(), CLASS_PORT, ports.get(i + 1).getId(), "mirror", true); //NOI18N
+
+        BusinessObjectLight linkParent = locations.get(0);
+        for (int i = 0; i < devices.size(); i++) {
+            BusinessObjectLight firstPort = ports.get(i * portsPerDevice);
+            if (i % devicesPerPath == 0) {
+                pathStartPorts.add(firstPort);
+                continue;
+            }
+            BusinessObjectLight previousPort = ports.get((i - 1) * portsPerDevice + 1);
+            BusinessObjectLight link = createObject(bem, CLASS_LINK, linkParent, String.format("link-%s", i)); //NOI18N
+            links.add(link);
+            bem.createSpecialRelationship(CLASS_LINK, link.getId(), CLASS_PORT, previousPort.getId(), "endpointA", true); //NOI18N
+            bem.createSpecialRelationship(CLASS_LINK, link.getId(), CLASS_PORT, firstPort.getId(), "endpointB", true); //NOI18N
+        }
+    }
+
+    private static BusinessObjectLight createObject(BusinessEntityManager bem, String className, BusinessObjectLight parent, String name)
+            throws InventoryException {
+        HashMap<String, String> attributes = new HashMap<>();
+        attributes.put(Constants.PROPERTY_NAME, name);
+        // The children of the navigation tree root have no parent class and the parent id -1
+        String id = bem.createObject(className, parent == null ? null : parent.getClassName(),
+                parent == null ? "-1" : parent.getId(), attributes, null); //NOI18N
+        return new BusinessObjectLight(className, id, name);
+    }
+
+    private static void createClass(MetadataEntityManager mem, String name, String parentClassName, boolean isAbstract,
+            AttributeMetadata... attributes) throws InventoryException {
+        ClassMetadata aClass = new ClassMetadata();
+        aClass.setName(name);
+        aClass.setDisplayName(name);
+        aClass.setParentClassName(parentClassName);
+        aClass.setAbstract(isAbstract);
+        aClass.setCountable(true);
+        aClass.setAttributes(new ArrayList<>(Arrays.asList(attributes)));
+        mem.createClass(aClass);
+    }
+
+    private static AttributeMetadata attribute(String name, String type) {
+        AttributeMetadata attribute = new AttributeMetadata();
+        attribute.setName(name);
+        attribute.setDisplayName(name);
+        attribute.setType(type);
+        attribute.setVisible(true);
+        return attribute;
+    }
+
+    /**
+     * @return All the locations, from the first level to the last one.
+     */
+    public List<BusinessObjectLight> getLocations() {
+        return locations;
+    }
+
+    public List<BusinessObjectLight> getDevices() {
+        return devices;
+    }
+
+    public List<BusinessObjectLight> getPorts() {
+        return ports;
+    }
+
+    public List<BusinessObjectLight> getLinks() {
+        return links;
+    }
+
+    /**
+     * @return The first port of every chain of devices, where the physical paths start.
+     */
+    public List<BusinessObjectLight> getPathStartPorts() {
+        return pathStartPorts;
+    }
+
+    /**
+     * @return The number of inventory objects.
+     */
+    public int size() {
+        return locations.size() + devices.size() + ports.size() + links.size();
+    }
+}
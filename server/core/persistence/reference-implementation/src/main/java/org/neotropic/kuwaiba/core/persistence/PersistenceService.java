@@ -16,14 +16,26 @@
 package org.neotropic.kuwaiba.core.persistence;
 
 import java.util.Properties;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheManager;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheStatistics;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.ScriptCache;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.reporting.ReportExecutor;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.ActivityLogWriter;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.ChangeEventPublisher;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.SessionStore;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.SchemaIndexManager;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.routing.RoutingEngine;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQueryExecutor;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -82,6 +94,36 @@ public class PersistenceService {
      */
     @Autowired
     private BusinessEntityManager bem;
+    /**
+     * The manager of the database indexes and constraints.
+     */
+    @Autowired
+    private SchemaIndexManager schemaIndexManager;
+    /**
+     * The writer of the activity log.
+     */
+    @Autowired
+    private ActivityLogWriter activityLogWriter;
+    /**
+     * The store of the open sessions.
+     */
+    @Autowired
+    private SessionStore sessionStore;
+    /**
+     * Publishes the changes committed to the inventory.
+     */
+    @Autowired
+    private ChangeEventPublisher changeEventPublisher;
+    /**
+     * Keeps the route graphs built from the special relationships.
+     */
+    @Autowired
+    private RoutingEngine routingEngine;
+    /**
+     * Runs the Cypher queries and keeps track of the query plan cache.
+     */
+    @Autowired
+    private CypherQueryExecutor cypherQueryExecutor;
     /**
      * Reference to the translation service.
      */
@@ -92,6 +134,11 @@ public class PersistenceService {
      */
     @Autowired
     private LoggingService log;
+    /**
+     * Reference to the Metrics service.
+     */
+    @Autowired
+    private MetricsService metrics;
     
     
     public Properties getMetadataProperties() {
@@ -164,16 +211,32 @@ public class PersistenceService {
         }
         
         try {
+            metrics.configure(generalProperties);
+            registerMetrics();
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class, 
                     String.format("Starting Persistence Service version %s", Constants.PERSISTENCE_SERVICE_VERSION));
          
             connectionManager.setConfiguration(connectionProperties); //NOI18N
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class, "Establishing connection to the database...");
             connectionManager.openConnection();
+            cypherQueryExecutor.monitorPlanCache((GraphDatabaseService) connectionManager.getConnectionHandler());
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class,  "Connection established");
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class,  
                     String.format("Using database %s", connectionManager.getConnectionDetails()));
             
+            schemaIndexManager.createIndexes();
+            schemaIndexManager.getUnindexedLookups().forEach(aDeclaration -> 
+                    log.writeLogMessage(LoggerType.WARN, PersistenceService.class, 
+                            String.format("Lookups on %s are served by a label scan until the index is online", aDeclaration)));
+            log.writeLogMessage(LoggerType.INFO, PersistenceService.class, "Database indexes checked");
+            
+            activityLogWriter.start(applicationProperties, connectionProperties.getProperty("dbPath")); //NOI18N
+            log.writeLogMessage(LoggerType.INFO, PersistenceService.class, 
+                    String.format("Activity log writer started in %s mode", activityLogWriter.isAsynchronous() ? "asynchronous" : "synchronous"));
+            changeEventPublisher.start(applicationProperties);
+            
+            CacheManager.getInstance().configure(applicationProperties);
+            ScriptCache.getInstance().configure(applicationProperties);
             mem.setConfiguration(metadataProperties);
             mem.initCache();
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class,  "Metadata Entity Manager initialized successfully");
@@ -181,9 +244,11 @@ public class PersistenceService {
             
             aem.setConfiguration(applicationProperties);
             aem.initCache();
+            sessionStore.start(applicationProperties);
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class, "Application Entity Manager initialized successfully");
             
             bem.setConfiguration(businessProperties);
+            ReportExecutor.getInstance().configure(businessProperties);
             bem.initCache();
             log.writeLogMessage(LoggerType.INFO, PersistenceService.class, "Business Entity Manager initialized successfully");
             
@@ -191,6 +256,10 @@ public class PersistenceService {
             
             state = EXECUTION_STATE.RUNNING;
         } catch(Exception ex) {
+            sessionStore.stop();
+            routingEngine.stop();
+            changeEventPublisher.stop();
+            activityLogWriter.stop();
             if (connectionManager != null)
                 connectionManager.closeConnection();
             log.writeLogMessage(LoggerType.ERROR, PersistenceService.class, 
@@ -202,6 +271,10 @@ public class PersistenceService {
         if (state == EXECUTION_STATE.STOPPED)
             throw new IllegalStateException("Persistence Service can not be stopped because it is not running");
         
+        sessionStore.stop();
+        routingEngine.stop();
+        changeEventPublisher.stop();
+        activityLogWriter.stop();
         log.writeLogMessage(LoggerType.INFO, PersistenceService.class, "Closing connection...");
         connectionManager.closeConnection();
         log.writeLogMessage(LoggerType.INFO, PersistenceService.class, "Connection closed");
@@ -212,6 +285,64 @@ public class PersistenceService {
         start();
     }
         
+    /**
+     * Exposes the state of the caches, the report executor, the activity log writer, the change events and the sessions as gauges.
+     * The gauges are read only when the metrics are exported, so registering them again after a restart is harmless
+     */
+    private void registerMetrics() {
+        ScriptCache.getInstance().setMetrics(metrics);
+        for (CacheStatistics aRegion : CacheManager.getInstance().getStatistics()) {
+            String regionName = aRegion.getRegionName();
+            metrics.gauge("kuwaiba_cache_size", "Number of entries in a cache region", //NOI18N
+                    () -> getCacheStatistics(regionName).getSize(), "region", regionName); //NOI18N
+            metrics.gauge("kuwaiba_cache_hits", "Lookups that found the entry in a cache region", //NOI18N
+                    () -> getCacheStatistics(regionName).getHits(), "region", regionName); //NOI18N
+            metrics.gauge("kuwaiba_cache_misses", "Lookups that did not find the entry in a cache region", //NOI18N
+                    () -> getCacheStatistics(regionName).getMisses(), "region", regionName); //NOI18N
+            metrics.gauge("kuwaiba_cache_evictions", "Entries evicted from a cache region", //NOI18N
+                    () -> getCacheStatistics(regionName).getEvictions(), "region", regionName); //NOI18N
+        }
+        metrics.gauge("kuwaiba_script_cache_size", "Number of compiled scripts", //NOI18N
+                () -> ScriptCache.getInstance().size());
+        metrics.gauge("kuwaiba_report_pending_jobs", "Reports waiting to be run or running", //NOI18N
+                () -> ReportExecutor.getInstance().getPendingJobs());
+        metrics.gauge("kuwaiba_report_cache_size", "Number of cached report results", //NOI18N
+                () -> ReportExecutor.getInstance().getCacheStatistics().getSize());
+        metrics.gauge("kuwaiba_activity_log_pending_entries", "Activity log entries not yet written to the database", //NOI18N
+                () -> activityLogWriter.getPendingEntries());
+        metrics.gauge("kuwaiba_change_event_subscribers", "Subscribers to the changes committed to the inventory", //NOI18N
+                () -> changeEventPublisher.getSubscriberCount());
+        metrics.gauge("kuwaiba_change_event_transactions", "Transactions with changes to the inventory published", //NOI18N
+                () -> changeEventPublisher.getPublishedTransactions());
+        metrics.gauge("kuwaiba_change_event_lost_transactions", "Transactions not delivered to a subscriber because its queue was full", //NOI18N
+                () -> changeEventPublisher.getLostTransactions());
+        metrics.gauge("kuwaiba_sessions_active", "Open sessions", //NOI18N
+                () -> sessionStore.getStatistics().getActiveSessions());
+        metrics.gauge("kuwaiba_sessions_active_users", "Users with at least one open session", //NOI18N
+                () -> sessionStore.getStatistics().getActiveUsers());
+        metrics.gauge("kuwaiba_sessions_expired", "Sessions closed because they were idle for too long", //NOI18N
+                () -> sessionStore.getStatistics().getExpiredSessions());
+        metrics.gauge("kuwaiba_schema_unindexed_lookups", "Lookups served by a label scan because their index is not online", //NOI18N
+                () -> schemaIndexManager.getUnindexedLookups().size());
+        metrics.gauge("kuwaiba_cypher_plan_cache_hits", "Cypher statements whose plan was found in the query plan cache", //NOI18N
+                () -> cypherQueryExecutor.getPlanCacheHits());
+        metrics.gauge("kuwaiba_cypher_plan_cache_misses", "Cypher statements that had to be planned", //NOI18N
+                () -> cypherQueryExecutor.getPlanCacheMisses());
+        metrics.gauge("kuwaiba_cypher_plan_cache_replans", "Cached plans discarded because the data changed significantly", //NOI18N
+                () -> cypherQueryExecutor.getPlanCacheReplans());
+        metrics.gauge("kuwaiba_cypher_plan_cache_hit_ratio", "Share of the Cypher statements whose plan was reused", //NOI18N
+                () -> {
+                    long lookups = cypherQueryExecutor.getPlanCacheHits() + cypherQueryExecutor.getPlanCacheMisses();
+                    return lookups == 0 ? 0 : (double) cypherQueryExecutor.getPlanCacheHits() / lookups;
+                });
+    }
+
+    private CacheStatistics getCacheStatistics(String regionName) {
+        return CacheManager.getInstance().getStatistics().stream()
+                .filter(aRegion -> aRegion.getRegionName().equals(regionName))
+                .findFirst().orElse(null);
+    }
+
     public EXECUTION_STATE getState() {
         return state;
     }
@@ -16,110 +16,312 @@
 
 package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.neotropic.kuwaiba.core.apis.persistence.application.FilterDefinition;
 import org.neotropic.kuwaiba.core.apis.persistence.application.GroupProfile;
 import org.neotropic.kuwaiba.core.apis.persistence.application.UserProfile;
+import org.neotropic.kuwaiba.core.apis.persistence.application.Validator;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ValidatorDefinition;
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.ClassMetadata;
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.ClassMetadataLight;
 import org.neotropic.kuwaiba.core.apis.persistence.metadata.GenericObjectList;
 import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
-import org.neotropic.kuwaiba.core.apis.persistence.application.FilterDefinition;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import org.neotropic.kuwaiba.core.apis.persistence.application.Filter;
 
 /**
- * Manages the caching strategy
+ * Manages the caching strategy. The cache is split in regions, each one with its own 
+ * size and time-to-live policy and its own hit/miss/eviction counters (see {@link #getStatistics()}). 
+ * All the regions can be safely used from several threads at the same time. The lists 
+ * stored in the metadata regions are never modified once cached, changes are done on 
+ * a copy that then replaces the cached list (copy-on-write), so readers can iterate 
+ * them without locking.
  * @author Charles Edward Bedon Cortazar {@literal <charles.bedon@kuwaiba.org>}
  */
 public class CacheManager {
+    /**
+     * Class cache region name
+     */
+    public static final String REGION_CLASSES = "classes"; //NOI18N
+    /**
+     * List type cache region name
+     */
+    public static final String REGION_LIST_TYPES = "listTypes"; //NOI18N
+    /**
+     * Possible children cache region name
+     */
+    public static final String REGION_POSSIBLE_CHILDREN = "possibleChildren"; //NOI18N
+    /**
+     * Possible special children cache region name
+     */
+    public static final String REGION_POSSIBLE_SPECIAL_CHILDREN = "possibleSpecialChildren"; //NOI18N
+    /**
+     * Subclasses cache region name
+     */
+    public static final String REGION_SUBCLASSES = "subClasses"; //NOI18N
+    /**
+     * Direct subclasses cache region name
+     */
+    public static final String REGION_SUBCLASSES_NO_RECURSIVE = "subClassesNoRecursive"; //NOI18N
+    /**
+     * Users cache region name
+     */
+    public static final String REGION_USERS = "users"; //NOI18N
+    /**
+     * Groups cache region name
+     */
+    public static final String REGION_GROUPS = "groups"; //NOI18N
+    /**
+     * Superclasses cache region name
+     */
+    public static final String REGION_SUPERCLASSES = "superClasses"; //NOI18N
+    /**
+     * Validator definitions cache region name
+     */
+    public static final String REGION_VALIDATOR_DEFINITIONS = "validatorDefinitions"; //NOI18N
+    /**
+     * Validator results cache region name
+     */
+    public static final String REGION_VALIDATORS = "validators"; //NOI18N
+    /**
+     * Filter definitions cache region name
+     */
+    public static final String REGION_FILTER_DEFINITIONS = "filterDefinitions"; //NOI18N
+    /**
+     * Configuration variables cache region name
+     */
+    public static final String REGION_CONFIGURATION_VARIABLES = "configurationVariables"; //NOI18N
+    /**
+     * Cache slots region name
+     */
+    public static final String REGION_CACHE_SLOTS = "cacheSlots"; //NOI18N
+    /**
+     * Unique attributes values cache region name
+     */
+    public static final String REGION_UNIQUE_ATTRIBUTES = UniqueAttributeIndex.NAME;
+    /**
+     * Object node ids cache region name
+     */
+    public static final String REGION_OBJECT_IDS = "objectIds"; //NOI18N
+    /**
+     * Parent node ids cache region name
+     */
+    public static final String REGION_PARENTS = "parents"; //NOI18N
+    /**
+     * Suffix of the configuration properties that set the max number of entries of a region (e.g. uniqueAttributesCacheMaxSize)
+     */
+    public static final String PROPERTY_SUFFIX_MAX_SIZE = "CacheMaxSize"; //NOI18N
+    /**
+     * Suffix of the configuration properties that set the time-to-live in seconds of the entries of a region (e.g. cacheSlotsCacheTimeToLive)
+     */
+    public static final String PROPERTY_SUFFIX_TIME_TO_LIVE = "CacheTimeToLive"; //NOI18N
+    /**
+     * Default max number of cached unique attribute values
+     */
+    public static final long DEFAULT_UNIQUE_ATTRIBUTES_MAX_SIZE = 500000;
+    /**
+     * Default max number of objects whose validators are cached
+     */
+    public static final long DEFAULT_VALIDATORS_MAX_SIZE = 100000;
+    /**
+     * Default time in milliseconds the validators of an object are cached. Validators may depend on 
+     * other objects (e.g. a port connected through a link), whose changes don't invalidate them
+     */
+    public static final long DEFAULT_VALIDATORS_TIME_TO_LIVE = 300000;
+    /**
+     * Default max number of cache slots
+     */
+    public static final long DEFAULT_CACHE_SLOTS_MAX_SIZE = 1000;
+    /**
+     * Default max number of inventory objects whose node id is cached
+     */
+    public static final long DEFAULT_OBJECT_IDS_MAX_SIZE = 100000;
+    /**
+     * Default max number of nodes whose parent node id is cached
+     */
+    public static final long DEFAULT_PARENTS_MAX_SIZE = 500000;
     /**
      * Singleton
      */
-    private static CacheManager cm;
+    private static final CacheManager cm = new CacheManager();
     /**
      * Cache slots to save complex objects
      */
-    private HashMap<String, CacheSlot> cacheSlots;
+    private final CacheRegion<String, CacheSlot> cacheSlots;
     /**
      * Class cache
      */
-    private HashMap<String, ClassMetadata> classIndex;
+    private final CacheRegion<String, ClassMetadata> classIndex;
     /**
      * List type cache, the key is the list type 
      */
-    private HashMap<String, GenericObjectList> listTypeIndex;
+    private final CacheRegion<String, GenericObjectList> listTypeIndex;
     /**
      * Possible children index. The key is the class, the value its possible children. Note that a blank key ("") represents the navigation tree root
      */
-    private HashMap<String, List<ClassMetadata>> possibleChildrenIndex;
+    private final CacheRegion<String, List<ClassMetadata>> possibleChildrenIndex;
     /**
      * Possible special children index. The key is the class, the value its possible special children. Note that a blank key ("") represents the navigation tree root. The only difference with the possibleChildrenIndex, is that the relationship used to link the parent object with its children is CHILD_OF_SPECIAL
      */
-    private HashMap<String, List<String>> possibleSpecialChildrenIndex;
+    private final CacheRegion<String, List<String>> possibleSpecialChildrenIndex;
     /**
      * List of subclasses of a class, the key is the name of the class, the value is the subclasses
      */
-    private HashMap<String, List<ClassMetadataLight>> subClassesIndex;
+    private final CacheRegion<String, List<ClassMetadataLight>> subClassesIndex;
     /**
      * List of subclasses of a class, the key is the name of the class, the value is the subclasses
      */
-    private HashMap<String, List<ClassMetadataLight>> subClassesNoRecursiveIndex;
+    private final CacheRegion<String, List<ClassMetadataLight>> subClassesNoRecursiveIndex;
     /**
      * Users index. It is used to ease the username uniqueness validation
      */
-    private HashMap<String, UserProfile> userIndex;
+    private final CacheRegion<String, UserProfile> userIndex;
     /**
      * Groups index. It is used to ease the username uniqueness validation
      */
-    private HashMap<String, GroupProfile> groupIndex;
+    private final CacheRegion<String, GroupProfile> groupIndex;
     /**
-     * List of the classes with unique attributes and its values index
+     * List of the classes with unique attributes and its values index. It's bounded, the 
+     * attributes with too many values are dropped and have to be checked against the database
      */
-    private HashMap<String, HashMap<String, List<Object>>> uniqueClassAttributesIndex;
+    private final UniqueAttributeIndex uniqueClassAttributesIndex;
     /**
      * A structure that caches the superclasses of a given class (the key of the hashmap). This structure does contain redundant information, 
      * but that is the trade off to simplify the access to the upstream class hierarchy
      */
-    private HashMap<String, List<ClassMetadataLight>> superClassIndex;
+    private final CacheRegion<String, List<ClassMetadataLight>> superClassIndex;
     /**
      * A structure that caches the validators associated to a given class (the key of the hash).
      */
-    private HashMap<String, List<ValidatorDefinition>> validatorDefinitionIndex;
+    private final CacheRegion<String, List<ValidatorDefinition>> validatorDefinitionIndex;
+    /**
+     * Caches the result of running the validator definitions on a given object (the key is the object id). 
+     * The value maps the validator definition id to the validator it produced (null if it produced none)
+     */
+    private final CacheRegion<String, Map<Long, Validator>> validatorIndex;
+    /**
+     * Remembers when the validators of every object were removed. The validators computed before are cached 
+     * only if the ones of their object have not been removed since they were read, otherwise they could be stale
+     */
+    private final InvalidationTracker<String> validatorInvalidations = new InvalidationTracker<>(InvalidationTracker.DEFAULT_MAX_SIZE);
+    private final Object validatorsLock = new Object();
     /**
      * A structure that caches the filters associated to a given class (the key of the hash).
      */
-    private HashMap<String, List<FilterDefinition>> filterDefinitionIndex;
+    private final CacheRegion<String, List<FilterDefinition>> filterDefinitionIndex;
     /**
      * Caches the existing configuration variables values (not definitions).
      */
-    private HashMap<String, Object> configurationVariablesIndex;
+    private final CacheRegion<String, Object> configurationVariablesIndex;
+    /**
+     * Maps the uuid of the inventory objects looked up recently to the id of their nodes. The ids of 
+     * deleted nodes are reused, so the node an entry points to has to be checked before using it
+     */
+    private final CacheRegion<String, Long> objectIdIndex;
+    /**
+     * Maps the id of the nodes in the containment hierarchy to the id of their parent node. See the 
+     * AncestorIndex, that keeps it consistent with the committed transactions, for the meaning of the values
+     */
+    private final CacheRegion<Long, Long> parentIndex;
+    /**
+     * All the regions but the unique attributes index
+     */
+    private final List<CacheRegion<?, ?>> regions;
     
     private CacheManager() {
-        cacheSlots = new HashMap<>();
-        classIndex = new HashMap<>();
-        userIndex = new HashMap<>();
-        groupIndex = new HashMap<>();
-        possibleChildrenIndex = new HashMap<>();
-        possibleSpecialChildrenIndex = new HashMap<>();
-        subClassesIndex =  new HashMap<>();
-        subClassesNoRecursiveIndex = new HashMap<>();
-        uniqueClassAttributesIndex = new HashMap<>();
-        listTypeIndex = new HashMap<>();
-        superClassIndex = new HashMap<>();
-        validatorDefinitionIndex = new HashMap<>();
-        filterDefinitionIndex = new HashMap<>();
-        configurationVariablesIndex = new HashMap<>();
+        // The metadata regions are not bounded, their size depends on the size of the data model, not the inventory
+        cacheSlots = new CacheRegion<>(REGION_CACHE_SLOTS, DEFAULT_CACHE_SLOTS_MAX_SIZE, CacheRegion.UNLIMITED);
+        classIndex = new CacheRegion<>(REGION_CLASSES, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        userIndex = new CacheRegion<>(REGION_USERS, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        groupIndex = new CacheRegion<>(REGION_GROUPS, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        possibleChildrenIndex = new CacheRegion<>(REGION_POSSIBLE_CHILDREN, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        possibleSpecialChildrenIndex = new CacheRegion<>(REGION_POSSIBLE_SPECIAL_CHILDREN, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        subClassesIndex = new CacheRegion<>(REGION_SUBCLASSES, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        subClassesNoRecursiveIndex = new CacheRegion<>(REGION_SUBCLASSES_NO_RECURSIVE, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        uniqueClassAttributesIndex = new UniqueAttributeIndex(DEFAULT_UNIQUE_ATTRIBUTES_MAX_SIZE);
+        listTypeIndex = new CacheRegion<>(REGION_LIST_TYPES, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        superClassIndex = new CacheRegion<>(REGION_SUPERCLASSES, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        validatorDefinitionIndex = new CacheRegion<>(REGION_VALIDATOR_DEFINITIONS, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        validatorIndex = new CacheRegion<>(REGION_VALIDATORS, DEFAULT_VALIDATORS_MAX_SIZE, DEFAULT_VALIDATORS_TIME_TO_LIVE);
+        filterDefinitionIndex = new CacheRegion<>(REGION_FILTER_DEFINITIONS, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        configurationVariablesIndex = new CacheRegion<>(REGION_CONFIGURATION_VARIABLES, CacheRegion.UNLIMITED, CacheRegion.UNLIMITED);
+        objectIdIndex = new CacheRegion<>(REGION_OBJECT_IDS, DEFAULT_OBJECT_IDS_MAX_SIZE, CacheRegion.UNLIMITED);
+        parentIndex = new CacheRegion<>(REGION_PARENTS, DEFAULT_PARENTS_MAX_SIZE, CacheRegion.UNLIMITED);
+        
+        regions = Arrays.asList(classIndex, listTypeIndex, possibleChildrenIndex, possibleSpecialChildrenIndex, 
+                subClassesIndex, subClassesNoRecursiveIndex, userIndex, groupIndex, superClassIndex, 
+                validatorDefinitionIndex, validatorIndex, filterDefinitionIndex, configurationVariablesIndex, cacheSlots, 
+                objectIdIndex, parentIndex);
     }
 
     public static CacheManager getInstance(){
-        if (cm == null)
-            cm = new CacheManager();
         return cm;
     }
+    
+    /**
+     * Sets the size and time-to-live policies of the regions. For every region, the properties 
+     * [regionName]CacheMaxSize (max number of entries, 0 for no limit) and [regionName]CacheTimeToLive 
+     * (in seconds, 0 for no expiration) are read, e.g. uniqueAttributesCacheMaxSize. Missing properties 
+     * leave the current policy untouched. The unique attributes region only supports the max size
+     * @param configuration The configuration properties
+     * @throws IllegalArgumentException If any of the values is not a number
+     */
+    public void configure(Properties configuration) {
+        for (CacheRegion<?, ?> region : regions) {
+            Object maxSize = configuration.get(region.getName() + PROPERTY_SUFFIX_MAX_SIZE);
+            Object timeToLive = configuration.get(region.getName() + PROPERTY_SUFFIX_TIME_TO_LIVE);
+            if (maxSize != null || timeToLive != null)
+                region.setPolicy(maxSize == null ? region.getMaxSize() : Long.valueOf(maxSize.toString().trim()), 
+                        timeToLive == null ? region.getTimeToLive() : Long.valueOf(timeToLive.toString().trim()) * 1000);
+        }
+        Object maxSize = configuration.get(REGION_UNIQUE_ATTRIBUTES + PROPERTY_SUFFIX_MAX_SIZE);
+        if (maxSize != null)
+            uniqueClassAttributesIndex.setMaxSize(Long.valueOf(maxSize.toString().trim()));
+    }
+    
+    /**
+     * Changes the size and time-to-live policy of a region
+     * @param regionName The region name, see the REGION_* constants
+     * @param maxSize The max number of entries, 0 for no limit
+     * @param timeToLive The time in milliseconds an entry is valid, 0 for no expiration. Ignored by the unique attributes region
+     * @throws IllegalArgumentException If there's no region with the given name
+     */
+    public void setRegionPolicy(String regionName, long maxSize, long timeToLive) {
+        if (REGION_UNIQUE_ATTRIBUTES.equals(regionName)) {
+            uniqueClassAttributesIndex.setMaxSize(maxSize);
+            return;
+        }
+        for (CacheRegion<?, ?> region : regions) {
+            if (region.getName().equals(regionName)) {
+                region.setPolicy(maxSize, timeToLive);
+                return;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Cache region %s does not exist", regionName));
+    }
+    
+    /**
+     * Takes a snapshot of the size and the hit/miss/eviction counters of every region
+     * @return The statistics of every region
+     */
+    public List<CacheStatistics> getStatistics() {
+        List<CacheStatistics> statistics = new ArrayList<>();
+        for (CacheRegion<?, ?> region : regions)
+            statistics.add(region.getStatistics());
+        statistics.add(uniqueClassAttributesIndex.getStatistics());
+        return statistics;
+    }
+    
+    /**
+     * Resets the hit/miss/eviction counters of every region
+     */
+    public void resetStatistics() {
+        regions.forEach(CacheRegion::resetStatistics);
+        uniqueClassAttributesIndex.resetStatistics();
+    }
 
     /**
      * Tries to retrieve a cached class
@@ -147,27 +349,45 @@ public class CacheManager {
     }
 
     /**
-     * Adds an entry to the possible children index
-     * @param parent
+     * Adds an entry to the possible children index. The list replaces the cached one, and must not be modified afterwards
+     * @param parent The parent class. Null for the navigation tree root
      * @param children
      */
     public void putPossibleChildren(String parent, List<ClassMetadata>children){
-        possibleChildrenIndex.put(parent, children);
+        possibleChildrenIndex.put(possibleChildrenKey(parent), children);
     }
     
     /**
-     * Adds an entry to the possible special children index
-     * @param parent The parent class
+     * Adds an entry to the possible special children index. The list replaces the cached one, and must not be modified afterwards
+     * @param parent The parent class. Null for the navigation tree root
      * @param children the list of possible special children classes
      */
     public void putPossibleSpecialChildren(String parent, List<String>children){
-        possibleSpecialChildrenIndex.put(parent, children);
+        possibleSpecialChildrenIndex.put(possibleChildrenKey(parent), children);
+    }
+    
+    /**
+     * The key of the possible children indexes. The navigation tree root (a null parent) is kept under DummyRoot
+     * @param parent The parent class, or null for the navigation tree root
+     * @return The key
+     */
+    private static String possibleChildrenKey(String parent) {
+        return parent == null ? Constants.NODE_DUMMYROOT : parent;
     }
 
+    /**
+     * Adds a subclass to the cached direct subclasses of a class. Nothing is done if they're not cached
+     * @param parent the given class
+     * @param newSubClass the new subclass
+     */
     public void putSubClassNoRecursive(String parent, ClassMetadataLight newSubClass){
-        List<ClassMetadataLight> children = subClassesNoRecursiveIndex.get(parent);
-        children.add(newSubClass);
-        subClassesNoRecursiveIndex.put(parent, children);
+        subClassesNoRecursiveIndex.compute(parent, (aParent, children) -> {
+            if (children == null)
+                return null;
+            List<ClassMetadataLight> newChildren = new ArrayList<>(children);
+            newChildren.add(newSubClass);
+            return newChildren;
+        });
     }
     /**
      * Adds an entry to the subclasses index
@@ -194,85 +414,69 @@ public class CacheManager {
      * @param value new value of an unique attribute
      */
     public void putUniqueAttributeValueIndex(String className, String attributeName, Object value) {
-        HashMap<String, List<Object>> uniqueClassAttributes = uniqueClassAttributesIndex.get(className);
-        if(uniqueClassAttributes == null) {
-            uniqueClassAttributes = new HashMap<>();
-            List<Object> values = new ArrayList<>();
-            if(value != null) //maybe still there is no object of this class with this unique attribute
-                values.add(value);
-            uniqueClassAttributes.put(attributeName, values);
-            uniqueClassAttributesIndex.put(className, uniqueClassAttributes);
-        }
-        else {
-            List<Object> values = uniqueClassAttributes.get(attributeName);
-            if(values == null) {
-                values = new ArrayList<>();
-                values.add(value);
-                uniqueClassAttributes.put(attributeName, values);
-                uniqueClassAttributesIndex.put(className, uniqueClassAttributes);
-            }
-            else {
-                values.add(value);
-                uniqueClassAttributes.put(attributeName, values);
-                uniqueClassAttributesIndex.put(className, uniqueClassAttributes);
-            }
-        }
+        uniqueClassAttributesIndex.put(className, attributeName, value); //maybe still there is no object of this class with this unique attribute, so the value can be null
     }
     
     public void putUniqueAttributeValuesIndex(String className, String attributeName, List<Object> values){
-        HashMap<String, List<Object>> uniqueClassAttributes = uniqueClassAttributesIndex.get(className);
-        if(uniqueClassAttributes == null){
-            uniqueClassAttributes = new HashMap<>();
-            if(values != null)
-                uniqueClassAttributes.put(attributeName, values);
-            uniqueClassAttributesIndex.put(className, uniqueClassAttributes);
-        }
-        else if(values != null){
-            uniqueClassAttributes.put(attributeName, values);
-            uniqueClassAttributesIndex.put(className, uniqueClassAttributes);
-        }
+        if (values != null)
+            uniqueClassAttributesIndex.putAll(className, attributeName, values);
+    }
+    
+    /**
+     * Registers a value of a unique attribute if no other object is using it
+     * @param className class name
+     * @param attributeName attribute name
+     * @param value the value to be used
+     * @return true if the value was not in use and has been registered, false if it is already in use, 
+     * null if the values of the attribute are not cached (there were too many, or they have not been loaded) 
+     * and the uniqueness has to be checked against the database
+     */
+    public Boolean putUniqueAttributeValueIfAbsent(String className, String attributeName, Object value) {
+        return uniqueClassAttributesIndex.putIfAbsent(className, attributeName, value);
     }
     
     /**
      * Adds an entry to the possible children index
-     * @param parent
+     * @param parent The parent class. Null for the navigation tree root
      * @param child
      */
     public void putPossibleChild(String parent, ClassMetadata child){
-        List<ClassMetadata> myList = possibleChildrenIndex.get(parent);
-        if (myList != null) {
-            myList.add(child);
-            myList.sort((classNameA, classNameB) -> { //Sorts the list everytime a new entry is added
+        possibleChildrenIndex.compute(possibleChildrenKey(parent), (aParent, children) -> {
+            if (children == null)
+                return null;
+            List<ClassMetadata> newChildren = new ArrayList<>(children);
+            newChildren.add(child);
+            newChildren.sort((classNameA, classNameB) -> { //Sorts the list everytime a new entry is added
                 return classNameA.getName().compareTo(classNameB.getName());
             });
-        }
+            return newChildren;
+        });
     }
     
     /**
      * Adds a single entry to the possible special children index
-     * @param parent
+     * @param parent The parent class. Null for the navigation tree root
      * @param child
      */
     public void putPossibleSpecialChild(String parent, String child){
-        List<String> myList = possibleSpecialChildrenIndex.get(parent);
-        if (myList != null) {
-            myList.add(child);
-            myList.sort((classNameA, classNameB) -> { //Sorts the list everytime a new entry is added
+        possibleSpecialChildrenIndex.compute(possibleChildrenKey(parent), (aParent, children) -> {
+            if (children == null)
+                return null;
+            List<String> newChildren = new ArrayList<>(children);
+            newChildren.add(child);
+            newChildren.sort((classNameA, classNameB) -> { //Sorts the list everytime a new entry is added
                 return classNameA.compareTo(classNameB);
             });
-        }
+            return newChildren;
+        });
     }
 
     public List<ClassMetadata> getPossibleChildren(String parent){
-        if (parent == null)
-            return possibleChildrenIndex.get(Constants.NODE_DUMMYROOT);
-        return possibleChildrenIndex.get(parent);
+        return possibleChildrenIndex.get(possibleChildrenKey(parent));
     }
     
     public List<String> getPossibleSpecialChildren(String parent){
-        if (parent == null)
-            return possibleSpecialChildrenIndex.get(Constants.NODE_DUMMYROOT);
-        return possibleSpecialChildrenIndex.get(parent);
+        return possibleSpecialChildrenIndex.get(possibleChildrenKey(parent));
     }
     
     public List<ClassMetadataLight> getSubclasses(String className){
@@ -283,15 +487,23 @@ public class CacheManager {
         return subClassesNoRecursiveIndex.get(className);
     }
     
+    /**
+     * Takes a snapshot of the cached values of the unique attributes of a class
+     * @param className class name
+     * @return the values of every cached unique attribute. Null if none is cached
+     */
     public HashMap<String, List<Object>> getUniqueClassAttributes(String className){
         return uniqueClassAttributesIndex.get(className);
     }
     
+    /**
+     * Takes a snapshot of the cached values of a unique attribute
+     * @param className class name
+     * @param attributeName attribute name
+     * @return the values in use. Null if they are not cached
+     */
     public List<Object> getUniqueAttributeValues(String className, String attributeName){
-        if (uniqueClassAttributesIndex.get(className) != null)
-            return uniqueClassAttributesIndex.get(className).get(attributeName);
-        else
-            return null;
+        return uniqueClassAttributesIndex.get(className, attributeName);
     }
 
     /**
@@ -341,23 +553,25 @@ public class CacheManager {
      * @param groupName
      */
     public void removeGroup(String groupName){
-        userIndex.remove(groupName);
+        groupIndex.remove(groupName);
     }
     
     public void removeUniqueAttribute(String className, String attributeName){
-        if (uniqueClassAttributesIndex.containsKey(className))
-            uniqueClassAttributesIndex.get(className).remove(attributeName);
+        uniqueClassAttributesIndex.removeAttribute(className, attributeName);
     }    
     
     public void removeUniqueAttributeValue(String className, String attributeName, Object attributeValue) {
-        HashMap<String, List<Object>> uniqueClassAttributes = uniqueClassAttributesIndex.get(className);
-        if (uniqueClassAttributes == null)
-            uniqueClassAttributes = new HashMap<>();
-        List<Object> uniqueValues = uniqueClassAttributes.get(attributeName);
-        if(uniqueValues != null)
-            uniqueValues.remove(attributeValue);
-        uniqueClassAttributes.put(attributeName, uniqueValues);
-        uniqueClassAttributesIndex.put(className, uniqueClassAttributes);
+        uniqueClassAttributesIndex.remove(className, attributeName, attributeValue);
+    }
+    
+    /**
+     * Releases several values of a unique attribute at once (e.g. after a bulk deletion)
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @param attributeValues The values no longer in use
+     */
+    public void removeUniqueAttributeValues(String className, String attributeName, List<Object> attributeValues) {
+        uniqueClassAttributesIndex.removeAll(className, attributeName, attributeValues);
     }
     /**
      * Tries to retrieve a cached list type
@@ -421,10 +635,131 @@ public class CacheManager {
     }
     
     /**
-     * Clears the cached validator definitions
+     * Clears the cached validator definitions and the validators they produced
      */
     public void clearValidatorDefinitionsCache() {
         validatorDefinitionIndex.clear();
+        clearValidators();
+    }
+    
+    /**
+     * Clears the cached validators, but not the validator definitions. Call it when the changes made to 
+     * the objects are not known
+     */
+    public void clearValidators() {
+        synchronized (validatorsLock) {
+            validatorIndex.clear();
+            validatorInvalidations.invalidateAll();
+        }
+    }
+    
+    /**
+     * Retrieves the cached validators of an object
+     * @param objectId The object id.
+     * @return The validators, the key is the id of the validator definition that produced them 
+     * (a null value means it produced none). Null if they are not cached
+     */
+    public Map<Long, Validator> getValidators(String objectId) {
+        return validatorIndex.get(objectId);
+    }
+    
+    /**
+     * Gets the current generation of the cached validators. Read it before reading the objects whose 
+     * validators are going to be computed, and pass it to {@link #putValidators(java.lang.String, java.util.Map, long)}
+     * @return The generation
+     */
+    public long getValidatorsGeneration() {
+        synchronized (validatorsLock) {
+            return validatorInvalidations.getGeneration();
+        }
+    }
+    
+    /**
+     * Adds or replaces the cached validators of an object, unless the validators of that object have been 
+     * removed since they were computed, because the object may have changed meanwhile
+     * @param objectId The object id.
+     * @param validators The validators, the key is the id of the validator definition that produced them. It must not be modified afterwards
+     * @param generation The generation of the validators when they started to be computed (see {@link #getValidatorsGeneration()})
+     */
+    public void putValidators(String objectId, Map<Long, Validator> validators, long generation) {
+        synchronized (validatorsLock) {
+            if (validatorInvalidations.canCache(objectId, generation))
+                validatorIndex.put(objectId, validators);
+        }
+    }
+    
+    /**
+     * Removes the cached validators of some objects. Call it after committing any change to an attribute 
+     * or relationship that may affect them
+     * @param objectIds The object ids.
+     */
+    public void removeValidators(String... objectIds) {
+        synchronized (validatorsLock) {
+            for (String objectId : objectIds)
+                validatorIndex.remove(objectId);
+            validatorInvalidations.invalidate(Arrays.asList(objectIds));
+        }
+    }
+    
+    /**
+     * Retrieves the cached node id of an inventory object
+     * @param objectId The object id.
+     * @return The id of the node, or null if it's not cached. The node may have been deleted 
+     * and its id reused, so the caller must check the node is still the object
+     */
+    public Long getObjectNodeId(String objectId) {
+        return objectIdIndex.get(objectId);
+    }
+    
+    /**
+     * Caches the node id of an inventory object
+     * @param objectId The object id.
+     * @param nodeId The id of the node.
+     */
+    public void putObjectNodeId(String objectId, long nodeId) {
+        objectIdIndex.put(objectId, nodeId);
+    }
+    
+    /**
+     * Removes the cached node ids of some inventory objects. Call it after deleting them
+     * @param objectIds The object ids.
+     */
+    public void removeObjectNodeIds(String... objectIds) {
+        for (String objectId : objectIds)
+            objectIdIndex.remove(objectId);
+    }
+    
+    /**
+     * Retrieves the cached parent node id of a node
+     * @param nodeId The id of the node.
+     * @return The id of the parent node, or null if it's not cached
+     */
+    public Long getParentNodeId(long nodeId) {
+        return parentIndex.get(nodeId);
+    }
+    
+    /**
+     * Caches the parent node id of a node
+     * @param nodeId The id of the node.
+     * @param parentNodeId The id of the parent node.
+     */
+    public void putParentNodeId(long nodeId, long parentNodeId) {
+        parentIndex.put(nodeId, parentNodeId);
+    }
+    
+    /**
+     * Removes the cached parent node id of a node. Call it after the node is moved or deleted
+     * @param nodeId The id of the node.
+     */
+    public void removeParentNodeId(long nodeId) {
+        parentIndex.remove(nodeId);
+    }
+    
+    /**
+     * Removes all the cached parent node ids
+     */
+    public void clearParentNodeIds() {
+        parentIndex.clear();
     }
     
     /**
@@ -433,11 +768,13 @@ public class CacheManager {
      * @param filterDefinition a filter definition for the class to be included in the cache
      */
     public void addFilterDefinition(String className, FilterDefinition filterDefinition) {
-        if(filterDefinitionIndex.get(className) == null)
-            filterDefinitionIndex.put(className, new ArrayList<>());
-        
-        if(!filterDefinitionIndex.get(className).contains(filterDefinition))
-            filterDefinitionIndex.get(className).add(filterDefinition);
+        filterDefinitionIndex.compute(className, (aClassName, filters) -> {
+            if (filters != null && filters.contains(filterDefinition))
+                return filters;
+            List<FilterDefinition> newFilters = filters == null ? new ArrayList<>() : new ArrayList<>(filters);
+            newFilters.add(filterDefinition);
+            return newFilters;
+        });
     }
     
     /**
@@ -447,13 +784,15 @@ public class CacheManager {
      * @param filterDefinition the filter definition to update
      */
     public void updateFilterInFilterDefinition(String className, FilterDefinition filterDefinition) {
-        if(filterDefinitionIndex.get(className) == null)
-            filterDefinitionIndex.put(className, new ArrayList<>());
-
-        if(!filterDefinitionIndex.get(className).contains(filterDefinition))
-            filterDefinitionIndex.get(className).add(filterDefinition);
-        else
-            filterDefinitionIndex.get(className).set(filterDefinitionIndex.get(className).indexOf(filterDefinition), filterDefinition);
+        filterDefinitionIndex.compute(className, (aClassName, filters) -> {
+            List<FilterDefinition> newFilters = filters == null ? new ArrayList<>() : new ArrayList<>(filters);
+            int index = newFilters.indexOf(filterDefinition);
+            if (index == -1)
+                newFilters.add(filterDefinition);
+            else
+                newFilters.set(index, filterDefinition);
+            return newFilters;
+        });
     }
     
     /**
@@ -487,15 +826,13 @@ public class CacheManager {
      * @param filterId the filter definition id.
      */
     public void removeFilterDefinitionsForClass(String className, long filterId) {
-        if(filterDefinitionIndex.get(className) != null){
-            FilterDefinition filterToRemove = null;
-            for(FilterDefinition f : filterDefinitionIndex.get(className))
-                if(f.getId() == filterId)
-                    filterToRemove = f;
-            
-            if(filterToRemove != null)
-                filterDefinitionIndex.get(className).remove(filterToRemove);
-        }
+        filterDefinitionIndex.compute(className, (aClassName, filters) -> {
+            if (filters == null)
+                return null;
+            List<FilterDefinition> newFilters = new ArrayList<>(filters);
+            newFilters.removeIf(filter -> filter.getId() == filterId);
+            return newFilters;
+        });
     }
     
     /**
@@ -508,7 +845,7 @@ public class CacheManager {
     /**
      * Adds (or replaces) the value of a configuration variable.
      * @param configVariableName The name of the configuration variable.
-     * @param configVariableValue  The value of the configuration value.
+     * @param configVariableValue  The value of the configuration value. Null values are not cached
      */
     public void addConfigurationValue(String configVariableName, Object configVariableValue) {
         configurationVariablesIndex.put(configVariableName, configVariableValue);
@@ -542,6 +879,8 @@ public class CacheManager {
         configurationVariablesIndex.clear();
         validatorDefinitionIndex.clear();
         filterDefinitionIndex.clear();
+        objectIdIndex.clear();
+        parentIndex.clear();
         clearClassCache();
     }
     
@@ -559,32 +898,43 @@ public class CacheManager {
         subClassesNoRecursiveIndex.clear();
         uniqueClassAttributesIndex.clear();
         validatorDefinitionIndex.clear();
+        clearValidators();
         superClassIndex.clear();
     }
 
+    /**
+     * Takes a snapshot of the cache slots that have not expired
+     * @return The cache slots
+     */
     public HashMap<String, CacheSlot> getCacheSlots() {
-        return cacheSlots;
+        return cacheSlots.toMap();
     }
     
     public CacheSlot getCacheSlot(String cacheSlotName){
         CacheSlot slot = cacheSlots.get(cacheSlotName);
         if(slot == null)
             return null;
-        else if(slot.isExpired())
+        else if(slot.isExpired()) {
+            cacheSlots.remove(cacheSlotName);
             return null;
-        else 
+        } else 
             return slot;
     }
     
     public void putCacheSlot(String cacheSlotName, Object content, int hoursOfValidity){
-        Date currentDate = new Date();
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(currentDate);
-        cal.add(Calendar.MINUTE, hoursOfValidity);
-        cacheSlots.put(cacheSlotName, new CacheSlot(content, currentDate.getTime(), cal.getTimeInMillis()));
+        long currentTime = System.currentTimeMillis();
+        long validity = hoursOfValidity * 3600000L; // 0 means the slot never expires
+        cacheSlots.put(cacheSlotName, new CacheSlot(content, currentTime, validity == 0 ? 0 : currentTime + validity), validity);
     }
 
+    /**
+     * Replaces all the cache slots
+     * @param cacheSlots The new cache slots
+     */
     public void setCacheSlots(HashMap<String, CacheSlot> cacheSlots) {
-        this.cacheSlots = cacheSlots;
+        this.cacheSlots.clear();
+        long currentTime = System.currentTimeMillis();
+        cacheSlots.forEach((cacheSlotName, slot) -> this.cacheSlots.put(cacheSlotName, slot, 
+                slot.getLifeExpectancy() == 0 ? CacheRegion.UNLIMITED : Math.max(1, slot.getLifeExpectancy() - currentTime)));
     }
 }
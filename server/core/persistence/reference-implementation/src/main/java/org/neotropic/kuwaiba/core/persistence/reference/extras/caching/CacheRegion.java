@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * A named, thread-safe section of the cache with its own size and time-to-live policy.
+ * Entries are kept in a ConcurrentHashMap, so reads never block and writes only
+ * lock the bucket they touch. When the region is bounded, the oldest entries are
+ * evicted first (FIFO). Every region counts its hits, misses and evictions.
+ * Null keys are ignored and putting a null value removes the entry.
+ * @param <K> The type of the keys
+ * @param <V> The type of the cached values
+ */
+public class CacheRegion<K, V> {
+    /**
+     * Value of maxSize and timeToLive meaning no limit
+     */
+    public static final long UNLIMITED = 0;
+    /**
+     * Region name
+     */
+    private final String name;
+    /**
+     * Max number of entries, UNLIMITED if the region is not bounded
+     */
+    private volatile long maxSize;
+    /**
+     * Default time in milliseconds an entry is valid after it's put, UNLIMITED if entries don't expire
+     */
+    private volatile long timeToLive;
+    /**
+     * The cached entries
+     */
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    /**
+     * Entries in the order they were added, used to pick the ones to evict when the region is bounded.
+     * It may contain entries already removed, they are discarded when found
+     */
+    private final ConcurrentLinkedQueue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    /**
+     * Number of elements in insertionOrder (ConcurrentLinkedQueue.size() is not a constant-time operation)
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a region
+     * @param name The region name
+     * @param maxSize The max number of entries, UNLIMITED if the region should not be bounded
+     * @param timeToLive The time in milliseconds an entry is valid, UNLIMITED if entries should not expire
+     */
+    public CacheRegion(String name, long maxSize, long timeToLive) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Changes the size and time-to-live policy of the region. If the new max size
+     * is smaller than the current number of entries, the oldest ones are evicted. The
+     * time-to-live only applies to the entries put after the change
+     * @param maxSize The max number of entries, UNLIMITED if the region should not be bounded
+     * @param timeToLive The time in milliseconds an entry is valid, UNLIMITED if entries should not expire
+     */
+    public void setPolicy(long maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        if (maxSize != UNLIMITED) {
+            // The entries added while the region was not bounded were not queued
+            insertionOrder.clear();
+            queued.set(0);
+            entries.values().forEach(this::enqueue);
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Retrieves a cached value
+     * @param key The key
+     * @return The cached value, or null if it's not cached or has expired
+     */
+    public V get(K key) {
+        Entry<K, V> entry = key == null ? null : entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired()) {
+            if (entries.remove(key, entry))
+                evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Checks if a key is cached, without affecting the hit/miss counters
+     * @param key The key
+     * @return true if there's a valid entry for the key
+     */
+    public boolean containsKey(K key) {
+        Entry<K, V> entry = key == null ? null : entries.get(key);
+        return entry != null && !entry.isExpired();
+    }
+
+    /**
+     * Adds or replaces an entry using the default time-to-live of the region
+     * @param key The key
+     * @param value The value. Null removes the entry
+     */
+    public void put(K key, V value) {
+        put(key, value, timeToLive);
+    }
+
+    /**
+     * Adds or replaces an entry with a particular time-to-live
+     * @param key The key
+     * @param value The value. Null removes the entry
+     * @param timeToLive The time in milliseconds the entry is valid, UNLIMITED if it should not expire
+     */
+    public void put(K key, V value, long timeToLive) {
+        if (key == null)
+            return;
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        Entry<K, V> entry = new Entry<>(key, value, timeToLive);
+        entries.put(key, entry);
+        if (maxSize != UNLIMITED) {
+            enqueue(entry);
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Atomically computes the new value of an entry. The function must not modify the current value,
+     * but return a new one (copy-on-write), since other threads may be reading it
+     * @param key The key
+     * @param remappingFunction Receives the key and the current value (null if there's none) and
+     * returns the new value, or null to remove the entry
+     * @return The new value
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (key == null)
+            return null;
+        Entry<K, V> newEntry = entries.compute(key, (aKey, currentEntry) -> {
+            V newValue = remappingFunction.apply(aKey, currentEntry == null || currentEntry.isExpired() ? null : currentEntry.value);
+            return newValue == null ? null : new Entry<>(aKey, newValue, timeToLive);
+        });
+        if (newEntry == null)
+            return null;
+        if (maxSize != UNLIMITED) {
+            enqueue(newEntry);
+            evictIfNeeded();
+        }
+        return newEntry.value;
+    }
+
+    /**
+     * Removes an entry
+     * @param key The key
+     * @return The value that was cached, or null if there was none
+     */
+    public V remove(K key) {
+        Entry<K, V> entry = key == null ? null : entries.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Removes all the entries. The statistics are kept
+     */
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    /**
+     * Gets the number of entries currently cached (some may have expired)
+     * @return The number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Takes a snapshot of the valid entries
+     * @return A new map with the valid entries
+     */
+    public HashMap<K, V> toMap() {
+        HashMap<K, V> snapshot = new HashMap<>();
+        for (Map.Entry<K, Entry<K, V>> entry : entries.entrySet()) {
+            if (!entry.getValue().isExpired())
+                snapshot.put(entry.getKey(), entry.getValue().value);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Takes a snapshot of the size and the hit/miss/eviction counters of the region
+     * @return The region statistics
+     */
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(name, size(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private void enqueue(Entry<K, V> entry) {
+        insertionOrder.offer(entry);
+        // Replaced and removed entries stay in the queue until they're polled, so it's compacted every now and then
+        if (queued.incrementAndGet() > 2 * Math.max(maxSize, entries.size()) + 16) {
+            insertionOrder.removeIf(queuedEntry -> entries.get(queuedEntry.key) != queuedEntry);
+            queued.set(insertionOrder.size());
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (maxSize != UNLIMITED && entries.size() > maxSize) {
+            Entry<K, V> oldest = insertionOrder.poll();
+            if (oldest == null)
+                return;
+            queued.decrementAndGet();
+            if (entries.remove(oldest.key, oldest))
+                evictions.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getStatistics().toString();
+    }
+
+    /**
+     * A cached value and its expiration time
+     * @param <K> The type of the key
+     * @param <V> The type of the value
+     */
+    private static class Entry<K, V> {
+        private final K key;
+        private final V value;
+        /**
+         * Time (as in System.currentTimeMillis()) after which the entry is not valid, UNLIMITED if it doesn't expire
+         */
+        private final long expiresAt;
+
+        private Entry(K key, V value, long timeToLive) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = timeToLive == UNLIMITED ? UNLIMITED : System.currentTimeMillis() + timeToLive;
+        }
+
+        private boolean isExpired() {
+            return expiresAt != UNLIMITED && System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
@@ -29,12 +29,11 @@ public class CacheSlot {
      */
     private long lastUpdate;
     /**
-     * the time of validity of the content
+     * The date until the content is valid, 0 if it has no expiration
      */
     private long lifeExpectancy;
     /**
      * keeps the logic necessary to refresh the content 
-     * 0 if has no expiration
      */
     private String callback;
 
@@ -76,7 +75,11 @@ public class CacheSlot {
         this.callback = callback;
     }
        
+    /**
+     * Checks if the content is no longer valid
+     * @return true if the content has an expiration date and it has passed
+     */
     public boolean isExpired(){
-        return lastUpdate > lifeExpectancy;
+        return lifeExpectancy != 0 && System.currentTimeMillis() > lifeExpectancy;
     }
 }
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
+
+/**
+ * A snapshot of the usage counters of a cache region
+ */
+public class CacheStatistics {
+    /**
+     * Region name
+     */
+    private final String regionName;
+    /**
+     * Number of entries when the snapshot was taken
+     */
+    private final long size;
+    /**
+     * Number of lookups that found a valid entry
+     */
+    private final long hits;
+    /**
+     * Number of lookups that did not find an entry or found an expired one
+     */
+    private final long misses;
+    /**
+     * Number of entries removed because the region was full or because they expired
+     */
+    private final long evictions;
+
+    public CacheStatistics(String regionName, long size, long hits, long misses, long evictions) {
+        this.regionName = regionName;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public String getRegionName() {
+        return regionName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The ratio of lookups that found a valid entry
+     * @return A value between 0 and 1, 0 if there have been no lookups
+     */
+    public double getHitRatio() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s entries, %s hits, %s misses, %s evictions", //NOI18N
+                regionName, size, hits, misses, evictions);
+    }
+}
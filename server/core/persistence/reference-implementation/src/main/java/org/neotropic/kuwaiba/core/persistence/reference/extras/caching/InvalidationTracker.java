@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tells if a value read from the database can still be cached, that is, if its key has not been invalidated since the
+ * value started to be read. Every invalidation gets a new generation, and the generation each key was last invalidated
+ * at is remembered, so an invalidation only prevents caching the values of the keys it touched. Only the most recently
+ * invalidated keys are remembered: the generation of the keys forgotten becomes the floor below which no value is cached,
+ * which is conservative, but keeps the memory bounded.
+ * This class is not thread-safe: the reads of the generation, the invalidations, and the checks followed by the puts
+ * to the cache must be made holding the same lock.
+ * @param <K> The type of the keys
+ */
+public class InvalidationTracker<K> {
+    /**
+     * Default max number of keys remembered
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    /**
+     * The generation of the last invalidation
+     */
+    private long generation;
+    /**
+     * The values read before this generation can't be cached, no matter their key
+     */
+    private long floor;
+    /**
+     * The keys invalidated recently, the generation they were last invalidated at. The oldest invalidation comes first
+     */
+    private final LinkedHashMap<K, Long> invalidations;
+
+    /**
+     * Creates a tracker
+     * @param maxSize The max number of keys remembered
+     */
+    public InvalidationTracker(int maxSize) {
+        this.invalidations = new LinkedHashMap<K, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                if (size() <= maxSize)
+                    return false;
+                floor = Math.max(floor, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets the current generation. Read it before reading the value to be cached
+     * @return The generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Invalidates some keys
+     * @param keys The keys
+     */
+    public void invalidate(Iterable<K> keys) {
+        generation++;
+        for (K key : keys) {
+            // Removed first, so it moves to the end of the invalidation order
+            invalidations.remove(key);
+            invalidations.put(key, generation);
+        }
+    }
+
+    /**
+     * Invalidates all the keys
+     */
+    public void invalidateAll() {
+        generation++;
+        invalidations.clear();
+        floor = generation;
+    }
+
+    /**
+     * Tells if a value can be cached
+     * @param key The key of the value
+     * @param readGeneration The generation when the value started to be read (see {@link #getGeneration()})
+     * @return If the key has not been invalidated since the value started to be read
+     */
+    public boolean canCache(K key, long readGeneration) {
+        if (floor > readGeneration)
+            return false;
+        Long invalidatedAt = invalidations.get(key);
+        return invalidatedAt == null || invalidatedAt <= readGeneration;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.GroovyShell;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
+
+/**
+ * Compiles the Groovy scripts (tasks, reports, validators, scripted queries, KPIs, process functions, etc)
+ * once and keeps the resulting classes, so running a script again only takes creating an instance of its class
+ * with a fresh binding. Compiling is by far the most expensive part of running a short script, and every
+ * compilation defines a new class, so compiling on every run also fills up the metaspace.
+ * Scripts are identified by an id (e.g. task:12) and the hash of their source. If the source of a script changes,
+ * it is compiled again and the previous class is discarded. Scripts without an id are identified by their hash only.
+ * Every script is compiled in its own class loader, so its class can be unloaded once it is discarded. The number of
+ * compiled scripts is bounded, the least recently used ones are discarded first, which in turn bounds the class
+ * loaders and the metaspace used by them. The compile and run times of every script are recorded (see {@link #getStatistics()}).
+ * The cache can be safely used from several threads at the same time.
+ */
+public class ScriptCache {
+    /**
+     * Configuration property with the max number of compiled scripts
+     */
+    public static final String PROPERTY_MAX_SIZE = "scriptCacheMaxSize"; //NOI18N
+    /**
+     * Default max number of compiled scripts
+     */
+    public static final int DEFAULT_MAX_SIZE = 500;
+    /**
+     * Name of the timer of the script runs
+     */
+    public static final String METRIC_RUNS = "kuwaiba_script_run_seconds"; //NOI18N
+    /**
+     * Singleton
+     */
+    private static final ScriptCache instance = new ScriptCache();
+    /**
+     * The compiled scripts in access order (least recently used first)
+     */
+    private final LinkedHashMap<String, CompiledScript> scripts = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Max number of compiled scripts
+     */
+    private int maxSize = DEFAULT_MAX_SIZE;
+    /**
+     * Where the script runs are also recorded. Null if they are not
+     */
+    private volatile MetricsService metrics;
+
+    private ScriptCache() { }
+
+    public static ScriptCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reads the max number of compiled scripts from the property scriptCacheMaxSize.
+     * If the property is not set, the current value is kept
+     * @param configuration The configuration properties
+     * @throws IllegalArgumentException If the value is not a number
+     */
+    public void configure(Properties configuration) {
+        Object value = configuration.get(PROPERTY_MAX_SIZE);
+        if (value != null)
+            setMaxSize(Integer.valueOf(value.toString().trim()));
+    }
+
+    /**
+     * Records the script runs in a timer per script type (the part of the script id before the colon), so the
+     * slow ones are logged along with their id
+     * @param metrics The metrics service. Null to stop recording the runs
+     */
+    public void setMetrics(MetricsService metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the max number of compiled scripts. The scripts above the new limit are discarded
+     * @param maxSize The max number of compiled scripts
+     */
+    public void setMaxSize(int maxSize) {
+        synchronized (scripts) {
+            this.maxSize = Math.max(1, maxSize);
+            trim();
+        }
+    }
+
+    /**
+     * Runs a script, compiling it first if it's not in the cache or its source has changed.
+     * The classes available to the script are the ones visible to the class loader of this class
+     * @param scriptId The script id. It should include the type of script, since ids of different types may collide (e.g. report:1, task:1).
+     * Null for scripts that are not stored anywhere, in which case the script is identified by its source
+     * @param source The source of the script
+     * @param binding The variables the script will have access to. Use a new one in every run
+     * @return The value returned by the script
+     * @throws org.codehaus.groovy.control.CompilationFailedException If the script could not be compiled
+     */
+    public Object run(String scriptId, String source, Binding binding) {
+        return run(scriptId, source, ScriptCache.class.getClassLoader(), binding);
+    }
+
+    /**
+     * Runs a script, compiling it first if it's not in the cache, its source has changed or it was compiled using another parent class loader
+     * @param scriptId The script id. It should include the type of script, since ids of different types may collide (e.g. report:1, task:1).
+     * Null for scripts that are not stored anywhere, in which case the script is identified by its source
+     * @param source The source of the script
+     * @param parentClassLoader The class loader used to find the classes referenced by the script
+     * @param binding The variables the script will have access to. Use a new one in every run
+     * @return The value returned by the script
+     * @throws org.codehaus.groovy.control.CompilationFailedException If the script could not be compiled
+     */
+    public Object run(String scriptId, String source, ClassLoader parentClassLoader, Binding binding) {
+        CompiledScript compiledScript = getCompiledScript(scriptId, source, parentClassLoader);
+        long start = System.nanoTime();
+        try {
+            return InvokerHelper.createScript(compiledScript.scriptClass, binding).run();
+        } finally {
+            long runTime = System.nanoTime() - start;
+            compiledScript.counters.runs.record(runTime);
+            MetricsService currentMetrics = metrics;
+            if (currentMetrics != null)
+                currentMetrics.timer(METRIC_RUNS, "Time spent running Groovy scripts", //NOI18N
+                        "type", scriptId == null || scriptId.indexOf(':') == -1 ? "other" : scriptId.substring(0, scriptId.indexOf(':'))) //NOI18N
+                        .record(runTime, compiledScript.key);
+        }
+    }
+
+    /**
+     * Discards the compiled version of a script. Call it after the script is updated or deleted.
+     * Even if it's not called, an updated script is compiled again the next time it's run, but its
+     * previous version would stay in memory until it's discarded to make room for other scripts
+     * @param scriptId The script id
+     */
+    public void evict(String scriptId) {
+        CompiledScript compiledScript;
+        synchronized (scripts) {
+            compiledScript = scripts.remove(scriptId);
+        }
+        if (compiledScript != null)
+            compiledScript.unload();
+    }
+
+    /**
+     * Discards all the compiled scripts, along with their statistics
+     */
+    public void clear() {
+        List<CompiledScript> compiledScripts;
+        synchronized (scripts) {
+            compiledScripts = new ArrayList<>(scripts.values());
+            scripts.clear();
+        }
+        compiledScripts.forEach(CompiledScript::unload);
+    }
+
+    /**
+     * Gets the number of compiled scripts
+     * @return The number of compiled scripts
+     */
+    public int size() {
+        synchronized (scripts) {
+            return scripts.size();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the compile and run times of the scripts currently in the cache
+     * @return The statistics of every script
+     */
+    public List<ScriptStatistics> getStatistics() {
+        List<CompiledScript> compiledScripts;
+        synchronized (scripts) {
+            compiledScripts = new ArrayList<>(scripts.values());
+        }
+        List<ScriptStatistics> statistics = new ArrayList<>();
+        for (CompiledScript compiledScript : compiledScripts) {
+            ScriptCounters counters = compiledScript.counters;
+            statistics.add(new ScriptStatistics(compiledScript.key,
+                    counters.compilations.count.sum(), counters.compilations.total.sum(),
+                    counters.runs.count.sum(), counters.runs.total.sum(), counters.runs.max.get()));
+        }
+        return statistics;
+    }
+
+    private CompiledScript getCompiledScript(String scriptId, String source, ClassLoader parentClassLoader) {
+        String hash = hash(source);
+        String key = scriptId == null ? "#" + hash : scriptId; //NOI18N
+
+        CompiledScript previousScript;
+        synchronized (scripts) {
+            previousScript = scripts.get(key);
+        }
+        if (previousScript != null && previousScript.hash.equals(hash) && previousScript.parentClassLoader == parentClassLoader)
+            return previousScript;
+
+        // Two threads may compile the same script at the same time, the first one to finish wins.
+        // That's preferable to compiling while holding the lock
+        long start = System.nanoTime();
+        GroovyClassLoader classLoader = new GroovyClassLoader(parentClassLoader);
+        Class<?> scriptClass = classLoader.parseClass(new GroovyCodeSource(source, "Script_" + hash.substring(0, 16), //NOI18N
+                GroovyShell.DEFAULT_CODE_BASE), false);
+        long compileTime = System.nanoTime() - start;
+
+        CompiledScript compiledScript, replacedScript;
+        synchronized (scripts) {
+            CompiledScript currentScript = scripts.get(key);
+            if (currentScript != null && currentScript.hash.equals(hash) && currentScript.parentClassLoader == parentClassLoader) {
+                // Another thread compiled the same script in the meantime
+                currentScript.counters.compilations.record(compileTime);
+                InvokerHelper.removeClass(scriptClass);
+                return currentScript;
+            }
+            // The statistics survive the changes in the source, so they can be compared
+            compiledScript = new CompiledScript(key, hash, parentClassLoader, scriptClass,
+                    currentScript == null ? new ScriptCounters() : currentScript.counters);
+            compiledScript.counters.compilations.record(compileTime);
+            replacedScript = scripts.put(key, compiledScript);
+            trim();
+        }
+        if (replacedScript != null)
+            replacedScript.unload();
+        return compiledScript;
+    }
+
+    /**
+     * Discards the least recently used scripts until the cache is within its limit. Must be called while holding the lock
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, CompiledScript>> entries = scripts.entrySet().iterator();
+        while (scripts.size() > maxSize && entries.hasNext()) {
+            CompiledScript eldestScript = entries.next().getValue();
+            entries.remove();
+            eldestScript.unload();
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8)); //NOI18N
+            StringBuilder res = new StringBuilder();
+            for (byte aByte : digest)
+                res.append(String.format("%02x", aByte)); //NOI18N
+            return res.toString();
+        } catch (NoSuchAlgorithmException ex) { // Every JVM must support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A compiled script
+     */
+    private static class CompiledScript {
+        /**
+         * The script id, or its hash preceded by # if it has no id
+         */
+        private final String key;
+        /**
+         * The hash of the source the class was compiled from
+         */
+        private final String hash;
+        private final ClassLoader parentClassLoader;
+        private final Class<?> scriptClass;
+        private final ScriptCounters counters;
+
+        private CompiledScript(String key, String hash, ClassLoader parentClassLoader, Class<?> scriptClass, ScriptCounters counters) {
+            this.key = key;
+            this.hash = hash;
+            this.parentClassLoader = parentClassLoader;
+            this.scriptClass = scriptClass;
+            this.counters = counters;
+        }
+
+        /**
+         * Removes the meta class of the script from the Groovy registry, otherwise, the class (and its class loader)
+         * can not be garbage-collected
+         */
+        private void unload() {
+            InvokerHelper.removeClass(scriptClass);
+        }
+    }
+
+    /**
+     * Number of compilations and runs of a script and their duration
+     */
+    private static class ScriptCounters {
+        private final Timer compilations = new Timer();
+        private final Timer runs = new Timer();
+    }
+
+    /**
+     * Number of events, total and max duration in nanoseconds
+     */
+    private static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long time) {
+            count.increment();
+            total.add(time);
+            max.accumulateAndGet(time, Math::max);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
+
+/**
+ * A snapshot of the compile and run times of a cached script
+ */
+public class ScriptStatistics {
+    /**
+     * The script id, or its hash preceded by # if it has no id
+     */
+    private final String scriptId;
+    /**
+     * Number of times the script has been compiled
+     */
+    private final long compilations;
+    /**
+     * Total time spent compiling the script in nanoseconds
+     */
+    private final long compileTime;
+    /**
+     * Number of times the script has been run (successfully or not)
+     */
+    private final long runs;
+    /**
+     * Total time spent running the script in nanoseconds
+     */
+    private final long runTime;
+    /**
+     * Longest run in nanoseconds
+     */
+    private final long maxRunTime;
+
+    public ScriptStatistics(String scriptId, long compilations, long compileTime, long runs, long runTime, long maxRunTime) {
+        this.scriptId = scriptId;
+        this.compilations = compilations;
+        this.compileTime = compileTime;
+        this.runs = runs;
+        this.runTime = runTime;
+        this.maxRunTime = maxRunTime;
+    }
+
+    public String getScriptId() {
+        return scriptId;
+    }
+
+    public long getCompilations() {
+        return compilations;
+    }
+
+    public long getCompileTime() {
+        return compileTime;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public long getRunTime() {
+        return runTime;
+    }
+
+    public long getMaxRunTime() {
+        return maxRunTime;
+    }
+
+    /**
+     * The average duration of the compilations
+     * @return The average in milliseconds, 0 if the script has not been compiled
+     */
+    public double getCompileAverageTime() {
+        return compilations == 0 ? 0 : compileTime / 1e6 / compilations;
+    }
+
+    /**
+     * The average duration of the runs
+     * @return The average in milliseconds, 0 if the script has not been run
+     */
+    public double getRunAverageTime() {
+        return runs == 0 ? 0 : runTime / 1e6 / runs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: compiled %s times (avg %.1f ms), run %s times (avg %.1f ms, max %.1f ms)", //NOI18N
+                scriptId, compilations, getCompileAverageTime(), runs, getRunAverageTime(), maxRunTime / 1e6);
+    }
+}
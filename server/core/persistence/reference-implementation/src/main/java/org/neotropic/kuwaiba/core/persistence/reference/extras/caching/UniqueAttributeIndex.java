@@ -0,0 +1,264 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.caching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Index of the values in use of the unique attributes of every class. Values are
+ * stored as strings in concurrent sets, so checking and registering a value is a
+ * single atomic, constant-time operation. The total number of values is bounded: when
+ * the limit is reached, the attribute with most values is dropped from the index and
+ * its uniqueness has to be checked against the database until it's loaded again
+ * (see {@link #putAll(java.lang.String, java.lang.String, java.lang.Iterable)}).
+ */
+class UniqueAttributeIndex {
+    /**
+     * Region name used in the statistics
+     */
+    static final String NAME = "uniqueAttributes"; //NOI18N
+    /**
+     * Values in use. The key is the class name, the value, the sets of values of its unique attributes
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<String>>> index = new ConcurrentHashMap<>();
+    /**
+     * Attributes (as className.attributeName) dropped from the index because they had too many values
+     */
+    private final Set<String> overflowedAttributes = ConcurrentHashMap.newKeySet();
+    /**
+     * Approximate number of values in the index
+     */
+    private final AtomicLong size = new AtomicLong();
+    /**
+     * Max number of values in the index, CacheRegion.UNLIMITED if it's not bounded
+     */
+    private volatile long maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    UniqueAttributeIndex(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    long getMaxSize() {
+        return maxSize;
+    }
+
+    void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evictIfNeeded();
+    }
+
+    /**
+     * Checks if the values of an attribute are in the index
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @return true if the attribute values are cached, false if they were never loaded or were evicted
+     */
+    boolean isIndexed(String className, String attributeName) {
+        return getValues(className, attributeName) != null;
+    }
+
+    /**
+     * Registers a value of an attribute while the index is being built. If the attribute
+     * was evicted, the value is ignored, as a partial set of values would lead to wrong uniqueness checks
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @param value The value. If null, only the (empty) set of values of the attribute is created
+     */
+    void put(String className, String attributeName, Object value) {
+        if (overflowedAttributes.contains(key(className, attributeName)))
+            return;
+        Set<String> values = index.computeIfAbsent(className, aClassName -> new ConcurrentHashMap<>())
+                .computeIfAbsent(attributeName, anAttributeName -> ConcurrentHashMap.newKeySet());
+        if (value != null && values.add(String.valueOf(value)) && isFull(size.incrementAndGet()))
+            evictIfNeeded();
+    }
+
+    /**
+     * Replaces all the values of an attribute. An evicted attribute is indexed again if its values fit in the index
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @param newValues All the values of the attribute currently in use
+     */
+    synchronized void putAll(String className, String attributeName, Iterable<?> newValues) {
+        Set<String> values = ConcurrentHashMap.newKeySet();
+        for (Object value : newValues) {
+            if (value != null)
+                values.add(String.valueOf(value));
+        }
+        Set<String> oldValues = index.computeIfAbsent(className, aClassName -> new ConcurrentHashMap<>()).put(attributeName, values);
+        overflowedAttributes.remove(key(className, attributeName));
+        size.addAndGet(values.size() - (oldValues == null ? 0 : oldValues.size()));
+        evictIfNeeded();
+    }
+
+    /**
+     * Registers a value of an attribute if it's not in use already. This is the uniqueness check
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @param value The value
+     * @return true if the value was not in use and has been registered, false if it's in use,
+     * null if the attribute is not indexed and the check has to be done elsewhere
+     */
+    Boolean putIfAbsent(String className, String attributeName, Object value) {
+        Set<String> values = getValues(className, attributeName);
+        if (values == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (value == null)
+            return true;
+        if (!values.add(String.valueOf(value)))
+            return false;
+        if (isFull(size.incrementAndGet()))
+            evictIfNeeded();
+        return true;
+    }
+
+    /**
+     * Releases a value of an attribute
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @param value The value no longer in use
+     */
+    void remove(String className, String attributeName, Object value) {
+        Set<String> values = getValues(className, attributeName);
+        if (values != null && value != null && values.remove(String.valueOf(value)))
+            size.decrementAndGet();
+    }
+
+    /**
+     * Releases several values of an attribute at once
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @param oldValues The values no longer in use
+     */
+    void removeAll(String className, String attributeName, Iterable<?> oldValues) {
+        Set<String> values = getValues(className, attributeName);
+        if (values == null)
+            return;
+        long removed = 0;
+        for (Object value : oldValues) {
+            if (value != null && values.remove(String.valueOf(value)))
+                removed++;
+        }
+        size.addAndGet(-removed);
+    }
+
+    /**
+     * Removes an attribute from the index (e.g. when it's no longer unique)
+     * @param className The class name
+     * @param attributeName The attribute name
+     */
+    synchronized void removeAttribute(String className, String attributeName) {
+        overflowedAttributes.remove(key(className, attributeName));
+        Map<String, Set<String>> classAttributes = index.get(className);
+        Set<String> values = classAttributes == null ? null : classAttributes.remove(attributeName);
+        if (values != null)
+            size.addAndGet(-values.size());
+    }
+
+    /**
+     * Takes a snapshot of the values of an attribute
+     * @param className The class name
+     * @param attributeName The attribute name
+     * @return The values, null if the attribute is not indexed
+     */
+    List<Object> get(String className, String attributeName) {
+        Set<String> values = getValues(className, attributeName);
+        return values == null ? null : new ArrayList<>(values);
+    }
+
+    /**
+     * Takes a snapshot of the values of the unique attributes of a class
+     * @param className The class name
+     * @return The values of each indexed attribute, null if the class has no indexed attributes
+     */
+    HashMap<String, List<Object>> get(String className) {
+        Map<String, Set<String>> classAttributes = index.get(className);
+        if (classAttributes == null)
+            return null;
+        HashMap<String, List<Object>> snapshot = new HashMap<>();
+        classAttributes.forEach((attributeName, values) -> snapshot.put(attributeName, new ArrayList<>(values)));
+        return snapshot;
+    }
+
+    synchronized void clear() {
+        index.clear();
+        overflowedAttributes.clear();
+        size.set(0);
+    }
+
+    CacheStatistics getStatistics() {
+        return new CacheStatistics(NAME, size.get(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private Set<String> getValues(String className, String attributeName) {
+        Map<String, Set<String>> classAttributes = index.get(className);
+        return classAttributes == null ? null : classAttributes.get(attributeName);
+    }
+
+    /**
+     * Drops the attributes with most values until the index is within its limit
+     */
+    private synchronized void evictIfNeeded() {
+        while (isFull(size.get())) {
+            String largestClass = null, largestAttribute = null;
+            int largestSize = -1;
+            for (Map.Entry<String, ConcurrentHashMap<String, Set<String>>> classAttributes : index.entrySet()) {
+                for (Map.Entry<String, Set<String>> values : classAttributes.getValue().entrySet()) {
+                    if (values.getValue().size() > largestSize) {
+                        largestClass = classAttributes.getKey();
+                        largestAttribute = values.getKey();
+                        largestSize = values.getValue().size();
+                    }
+                }
+            }
+            if (largestClass == null || largestSize == 0) {
+                size.set(0); // The count drifted (values added to an attribute while it was being evicted)
+                return;
+            }
+            Set<String> values = index.get(largestClass).remove(largestAttribute);
+            overflowedAttributes.add(key(largestClass, largestAttribute));
+            size.addAndGet(-values.size());
+            evictions.add(values.size());
+        }
+    }
+
+    private boolean isFull(long currentSize) {
+        return maxSize != CacheRegion.UNLIMITED && currentSize > maxSize;
+    }
+
+    private static String key(String className, String attributeName) {
+        return className + "." + attributeName; //NOI18N
+    }
+}
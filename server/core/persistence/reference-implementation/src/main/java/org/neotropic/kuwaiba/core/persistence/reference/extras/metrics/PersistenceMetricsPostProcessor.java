@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.metrics;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
+import org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.Counter;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.Timer;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.SmartInstantiationAwareBeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every call to the methods of the entity managers (BEM, AEM and MEM). Calls from an entity manager to itself are not timed.
+ * The entity managers are wrapped in class-based proxies, so the beans injected by their implementation class are timed too.
+ * Since the entity managers reference each other, the proxies are also handed out as early references while they are being created.
+ */
+@Component
+public class PersistenceMetricsPostProcessor implements SmartInstantiationAwareBeanPostProcessor {
+    /**
+     * Name of the timer of the entity manager calls
+     */
+    public static final String METRIC_CALLS = "kuwaiba_persistence_call_seconds"; //NOI18N
+    /**
+     * Name of the counter of the entity manager calls that threw an exception
+     */
+    public static final String METRIC_ERRORS = "kuwaiba_persistence_call_errors_total"; //NOI18N
+    /**
+     * The metrics service is looked up when it's first needed, since the post processors are created before the rest of the beans
+     */
+    private final ObjectProvider<MetricsService> metricsProvider;
+    /**
+     * Bean name, raw bean. The beans whose proxy was already handed out as an early reference
+     */
+    private final ConcurrentHashMap<String, Object> earlyReferences = new ConcurrentHashMap<>();
+
+    public PersistenceMetricsPostProcessor(ObjectProvider<MetricsService> metricsProvider) {
+        this.metricsProvider = metricsProvider;
+    }
+
+    @Override
+    public Object getEarlyBeanReference(Object bean, String beanName) {
+        earlyReferences.put(beanName, bean);
+        return wrap(bean);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        // If the proxy was handed out already, the container uses the early reference
+        if (earlyReferences.remove(beanName) == bean)
+            return bean;
+        return wrap(bean);
+    }
+
+    private Object wrap(Object bean) {
+        if (bean instanceof BusinessEntityManager)
+            return createProxy(bean, BusinessEntityManager.class, "bem"); //NOI18N
+        if (bean instanceof ApplicationEntityManager)
+            return createProxy(bean, ApplicationEntityManager.class, "aem"); //NOI18N
+        if (bean instanceof MetadataEntityManager)
+            return createProxy(bean, MetadataEntityManager.class, "mem"); //NOI18N
+        return bean;
+    }
+
+    private Object createProxy(Object bean, Class<?> managerInterface, String managerName) {
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TimingInterceptor(managerInterface, managerName));
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    /**
+     * Times the calls to the methods declared in the interface of an entity manager
+     */
+    private class TimingInterceptor implements MethodInterceptor {
+        private final String managerName;
+        /**
+         * The signatures of the interface methods
+         */
+        private final Set<String> interfaceMethods = new HashSet<>();
+        /**
+         * Called method, its metrics. Methods that are not part of the interface are mapped to {@link MethodMetrics#NOT_TIMED}
+         */
+        private final ConcurrentHashMap<Method, MethodMetrics> methodMetrics = new ConcurrentHashMap<>();
+
+        private TimingInterceptor(Class<?> managerInterface, String managerName) {
+            this.managerName = managerName;
+            for (Method aMethod : managerInterface.getMethods())
+                interfaceMethods.add(getSignature(aMethod));
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            MethodMetrics metrics = methodMetrics.computeIfAbsent(invocation.getMethod(), aMethod ->
+                    interfaceMethods.contains(getSignature(aMethod)) ? createMethodMetrics(aMethod.getName()) : MethodMetrics.NOT_TIMED);
+            if (metrics == MethodMetrics.NOT_TIMED)
+                return invocation.proceed();
+
+            long start = metrics.timer.start();
+            try {
+                return invocation.proceed();
+            } catch (Throwable ex) {
+                metrics.errors.increment();
+                throw ex;
+            } finally {
+                metrics.timer.stop(start);
+            }
+        }
+
+        private MethodMetrics createMethodMetrics(String methodName) {
+            MetricsService metrics = metricsProvider.getObject();
+            return new MethodMetrics(
+                    metrics.timer(METRIC_CALLS, "Time spent in the entity manager methods", //NOI18N
+                            "manager", managerName, "method", methodName), //NOI18N
+                    metrics.counter(METRIC_ERRORS, "Calls to the entity manager methods that threw an exception", //NOI18N
+                            "manager", managerName, "method", methodName)); //NOI18N
+        }
+
+        private String getSignature(Method aMethod) {
+            StringBuilder signature = new StringBuilder(aMethod.getName());
+            for (Class<?> parameterType : aMethod.getParameterTypes())
+                signature.append(',').append(parameterType.getName());
+            return signature.toString();
+        }
+    }
+
+    /**
+     * The metrics of a method. Overloaded methods share them
+     */
+    private static class MethodMetrics {
+        private static final MethodMetrics NOT_TIMED = new MethodMetrics(null, null);
+        private final Timer timer;
+        private final Counter errors;
+
+        private MethodMetrics(Timer timer, Counter errors) {
+            this.timer = timer;
+            this.errors = errors;
+        }
+    }
+}
@@ -23,7 +23,7 @@ import org.neotropic.kuwaiba.core.apis.persistence.application.processman.KpiAct
 import org.neotropic.kuwaiba.core.apis.persistence.application.processman.KpiResult;
 import org.neotropic.kuwaiba.core.apis.persistence.application.processman.ProcessDefinition;
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.ScriptCache;
 import org.springframework.stereotype.Service;
 
 /**
@@ -93,9 +93,8 @@ public class KpiManagerService {
                 binding.setVariable("artifact", artifact);
                 binding.setVariable("activityKpi", activityKpi);
 
-                GroovyShell shell = new GroovyShell(KpiResult.class.getClassLoader(), binding);
-
-                return (KpiResult) shell.evaluate(activityKpiAction.getScript());
+                // The KPI actions are part of the process definition and have no id of their own, so they are identified by their source
+                return (KpiResult) ScriptCache.getInstance().run(null, activityKpiAction.getScript(), KpiResult.class.getClassLoader(), binding);
             }
         }
 
@@ -0,0 +1,396 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.reporting;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportResult;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheRegion;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheStatistics;
+
+/**
+ * Runs the reports in a pool of worker threads, so generating a large report does not block the thread
+ * (usually a UI session) that requested it. Submitting a report returns a {@link ReportJob} right away,
+ * whose result is written to a temporary file as the report is generated instead of being kept in memory.
+ * The pool has a fixed number of threads and a bounded queue. When the queue is full, new reports are rejected.
+ * The results are cached per report and parameters for a configurable time, and a report requested again
+ * while it's still being generated is not run twice. Changing or deleting a report discards its cached results
+ * (see {@link #evict(long)}). The result files are deleted some time after the report finishes (see {@link #RESULT_RETENTION}),
+ * by a background thread that checks them every {@link #PURGE_INTERVAL} milliseconds, so they don't pile up
+ * in the temporary directory even if no other report is requested.
+ */
+public class ReportExecutor {
+    /**
+     * Configuration property with the number of worker threads
+     */
+    public static final String PROPERTY_THREADS = "reportThreads"; //NOI18N
+    /**
+     * Configuration property with the max number of reports waiting for a worker
+     */
+    public static final String PROPERTY_QUEUE_SIZE = "reportQueueSize"; //NOI18N
+    /**
+     * Configuration property with the time in seconds the results are reused. 0 disables the cache
+     */
+    public static final String PROPERTY_CACHE_TIME_TO_LIVE = "reportCacheTimeToLive"; //NOI18N
+    /**
+     * Configuration property with the max number of cached results
+     */
+    public static final String PROPERTY_CACHE_MAX_SIZE = "reportCacheMaxSize"; //NOI18N
+    /**
+     * Default number of worker threads
+     */
+    public static final int DEFAULT_THREADS = 2;
+    /**
+     * Default max number of reports waiting for a worker
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 20;
+    /**
+     * Default time in seconds the results are reused. The results are not reused unless configured otherwise,
+     * since a report may read data that has changed since it was generated
+     */
+    public static final long DEFAULT_CACHE_TIME_TO_LIVE = 0;
+    /**
+     * Default max number of cached results
+     */
+    public static final long DEFAULT_CACHE_MAX_SIZE = 100;
+    /**
+     * Min time in milliseconds the result file of a job is kept after it finishes, so it can be downloaded even if it's not cached
+     */
+    public static final long RESULT_RETENTION = 600000;
+    /**
+     * Time in milliseconds between two checks for result files to be deleted
+     */
+    public static final long PURGE_INTERVAL = 60000;
+    /**
+     * Name of the cache region with the results
+     */
+    public static final String REGION_REPORT_RESULTS = "reportResults"; //NOI18N
+    /**
+     * Singleton
+     */
+    private static final ReportExecutor instance = new ReportExecutor();
+    /**
+     * The worker threads. The queue is not bounded itself, the number of pending jobs is checked before submitting a new one
+     */
+    private final ThreadPoolExecutor workers;
+    /**
+     * Max number of reports waiting for a worker
+     */
+    private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+    /**
+     * Number of jobs queued or running
+     */
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+    /**
+     * The jobs that have not been purged yet, by job id
+     */
+    private final ConcurrentHashMap<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    /**
+     * The last job of every report and parameters. The jobs in progress are cached too, so they can be shared
+     */
+    private final CacheRegion<String, ReportJob> results;
+    /**
+     * Time in milliseconds the results are reused, 0 if they are not
+     */
+    private volatile long cacheTimeToLive = DEFAULT_CACHE_TIME_TO_LIVE * 1000;
+    /**
+     * Deletes the expired result files periodically
+     */
+    private final ScheduledExecutorService purger;
+
+    private ReportExecutor() {
+        workers = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new ReportThreadFactory());
+        workers.allowCoreThreadTimeOut(true);
+        results = new CacheRegion<>(REGION_REPORT_RESULTS, DEFAULT_CACHE_MAX_SIZE, cacheTimeToLive);
+        purger = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread purgeThread = new Thread(task, "kuwaiba-report-purge"); //NOI18N
+            purgeThread.setDaemon(true);
+            return purgeThread;
+        });
+        purger.scheduleWithFixedDelay(() -> {
+            try {
+                purge();
+            } catch (RuntimeException ex) { } // An exception would cancel the next runs. The files left will be deleted next time
+        }, PURGE_INTERVAL, PURGE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static ReportExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Reads the size of the pool and the cache policy from the properties reportThreads, reportQueueSize,
+     * reportCacheTimeToLive (in seconds) and reportCacheMaxSize. The values not set are kept
+     * @param configuration The configuration properties
+     * @throws IllegalArgumentException If a value is not a number
+     */
+    public void configure(Properties configuration) {
+        Object threads = configuration.get(PROPERTY_THREADS);
+        Object theQueueSize = configuration.get(PROPERTY_QUEUE_SIZE);
+        setPoolSize(threads == null ? workers.getMaximumPoolSize() : Integer.valueOf(threads.toString().trim()),
+                theQueueSize == null ? queueSize : Integer.valueOf(theQueueSize.toString().trim()));
+
+        Object timeToLive = configuration.get(PROPERTY_CACHE_TIME_TO_LIVE);
+        Object maxSize = configuration.get(PROPERTY_CACHE_MAX_SIZE);
+        setCachePolicy(maxSize == null ? results.getMaxSize() : Long.valueOf(maxSize.toString().trim()),
+                timeToLive == null ? cacheTimeToLive / 1000 : Long.valueOf(timeToLive.toString().trim()));
+    }
+
+    /**
+     * Changes the number of workers and the queue size. The reports already queued are not affected
+     * @param threads Number of worker threads
+     * @param queueSize Max number of reports waiting for a worker
+     */
+    public synchronized void setPoolSize(int threads, int queueSize) {
+        int theThreads = Math.max(1, threads);
+        // The core size can not be greater than the max size, not even for a moment
+        if (theThreads > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(theThreads);
+            workers.setCorePoolSize(theThreads);
+        } else {
+            workers.setCorePoolSize(theThreads);
+            workers.setMaximumPoolSize(theThreads);
+        }
+        this.queueSize = Math.max(0, queueSize);
+    }
+
+    /**
+     * Changes how many results are cached and for how long. The results already cached keep their time-to-live
+     * @param maxSize Max number of cached results
+     * @param timeToLive Time in seconds the results are reused. 0 disables the cache
+     */
+    public void setCachePolicy(long maxSize, long timeToLive) {
+        cacheTimeToLive = Math.max(0, timeToLive) * 1000;
+        if (cacheTimeToLive == 0)
+            results.clear();
+        results.setPolicy(Math.max(1, maxSize), cacheTimeToLive);
+    }
+
+    /**
+     * Submits a report. If the same report with the same parameters was generated recently or
+     * is being generated, that job is returned instead
+     * @param reportId The report id
+     * @param parameters The parameters of the report in a canonical form (e.g. sorted by name). Two requests
+     * with the same parameters must produce the same result
+     * @param task The task that runs the report and writes its result
+     * @return The job handle
+     * @throws RejectedExecutionException If there are too many reports waiting for a worker
+     */
+    public ReportJob submit(long reportId, String parameters, ReportTask task) {
+        purge();
+        String key = reportId + "?" + parameters; //NOI18N
+
+        // A report that runs another report must not wait for a worker, it could be waiting for itself
+        if (Thread.currentThread() instanceof ReportThread) {
+            ReportJob job = new ReportJob(reportId, key);
+            jobs.put(job.getId(), job);
+            pendingJobs.incrementAndGet();
+            run(job, task);
+            return job;
+        }
+
+        ReportJob job;
+        synchronized (results) {
+            if (cacheTimeToLive != 0) {
+                ReportJob cachedJob = results.get(key);
+                if (cachedJob != null && cachedJob.getState() != ReportJob.State.FAILED && cachedJob.getState() != ReportJob.State.CANCELLED)
+                    return cachedJob;
+            }
+
+            if (pendingJobs.incrementAndGet() > workers.getMaximumPoolSize() + queueSize) {
+                pendingJobs.decrementAndGet();
+                throw new RejectedExecutionException("There are too many reports being generated. Please try again later");
+            }
+
+            job = new ReportJob(reportId, key);
+            jobs.put(job.getId(), job);
+            // The jobs in progress don't expire, they get the regular time-to-live once they finish
+            if (cacheTimeToLive != 0)
+                results.put(key, job, CacheRegion.UNLIMITED);
+        }
+
+        try {
+            ReportJob theJob = job;
+            job.setExecution(workers.submit(() -> run(theJob, task)));
+        } catch (RejectedExecutionException ex) {
+            pendingJobs.decrementAndGet();
+            discard(job);
+            throw ex;
+        }
+        return job;
+    }
+
+    /**
+     * Finds a job by its id
+     * @param jobId The job id
+     * @return The job, or null if it doesn't exist or its result has been deleted already
+     */
+    public ReportJob getJob(String jobId) {
+        purge();
+        return jobId == null ? null : jobs.get(jobId);
+    }
+
+    /**
+     * Discards the cached results of a report. Call it after the report is updated or deleted.
+     * The jobs in progress are not cancelled, but their results will not be reused
+     * @param reportId The report id
+     */
+    public void evict(long reportId) {
+        synchronized (results) {
+            for (Map.Entry<String, ReportJob> cachedJob : results.toMap().entrySet()) {
+                if (cachedJob.getValue().getReportId() == reportId)
+                    results.remove(cachedJob.getKey());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of reports waiting for a worker or being generated
+     * @return The number of pending reports
+     */
+    public int getPendingJobs() {
+        return pendingJobs.get();
+    }
+
+    /**
+     * Takes a snapshot of the size and the hit/miss/eviction counters of the result cache
+     * @return The cache statistics
+     */
+    public CacheStatistics getCacheStatistics() {
+        return results.getStatistics();
+    }
+
+    private void run(ReportJob job, ReportTask task) {
+        try {
+            if (!job.start()) // Cancelled while it was queued
+                return;
+
+            Path resultFile = null;
+            Throwable error = null;
+            try {
+                resultFile = Files.createTempFile("kuwaiba-report-", null); //NOI18N
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(resultFile))) {
+                    task.run(out);
+                }
+            } catch (Throwable ex) {
+                error = ex;
+                resultFile = writeErrorPage(resultFile, ex);
+            }
+
+            if (!job.finish(resultFile, error))
+                deleteFile(resultFile);
+            else if (cacheTimeToLive != 0) {
+                // The results of failed reports are not reused
+                results.compute(job.getKey(), (key, cachedJob) ->
+                        cachedJob != job ? cachedJob : (job.getState() == ReportJob.State.FINISHED ? job : null));
+            }
+        } finally {
+            pendingJobs.decrementAndGet();
+        }
+    }
+
+    /**
+     * Replaces whatever was written to the result file with a page showing the error message, as the reports have always done
+     * @return The file with the error page, or null if it could not be written
+     */
+    private static Path writeErrorPage(Path resultFile, Throwable error) {
+        try {
+            Path theResultFile = resultFile == null ? Files.createTempFile("kuwaiba-report-", null) : resultFile; //NOI18N
+            Files.write(theResultFile, ReportResult.getErrorPage(error.getMessage()));
+            return theResultFile;
+        } catch (IOException ex) {
+            deleteFile(resultFile);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the result files of the jobs that finished long enough ago
+     */
+    private void purge() {
+        long retention = Math.max(RESULT_RETENTION, cacheTimeToLive);
+        long now = System.currentTimeMillis();
+        for (ReportJob job : jobs.values()) {
+            if (job.isDone() && now - job.getFinishDate() > retention)
+                discard(job);
+        }
+    }
+
+    private void discard(ReportJob job) {
+        if (jobs.remove(job.getId()) == null)
+            return;
+        synchronized (results) {
+            results.compute(job.getKey(), (key, cachedJob) -> cachedJob == job ? null : cachedJob);
+        }
+        deleteFile(job.getResultFile());
+    }
+
+    private static void deleteFile(Path file) {
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) { } // It may still be open. The operating system will take care of it eventually
+    }
+
+    /**
+     * Runs a report and writes its result
+     */
+    @FunctionalInterface
+    public interface ReportTask {
+        /**
+         * Runs the report
+         * @param out The stream the result has to be written to. It must not be closed
+         * @throws Exception If the report could not be generated
+         */
+        void run(OutputStream out) throws Exception;
+    }
+
+    /**
+     * The worker threads. They are named after the pool, so they are easy to spot in a thread dump,
+     * and are daemon threads, so they don't prevent the JVM from stopping
+     */
+    private static class ReportThread extends Thread {
+        private ReportThread(Runnable task, String name) {
+            super(task, name);
+            setDaemon(true);
+        }
+    }
+
+    private static class ReportThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            return new ReportThread(task, "kuwaiba-report-" + threadCount.incrementAndGet()); //NOI18N
+        }
+    }
+}
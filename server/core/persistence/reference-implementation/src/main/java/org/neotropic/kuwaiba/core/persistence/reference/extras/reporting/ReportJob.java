@@ -0,0 +1,266 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.extras.reporting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportResult;
+
+/**
+ * The handle of a report submitted to the {@link ReportExecutor}. The result of the report is written to
+ * a temporary file as it's generated, so it can be streamed to the client once the report is finished
+ * without holding it in memory. If the report fails, the file contains an HTML page with the error message.
+ */
+public class ReportJob implements ReportResult {
+    /**
+     * Job id
+     */
+    private final String id;
+    /**
+     * Id of the report being executed
+     */
+    private final long reportId;
+    /**
+     * The key used to cache the result: the report id and its parameters
+     */
+    private final String key;
+    /**
+     * Time the job was submitted
+     */
+    private final long creationDate;
+    /**
+     * Completed with the result file when the job finishes, successfully or not
+     */
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+    /**
+     * The execution of the job in the worker pool. Used to interrupt it if the job is cancelled
+     */
+    private volatile Future<?> execution;
+    private volatile State state = State.QUEUED;
+    /**
+     * Time the job finished, 0 while it's queued or running
+     */
+    private volatile long finishDate;
+    /**
+     * The reason the report failed, if it did
+     */
+    private volatile Throwable error;
+
+    ReportJob(long reportId, String key) {
+        this.id = UUID.randomUUID().toString();
+        this.reportId = reportId;
+        this.key = key;
+        this.creationDate = System.currentTimeMillis();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    public long getReportId() {
+        return reportId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCreationDate() {
+        return creationDate;
+    }
+
+    public long getFinishDate() {
+        return finishDate;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Checks if the job has finished, whether it succeeded, failed or was cancelled
+     * @return true if the job will not change anymore
+     */
+    @Override
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * Waits until the job finishes and returns the file with the result
+     * @return The result file. If the report failed, the file contains the error page. 
+     * Null if not even the error page could be written
+     * @throws InterruptedException If the calling thread was interrupted while waiting
+     * @throws CancellationException If the job was cancelled
+     */
+    public Path getResult() throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException ex) { // The future is never completed exceptionally
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Waits until the job finishes and opens the result file. Meant to be used in a download
+     * handler, so the thread waiting for the report is the one serving the download, not the UI one
+     * @return A stream to read the result. The caller must close it
+     * @throws IOException If the job was interrupted or cancelled, or the file could not be read
+     */
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(awaitResult());
+    }
+
+    /**
+     * Waits until the job finishes and copies the result to a stream
+     * @param out The stream. It is not closed
+     * @throws IOException If the job was interrupted or cancelled, or the file could not be read
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Files.copy(awaitResult(), out);
+    }
+
+    /**
+     * Waits until the job finishes and reads the whole result. Use {@link #openStream()} for large reports
+     * @return The result of the report
+     * @throws IOException If the job was interrupted or cancelled, or the file could not be read
+     */
+    @Override
+    public byte[] asByteArray() throws IOException {
+        return Files.readAllBytes(awaitResult());
+    }
+
+    private Path awaitResult() throws IOException {
+        Path resultFile;
+        try {
+            resultFile = getResult();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for report %s", reportId));
+        } catch (CancellationException ex) {
+            throw new IOException(String.format("The execution of report %s was cancelled", reportId), ex);
+        }
+        if (resultFile == null)
+            throw new IOException(String.format("The result of report %s could not be written", reportId), error);
+        return resultFile;
+    }
+
+    /**
+     * Cancels the job. If it's already running, the worker is interrupted, though the report script may not stop right away
+     * @return false if the job had already finished
+     */
+    @Override
+    public boolean cancel() {
+        boolean running;
+        synchronized (this) {
+            if (result.isDone())
+                return false;
+            running = state == State.RUNNING;
+            state = State.CANCELLED;
+            finishDate = System.currentTimeMillis();
+            result.cancel(true);
+        }
+        // A queued job is left in the queue, the worker will skip it when it's its turn
+        Future<?> theExecution = execution;
+        if (running && theExecution != null)
+            theExecution.cancel(true);
+        return true;
+    }
+
+    void setExecution(Future<?> execution) {
+        this.execution = execution;
+    }
+
+    /**
+     * Marks the job as running
+     * @return false if the job was cancelled while it was queued
+     */
+    synchronized boolean start() {
+        if (result.isDone())
+            return false;
+        state = State.RUNNING;
+        return true;
+    }
+
+    /**
+     * Marks the job as finished
+     * @param resultFile The file the result was written to
+     * @param error The reason the report failed, null if it didn't
+     * @return false if the job was cancelled in the meantime, in which case the result file is not needed anymore
+     */
+    synchronized boolean finish(Path resultFile, Throwable error) {
+        if (result.isDone())
+            return false;
+        this.error = error;
+        this.finishDate = System.currentTimeMillis();
+        this.state = error == null ? State.FINISHED : State.FAILED;
+        return result.complete(resultFile);
+    }
+
+    /**
+     * The file the result was written to, or null if the job has not finished or was cancelled
+     */
+    Path getResultFile() {
+        return result.isDone() && !result.isCancelled() ? result.getNow(null) : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Report %s (job %s): %s", reportId, id, state); //NOI18N
+    }
+
+    /**
+     * The states of a job
+     */
+    public enum State {
+        /**
+         * Waiting for a worker
+         */
+        QUEUED,
+        /**
+         * Being generated
+         */
+        RUNNING,
+        /**
+         * Generated successfully
+         */
+        FINISHED,
+        /**
+         * The report script failed. The result is a page with the error message
+         */
+        FAILED,
+        /**
+         * Cancelled before it finished
+         */
+        CANCELLED
+    }
+}
@@ -0,0 +1,783 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransientFailureException;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ApplicationObjectNotFoundException;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.i18n.TranslationService;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.Util;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes the activity log (audit trail) entries. In asynchronous mode, an entry is not written in the
+ * transaction of the change it describes, but queued once that transaction commits (and discarded if it's rolled back),
+ * and a background thread writes the queued entries in batches, each batch in its own transaction. Bulk operations and
+ * migrations then don't pay for an extra node and two relationships per change.
+ * The queued entries are appended to a local journal first, which is replayed when the service starts, so the entries
+ * not yet written when the application stopped or crashed are not lost. The last entry written is recorded in the
+ * database in the same transaction as the batch, so the entries are never written twice.
+ * The queue in memory is bounded: when it's full, the entries are only journaled, and the writer reads them back from the
+ * journal once it has caught up. A change never waits for the writer, since it can't do it while holding the locks of its
+ * transaction (the writer may need them). The writer locks the objects of a batch in the order of their ids before
+ * anything else, and retries the batch if it's chosen as the victim of a deadlock.
+ * In synchronous mode (the default), the entries are written right away in the transaction of the change, for when the log
+ * must never lag behind the data, and for the callers that need the id of the new entry.
+ * In both modes, the ids of the user nodes are cached, so the user is not looked up for every entry.
+ * An entry is never dropped: if its user was deleted after the change was logged, it's linked to the deleted user
+ * (or to no user at all), and if it can't be written anyway, the writer stops at it and retries it later. The entries
+ * are kept in the journal until they have been written.
+ */
+@Service
+public class ActivityLogWriter {
+    /**
+     * Configuration property with the mode: synchronous or asynchronous
+     */
+    public static final String PROPERTY_MODE = "activityLogMode"; //NOI18N
+    /**
+     * Entries are written in the transaction of the change
+     */
+    public static final String MODE_SYNCHRONOUS = "synchronous"; //NOI18N
+    /**
+     * Entries are queued and written in the background
+     */
+    public static final String MODE_ASYNCHRONOUS = "asynchronous"; //NOI18N
+    /**
+     * Configuration property with the max number of entries kept in memory waiting to be written. The rest wait only in the journal
+     */
+    public static final String PROPERTY_QUEUE_SIZE = "activityLogQueueSize"; //NOI18N
+    /**
+     * Default max number of entries kept in memory waiting to be written
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    /**
+     * Configuration property with the max number of entries written per transaction
+     */
+    public static final String PROPERTY_BATCH_SIZE = "activityLogBatchSize"; //NOI18N
+    /**
+     * Default max number of entries written per transaction
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /**
+     * Configuration property with the path of the journal file
+     */
+    public static final String PROPERTY_JOURNAL_PATH = "activityLogJournalPath"; //NOI18N
+    /**
+     * Appended to the database path to get the default path of the journal file
+     */
+    public static final String JOURNAL_FILE_SUFFIX = ".activity-log.journal"; //NOI18N
+    /**
+     * Name of the special node where the sequence of the last entry written is kept
+     */
+    private static final String NODE_JOURNAL_CHECKPOINT = "ActivityLogJournal"; //NOI18N
+    /**
+     * Property of the checkpoint node with the sequence of the last entry written
+     */
+    private static final String PROPERTY_LAST_SEQUENCE = "lastSequence"; //NOI18N
+    /**
+     * The id the kernel reports when a transaction is rolled back
+     */
+    private static final long ROLLED_BACK = -1;
+    /**
+     * Time in milliseconds the writer waits for new entries before checking if it has to stop
+     */
+    private static final long POLL_INTERVAL = 200;
+    /**
+     * Time in milliseconds to wait for the queued entries to be written when the service is stopped
+     */
+    private static final long STOP_TIMEOUT = 60000;
+    /**
+     * Times a batch is retried if its transaction fails temporarily, e.g. because of a deadlock
+     */
+    private static final int MAX_RETRIES = 5;
+    /**
+     * Max time in milliseconds the writer waits before retrying an entry that could not be written
+     */
+    private static final long MAX_RETRY_DELAY = 30000;
+    /**
+     * Reference to the Connection Manager
+     */
+    @Autowired
+    private ConnectionManager<GraphDatabaseService> connectionManager;
+    /**
+     * Reference to the Translation Service
+     */
+    @Autowired
+    private TranslationService ts;
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * User name, user node id
+     */
+    private final Map<String, Long> userIds = new ConcurrentHashMap<>();
+    /**
+     * Held while an entry is journaled and queued, so the entries are queued in the order of their sequence
+     */
+    private final ReentrantLock acceptLock = new ReentrantLock();
+    /**
+     * Notified every time a batch is written
+     */
+    private final Object writtenMonitor = new Object();
+    private volatile boolean running;
+    private volatile boolean asynchronous;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private BlockingQueue<PendingEntry> queue;
+    private Thread writerThread;
+    private FileChannel journal;
+    private Path journalPath;
+    /**
+     * Position in the journal of the first entry that didn't fit in the queue, or -1 if all the pending entries
+     * are queued. Guarded by acceptLock
+     */
+    private volatile long spillOffset = -1;
+    /**
+     * Used to find the transaction bound to the current thread
+     */
+    private ThreadToStatementContextBridge transactionBridge;
+    /**
+     * Sequence of the last entry accepted. Guarded by acceptLock
+     */
+    private volatile long lastAccepted;
+    /**
+     * Sequence of the last entry written. Guarded by writtenMonitor
+     */
+    private long lastWritten;
+
+    /**
+     * Writes the entries left in the journal and, in asynchronous mode, starts the writer thread.
+     * Must be called after the connection to the database is open
+     * @param configuration The configuration properties: activityLogMode, activityLogQueueSize,
+     * activityLogBatchSize and activityLogJournalPath. Those not set take their default values
+     * @param dbPath The path of the database. If no journal path is set, the journal is kept next to the database,
+     * in a file named after it followed by .activity-log.journal
+     * @throws IOException If the journal could not be opened or read
+     * @throws IllegalArgumentException If the queue or batch sizes are not numbers
+     */
+    public void start(Properties configuration, String dbPath) throws IOException {
+        if (running)
+            stop();
+
+        asynchronous = MODE_ASYNCHRONOUS.equalsIgnoreCase(configuration.getProperty(PROPERTY_MODE, MODE_SYNCHRONOUS).trim());
+        queueSize = Math.max(1, Integer.valueOf(configuration.getProperty(PROPERTY_QUEUE_SIZE, String.valueOf(DEFAULT_QUEUE_SIZE)).trim()));
+        batchSize = Math.max(1, Integer.valueOf(configuration.getProperty(PROPERTY_BATCH_SIZE, String.valueOf(DEFAULT_BATCH_SIZE)).trim()));
+        String journalPathString = configuration.getProperty(PROPERTY_JOURNAL_PATH, "").trim();
+        journalPath = Paths.get(journalPathString.isEmpty() ? dbPath + JOURNAL_FILE_SUFFIX : journalPathString);
+
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        userIds.clear();
+        transactionBridge = graphDb instanceof GraphDatabaseAPI
+                ? ((GraphDatabaseAPI) graphDb).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class) : null;
+
+        if (journalPath.getParent() != null)
+            Files.createDirectories(journalPath.getParent());
+        List<PendingEntry> unwrittenEntries = new ArrayList<>();
+        long lastSequence = replay(journalPath, unwrittenEntries);
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        journal.truncate(0);
+        lastAccepted = lastSequence;
+        lastWritten = lastSequence;
+        spillOffset = -1;
+
+        // The bound is checked when the entries are logged, since they can't be rejected once their transaction has committed
+        queue = new LinkedBlockingQueue<>();
+        running = true;
+        // Journaled again, so they are not lost. In synchronous mode they wait there until the next start
+        unwrittenEntries.forEach(this::accept);
+        if (asynchronous) {
+            writerThread = new Thread(this::writeQueuedEntries, "kuwaiba-activity-log"); //NOI18N
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Waits for the queued entries to be written and stops the writer thread. Must be called before the connection
+     * to the database is closed. The entries logged afterwards are only journaled, and written the next time the service starts
+     */
+    public void stop() {
+        if (!running)
+            return;
+        running = false;
+        if (writerThread != null) {
+            try {
+                writerThread.join(STOP_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (writerThread.isAlive())
+                log.writeLogMessage(LoggerType.WARN, ActivityLogWriter.class,
+                        "Not all the activity log entries could be written, they will be written from the journal on the next start");
+            writerThread = null;
+        }
+        acceptLock.lock();
+        try {
+            boolean allWritten;
+            synchronized (writtenMonitor) {
+                allWritten = lastWritten == lastAccepted;
+            }
+            if (allWritten && queue.isEmpty() && spillOffset < 0)
+                journal.truncate(0);
+            journal.close();
+        } catch (IOException ex) {
+            log.writeLogMessage(LoggerType.ERROR, ActivityLogWriter.class, "The activity log journal could not be closed", ex);
+        } finally {
+            acceptLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the entries are written in the background
+     * @return true if the writer runs in asynchronous mode
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Gets the number of entries waiting to be written, queued or only journaled
+     * @return The number of entries accepted but not written yet
+     */
+    public long getPendingEntries() {
+        synchronized (writtenMonitor) {
+            return Math.max(0, lastAccepted - lastWritten);
+        }
+    }
+
+    /**
+     * Logs a change. Must be called inside a transaction. In asynchronous mode, the entry is queued when the
+     * outermost transaction of the calling thread commits
+     * @param userName The user who made the change
+     * @param objectNode The node of the affected inventory object. Null for general entries
+     * @param type The type of change. See the ActivityLogEntry.ACTIVITY_TYPE_* constants
+     * @param timestamp When the change was made
+     * @param affectedProperty The affected properties, if any
+     * @param oldValue The old values, if any
+     * @param newValue The new values, if any
+     * @param notes The notes, if any
+     * @return The id of the new entry, or -1 if it was queued to be written later
+     * @throws ApplicationObjectNotFoundException If the user could not be found
+     */
+    public long write(String userName, Node objectNode, int type, long timestamp, String affectedProperty,
+            String oldValue, String newValue, String notes) throws ApplicationObjectNotFoundException {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        Node userNode = getUserNode(graphDb, userName);
+        String objectId = objectNode == null ? null : (String) objectNode.getProperty(Constants.PROPERTY_UUID, null);
+        if (!asynchronous || !running || (objectNode != null && objectId == null))
+            return Util.createActivityLogEntry(objectNode, userNode, type, timestamp, affectedProperty, oldValue, newValue, notes, graphDb).getId();
+
+        PendingEntry entry = new PendingEntry(userName, objectId, type, timestamp, affectedProperty, oldValue, newValue, notes);
+        KernelTransaction transaction = transactionBridge == null ? null : transactionBridge.getKernelTransactionBoundToThisThread(false);
+        if (transaction == null)
+            accept(entry);
+        else
+            transaction.registerCloseListener(transactionId -> {
+                if (transactionId != ROLLED_BACK)
+                    accept(entry);
+            });
+        return -1;
+    }
+
+    /**
+     * Waits until the entries accepted so far have been written
+     * @param timeout Max time to wait in milliseconds
+     * @return true if all the entries were written, false if the time ran out
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public boolean flush(long timeout) throws InterruptedException {
+        long target;
+        acceptLock.lock();
+        try {
+            target = lastAccepted;
+        } finally {
+            acceptLock.unlock();
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (writtenMonitor) {
+            while (lastWritten < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || writerThread == null)
+                    return false;
+                writtenMonitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Journals an entry and queues it. If the queue is full, or entries are already waiting in the journal, the entry
+     * is only journaled. It's called by the committing thread while it still holds the locks of its transaction, so it must not block
+     */
+    private void accept(PendingEntry entry) {
+        acceptLock.lock();
+        try {
+            entry.sequence = ++lastAccepted;
+            long offset = -1;
+            try {
+                offset = journal.position();
+                journal.write(ByteBuffer.wrap(entry.serialize()));
+            } catch (IOException ex) {
+                offset = -1;
+                log.writeLogMessage(LoggerType.ERROR, ActivityLogWriter.class,
+                        String.format("Activity log entry %s could not be journaled", entry), ex);
+            }
+            if (!running) // It will be written when the journal is replayed
+                return;
+            if (offset == -1 || (spillOffset < 0 && queue.size() < queueSize))
+                queue.add(entry); // An entry that couldn't be journaled is queued anyway, it's the only copy left
+            else if (spillOffset < 0)
+                spillOffset = offset;
+        } finally {
+            acceptLock.unlock();
+        }
+    }
+
+    /**
+     * The writer thread loop
+     */
+    private void writeQueuedEntries() {
+        // The entries of a batch not written yet are kept until they are, and written before anything else
+        List<PendingEntry> batch = new ArrayList<>(batchSize);
+        long spilledUpTo = -1;
+        int failures = 0;
+        while (running || !batch.isEmpty() || !queue.isEmpty() || spillOffset >= 0) {
+            try {
+                if (failures > 0) {
+                    if (!running) // The entries left are kept in the journal, and written the next time the service starts
+                        break;
+                    Thread.sleep(Math.min(MAX_RETRY_DELAY, failures * POLL_INTERVAL));
+                }
+                if (batch.isEmpty()) {
+                    spilledUpTo = -1;
+                    // The queued entries are older than the spilled ones
+                    PendingEntry firstEntry = spillOffset < 0 ? queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS) : queue.poll();
+                    if (firstEntry != null) {
+                        batch.add(firstEntry);
+                        queue.drainTo(batch, batchSize - 1);
+                    } else if (spillOffset >= 0) {
+                        journal.force(false);
+                        spilledUpTo = readSpilledEntries(batch);
+                    }
+                    if (batch.isEmpty()) {
+                        if (spilledUpTo >= 0) { // The journal can't be read past an incomplete entry
+                            if (!running)
+                                break;
+                            Thread.sleep(POLL_INTERVAL);
+                        }
+                        continue;
+                    }
+                }
+                journal.force(false);
+                int writtenEntries = write(batch);
+                if (writtenEntries > 0)
+                    markWritten(batch.get(writtenEntries - 1).sequence);
+                batch.subList(0, writtenEntries).clear();
+                if (!batch.isEmpty()) {
+                    failures++;
+                    continue;
+                }
+                failures = 0;
+                if (spilledUpTo >= 0)
+                    advanceSpillOffset(spilledUpTo);
+                truncateJournal();
+            } catch (InterruptedException ex) {
+                // Only stop() can stop the writer
+            } catch (IOException | RuntimeException ex) {
+                failures++;
+                log.writeLogMessage(LoggerType.ERROR, ActivityLogWriter.class, "Unexpected error writing the activity log", ex);
+            }
+        }
+    }
+
+    /**
+     * Reads from the journal the entries that didn't fit in the queue, starting at the first one not written yet
+     * @param batch The list to add the entries to, up to the batch size
+     * @return The position in the journal after the last entry read
+     */
+    private long readSpilledEntries(List<PendingEntry> batch) throws IOException {
+        long offset = spillOffset;
+        try (FileChannel reader = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(reader.position(offset))));
+            PendingEntry entry;
+            while (batch.size() < batchSize && (entry = PendingEntry.read(in)) != null) {
+                batch.add(entry);
+                offset += entry.journalSize;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Moves the position of the first spilled entry past the entries just written. Once the writer has caught up with
+     * the journal, the new entries are queued again
+     */
+    private void advanceSpillOffset(long offset) throws IOException {
+        acceptLock.lock();
+        try {
+            spillOffset = offset >= journal.position() ? -1 : offset;
+        } finally {
+            acceptLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a batch of entries in one transaction, retrying it if the transaction fails temporarily. If it fails
+     * anyway, the entries are written one by one up to the first one that can't be written, so the entries before
+     * it are not held back by it. The entries are always written in order, so the checkpoint never skips one
+     * @return The number of entries written, from the start of the batch
+     */
+    private int write(List<PendingEntry> batch) {
+        try {
+            writeInTransactionWithRetries(batch);
+            return batch.size();
+        } catch (RuntimeException ex) {
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    writeInTransactionWithRetries(Collections.singletonList(batch.get(i)));
+                } catch (RuntimeException entryEx) {
+                    log.writeLogMessage(LoggerType.ERROR, ActivityLogWriter.class,
+                            String.format("Activity log entry %s could not be written, it will be retried", batch.get(i)), entryEx);
+                    return i;
+                }
+            }
+            return batch.size();
+        }
+    }
+
+    private void writeInTransactionWithRetries(List<PendingEntry> entries) {
+        for (int retry = 1; ; retry++) {
+            try {
+                writeInTransaction(entries);
+                return;
+            } catch (TransientFailureException ex) {
+                if (retry == MAX_RETRIES)
+                    throw ex;
+                try {
+                    Thread.sleep(retry * 50L);
+                } catch (InterruptedException iex) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private void writeInTransaction(List<PendingEntry> entries) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        try (Transaction tx = graphDb.beginTx()) {
+            // The objects are locked first and always in the same order. Linking the entries to them takes their locks,
+            // which may be held by the transactions changing them, and waiting for them while holding others could deadlock
+            Node[] objectNodes = new Node[entries.size()];
+            TreeMap<Long, Node> objectsToLock = new TreeMap<>();
+            for (int i = 0; i < entries.size(); i++) {
+                String objectId = entries.get(i).objectId;
+                // If the object was deleted in the meantime, the entry is kept as a general one
+                objectNodes[i] = objectId == null ? null
+                        : graphDb.findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, objectId);
+                if (objectNodes[i] != null)
+                    objectsToLock.put(objectNodes[i].getId(), objectNodes[i]);
+            }
+            objectsToLock.values().forEach(tx::acquireWriteLock);
+
+            for (int i = 0; i < entries.size(); i++) {
+                PendingEntry entry = entries.get(i);
+                Node userNode;
+                try {
+                    userNode = getUserNode(graphDb, entry.userName);
+                } catch (ApplicationObjectNotFoundException ex) {
+                    // The user was deleted after the change was logged. The deleted users keep their audit trail
+                    userNode = entry.userName == null ? null
+                            : graphDb.findNode(Label.label(Constants.LABEL_DELETED_USER), Constants.PROPERTY_NAME, entry.userName);
+                }
+                Util.createActivityLogEntry(objectNodes[i], userNode, entry.type, entry.timestamp,
+                        entry.affectedProperty, entry.oldValue, entry.newValue, entry.notes, graphDb);
+            }
+
+            Node checkpointNode = graphDb.findNode(Label.label(Constants.LABEL_SPECIAL_NODE), Constants.PROPERTY_NAME, NODE_JOURNAL_CHECKPOINT);
+            if (checkpointNode == null) {
+                checkpointNode = graphDb.createNode(Label.label(Constants.LABEL_SPECIAL_NODE));
+                checkpointNode.setProperty(Constants.PROPERTY_NAME, NODE_JOURNAL_CHECKPOINT);
+            }
+            checkpointNode.setProperty(PROPERTY_LAST_SEQUENCE, entries.get(entries.size() - 1).sequence);
+            tx.success();
+        }
+    }
+
+    private void markWritten(long sequence) {
+        synchronized (writtenMonitor) {
+            lastWritten = sequence;
+            writtenMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Empties the journal once all the entries in it have been written. If an entry is being accepted, it's left for the next batch
+     */
+    private void truncateJournal() throws IOException {
+        if (!queue.isEmpty() || !acceptLock.tryLock())
+            return;
+        try {
+            boolean allWritten;
+            synchronized (writtenMonitor) {
+                allWritten = lastWritten == lastAccepted;
+            }
+            if (allWritten && queue.isEmpty() && spillOffset < 0)
+                journal.truncate(0);
+        } finally {
+            acceptLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the journaled entries that were not written before the service was stopped
+     * @param unwrittenEntries The list to add the entries that could not be written to, starting at the first one that failed
+     * @return The sequence of the last entry, written before or now
+     */
+    private long replay(Path journalPath, List<PendingEntry> unwrittenEntries) throws IOException {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        long checkpoint;
+        try (Transaction tx = graphDb.beginTx()) {
+            Node checkpointNode = graphDb.findNode(Label.label(Constants.LABEL_SPECIAL_NODE), Constants.PROPERTY_NAME, NODE_JOURNAL_CHECKPOINT);
+            checkpoint = checkpointNode == null ? 0 : (long) checkpointNode.getProperty(PROPERTY_LAST_SEQUENCE, 0L);
+            tx.success();
+        }
+        if (!Files.exists(journalPath))
+            return checkpoint;
+
+        long lastSequence = checkpoint;
+        int replayedEntries = 0;
+        List<PendingEntry> batch = new ArrayList<>(batchSize);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            PendingEntry entry;
+            while ((entry = PendingEntry.read(in)) != null) {
+                lastSequence = Math.max(lastSequence, entry.sequence);
+                if (entry.sequence <= checkpoint)
+                    continue;
+                if (!unwrittenEntries.isEmpty()) { // Once an entry fails, the ones after it are not written before it
+                    unwrittenEntries.add(entry);
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() == batchSize)
+                    replayedEntries += replay(batch, unwrittenEntries);
+            }
+        }
+        if (!batch.isEmpty())
+            replayedEntries += replay(batch, unwrittenEntries);
+        if (replayedEntries > 0)
+            log.writeLogMessage(LoggerType.INFO, ActivityLogWriter.class,
+                    String.format("%s activity log entries written from the journal", replayedEntries));
+        if (!unwrittenEntries.isEmpty())
+            log.writeLogMessage(LoggerType.WARN, ActivityLogWriter.class,
+                    String.format("%s activity log entries could not be written from the journal, they are kept in it", unwrittenEntries.size()));
+        return lastSequence;
+    }
+
+    /**
+     * Writes a batch of replayed entries, and moves those that could not be written to the list of unwritten entries
+     * @return The number of entries written
+     */
+    private int replay(List<PendingEntry> batch, List<PendingEntry> unwrittenEntries) {
+        int writtenEntries = write(batch);
+        unwrittenEntries.addAll(batch.subList(writtenEntries, batch.size()));
+        batch.clear();
+        return writtenEntries;
+    }
+
+    /**
+     * Finds a user node, using the cached id if possible. Must be called inside a transaction
+     */
+    private Node getUserNode(GraphDatabaseService graphDb, String userName) throws ApplicationObjectNotFoundException {
+        Long userId = userName == null ? null : userIds.get(userName);
+        if (userId != null) {
+            try {
+                Node userNode = graphDb.getNodeById(userId);
+                // The user may have been renamed, or deleted and its id reused
+                if (userNode.hasLabel(Label.label(Constants.LABEL_USER)) && userName.equals(userNode.getProperty(Constants.PROPERTY_NAME, null)))
+                    return userNode;
+            } catch (NotFoundException ex) { } // The user was deleted
+            userIds.remove(userName);
+        }
+
+        Node userNode = userName == null ? null : graphDb.findNode(Label.label(Constants.LABEL_USER), Constants.PROPERTY_NAME, userName);
+        if (userNode == null) {
+            ApplicationObjectNotFoundException ex = new ApplicationObjectNotFoundException(String.format(ts.getTranslatedString("api.aem.error.200006"), userName));
+            ex.setPrefix("api.aem.error");
+            ex.setCode(200006);
+            ex.setMessageArgs(userName);
+            throw ex;
+        }
+        userIds.put(userName, userNode.getId());
+        return userNode;
+    }
+
+    /**
+     * An entry waiting to be written. In the journal, every entry is stored as its length, its fields and a checksum,
+     * so a partially written entry (e.g. if the application crashed while writing it) can be detected
+     */
+    private static class PendingEntry {
+        /**
+         * Max size of an entry in the journal. Anything larger is considered corrupt
+         */
+        private static final int MAX_SIZE = 64 * 1024 * 1024;
+        /**
+         * Position of the entry in the journal, assigned when the entry is accepted
+         */
+        private long sequence;
+        /**
+         * Number of bytes the entry takes in the journal
+         */
+        private int journalSize;
+        private final String userName;
+        /**
+         * The uuid of the affected object, null for general entries
+         */
+        private final String objectId;
+        private final int type;
+        private final long timestamp;
+        private final String affectedProperty;
+        private final String oldValue;
+        private final String newValue;
+        private final String notes;
+
+        private PendingEntry(String userName, String objectId, int type, long timestamp,
+                String affectedProperty, String oldValue, String newValue, String notes) {
+            this.userName = userName;
+            this.objectId = objectId;
+            this.type = type;
+            this.timestamp = timestamp;
+            this.affectedProperty = affectedProperty;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.notes = notes;
+        }
+
+        private byte[] serialize() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeLong(sequence);
+                out.writeInt(type);
+                out.writeLong(timestamp);
+                writeString(out, userName);
+                writeString(out, objectId);
+                writeString(out, affectedProperty);
+                writeString(out, oldValue);
+                writeString(out, newValue);
+                writeString(out, notes);
+            }
+            byte[] payload = bytes.toByteArray();
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            return ByteBuffer.allocate(payload.length + 8).putInt(payload.length).put(payload).putInt((int) checksum.getValue()).array();
+        }
+
+        /**
+         * Reads the next entry of the journal
+         * @return The entry, or null if the end of the journal was reached or the entry is incomplete or corrupt
+         */
+        private static PendingEntry read(DataInputStream in) throws IOException {
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_SIZE)
+                    return null;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 checksum = new CRC32();
+                checksum.update(payload);
+                if (in.readInt() != (int) checksum.getValue())
+                    return null;
+
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(payload));
+                long sequence = fields.readLong();
+                int type = fields.readInt();
+                long timestamp = fields.readLong();
+                PendingEntry entry = new PendingEntry(readString(fields), readString(fields), type, timestamp,
+                        readString(fields), readString(fields), readString(fields), readString(fields));
+                entry.sequence = sequence;
+                entry.journalSize = length + 8;
+                return entry;
+            } catch (EOFException ex) {
+                return null;
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null)
+                out.writeInt(-1);
+            else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0)
+                return null;
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (type %s by %s at %s)", sequence, type, userName, timestamp); //NOI18N
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheManager;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.InvalidationTracker;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers the containment lookups (the parents of an object, its first parent of a class, if an object contains
+ * another one, etc) from the parent node ids cached in the parents region of the cache manager, instead of
+ * expanding the CHILD_OF and CHILD_OF_SPECIAL relationships with a variable length query every time. Only the
+ * parent of every node is cached, not its whole chain of ancestors, so moving an object invalidates a single entry,
+ * no matter how large the subtree under it is.
+ * The entries are read from the database the first time they're needed and removed when a committed transaction
+ * creates or deletes a containment relationship of the node, or deletes the node, so the lookups made right after
+ * a commit already see it. The handler is registered in the database by the connection manager, so the changes made
+ * by scripts and raw queries are caught too. The lookups made by a transaction that has written anything go straight
+ * to the database, since the cache only holds committed data.
+ */
+@Service
+public class AncestorIndex implements TransactionEventHandler<long[]> {
+    /**
+     * Cached value of the nodes with no parent, like the navigation tree root
+     */
+    public static final long NO_PARENT = -1;
+    /**
+     * Cached value of the nodes with more than one parent. Their ancestors are not a chain, so the lookups through
+     * them have to be made with a query
+     */
+    public static final long MULTIPLE_PARENTS = -2;
+    /**
+     * Max number of ancestors followed. A longer chain can only be a cycle
+     */
+    private static final int MAX_DEPTH = 1000;
+    private GraphDatabaseService graphDb;
+    /**
+     * Gives access to the transaction of the current thread, to tell if it has written anything
+     */
+    private ThreadToStatementContextBridge transactionBridge;
+    /**
+     * Remembers when the entry of every node was invalidated. An entry read from the database is cached
+     * only if no transaction has invalidated that entry since it was read, otherwise it could be stale
+     */
+    private final InvalidationTracker<Long> invalidations = new InvalidationTracker<>(InvalidationTracker.DEFAULT_MAX_SIZE);
+    private final Object lock = new Object();
+
+    /**
+     * Starts keeping the cached parents consistent with the changes committed to a database. Call it right after opening the database
+     * @param graphDb The database handle
+     */
+    public void register(GraphDatabaseService graphDb) {
+        this.graphDb = graphDb;
+        this.transactionBridge = ((GraphDatabaseAPI) graphDb).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        synchronized (lock) {
+            CacheManager.getInstance().clearParentNodeIds();
+            invalidations.invalidateAll();
+        }
+        graphDb.registerTransactionEventHandler(this);
+    }
+
+    /**
+     * Gets the ancestors of a node following the CHILD_OF and CHILD_OF_SPECIAL relationships. Must be called within a transaction
+     * @param node The node
+     * @return The ancestors, the parent first and the top of the hierarchy (usually the navigation tree root) last,
+     * or null if one of them has more than one parent, so they're not a chain
+     */
+    public List<Node> getAncestors(Node node) {
+        long[] ancestorIds = getAncestorIds(node.getId());
+        if (ancestorIds == null)
+            return null;
+        List<Node> ancestors = new ArrayList<>(ancestorIds.length);
+        for (long ancestorId : ancestorIds)
+            ancestors.add(graphDb.getNodeById(ancestorId));
+        return ancestors;
+    }
+
+    /**
+     * Gets the ids of the ancestors of a node. Must be called within a transaction
+     * @param nodeId The id of the node
+     * @return The ids, the parent first, or null if one of the ancestors has more than one parent
+     */
+    public long[] getAncestorIds(long nodeId) {
+        boolean cacheable = !hasUncommittedChanges();
+        long[] ancestorIds = new long[16];
+        int count = 0;
+        long currentId = nodeId;
+        while (true) {
+            long parentId = getParentId(currentId, cacheable);
+            if (parentId == NO_PARENT)
+                return Arrays.copyOf(ancestorIds, count);
+            if (parentId == MULTIPLE_PARENTS || count == MAX_DEPTH)
+                return null;
+            if (count == ancestorIds.length)
+                ancestorIds = Arrays.copyOf(ancestorIds, count * 2);
+            ancestorIds[count++] = parentId;
+            currentId = parentId;
+        }
+    }
+
+    private long getParentId(long nodeId, boolean cacheable) {
+        if (!cacheable)
+            return readParentId(nodeId);
+
+        Long parentId = CacheManager.getInstance().getParentNodeId(nodeId);
+        if (parentId != null)
+            return parentId;
+
+        long readGeneration;
+        synchronized (lock) {
+            readGeneration = invalidations.getGeneration();
+        }
+        long readParentId = readParentId(nodeId);
+        synchronized (lock) {
+            if (invalidations.canCache(nodeId, readGeneration))
+                CacheManager.getInstance().putParentNodeId(nodeId, readParentId);
+        }
+        return readParentId;
+    }
+
+    private long readParentId(long nodeId) {
+        long parentId = NO_PARENT;
+        for (Relationship aRelationship : graphDb.getNodeById(nodeId).getRelationships(Direction.OUTGOING,
+                RelTypes.CHILD_OF, RelTypes.CHILD_OF_SPECIAL)) {
+            if (parentId != NO_PARENT)
+                return MULTIPLE_PARENTS;
+            parentId = aRelationship.getEndNodeId();
+        }
+        return parentId;
+    }
+
+    /**
+     * @return If the transaction of the current thread, if any, has written anything
+     */
+    private boolean hasUncommittedChanges() {
+        KernelTransaction transaction = transactionBridge.getKernelTransactionBoundToThisThread(false);
+        return transaction instanceof TxStateHolder && ((TxStateHolder) transaction).hasTxStateWithChanges();
+    }
+
+    // <editor-fold desc="TransactionEventHandler implementation" defaultstate="collapsed">
+    @Override
+    public long[] beforeCommit(TransactionData data) throws Exception {
+        long[] changedIds = new long[16];
+        int count = 0;
+        for (Iterable<Relationship> relationships : Arrays.asList(data.createdRelationships(), data.deletedRelationships())) {
+            for (Relationship aRelationship : relationships) {
+                if (aRelationship.isType(RelTypes.CHILD_OF) || aRelationship.isType(RelTypes.CHILD_OF_SPECIAL)) {
+                    if (count == changedIds.length)
+                        changedIds = Arrays.copyOf(changedIds, count * 2);
+                    changedIds[count++] = aRelationship.getStartNodeId();
+                }
+            }
+        }
+        // The ids of the deleted nodes are reused, and a node with no parent has no relationship to tell it was deleted
+        for (Node aNode : data.deletedNodes()) {
+            if (count == changedIds.length)
+                changedIds = Arrays.copyOf(changedIds, count * 2);
+            changedIds[count++] = aNode.getId();
+        }
+        return count == 0 ? null : Arrays.copyOf(changedIds, count);
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, long[] state) {
+        if (state == null)
+            return;
+        List<Long> nodeIds = new ArrayList<>(state.length);
+        for (long nodeId : state)
+            nodeIds.add(nodeId);
+        synchronized (lock) {
+            for (long nodeId : state)
+                CacheManager.getInstance().removeParentNodeId(nodeId);
+            invalidations.invalidate(nodeIds);
+        }
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, long[] state) {
+        // Nothing was committed, so the cached parents are still valid
+    }
+    // </editor-fold>
+}
@@ -18,7 +18,6 @@ package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
 
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
-import groovy.lang.GroovyShell;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
@@ -33,6 +32,7 @@ import org.neo4j.helpers.collection.Iterators;
 import org.neotropic.kuwaiba.core.apis.persistence.ChangeDescriptor;
 import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogEntry;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogPage;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.BusinessRule;
 import org.neotropic.kuwaiba.core.apis.persistence.application.CompactQuery;
@@ -96,8 +96,12 @@ import org.neotropic.kuwaiba.core.apis.persistence.util.StringPair;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.core.notifications.NotificationService;
 import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheManager;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.ScriptCache;
 import org.neotropic.kuwaiba.core.persistence.reference.extras.processman.ProcessManagerService;
 import org.neotropic.kuwaiba.core.persistence.reference.naming.util.DynamicNameGenerator;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.AuditTrailQuery;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQuery;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQueryExecutor;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectGraphMappingService;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.Util;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -127,6 +131,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
@@ -150,6 +155,40 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
      */
     private static final String DEFAULT_ATTACHMENTS_PATH = "/data/files/attachments";
     private static final String DEFAULT_MAX_ATTACHMENT_SIZE = "10";
+    /**
+     * Number of audit trail entries read per transaction when exporting the log
+     */
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+    //<editor-fold desc="Cypher statements" defaultstate="collapsed">
+    private static final CypherQuery QUERY_RELEASE_LIST_TYPE_ITEM = CypherQuery.template("aem.releaseListTypeItem", //NOI18N
+            "MATCH (class:classes {name:$className})" //NOI18N
+            + "<-[:INSTANCE_OF]-(listType:listTypeItems {`_uuid`:$id})" //NOI18N
+            + "<-[r:RELATED_TO]-() DELETE r"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_INSTANCEABLE_LIST_TYPES = CypherQuery.template("aem.getInstanceableListTypes", //NOI18N
+            "MATCH (classmetadata:classes) <-[:" + RelTypes.EXTENDS + "*]-(listType) " //NOI18N
+            + "WHERE classmetadata.name = $className " //NOI18N
+            + "RETURN listType " //NOI18N
+            + "ORDER BY listType.name ASC"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_DEVICE_LAYOUTS = CypherQuery.template("aem.getDeviceLayouts", //NOI18N
+            "MATCH (classNode)<-[r1:" + RelTypes.INSTANCE_OF_SPECIAL + "]-(templateElement)-[r2:" + RelTypes.RELATED_TO //NOI18N
+            + "]->(list)-[:" + RelTypes.HAS_LAYOUT + "]->(view) " //NOI18N
+            + "WHERE r1.name = $instanceOfName AND r2.name = $relatedToName " //NOI18N
+            + "RETURN templateElement AS elements " //NOI18N
+            + "ORDER BY templateElement.name ASC "); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_ALL_CONFIGURATION_VARIABLES = CypherQuery.template("aem.getAllConfigurationVariables", //NOI18N
+            "MATCH (variable:" + Constants.LABEL_CONFIG_VARIABLES + ") RETURN variable ORDER BY variable.name ASC"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_ALL_VALIDATOR_DEFINITIONS = CypherQuery.template("aem.getAllValidatorDefinitions", //NOI18N
+            "MATCH (validator:" + Constants.LABEL_VALIDATOR_DEFINITIONS + ") RETURN validator ORDER BY validator.name ASC"); //NOI18N
+    
+    private static final CypherQuery QUERY_DELETE_FILTER_DEFINITION = CypherQuery.template("aem.deleteFilterDefinition", //NOI18N
+            "MATCH (f:" + Constants.LABEL_FILTER_DEFINITIONS + ") " //NOI18N
+            + "WHERE id(f) = $filterId " //NOI18N
+            + "DELETE f"); //NOI18N
+    //</editor-fold>
     /**
      * Key prefix to error messages in the Application Entity Manager Service
      */
@@ -305,16 +344,25 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
      */
     @Autowired
     private LoggingService log;
+    /**
+     * Reference to the activity log writer.
+     */
+    @Autowired
+    private ActivityLogWriter activityLogWriter;
+    /**
+     * Runs and times the Cypher queries.
+     */
+    @Autowired
+    private CypherQueryExecutor cypherQueryExecutor;
     
     /**
-     * Map with the current sessions. The key is the session token, the value is the list of session object. Note that a single user might have multiple
-     * session opened as long as they are of different type.
+     * The current sessions. Note that a single user might have multiple session opened as long as they are of different type.
      */
-    private final ConcurrentHashMap<String, Session> sessions;
+    @Autowired
+    private SessionStore sessionStore;
     
     public ApplicationEntityManagerImpl() {
         this.configuration = new Properties();
-        this.sessions = new ConcurrentHashMap<>();
         this.passwordEnconder = new BCryptPasswordEncoder();
         
         // Initilize labels
@@ -365,13 +413,13 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     
     @Override
     public ConcurrentHashMap<String, Session> getSessions() {
-        return sessions;
+        return sessionStore.getSessions();
     }
     
     @Override
     public boolean isSessionValid(String username, String token) {
-        return this.sessions.values().stream().filter(aSession -> aSession.getToken().equals(token) && aSession.getUser().getUserName().equals(username)).
-                findAny().isPresent();
+        Session aSession = sessionStore.get(token);
+        return aSession != null && aSession.getUser().getUserName().equals(username);
     }
 
     @Override
@@ -509,11 +557,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                 cm.removeUser(userName);
             }
             UserProfile userProfile = Util.createUserProfileWithGroupPrivilegesFromNode(userNode);
-            sessions.values().stream().filter(session -> (session.getUser().getId() == userProfile.getId())).forEachOrdered(session -> {
-                session.setUser(userProfile);
-            });
+            sessionStore.getSessionsForUser(userProfile.getId()).forEach(session -> session.setUser(userProfile));
             tx.success();
             cm.putUser(userProfile);
+            if (enabled == 0)
+                sessionStore.removeSessionsForUser(userProfile.getId());
         }
     }
 
@@ -576,11 +624,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                 userNode.setProperty(UserProfile.PROPERTY_EMAIL, email);
             
             UserProfile userProfile = Util.createUserProfileWithGroupPrivilegesFromNode(userNode);
-            sessions.values().stream().filter(session -> (session.getUser().getId() == userProfile.getId())).forEachOrdered(session -> {
-                session.setUser(userProfile);
-            });
+            sessionStore.getSessionsForUser(userProfile.getId()).forEach(session -> session.setUser(userProfile));
             tx.success();
             cm.putUser(userProfile);
+            if (enabled == 0)
+                sessionStore.removeSessionsForUser(userProfile.getId());
         }
     }
 
@@ -825,6 +873,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                 for (long id : oids) {
                     Node userNode = Util.findNodeByLabelAndId(connectionManager.getConnectionHandler(), userLabel, id);
                     Util.deleteUserNode(userNode);
+                    sessionStore.removeSessionsForUser(id);
                 }
             }
             tx.success();
@@ -855,8 +904,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                         
                         // This will delete all users associated *only* to this group. The users associated to other groups will be kept and the relationship 
                         // with this group will be released. The user "admin" can not be deleted
-                        if (!userNode.hasRelationship(Direction.OUTGOING, RelTypes.BELONGS_TO_GROUP)) 
+                        if (!userNode.hasRelationship(Direction.OUTGOING, RelTypes.BELONGS_TO_GROUP)) {
+                            long userId = userNode.getId();
                             Util.deleteUserNode(userNode);
+                            sessionStore.removeSessionsForUser(userId);
+                        }
                     }
                     
                     // Now we release the rest of the relationships, if any
@@ -1017,18 +1069,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             throws MetadataObjectNotFoundException, OperationNotPermittedException,
             BusinessObjectNotFoundException, InvalidArgumentException, NotAuthorizedException {
           try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            StringBuilder stringBuilder = new StringBuilder();        
-            stringBuilder.append("MATCH (class:classes {name:$className})");
-            stringBuilder.append("<-[:INSTANCE_OF]-(listType:listTypeItems {`_uuid`:$id})");
-            stringBuilder.append("<-[r:RELATED_TO]-() DELETE r");
-            
-            String cypherQuery = stringBuilder.toString();
-            
             HashMap<String, Object> queryParameters = new HashMap<>();
             queryParameters.put("className", className); //NOI18N
             queryParameters.put("id", listTypeItemId); //NOI18N
             
-            connectionManager.getConnectionHandler().execute(cypherQuery, queryParameters);
+            cypherQueryExecutor.execute(QUERY_RELEASE_LIST_TYPE_ITEM, queryParameters);
             tx.success();
         }
     }
@@ -1168,13 +1213,9 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             if (genericObjectListNode == null)
                 throw new ApplicationObjectNotFoundException("ClassGenericObjectList not found");
             
-            String cypherQuery = "MATCH (classmetadata:classes) <-[:".concat(RelTypes.EXTENDS.toString()).concat("*]-(listType) ").concat(
-                                 "WHERE classmetadata.name IN ['").concat(Constants.CLASS_GENERICOBJECTLIST).concat("']").concat(
-                                 "RETURN listType ").concat(
-                                 "ORDER BY listType.name ASC");    
-                        
             List<ClassMetadataLight> res = new ArrayList<>();
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = cypherQueryExecutor.execute(QUERY_GET_INSTANCEABLE_LIST_TYPES,
+                    Collections.singletonMap("className", Constants.CLASS_GENERICOBJECTLIST)); //NOI18N
         
             Iterator<Node> n_column = result.columnAs("listType");
             
@@ -1266,14 +1307,18 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             throws InvalidArgumentException, NotAuthorizedException 
     {
         String cypherQuery = String.format("MATCH (view:%s)" +
-                                   " WHERE NOT (view) <- [:%s] - (:listTypeItems) - [:%s] -> (:classes {name : \"CustomShape\"}) " +
+                                   " WHERE NOT (view) <- [:%s] - (:listTypeItems) - [:%s] -> (:classes {name : $customShapeClass}) " +
                                    " RETURN view", layoutLabel, RelTypes.HAS_LAYOUT, RelTypes.INSTANCE_OF);
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("customShapeClass", "CustomShape"); //NOI18N
 
-        if (limit != -1)
-            cypherQuery += " LIMIT " + limit;
+        if (limit != -1) {
+            cypherQuery += " LIMIT $limit"; //NOI18N
+            parameters.put("limit", limit); //NOI18N
+        }
            
         try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = cypherQueryExecutor.execute(CypherQuery.dynamic("aem.getLayouts", cypherQuery), parameters); //NOI18N
             Iterator<Node> lytViews = result.columnAs("view");
             List<ViewObjectLight> myRes = new ArrayList<>();
             while (lytViews.hasNext()) {
@@ -1655,11 +1700,14 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
         throws ApplicationObjectNotFoundException, InvalidArgumentException {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             
-            String cypherQuery = String.format("MATCH (ltItem:%s)<-[:%s]-(ltUser) WHERE ltItem._uuid = '%s' RETURN ltUser ORDER BY ltUser.name ASC %s", 
-                    listTypeItemLabel, RelTypes.RELATED_TO, listTypeItemId, limit < 1 ? "" : "LIMIT " + limit);
+            String cypherQuery = String.format("MATCH (ltItem:%s)<-[:%s]-(ltUser) WHERE ltItem._uuid = $listTypeItemId RETURN ltUser ORDER BY ltUser.name ASC %s", 
+                    listTypeItemLabel, RelTypes.RELATED_TO, limit < 1 ? "" : "LIMIT $limit");
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put("listTypeItemId", listTypeItemId); //NOI18N
+            parameters.put("limit", limit); //NOI18N
             
             List<BusinessObjectLight> res = new ArrayList<>();
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = cypherQueryExecutor.execute(CypherQuery.dynamic("aem.getListTypeItemUses", cypherQuery), parameters); //NOI18N
         
             Iterator<Node> objectsThatUseListType = result.columnAs("ltUser");
             
@@ -1688,14 +1736,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     public List<BusinessObjectLight> getDeviceLayouts() throws InvalidArgumentException {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             String columnName = "elements"; //NOI18N
-            String cypherQuery = String.format(
-                "MATCH (classNode)<-[r1:%s]-(templateElement)-[r2:%s]->(list)-[:%s]->(view) "
-              + "WHERE r1.name=\"template\" AND r2.name=\"model\" "
-              + "RETURN templateElement AS %s "
-              + "ORDER BY templateElement.name ASC ", 
-                 RelTypes.INSTANCE_OF_SPECIAL, RelTypes.RELATED_TO, RelTypes.HAS_LAYOUT, columnName);
-            
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put("instanceOfName", "template"); //NOI18N
+            parameters.put("relatedToName", "model"); //NOI18N
+            
+            Result result = cypherQueryExecutor.execute(QUERY_GET_DEVICE_LAYOUTS, parameters);
             Iterator<Node> column = result.columnAs(columnName);
             
             List<BusinessObjectLight> templateElements = new ArrayList();
@@ -2117,15 +2162,19 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             throws InvalidArgumentException, NotAuthorizedException 
     {
         String cypherQuery = "MATCH (gView:" + Constants.LABEL_GENERAL_VIEWS + ") ";
-        cypherQuery += " WHERE gView." + Constants.PROPERTY_CLASSNAME + "='" + viewClass + "'";
+        cypherQuery += " WHERE gView." + Constants.PROPERTY_CLASSNAME + " = $viewClass";
 
         cypherQuery += " RETURN gView";
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("viewClass", viewClass); //NOI18N
 
-        if (limit != -1)
-            cypherQuery += " LIMIT " + limit;
+        if (limit != -1) {
+            cypherQuery += " LIMIT $limit"; //NOI18N
+            parameters.put("limit", limit); //NOI18N
+        }
     
         try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = cypherQueryExecutor.execute(CypherQuery.dynamic("aem.getGeneralViews", cypherQuery), parameters); //NOI18N
             Iterator<Node> gViews = result.columnAs("gView");
             List<ViewObjectLight> myRes = new ArrayList<>();
             while (gViews.hasNext()) {
@@ -2525,24 +2574,13 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                 throw new InvalidArgumentException(String.format(ts.getTranslatedString("module.general.messages.is-not-subclass"),
                         objectClass, Constants.CLASS_INVENTORYOBJECT));
             Node instanceNode = getInstanceOfClass(objectClass, objectId);
+            HashMap<String, Object> filters = new HashMap<>();
+            filters.put(ActivityLogPage.FILTER_OBJECT, objectId);
             List<ActivityLogEntry> log = new ArrayList<>();
-            int i = 0;
-            for (Relationship rel : instanceNode.getRelationships(RelTypes.HAS_HISTORY_ENTRY)) {
-                if (limit > 0) {
-                    if (i < limit)
-                        i++;
-                    else
-                        break;
-                }
-                Node logEntry = rel.getEndNode();
-                log.add(new ActivityLogEntry(logEntry.getId(), instanceNode.getId(), (Integer)logEntry.getProperty(Constants.PROPERTY_TYPE), 
-                        (String)logEntry.getSingleRelationship(RelTypes.PERFORMED_BY, Direction.OUTGOING).getEndNode().getProperty(Constants.PROPERTY_NAME), 
-                        (Long)logEntry.getProperty(Constants.PROPERTY_CREATION_DATE), 
-                        logEntry.hasProperty(Constants.PROPERTY_AFFECTED_PROPERTY) ? (String)logEntry.getProperty(Constants.PROPERTY_AFFECTED_PROPERTY) : null, 
-                        logEntry.hasProperty(Constants.PROPERTY_OLD_VALUE) ? (String)logEntry.getProperty(Constants.PROPERTY_OLD_VALUE) :  null, 
-                        logEntry.hasProperty(Constants.PROPERTY_NEW_VALUE) ? (String)logEntry.getProperty(Constants.PROPERTY_NEW_VALUE) : null, 
-                        logEntry.hasProperty(Constants.PROPERTY_NOTES) ? (String)logEntry.getProperty(Constants.PROPERTY_NOTES) : null));
-            }
+            new AuditTrailQuery(connectionManager.getConnectionHandler(), filters).forEach(null, logEntry -> {
+                log.add(AuditTrailQuery.toActivityLogEntry(logEntry, instanceNode.getId()));
+                return limit <= 0 || log.size() < limit;
+            });
             return log;
         }
     }
@@ -2550,87 +2588,75 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     @Override
     public long getGeneralActivityAuditTrailCount(int page, int limit, HashMap<String, Object> filters) {
         try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            HashMap<String, Object> parameters = new HashMap<>();
-            
-            String userFilter;
-            if (filters != null && filters.containsKey("user")) {
-                userFilter = "user.name = {userName}";
-                parameters.put("userName", filters.get("user"));
-            } else
-                userFilter = "true";
-            
-            String typeFilter;
-            if (filters != null && filters.containsKey("type")) {
-                typeFilter = "auditTrailEntry.type = {type}";
-                parameters.put("type", filters.get("type"));
-            } else
-                typeFilter = "true";
-            
-            String query = "MATCH (auditTrailEntry:generalActivityLogs)-[:PERFORMED_BY]->(user) "
-                    + ((filters == null || filters.isEmpty()) ? "" : "WHERE " + userFilter + " AND " + typeFilter)
-                    + " RETURN count(auditTrailEntry) AS count";
-            
-            Result result = connectionManager.getConnectionHandler().execute(query, parameters);
-                        
-            while (result.hasNext()) {
-                tx.success();
-                return (long) result.next().get("count");
-            }
-            return 0;
+            long count = new AuditTrailQuery(connectionManager.getConnectionHandler(), filters).count();
+            tx.success();
+            return count;
         }
     }
     
+    /**
+     * {@inheritDoc}
+     * Besides user and type, the entries can be filtered by time range and affected object (see the ActivityLogPage.FILTER_* constants).
+     * Skipping entries still means reading them, so use {@link #getGeneralActivityAuditTrailPage(java.lang.String, int, java.util.HashMap)} 
+     * to go through large logs.
+     */
     @Override
     public List<ActivityLogEntry> getGeneralActivityAuditTrail(int page, int limit, HashMap<String, Object> filters) {        
         try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            HashMap<String, Object> parameters = new HashMap<>();
-            
-            String userFilter;
-            if (filters != null && filters.containsKey("user")) {
-                userFilter = "user.name = {userName}";
-                parameters.put("userName", filters.get("user"));
-            } else
-                userFilter = "true";
-            
-            String typeFilter;
-            if (filters != null && filters.containsKey("type")) {
-                typeFilter = "auditTrailEntry.type = {type}";
-                parameters.put("type", filters.get("type"));
-            } else
-                typeFilter = "true";
-            
-            String query = "MATCH (auditTrailEntry:generalActivityLogs)-[:PERFORMED_BY]->(user) "
-                    + ((filters == null || filters.isEmpty()) ? "" : "WHERE " + userFilter + " AND " + typeFilter)
-                    + " RETURN auditTrailEntry, user"
-                    + " ORDER BY auditTrailEntry.creationDate DESC"
-                    + (page >= 0 && limit >= 0 ? " SKIP " + page + " LIMIT " + limit : "");
-            
-            Result result = connectionManager.getConnectionHandler().execute(query, parameters);
-            
             List<ActivityLogEntry> log = new ArrayList<>();
-            while (result.hasNext()) {
-                Map<String, Object> resultEntry = result.next();
-                Node logEntry = (Node)resultEntry.get("auditTrailEntry");
-                Node user = (Node)resultEntry.get("user");
-                
-                log.add(new ActivityLogEntry(logEntry.getId(), 0, (Integer)logEntry.getProperty(Constants.PROPERTY_TYPE), 
-                        (String)user.getProperty(Constants.PROPERTY_NAME), 
-                        (Long)logEntry.getProperty(Constants.PROPERTY_CREATION_DATE), 
-                        logEntry.hasProperty(Constants.PROPERTY_AFFECTED_PROPERTY) ? (String)logEntry.getProperty(Constants.PROPERTY_AFFECTED_PROPERTY) : null, 
-                        logEntry.hasProperty(Constants.PROPERTY_OLD_VALUE) ? (String)logEntry.getProperty(Constants.PROPERTY_OLD_VALUE) :  null, 
-                        logEntry.hasProperty(Constants.PROPERTY_NEW_VALUE) ? (String)logEntry.getProperty(Constants.PROPERTY_NEW_VALUE) : null, 
-                        logEntry.hasProperty(Constants.PROPERTY_NOTES) ? (String)logEntry.getProperty(Constants.PROPERTY_NOTES) : null));
-            }
+            int[] skipped = new int[1];
+            new AuditTrailQuery(connectionManager.getConnectionHandler(), filters).forEach(null, logEntry -> {
+                if (page >= 0 && limit >= 0) {
+                    if (skipped[0] < page) {
+                        skipped[0]++;
+                        return true;
+                    }
+                    if (log.size() == limit)
+                        return false;
+                }
+                log.add(AuditTrailQuery.toActivityLogEntry(logEntry, 0));
+                return true;
+            });
             
             tx.success();
             return log;
         }
     }
     
+    @Override
+    public ActivityLogPage getGeneralActivityAuditTrailPage(String cursor, int limit, HashMap<String, Object> filters) 
+            throws InvalidArgumentException {
+        try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+            ActivityLogPage page = new AuditTrailQuery(connectionManager.getConnectionHandler(), filters).getPage(cursor, limit);
+            tx.success();
+            return page;
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidArgumentException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * Each chunk is read in its own transaction, so the transactions are kept short.
+     */
+    @Override
+    public long exportGeneralActivityAuditTrail(HashMap<String, Object> filters, Consumer<ActivityLogEntry> consumer) 
+            throws InvalidArgumentException {
+        long count = 0;
+        String cursor = null;
+        do {
+            ActivityLogPage page = getGeneralActivityAuditTrailPage(cursor, EXPORT_CHUNK_SIZE, filters);
+            page.getEntries().forEach(consumer);
+            count += page.getEntries().size();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return count;
+    }
+    
     @Override
     public void validateCall(String methodName, String ipAddress, String sessionId)
             throws NotAuthorizedException {
-        Session aSession = sessions.get(sessionId);
+        Session aSession = sessionStore.get(sessionId);
         
         if(aSession == null) {
             NotAuthorizedException ex = new NotAuthorizedException(ts.getTranslatedString(KEY_PREFIX + ".17"));
@@ -2690,16 +2716,10 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             if (passwordEnconder.matches(password, (String)userNode.getProperty(Constants.PROPERTY_PASSWORD))) {
                 UserProfile user = Util.createUserProfileWithGroupPrivilegesFromNode(userNode);
 
-                for (Session aSession : sessions.values()) {
-                    if (aSession.getUser().getUserName().equals(userName) 
-                            && aSession.getSessionType() == sessionType) { //Multiple sessions withe the same user are allowed as long as they have a different type (e.g. one mobile session and the other web session)
-                        sessions.remove(aSession.getToken());
-                        break;
-                    }
-                }
-                
+                //Multiple sessions withe the same user are allowed as long as they have a different type (e.g. one mobile session and the other web session),
+                //so the previous session of this type, if any, is replaced
                 Session newSession = new Session(user, sessionType);
-                sessions.put(newSession.getToken(), newSession);
+                sessionStore.put(newSession);
                 cm.putUser(user);
                 
                 createGeneralActivityLogEntry(user.getUserName(), ActivityLogEntry.ACTIVITY_TYPE_OPEN_SESSION, 
@@ -2718,7 +2738,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     
     @Override
     public UserProfile getUserInSession(String sessionId) {
-        return sessions.get(sessionId).getUser();
+        return sessionStore.get(sessionId).getUser();
     }
     
     @Override
@@ -2753,14 +2773,12 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
 
     @Override
     public void closeSession(String sessionId) throws NotAuthorizedException {
-        Session aSession = sessions.get(sessionId);
-        if (aSession == null) {
+        if (sessionStore.remove(sessionId) == null) {
             NotAuthorizedException ex = new NotAuthorizedException(ts.getTranslatedString("api.aem.error.200007"));
             ex.setPrefix("api.aem.error");
             ex.setCode(200007);
             throw ex;
         }
-        sessions.remove(sessionId);
     }
             
     @Override
@@ -2776,8 +2794,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     @Override
     public void createGeneralActivityLogEntry(String userName, int type, String notes) throws ApplicationObjectNotFoundException {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Util.createActivityLogEntry(null, userName, type,
-                    Calendar.getInstance().getTimeInMillis(), null, null, null, notes, connectionManager.getConnectionHandler(), ts);
+            activityLogWriter.write(userName, null, type, Calendar.getInstance().getTimeInMillis(), null, null, null, notes);
             tx.success();        
         }
     }
@@ -2785,9 +2802,8 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     @Override
     public void createGeneralActivityLogEntry(String userName, int type, ChangeDescriptor changeDescriptor) throws ApplicationObjectNotFoundException {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Util.createActivityLogEntry(null, userName, type,
-                    Calendar.getInstance().getTimeInMillis(), changeDescriptor.getAffectedProperties(), 
-                    changeDescriptor.getOldValues(), changeDescriptor.getNewValues(), changeDescriptor.getNotes(), connectionManager.getConnectionHandler(), ts);
+            activityLogWriter.write(userName, null, type, Calendar.getInstance().getTimeInMillis(), changeDescriptor.getAffectedProperties(), 
+                    changeDescriptor.getOldValues(), changeDescriptor.getNewValues(), changeDescriptor.getNotes());
 
             tx.success();  
         }
@@ -2802,11 +2818,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             if (objectNode == null)
                 throw new BusinessObjectNotFoundException(className, oid);
             
-            Node activityLogEntryNode = Util.createActivityLogEntry(objectNode, userName, type, Calendar.getInstance().getTimeInMillis(), 
-                    affectedProperties, oldValues, newValues, notes, connectionManager.getConnectionHandler(), ts);
+            long activityLogEntryId = activityLogWriter.write(userName, objectNode, type, Calendar.getInstance().getTimeInMillis(), 
+                    affectedProperties, oldValues, newValues, notes);
 
             tx.success();
-            return activityLogEntryNode.getId();
+            return activityLogEntryId;
         }
     }
     
@@ -2864,8 +2880,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             switch (propertyName) {
                 case Constants.PROPERTY_NAME:
                 case Constants.PROPERTY_DESCRIPTION:
+                    taskNode.setProperty(propertyName, propertyValue);
+                    break;
                 case Constants.PROPERTY_SCRIPT:
                     taskNode.setProperty(propertyName, propertyValue);
+                    ScriptCache.getInstance().evict(String.format("task:%s", taskId)); //NOI18N
                     break;
                 case Constants.PROPERTY_ENABLED:
                 case Constants.PROPERTY_COMMIT_ON_EXECUTE:
@@ -2991,6 +3010,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             }
             taskNode.delete();
             tx.success();
+            ScriptCache.getInstance().evict(String.format("task:%s", taskId)); //NOI18N
         }
     }
 
@@ -3161,8 +3181,8 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             environmentParameters.setVariable("connectionHandler", connectionManager.getConnectionHandler()); //NOI18N
             environmentParameters.setVariable("scriptParameters", scriptParameters); //NOI18N
          
-            GroovyShell shell = new GroovyShell(ApplicationEntityManager.class.getClassLoader(), environmentParameters);
-            Object theResult = shell.evaluate(script);
+            Object theResult = ScriptCache.getInstance().run(String.format("task:%s", taskId), script, //NOI18N
+                    ApplicationEntityManager.class.getClassLoader(), environmentParameters);
 
             if (theResult == null)
                 throw new InvalidArgumentException(ts.getTranslatedString("module.taskman.task.actions.task-script-result-null-object"));
@@ -3392,7 +3412,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                     createSpecialRelQuery += " CREATE (portA)-[:RELATED_TO_SPECIAL {name:$relationshipName}]->(portB"+i+") ";
                     parameters.put("idB"+i, portB);
                 }
-                connectionManager.getConnectionHandler().execute(findNodesQuery + createSpecialRelQuery, parameters);
+                cypherQueryExecutor.execute(CypherQuery.dynamic("aem.createTemplateElementMirrors", findNodesQuery + createSpecialRelQuery), parameters); //NOI18N
             } else if(dynamicName.isMirrorPortsSequence()) {
                 Map<String, Object> parameters = new HashMap<>();
                 String createSpecialRelQuery = "";
@@ -3407,7 +3427,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                     parameters.put("idB"+i, portB);
                     parameters.put("relationshipName", "mirror");
                 }
-                connectionManager.getConnectionHandler().execute(findNodesQuery + createSpecialRelQuery, parameters);
+                cypherQueryExecutor.execute(CypherQuery.dynamic("aem.createTemplateElementMirrors", findNodesQuery + createSpecialRelQuery), parameters); //NOI18N
             }
             tx.success();            
             return res;
@@ -4941,9 +4961,8 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     @Override
     public List<ConfigurationVariable> getAllConfigurationVariables() {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            String query = "MATCH (variable:" + configurationVariables +") RETURN variable ORDER BY variable.name ASC";
             List<ConfigurationVariable> result = new ArrayList<>();
-            Result queryResult = connectionManager.getConnectionHandler().execute(query);
+            Result queryResult = cypherQueryExecutor.execute(QUERY_GET_ALL_CONFIGURATION_VARIABLES);
             queryResult.columnAs("variable").stream().forEach( aQueryResult -> {
                 Node configVariableNode = (Node)aQueryResult;
                 result.add(new ConfigurationVariable(configVariableNode.getId(), 
@@ -5200,8 +5219,10 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                 validatorDefinitionNode.setProperty(Constants.PROPERTY_CLASSNAME, classToBeApplied);
             }
             
-            if (script != null)
+            if (script != null) {
                 validatorDefinitionNode.setProperty(Constants.PROPERTY_SCRIPT, script);
+                ScriptCache.getInstance().evict(String.format("validator:%s", validatorDefinitionId)); //NOI18N
+            }
             
             if (enabled != null)
                 validatorDefinitionNode.setProperty(Constants.PROPERTY_ENABLED, enabled);
@@ -5240,8 +5261,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
     public List<ValidatorDefinition> getAllValidatorDefinitions() {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             List<ValidatorDefinition> res = new ArrayList<>();
-            String query = "MATCH (validator:" + validatorDefinitions + ") RETURN validator ORDER BY validator.name ASC";
-            Result result = connectionManager.getConnectionHandler().execute(query);
+            Result result = cypherQueryExecutor.execute(QUERY_GET_ALL_VALIDATOR_DEFINITIONS);
             while (result.hasNext()) {
                 Node node = (Node) result.next().get("validator");
                 res.add(new ValidatorDefinition(node.getId(),
@@ -5270,8 +5290,8 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                     try {
                         if ((boolean)aValidatorDefinitionNode.getProperty(Constants.PROPERTY_ENABLED) && 
                                 mem.isSubclassOf((String)aValidatorDefinitionNode.getProperty(Constants.PROPERTY_CLASSNAME), objectClass)) {
-                            GroovyShell shell = new GroovyShell(ApplicationEntityManager.class.getClassLoader(), environmentParameters);
-                            Object theResult = shell.evaluate(script);
+                            Object theResult = ScriptCache.getInstance().run(String.format("validator:%s", aValidatorDefinitionNode.getId()), //NOI18N
+                                    script, ApplicationEntityManager.class.getClassLoader(), environmentParameters);
 
                             if (theResult instanceof Validator) //The script must return a validator, otherwise, the result will be ignored
                                 res.add((Validator)theResult);
@@ -5296,6 +5316,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
                         String.format(ts.getTranslatedString("module.configman.validators.validator-id-not-found"), validatorDefinitionId));
             
             validatorDefinitionNode.delete();
+            ScriptCache.getInstance().evict(String.format("validator:%s", validatorDefinitionId)); //NOI18N
             
             //While not entirely efficient, this will clear all cached validator definitions to prevent that a validator definition 
             //associated to a super class is missed by the caching system
@@ -5926,12 +5947,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
         
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append("MATCH (f:").append(filterDefinitionsLabel).append(") "); //NOI18N
-            queryBuilder.append("WHERE id(f)=").append(filterId).append(" ");
-            queryBuilder.append("DELETE f"); 
-
-            connectionManager.getConnectionHandler().execute(queryBuilder.toString());
+            cypherQueryExecutor.execute(QUERY_DELETE_FILTER_DEFINITION, Collections.singletonMap("filterId", filterId)); //NOI18N
 
             cm.removeFilterDefinitionsForClass(className, filterId);
             tx.success();
@@ -6325,6 +6341,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             ResourceIterator<Node> result = connectionManager.getConnectionHandler().execute(query, parameters).columnAs("n");
             if (result.hasNext()) {
                 tx.success();
+                ScriptCache.getInstance().evict(String.format("scriptedQuery:%s", scriptedQueryId)); //NOI18N
                 return;
             }
             throw new ApplicationObjectNotFoundException(String.format(ts.getTranslatedString("apis.persistence.aem.messages.scripted-query-id-not-found"), scriptedQueryId));
@@ -6350,6 +6367,7 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             QueryStatistics queryStatistics = connectionManager.getConnectionHandler().execute(query, parameters).getQueryStatistics();
             if (queryStatistics.containsUpdates()) {
                 tx.success();
+                ScriptCache.getInstance().evict(String.format("scriptedQuery:%s", scriptedQueryId)); //NOI18N
                 return;
             }
             throw new ApplicationObjectNotFoundException(String.format(ts.getTranslatedString("apis.persistence.aem.messages.scripted-query-id-not-found"), scriptedQueryId));
@@ -6452,8 +6470,8 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
             sharedData.setVariable("connectionHandler", connectionManager.getConnectionHandler()); //NOI18N
             sharedData.setVariable("scriptParameters", scriptParameters); //NOI18N
             
-            GroovyShell shell = new GroovyShell(ApplicationEntityManager.class.getClassLoader(), sharedData);
-            Object result = shell.evaluate(scriptedQuery.getScript());
+            Object result = ScriptCache.getInstance().run(String.format("scriptedQuery:%s", scriptedQuery.getId()), //NOI18N
+                    scriptedQuery.getScript(), ApplicationEntityManager.class.getClassLoader(), sharedData);
             
             if (result == null)
                 throw new InvalidArgumentException(ts.getTranslatedString("apis.persistence.aem.messages.null-scripted-query-result"));
@@ -6465,6 +6483,11 @@ public class ApplicationEntityManagerImpl implements ApplicationEntityManager {
         }
     }
     @Override
+    public Object runScript(String script, ClassLoader parentClassLoader, HashMap<String, Object> variables) {
+        return ScriptCache.getInstance().run(null, script, parentClassLoader, 
+                new Binding(variables == null ? new HashMap<>() : variables));
+    }
+    @Override
     public String createScriptedQueryParameter(String scriptedQueryId, String name, String description, String type, boolean mandatory, Object defaultValue) 
         throws InvalidArgumentException, ExecutionException {
         if (scriptedQueryId == null)
@@ -17,7 +17,6 @@
 package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
@@ -38,12 +37,15 @@ import org.neotropic.kuwaiba.core.apis.persistence.application.InventoryObjectPo
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.InventoryReport;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadata;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadataLight;
+import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportResult;
 import org.neotropic.kuwaiba.core.apis.persistence.business.AnnotatedBusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BulkObjectRecord;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObject;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLightList;
 import org.neotropic.kuwaiba.core.apis.persistence.business.Contact;
+import org.neotropic.kuwaiba.core.apis.persistence.business.RouteConstraints;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ApplicationObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.BusinessObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
@@ -56,8 +58,15 @@ import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.apis.persistence.util.StringPair;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheManager;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.ScriptCache;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.reporting.ReportExecutor;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.reporting.ReportJob;
 import org.neotropic.kuwaiba.core.persistence.reference.naming.util.DynamicNameGenerator;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.routing.RoutingEngine;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQuery;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQueryExecutor;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectGraphMappingService;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectSearchIndex;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.PortUtilityService;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.Util;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -66,23 +75,30 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Business entity manager reference implementation (using Neo4J as backend).
@@ -95,6 +111,86 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
      */
     private static final String DEFAULT_ATTACHMENTS_PATH = "/data/files/attachments";
     private static final String DEFAULT_MAX_ATTACHMENT_SIZE = "10";
+    /**
+     * Default number of objects deleted per transaction by deleteObjects
+     */
+    private static final String DEFAULT_DELETE_BATCH_SIZE = "1000";
+    /**
+     * Default number of nodes created per transaction by the bulk creation methods
+     */
+    private static final String DEFAULT_CREATE_BATCH_SIZE = "1000";
+    //<editor-fold desc="Cypher statements" defaultstate="collapsed">
+    private static final CypherQuery QUERY_CREATE_MIRRORS = CypherQuery.template("bem.createMirrorRelationships", //NOI18N
+            "UNWIND $pairs AS pair " //NOI18N
+            + "MATCH (portA:inventoryObjects {_uuid: pair.portA}) " //NOI18N
+            + "MATCH (portB:inventoryObjects {_uuid: pair.portB}) " //NOI18N
+            + "CREATE (portA)-[:" + RelTypes.RELATED_TO_SPECIAL + " {name: $relationshipName}]->(portB)"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_OBJECTS_LIGHT = CypherQuery.template("bem.getObjectsLight", //NOI18N
+            "MATCH (n:inventoryObjects)-[:INSTANCE_OF]->(class:classes) " //NOI18N
+            + "WHERE n._uuid IN $ids " //NOI18N
+            + "RETURN n AS objectNode, class AS classNode"); //NOI18N
+    /**
+     * The objects of a class (or of its subclasses) with a given value in an attribute, be it a primitive or a list type
+     */
+    private static final CypherQuery QUERY_GET_OBJECTS_WITH_FILTER = CypherQuery.template("bem.getObjectsWithFilter", //NOI18N
+            "MATCH (subclass:classes {name: $className})<-[:EXTENDS*0..]-(:classes)<-[:INSTANCE_OF]-(object:inventoryObjects) " //NOI18N
+            + "WHERE object[$filterName] = $filterValue " //NOI18N
+            + "OR (object)-[:" + RelTypes.RELATED_TO + " {name: $filterName}]->(:listTypeItems {name: $filterValue}) " //NOI18N
+            + "RETURN DISTINCT object"); //NOI18N
+    
+    /**
+     * Used only when an ancestor of the object has more than one parent. The rest of the containment lookups are answered by the ancestor index
+     */
+    private static final CypherQuery QUERY_GET_PARENTS = CypherQuery.template("bem.getParents", //NOI18N
+            "MATCH (n:inventoryObjects)-[:" + RelTypes.CHILD_OF + "|" + RelTypes.CHILD_OF_SPECIAL + "*]->(m) " //NOI18N
+            + "WHERE n._uuid = $oid " //NOI18N
+            + "RETURN m as parents"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_MULTIPLE_PARENTS = CypherQuery.template("bem.getMultipleParents", //NOI18N
+            "MATCH (objectClass:inventoryObjects {_uuid: $objectId}) " //NOI18N
+            + "MATCH (objectClass)-[:" + RelTypes.CHILD_OF + "|" + RelTypes.CHILD_OF_SPECIAL + "]->(parentNode:inventoryObjects) " //NOI18N
+            + "RETURN parentNode"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_INSTANCES_OF_CLASS = CypherQuery.template("bem.getObjectsOfClass", //NOI18N
+            "MATCH (class:classes)<-[:INSTANCE_OF]-(instance:" + Constants.LABEL_INVENTORY_OBJECTS + ") " //NOI18N
+            + "WHERE class.name = $className " //NOI18N
+            + "RETURN instance ORDER BY instance.name ASC"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_INSTANCES_OF_ABSTRACT_CLASS = CypherQuery.template("bem.getObjectsOfAbstractClass", //NOI18N
+            "MATCH (class:classes)<-[:EXTENDS*]-(subclass:classes)<-[:INSTANCE_OF]-(instance:" + Constants.LABEL_INVENTORY_OBJECTS + ") " //NOI18N
+            + "WHERE class.name = $className " //NOI18N
+            + "RETURN instance ORDER BY instance.name ASC"); //NOI18N
+    /**
+     * Several objects of a class by id, see {@link #getInstancesOfClass(org.neo4j.graphdb.Node, java.util.Collection) }
+     */
+    private static final CypherQuery QUERY_GET_INSTANCES_OF_CLASS_BY_ID = CypherQuery.template("bem.getInstancesOfClass", //NOI18N
+            "UNWIND $objectIds AS objectId " //NOI18N
+            + "MATCH (object:inventoryObjects {_uuid: objectId})-[:INSTANCE_OF]->(class) WHERE id(class) = $classId " //NOI18N
+            + "RETURN objectId, object"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_FILES_FROM_RELATED_LIST_TYPE_ITEMS = CypherQuery.template("bem.getFilesFromRelatedListTypeItems", //NOI18N
+            "MATCH (object:" + Constants.LABEL_INVENTORY_OBJECTS + " {" + Constants.PROPERTY_UUID + ": $uuid})-[:" + RelTypes.RELATED_TO + "]->(listTypeItem) " //NOI18N
+            + "-[:" + RelTypes.HAS_ATTACHMENT + "]->(file), (listTypeItem)-[:INSTANCE_OF]->(modelClass:classes) " //NOI18N
+            + "RETURN DISTINCT listTypeItem._uuid as ltiId, listTypeItem.name as ltiName, modelClass.name as modelClassName, " //NOI18N
+            + "modelClass.displayName as modelClassDisplayName, file"); //NOI18N
+    private static final CypherQuery QUERY_GET_WAREHOUSES_IN_OBJECT = CypherQuery.template("bem.getWarehousesInObject", //NOI18N
+            "MATCH (warehouse:inventoryObjects)-[:RELATED_TO_SPECIAL {name: $warehouseRelationship}]-(child:inventoryObjects)" //NOI18N
+            + "-[:CHILD_OF*]->(parent:inventoryObjects)-[:INSTANCE_OF]->(class:classes {name: $className}) " //NOI18N
+            + "WHERE parent._uuid = $objectId RETURN warehouse"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_WAREHOUSE_TO_OBJECT = CypherQuery.template("bem.getWarehouseToObject", //NOI18N
+            "MATCH (class:classes {name: $className})<-[:INSTANCE_OF]-(inventoryObject)-[:CHILD_OF_SPECIAL {name: $poolRelationship}]->(pool)" //NOI18N
+            + "-[:CHILD_OF_SPECIAL {name: $poolRelationship}]->(warehouse) " //NOI18N
+            + "WHERE inventoryObject._uuid = $objectId " //NOI18N
+            + "RETURN warehouse"); //NOI18N
+    
+    private static final CypherQuery QUERY_GET_PHYSICAL_NODE_TO_OBJECT_IN_WAREHOUSE = CypherQuery.template("bem.getPhysicalNodeToObjectInWarehouse", //NOI18N
+            "MATCH (class:classes {name: $className})<-[:INSTANCE_OF]-(inventoryObject)-[:CHILD_OF_SPECIAL {name: $poolRelationship}]->(pool)" //NOI18N
+            + "-[:CHILD_OF_SPECIAL {name: $poolRelationship}]->(warehouse)-[:RELATED_TO_SPECIAL {name: $warehouseRelationship}]->(physicalNode) " //NOI18N
+            + "WHERE inventoryObject._uuid = $objectId " //NOI18N
+            + "RETURN physicalNode"); //NOI18N
+    //</editor-fold>
     /**
      * Key prefix to error messages in the Business Entity Manager Service
      */
@@ -149,6 +245,16 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
      */
     @Autowired
     private ObjectGraphMappingService ogmService;
+    /**
+     * Finds the routes through special relationships
+     */
+    @Autowired
+    private RoutingEngine routingEngine;
+    /**
+     * Answers the containment lookups from the cached parent of every node
+     */
+    @Autowired
+    private AncestorIndex ancestorIndex;
     /**
      * Reference to ports utility service
      */
@@ -159,6 +265,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
      */
     @Autowired
     private TranslationService ts;
+    /**
+     * Runs and times the Cypher queries
+     */
+    @Autowired
+    private CypherQueryExecutor cypherQueryExecutor;
     /**
      * Main constructor. It receives references to the other entity managers
      */
@@ -675,192 +786,178 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         }
     }
     
+    /**
+     * {@inheritDoc}
+     * All the objects and their mirror relationships are created in a single transaction, so either all 
+     * of them are created or none is. The chunks of the underlying {@link #createBulkObjects(java.util.stream.Stream)} 
+     * become part of that transaction.
+     */
     @Override
     public String[] createBulkObjects(String className, String parentClassName, String parentOid, String namePattern, String templateId) 
         throws MetadataObjectNotFoundException, OperationNotPermittedException, BusinessObjectNotFoundException, InvalidArgumentException, ApplicationObjectNotFoundException {
         if (parentOid == null)
             throw new InvalidArgumentException("The parent id cannot be null");
-                
-        ClassMetadata myClass = mem.getClass(className);
-        
-        if (!mem.canBeChild(parentClassName, className))
-            throw new OperationNotPermittedException(String.format("An instance of class %s can't be created as child of %s", className, parentClassName == null ? Constants.NODE_DUMMYROOT : parentClassName));
         
+        DynamicNameGenerator dynamicName = new DynamicNameGenerator(namePattern);
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Node classNode = connectionManager.getConnectionHandler().findNode(classLabel, Constants.PROPERTY_NAME, className);
-            
-            if (classNode == null)
-                throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", className));
-                       
-            if (myClass.isInDesign())
-                throw new OperationNotPermittedException("Can not create instances of classes marked as inDesign");
-            
-            if (myClass.isAbstract())
-                throw new OperationNotPermittedException(String.format("Abstract class %s can not be instantiated", className));
-            
-            if (!mem.isSubclassOf(Constants.CLASS_INVENTORYOBJECT, className))
-                throw new OperationNotPermittedException("Can not create non-inventory objects");
-            //The object should be created under an instance other than the dummy root
-            if (parentClassName != null && !parentOid.equals("-1")) {
-                ClassMetadata myParentObjectClass = mem.getClass(parentClassName);
-                if (myParentObjectClass == null)
-                    throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", parentClassName));
-            }
-            Node parentNode;
-            if (!parentOid.equals("-1")) { // Id -1 means the root of the containment hierarchy
-                parentNode = getInstanceOfClass(parentClassName, parentOid);
-                if (parentNode == null)
-                    throw new BusinessObjectNotFoundException(parentClassName, parentOid);
-                
-            }
-            else
-                parentNode = connectionManager.getConnectionHandler().findNode(specialNodeLabel, Constants.PROPERTY_NAME, Constants.NODE_DUMMYROOT);
-            
-            if (parentNode == null)
-                throw new BusinessObjectNotFoundException(parentClassName, parentOid);
-            
-            DynamicNameGenerator dynamicName = new DynamicNameGenerator(namePattern);                                   
-            String res[] = new String[dynamicName.getNumberOfDynamicNames()];
-                        
-            for (int i = 0; i < dynamicName.getNumberOfDynamicNames(); i++) {
-                Node newObject;
-                if (templateId == null || templateId.isEmpty())
-                    newObject = createObject(classNode, myClass, null);
-                else {
-                    try {
-                        Node templateNode = connectionManager.getConnectionHandler().findNode(templateLabel, Constants.PROPERTY_UUID, templateId);
-                        if (templateNode.hasRelationship(Direction.INCOMING, RelTypes.HAS_TEMPLATE)) {
-                            if (className.equals(templateNode.getSingleRelationship(RelTypes.HAS_TEMPLATE, Direction.INCOMING).
-                                    getStartNode().getProperty(Constants.PROPERTY_NAME)))
-                                newObject = copyTemplateElement(templateNode, myClass, true);
-                            else
-                                throw new InvalidArgumentException(String.format("The template with id %s is not applicable to instances of class %s", templateId, className));
-                        } else 
-                            throw new InvalidArgumentException(String.format("The template with id %s is malformed", templateId));
-
-                    } catch (NotFoundException ex) {
-                        throw new ApplicationObjectNotFoundException(String.format("No template with id %s was found for class %s", templateId, className));
-                    }
-                }
-                res[i] = newObject.hasProperty(Constants.PROPERTY_UUID) ? newObject.getProperty(Constants.PROPERTY_UUID).toString() : null;
-                newObject.setProperty(Constants.PROPERTY_NAME, dynamicName.getDynamicNames().get(i));
-                newObject.createRelationshipTo(parentNode, RelTypes.CHILD_OF); 
-            }
-            
-            if(dynamicName.isMultipleMirrorPorts()) {
-                Map<String, Object> parameters = new HashMap<>();
-                String createSpecialRelQuery = "";
-                String findNodesQuery = "";
-                //mirrorMultiple
-                String portA = res[0];
-                parameters.put("relationshipName", "mirrorMultiple");
-                findNodesQuery += "MATCH (portA:inventoryObjects {_uuid:$idA}) ";
-                parameters.put("idA", portA);
-                for(int i = 1; i < res.length; i++) {
-                    String portB = res[i];
-                    findNodesQuery += "MATCH (portB"+i+":inventoryObjects {_uuid:$idB"+i+"}) ";
-                    createSpecialRelQuery += " CREATE (portA)-[:RELATED_TO_SPECIAL {name:$relationshipName}]->(portB"+i+") ";
-                    parameters.put("idB"+i, portB);
-                }
-                connectionManager.getConnectionHandler().execute(findNodesQuery + createSpecialRelQuery, parameters);
-            } else if(dynamicName.isMirrorPortsSequence()) {
-                Map<String, Object> parameters = new HashMap<>();
-                String createSpecialRelQuery = "";
-                String findNodesQuery = "";
-                for(int i = 1; i < res.length; i+=2) {
-                    String portA = res[i];
-                    String portB = res[i-1];
-                    findNodesQuery += "MATCH (portA"+i+":inventoryObjects {_uuid:$idA"+i+"}) "
-                            + "MATCH (portB"+i+":inventoryObjects {_uuid:$idB"+i+"}) ";
-                    createSpecialRelQuery += " CREATE (portA"+i+")-[:RELATED_TO_SPECIAL {name:$relationshipName}]->(portB"+i+") ";
-                    parameters.put("idA"+i, portA);
-                    parameters.put("idB"+i, portB);
-                    parameters.put("relationshipName", "mirror");
-                }
-                connectionManager.getConnectionHandler().execute(findNodesQuery + createSpecialRelQuery, parameters);
+            List<String> res = createBulkObjects(dynamicName.getDynamicNames().stream().map(name -> 
+                    new BulkObjectRecord(className, parentClassName, parentOid, name, null, templateId, false)));
+
+            List<String[]> mirrors = new ArrayList<>();
+            if (dynamicName.isMultipleMirrorPorts()) {
+                for (int i = 1; i < res.size(); i++)
+                    mirrors.add(new String[] { res.get(0), res.get(i) });
+                createMirrorRelationships(mirrors, "mirrorMultiple"); //NOI18N
+            } else if (dynamicName.isMirrorPortsSequence()) {
+                for (int i = 1; i < res.size(); i += 2)
+                    mirrors.add(new String[] { res.get(i), res.get(i - 1) });
+                createMirrorRelationships(mirrors, "mirror"); //NOI18N
             }
-                       
             tx.success();
-            return res;
+            return res.toArray(new String[0]);
         }
     }
     
+    /**
+     * {@inheritDoc}
+     * All the objects are created in a single transaction, so either all of them are created or none is. 
+     * The chunks of the underlying {@link #createBulkObjects(java.util.stream.Stream)} become part of that transaction.
+     */
     @Override
     public String[] createBulkSpecialObjects(String className, String parentClassName, String parentId, String namePattern, String templateId) 
             throws MetadataObjectNotFoundException, BusinessObjectNotFoundException, OperationNotPermittedException, InvalidArgumentException, ApplicationObjectNotFoundException {
         
         if (parentId == null)
             throw new InvalidArgumentException("The parent id cannot be null");
-                
-        ClassMetadata myClass = mem.getClass(className);
-        
-        if (!mem.canBeSpecialChild(parentClassName, className))
-            throw new OperationNotPermittedException(String.format("An instance of class %s can't be created as child of %s", className, parentClassName == null ? Constants.NODE_DUMMYROOT : parentClassName));
         
+        DynamicNameGenerator dynamicName = new DynamicNameGenerator(namePattern);
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Node classNode = connectionManager.getConnectionHandler().findNode(classLabel, Constants.PROPERTY_NAME, className);
-            
-            if (classNode == null)
-                throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", className));
-                       
-            if (myClass.isInDesign())
-                throw new OperationNotPermittedException("Can not create instances of classes marked as inDesign");
-            
-            if (myClass.isAbstract())
-                throw new OperationNotPermittedException(String.format("Abstract class %s can not be instantiated", className));
-            
-            if (!mem.isSubclassOf(Constants.CLASS_INVENTORYOBJECT, className))
-                throw new OperationNotPermittedException("Can not create non-inventory objects");
-            //The object should be created under an instance other than the dummy root
-            if (parentClassName != null && !parentId.equals("-1")) {
-                ClassMetadata myParentObjectClass = mem.getClass(parentClassName);
-                if (myParentObjectClass == null)
-                    throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", parentClassName));
-            }
-            Node parentNode;
-            if (!parentId.equals("-1")) { // Id -1 means the root of the containment hierarchy
-                parentNode = getInstanceOfClass(parentClassName, parentId);
-                if (parentNode == null)
-                    throw new BusinessObjectNotFoundException(parentClassName, parentId);
-                
-            }
-            else
-                parentNode = connectionManager.getConnectionHandler().findNode(specialNodeLabel, Constants.PROPERTY_NAME, Constants.NODE_DUMMYROOT);
-            
-            if (parentNode == null)
-                throw new BusinessObjectNotFoundException(parentClassName, parentId);
-            
-            DynamicNameGenerator dynamicName = new DynamicNameGenerator(namePattern);                                   
-            String res[] = new String[dynamicName.getNumberOfDynamicNames()];
-                        
-            for (int i = 0; i < dynamicName.getNumberOfDynamicNames(); i++) {
-                Node newObject;
-                if (templateId == null || templateId.isEmpty())
-                    newObject = createObject(classNode, myClass, null);
-                else {
-                    try {
-                        Node templateNode = connectionManager.getConnectionHandler().findNode(templateLabel, Constants.PROPERTY_UUID, templateId);
-                        if (templateNode.hasRelationship(Direction.INCOMING, RelTypes.HAS_TEMPLATE)) {
-                            if (className.equals(templateNode.getSingleRelationship(RelTypes.HAS_TEMPLATE, Direction.INCOMING).
-                                    getStartNode().getProperty(Constants.PROPERTY_NAME)))
-                                newObject = copyTemplateElement(templateNode, myClass, true);
-                            else
-                                throw new InvalidArgumentException(String.format("The template with id %s is not applicable to instances of class %s", templateId, className));
-                        } else 
-                            throw new InvalidArgumentException(String.format("The template with id %s is malformed", templateId));
-
-                    } catch (NotFoundException ex) {
-                        throw new ApplicationObjectNotFoundException(String.format("No template with id %s was found for class %s", templateId, className));
+            String[] res = createBulkObjects(dynamicName.getDynamicNames().stream().map(name -> 
+                    new BulkObjectRecord(className, parentClassName, parentId, name, null, templateId, true))).toArray(new String[0]);
+            tx.success();
+            return res;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * The records are consumed as they are needed, and the objects 
+     * are committed in chunks of <code>createBatchSize</code> nodes (including the nodes copied from templates), so the 
+     * size of the transaction doesn't grow with the number of records. The class and containment checks, the parent 
+     * lookups and the template expansion are performed only once per distinct class, parent and template.
+     * <b>This method is not atomic</b>: every chunk is committed on its own, so if a record fails, the objects 
+     * created by the previous chunks remain in the database, and the exception doesn't tell which ones they are. 
+     * Callers that need all or nothing must call it within a transaction of their own, in which case the chunks 
+     * become part of it (and the transaction grows with the number of records), as the pattern based 
+     * {@link #createBulkObjects(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)} does
+     */
+    @Override
+    public List<String> createBulkObjects(Stream<BulkObjectRecord> records) 
+            throws MetadataObjectNotFoundException, OperationNotPermittedException, BusinessObjectNotFoundException, InvalidArgumentException, ApplicationObjectNotFoundException {
+        int batchSize = Math.max(1, Integer.valueOf(configuration.getProperty("createBatchSize", DEFAULT_CREATE_BATCH_SIZE)));
+        HashMap<String, Node> classNodes = new HashMap<>();
+        HashMap<String, ClassMetadata> classes = new HashMap<>();
+        HashMap<String, Node> parentNodes = new HashMap<>();
+        HashMap<String, TemplateElement> templates = new HashMap<>();
+        HashSet<String> containment = new HashSet<>();
+        List<String> res = new ArrayList<>();
+        
+        Iterator<BulkObjectRecord> iterator = records.iterator();
+        while (iterator.hasNext()) {
+            try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+                int createdNodes = 0;
+                while (createdNodes < batchSize && iterator.hasNext()) {
+                    BulkObjectRecord record = iterator.next();
+                    if (record.getParentOid() == null)
+                        throw new InvalidArgumentException("The parent id cannot be null");
+                    
+                    String containmentKey = String.format("%s:%s:%s", record.isSpecial(), record.getParentClassName(), record.getClassName()); //NOI18N
+                    if (!containment.contains(containmentKey)) {
+                        if (!(record.isSpecial() ? mem.canBeSpecialChild(record.getParentClassName(), record.getClassName()) : 
+                                mem.canBeChild(record.getParentClassName(), record.getClassName())))
+                            throw new OperationNotPermittedException(String.format("An instance of class %s can't be created as child of %s", 
+                                    record.getClassName(), record.getParentClassName() == null ? Constants.NODE_DUMMYROOT : record.getParentClassName()));
+                        containment.add(containmentKey);
+                    }
+                    
+                    if (!classes.containsKey(record.getClassName())) {
+                        ClassMetadata myClass = mem.getClass(record.getClassName());
+                        Node classNode = connectionManager.getConnectionHandler().findNode(classLabel, Constants.PROPERTY_NAME, record.getClassName());
+                        if (classNode == null)
+                            throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", record.getClassName()));
+                        if (myClass.isInDesign())
+                            throw new OperationNotPermittedException("Can not create instances of classes marked as inDesign");
+                        if (myClass.isAbstract())
+                            throw new OperationNotPermittedException(String.format("Abstract class %s can not be instantiated", record.getClassName()));
+                        if (!mem.isSubclassOf(Constants.CLASS_INVENTORYOBJECT, record.getClassName()))
+                            throw new OperationNotPermittedException("Can not create non-inventory objects");
+                        classNodes.put(record.getClassName(), classNode);
+                        classes.put(record.getClassName(), myClass);
+                    }
+                    
+                    String parentKey = record.getParentOid().equals("-1") ? "-1" : record.getParentClassName() + ":" + record.getParentOid(); //NOI18N
+                    Node parentNode = parentNodes.get(parentKey);
+                    if (parentNode == null) {
+                        if (!record.getParentOid().equals("-1")) // Id -1 means the root of the containment hierarchy
+                            parentNode = getInstanceOfClass(record.getParentClassName(), record.getParentOid());
+                        else
+                            parentNode = connectionManager.getConnectionHandler().findNode(specialNodeLabel, Constants.PROPERTY_NAME, Constants.NODE_DUMMYROOT);
+                        if (parentNode == null)
+                            throw new BusinessObjectNotFoundException(record.getParentClassName(), record.getParentOid());
+                        parentNodes.put(parentKey, parentNode);
+                    }
+                    
+                    Node newObject;
+                    if (record.getTemplateId() == null || record.getTemplateId().isEmpty()) {
+                        newObject = createObject(classNodes.get(record.getClassName()), classes.get(record.getClassName()), record.getAttributes());
+                        createdNodes++;
+                    } else {
+                        TemplateElement template = templates.get(record.getTemplateId());
+                        if (template == null) {
+                            template = expandTemplate(record.getTemplateId(), record.getClassName());
+                            templates.put(record.getTemplateId(), template);
+                        }
+                        if (!record.getClassName().equals(template.className))
+                            throw new InvalidArgumentException(String.format("The template with id %s is not applicable to instances of class %s", 
+                                    record.getTemplateId(), record.getClassName()));
+                        newObject = spawnTemplateElement(template);
+                        createdNodes += template.size;
                     }
+                    
+                    if (record.getName() != null)
+                        newObject.setProperty(Constants.PROPERTY_NAME, record.getName());
+                    newObject.createRelationshipTo(parentNode, record.isSpecial() ? RelTypes.CHILD_OF_SPECIAL : RelTypes.CHILD_OF);
+                    res.add(newObject.hasProperty(Constants.PROPERTY_UUID) ? newObject.getProperty(Constants.PROPERTY_UUID).toString() : null);
                 }
-
-                res[i] = newObject.hasProperty(Constants.PROPERTY_UUID) ? newObject.getProperty(Constants.PROPERTY_UUID).toString() : null;
-                newObject.setProperty(Constants.PROPERTY_NAME, dynamicName.getDynamicNames().get(i));
-                newObject.createRelationshipTo(parentNode, RelTypes.CHILD_OF_SPECIAL); 
+                tx.success();
+            }
+        }
+        return res;
+    }
+    
+    /**
+     * Relates pairs of ports as mirrors. The relationships are created in chunks of <code>createBatchSize</code> pairs, 
+     * each in its own transaction, unless the caller has a transaction open, in which case they become part of it
+     * @param mirrors The pairs of port ids. The relationship goes from the first port to the second one
+     * @param relationshipName The name of the relationship, mirror or mirrorMultiple
+     */
+    private void createMirrorRelationships(List<String[]> mirrors, String relationshipName) {
+        int batchSize = Math.max(1, Integer.valueOf(configuration.getProperty("createBatchSize", DEFAULT_CREATE_BATCH_SIZE)));
+        for (int i = 0; i < mirrors.size(); i += batchSize) {
+            List<Map<String, Object>> pairs = new ArrayList<>();
+            for (String[] mirror : mirrors.subList(i, Math.min(i + batchSize, mirrors.size()))) {
+                HashMap<String, Object> pair = new HashMap<>();
+                pair.put("portA", mirror[0]); //NOI18N
+                pair.put("portB", mirror[1]); //NOI18N
+                pairs.add(pair);
+            }
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put("pairs", pairs); //NOI18N
+            parameters.put("relationshipName", relationshipName); //NOI18N
+            try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+                executeQuery(QUERY_CREATE_MIRRORS, parameters).close();
+                tx.success();
             }
-                        
-            tx.success();
-            return res;
         }
     }
     
@@ -923,15 +1020,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             throw ex;
         }
 
-        String query = "MATCH (n:inventoryObjects)-[:INSTANCE_OF]->(class:classes) " +
-                       "WHERE n._uuid IN $ids " +
-                       "RETURN n AS objectNode, class AS classNode";
-
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             Map<String, Object> parameters = new HashMap<>();
             parameters.put("ids", idList);
 
-            Result queryResult = connectionManager.getConnectionHandler().execute(query, parameters);
+            Result queryResult = executeQuery(QUERY_GET_OBJECTS_LIGHT, parameters);
 
             while (queryResult.hasNext()) {
                 Map<String, Object> resultRow = queryResult.next();
@@ -972,15 +1065,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             throw ex;
         }
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append("MATCH (class:classes)<-[:EXTENDS*0..]-(subclass:classes{name:'%s'})<-[:EXTENDS*0..]-(:classes)<-[:INSTANCE_OF]-(object:inventoryObjects)").append("\n");
-            queryBuilder.append("WHERE object.%s = '%s'").append("\n");
-            queryBuilder.append("OR (object)-[:RELATED_TO{name:'%s'}]->(:listTypeItems{name:'%s'})").append("\n");
-            queryBuilder.append("RETURN DISTINCT object");
-            
-            String query = String.format(queryBuilder.toString(), className, filterName, filterValue, filterName, filterValue);
-            
-            Result queryResult = connectionManager.getConnectionHandler().execute(query);
+            Result queryResult = executeQuery(QUERY_GET_OBJECTS_WITH_FILTER, getFilterParameters(className, filterName, filterValue));
             ResourceIterator<Node> column = queryResult.columnAs("object");
             
             List<BusinessObjectLight> result = new ArrayList();
@@ -1014,15 +1099,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         }
         
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append("MATCH (class:classes)<-[:EXTENDS*0..]-(subclass:classes{name:'%s'})<-[:EXTENDS*0..]-(:classes)<-[:INSTANCE_OF]-(object:inventoryObjects)").append("\n");
-            queryBuilder.append("WHERE object.%s = '%s'").append("\n");
-            queryBuilder.append("OR (object)-[:RELATED_TO{name:'%s'}]->(:listTypeItems{name:'%s'})").append("\n");
-            queryBuilder.append("RETURN DISTINCT object");
-            
-            String query = String.format(queryBuilder.toString(), className, filterName, filterValue, filterName, filterValue);
-            
-            Result queryResult = connectionManager.getConnectionHandler().execute(query);
+            Result queryResult = executeQuery(QUERY_GET_OBJECTS_WITH_FILTER, getFilterParameters(className, filterName, filterValue));
             ResourceIterator<Node> column = queryResult.columnAs("object");
             
             List<BusinessObject> result = new ArrayList();
@@ -1036,23 +1113,9 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     @Override
     public List<BusinessObjectLight> getSuggestedObjectsWithFilter(String filter, int limit) {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            String cypherQuery = "MATCH (object:" + inventoryObjectLabel + ")-[:INSTANCE_OF]->(class)" + 
-                    " WHERE TOLOWER(object.name) CONTAINS TOLOWER({searchString}) OR TOLOWER(class.name) "
-                    + "CONTAINS TOLOWER({searchString}) OR TOLOWER(class.displayName) CONTAINS TOLOWER({searchString}) " 
-                    + "RETURN object.name as oname, object._uuid as oid, class.name as cname, class.displayName as cdisplay ORDER BY object.name ASC" + (limit > 0 ? " LIMIT " + limit : ""); //NOI18N
-            
-            HashMap<String, Object> parameters = new HashMap<>();
-            parameters.put("searchString", filter);
-            Result queryResult = connectionManager.getConnectionHandler().execute(cypherQuery, parameters);
-            
-            List<BusinessObjectLight> res  = new ArrayList<>();
-            
-            while (queryResult.hasNext()) {
-                Map<String, Object> row = queryResult.next();
-                res.add(new BusinessObjectLight((String)row.get("cname"), (String)row.get("oid"), 
-                        (String)row.get("oname"), (String)row.get("cdisplay")));
-            }
-            
+            List<Node> objects = ObjectSearchIndex.search(connectionManager.getConnectionHandler(), filter, 
+                    ObjectSearchIndex.MatchMode.INFIX, null, true, 0, limit > 0 ? limit : -1);
+            List<BusinessObjectLight> res = ogmService.createObjectLightsFromNodes(objects, false);
             tx.success();
             return res;
         }
@@ -1061,25 +1124,10 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     @Override
     public List<BusinessObjectLight> getSuggestedObjectsWithFilter(String filter, String superClass, int limit) {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            String cypherQuery = "MATCH (object:" + inventoryObjectLabel + ")-[:INSTANCE_OF]->(class)" +
-                    "-[:EXTENDS*0..]->(superclass) WHERE (TOLOWER(object.name) CONTAINS TOLOWER({searchString})" + 
-                    " OR TOLOWER(class.name) CONTAINS TOLOWER({searchString}) OR TOLOWER(class.displayName) CONTAINS TOLOWER({searchString}))" + 
-                    " AND superclass.name = {superclass}" + 
-                    " RETURN object.name as oname, object._uuid as oid, class.name as cname, class.displayName as cdisplay ORDER BY object.name ASC" + (limit > 0 ? " LIMIT " + limit : "");
-
-            HashMap<String, Object> parameters = new HashMap<>();
-            parameters.put("searchString", filter);
-            parameters.put("superclass", superClass);
-            Result queryResult = connectionManager.getConnectionHandler().execute(cypherQuery, parameters);
-            
-            List<BusinessObjectLight> res  = new ArrayList<>();
-            
-            while (queryResult.hasNext()) {
-                Map<String, Object> row = queryResult.next();
-                res.add(new BusinessObjectLight((String)row.get("cname"), (String)row.get("oid"), 
-                        (String)row.get("oname"), (String)row.get("cdisplay")));
-            }
-            
+            List<String> classNames = ObjectSearchIndex.getSubclassNames(connectionManager.getConnectionHandler(), Collections.singletonList(superClass));
+            List<Node> objects = ObjectSearchIndex.search(connectionManager.getConnectionHandler(), filter, 
+                    ObjectSearchIndex.MatchMode.INFIX, classNames, true, 0, limit > 0 ? limit : -1);
+            List<BusinessObjectLight> res = ogmService.createObjectLightsFromNodes(objects, false);
             tx.success();
             return res;
         }
@@ -1087,45 +1135,15 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     
     @Override
     public List<BusinessObjectLight> getSuggestedObjectsWithFilter(String filter, int skip, int limit, String... clasessToFilter) {
-        List<BusinessObjectLight> objects = new ArrayList();
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            StringBuilder queryBuilder = new StringBuilder();
-            HashMap<String, Object> parameters = new HashMap();
-            
-            queryBuilder.append("MATCH (child:inventoryObjects)-[:INSTANCE_OF]->(childClass:classes)-[:EXTENDS*0..]->(childParentClass:classes)").append("\n"); //NOI18N
-            if (filter == null)
-                filter = "";
-            parameters.put("filter", filter); //NOI18N
-            queryBuilder.append("WHERE (TOLOWER(child.name) CONTAINS TOLOWER($filter) OR TOLOWER(childClass.name) CONTAINS TOLOWER($filter) OR TOLOWER(childClass.displayName) CONTAINS TOLOWER($filter))").append("\n"); //NOI18N
-            
-            if (clasessToFilter != null && clasessToFilter.length > 0) {
-                queryBuilder.append("AND ("); //NOI18N
-                for (int i = 0; i < clasessToFilter.length; i++) {
-                    if (i < clasessToFilter.length - 1)
-                        queryBuilder.append(String.format("childParentClass.name = '%s' OR ", clasessToFilter[i])); //NOI18N
-                    else
-                        queryBuilder.append(String.format("childParentClass.name = '%s'", clasessToFilter[i])); //NOI18N
-                }
-                queryBuilder.append(")").append("\n");
-            }
-            queryBuilder.append("RETURN DISTINCT child").append("\n"); //NOI18N
-            queryBuilder.append("ORDER BY child.name").append("\n"); //NOI18N
-            if (skip >= 0) {
-                parameters.put("skip", skip); //NOI18N
-                queryBuilder.append("SKIP $skip").append("\n"); //NOI18N
-            }
-            if (limit >= 0) {
-                parameters.put("limit", limit); //NOI18N
-                queryBuilder.append("LIMIT $limit").append("\n"); //NOI18N
-            }
-            Result queryResult = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            while (queryResult.hasNext()) {
-                Map<String, Object> row = queryResult.next();
-                objects.add(ogmService.createObjectLightFromNode((Node) row.get("child"))); //NOI18N
-            }
+            List<String> classNames = clasessToFilter != null && clasessToFilter.length > 0 ? 
+                    ObjectSearchIndex.getSubclassNames(connectionManager.getConnectionHandler(), Arrays.asList(clasessToFilter)) : null;
+            List<Node> objects = ObjectSearchIndex.search(connectionManager.getConnectionHandler(), filter, 
+                    ObjectSearchIndex.MatchMode.INFIX, classNames, true, skip, limit);
+            List<BusinessObjectLight> res = ogmService.createObjectLightsFromNodes(objects);
             tx.success();
+            return res;
         }
-        return objects;
     }
     
     @Override
@@ -1143,11 +1161,13 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             
             queryBuilder.append("MATCH (child:inventoryObjects)-[:INSTANCE_OF]->(childClass:classes)-[:EXTENDS*0..]->(childParentClass:classes)").append("\n"); //NOI18N
             
-            queryBuilder.append("WHERE (child.name) IN ['").append(String.join("', '",  names)).append("'] "); //NOI18N
+            parameters.put("names", names); //NOI18N
+            queryBuilder.append("WHERE child.name IN $names "); //NOI18N
             
-            if (clasessToFilter != null && clasessToFilter.length > 0)
-                queryBuilder.append("AND childParentClass.name IN ['")
-                        .append(String.join("', '", clasessToFilter)).append("'] "); //NOI18N
+            if (clasessToFilter != null && clasessToFilter.length > 0) {
+                parameters.put("classesToFilter", Arrays.asList(clasessToFilter)); //NOI18N
+                queryBuilder.append("AND childParentClass.name IN $classesToFilter "); //NOI18N
+            }
             
             queryBuilder.append("RETURN DISTINCT child").append("\n"); //NOI18N
             queryBuilder.append("ORDER BY child.name").append("\n"); //NOI18N
@@ -1159,7 +1179,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 parameters.put("limit", limit); //NOI18N
                 queryBuilder.append("LIMIT $limit").append("\n"); //NOI18N
             }
-            Result queryResult = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result queryResult = executeQuery(CypherQuery.dynamic("bem.getObjectsByNameAndClassName", queryBuilder.toString()), parameters); //NOI18N
             while (queryResult.hasNext()) {
                 Map<String, Object> row = queryResult.next();
                 objects.add(ogmService.createObjectLightFromNode((Node) row.get("child"))); //NOI18N
@@ -1188,14 +1208,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             queryBuilder.append("WHERE (toLower(child.name) CONTAINS toLower($filter) OR toLower(childClass.name) CONTAINS toLower($filter))").append("\n"); //NOI18N
             
             if (clasessToFilter != null && clasessToFilter.length > 0) {
-                queryBuilder.append("AND ("); //NOI18N
-                for (int i = 0; i < clasessToFilter.length; i++) {
-                    if (i < clasessToFilter.length - 1)
-                        queryBuilder.append(String.format("childParentClass.name = '%s' OR ", clasessToFilter[i])); //NOI18N
-                    else
-                        queryBuilder.append(String.format("childParentClass.name = '%s'", clasessToFilter[i])); //NOI18N
-                }
-                queryBuilder.append(")").append("\n");
+                parameters.put("classesToFilter", Arrays.asList(clasessToFilter)); //NOI18N
+                queryBuilder.append("AND childParentClass.name IN $classesToFilter").append("\n"); //NOI18N
             }
             queryBuilder.append("RETURN DISTINCT child").append("\n"); //NOI18N
             queryBuilder.append("ORDER BY child.name").append("\n"); //NOI18N
@@ -1207,7 +1221,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 parameters.put("limit", limit); //NOI18N
                 queryBuilder.append("LIMIT $limit").append("\n"); //NOI18N
             }
-            Result queryResult = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result queryResult = executeQuery(CypherQuery.dynamic("bem.getSuggestedChildrenWithFilter", queryBuilder.toString()), parameters); //NOI18N
             while (queryResult.hasNext()) {
                 Map<String, Object> row = queryResult.next();
                 children.add(ogmService.createObjectLightFromNode((Node) row.get("child")));
@@ -1297,27 +1311,33 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     @Override
     public BusinessObjectLight getCommonParent(String aObjectClass, String aOid, String bObjectClass, String bOid)
             throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, InvalidArgumentException {
-        String cypherQuery = "MATCH (objectA:inventoryObjects)-[:CHILD_OF|CHILD_OF_SPECIAL*]->(parentNode)<-[:CHILD_OF|CHILD_OF_SPECIAL*]-(objectB:inventoryObjects) "
-                + "WHERE objectA._uuid = {objectAId} AND objectB._uuid = {objectBId} RETURN parentNode";
-        
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            HashMap<String, Object> parameters = new HashMap<>();
-            parameters.put("objectAId", aOid);
-            parameters.put("objectBId", bOid);
-            Result queryResult = connectionManager.getConnectionHandler().execute(cypherQuery, parameters);
-            
-            if (!queryResult.hasNext()) //There is no common parent
+            Node objectANode = aOid == null ? null : findObjectNode(aOid, anObject -> true);
+            Node objectBNode = bOid == null ? null : findObjectNode(bOid, anObject -> true);
+            if (objectANode == null || objectBNode == null)
                 return null;
             
-            Node commonParentNode = (Node)queryResult.next().get("parentNode");
-            Node commonParentClassNode = commonParentNode.getSingleRelationship(RelTypes.INSTANCE_OF, 
-                        Direction.OUTGOING).getEndNode();
+            // The nearest ancestor of the first object that is an ancestor of the second one too
+            HashSet<Node> objectBAncestors = new HashSet<>(getAncestorNodes(objectBNode, bOid));
+            Node commonParentNode = null;
+            for (Node anAncestor : getAncestorNodes(objectANode, aOid)) {
+                if (objectBAncestors.contains(anAncestor)) {
+                    commonParentNode = anAncestor;
+                    break;
+                }
+            }
             tx.success();
-            if (Constants.DUMMY_ROOT.equals(commonParentNode.getProperty(Constants.PROPERTY_NAME)))
+            
+            if (commonParentNode == null) //There is no common parent
+                return null;
+            if (Constants.DUMMY_ROOT.equals(commonParentNode.getProperty(Constants.PROPERTY_NAME, null)))
                 return new BusinessObjectLight(Constants.DUMMY_ROOT, "", Constants.DUMMY_ROOT, "Navigation Tree Root");
-            else
-                return new BusinessObjectLight((String)commonParentClassNode.getProperty(Constants.PROPERTY_NAME), (String)commonParentNode.getProperty(Constants.PROPERTY_UUID), 
-                        (String)commonParentNode.getProperty(Constants.PROPERTY_NAME), (String)commonParentClassNode.getProperty(Constants.PROPERTY_DISPLAY_NAME, null));
+            
+            Node commonParentClassNode = getClassNode(commonParentNode);
+            if (commonParentClassNode == null) //A pool
+                return Util.createRemoteObjectLightFromPoolNode(commonParentNode);
+            return new BusinessObjectLight((String)commonParentClassNode.getProperty(Constants.PROPERTY_NAME), (String)commonParentNode.getProperty(Constants.PROPERTY_UUID), 
+                    (String)commonParentNode.getProperty(Constants.PROPERTY_NAME), (String)commonParentClassNode.getProperty(Constants.PROPERTY_DISPLAY_NAME, null));
         }
     }
     
@@ -1358,24 +1378,36 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     public List<BusinessObjectLight> getParents (String objectClassName, String oid)
         throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, InvalidArgumentException {
         List<BusinessObjectLight> parents =  new ArrayList<>();
-        String cypherQuery = "MATCH (n)-[:" + RelTypes.CHILD_OF + "|" + RelTypes.CHILD_OF_SPECIAL + "*]->(m) " +
-                             "WHERE n._uuid = '" + oid + "' " +
-                             "RETURN m as parents";
-      
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
-            Iterator<Node> column = result.columnAs("parents");
-            for (Node node : Iterators.asIterable(column)) {  
-                if (node.hasProperty(Constants.PROPERTY_NAME)) {
-                    if (node.getProperty(Constants.PROPERTY_NAME).equals(Constants.NODE_DUMMYROOT)) {
-                        parents.add(new BusinessObjectLight(Constants.NODE_DUMMYROOT, "-1", Constants.NODE_DUMMYROOT, "Navigation Tree Root"));
-                        continue;
-                    }
+            Node objectNode = oid == null ? null : findObjectNode(oid, anObject -> true);
+            if (objectNode != null) {
+                for (Node node : getAncestorNodes(objectNode, oid))
+                    parents.add(createParentFromNode(node));
+            }
+            tx.success();
+        }
+        return parents;
+    }
+    
+    @Override
+    public HashMap<String, List<BusinessObjectLight>> getParentsOfObjects(List<String> oids) throws InvalidArgumentException {
+        if (oids == null)
+            throw new InvalidArgumentException(ts.getTranslatedString("apis.persistence.bem.messages.get-parents-of-objects.param.object-ids.non-null"));
+        
+        HashMap<String, List<BusinessObjectLight>> parents = new HashMap<>();
+        // The objects usually share most of their ancestors, so every ancestor is mapped only once
+        HashMap<Node, BusinessObjectLight> mappedAncestors = new HashMap<>();
+        try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+            for (String oid : oids) {
+                if (oid == null || parents.containsKey(oid))
+                    continue;
+                List<BusinessObjectLight> objectParents = new ArrayList<>();
+                Node objectNode = findObjectNode(oid, anObject -> true);
+                if (objectNode != null) {
+                    for (Node node : getAncestorNodes(objectNode, oid))
+                        objectParents.add(mappedAncestors.computeIfAbsent(node, this::createParentFromNode));
                 }
-                if (node.hasRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING))
-                    parents.add(ogmService.createObjectLightFromNode(node));
-                else //the node has a poolNode as a parent
-                    parents.add(Util.createRemoteObjectLightFromPoolNode(node));
+                parents.put(oid, objectParents);
             }
             tx.success();
         }
@@ -1387,14 +1419,10 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             String oid, String... objectToMatchClassNames) 
         throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, ApplicationObjectNotFoundException, InvalidArgumentException {
         List<BusinessObjectLight> parents =  new ArrayList<>();
-        String cypherQuery = "MATCH (n)-[:" + RelTypes.CHILD_OF + "|" + RelTypes.CHILD_OF_SPECIAL + "*]->(m) " +
-                             "WHERE n._uuid = '" + oid + "' " +
-                             "RETURN m as parents";
-      
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
-            Iterator<Node> column = result.columnAs("parents");
-            for (Node node : Iterators.asIterable(column)) {
+            Node objectNode = oid == null ? null : findObjectNode(oid, anObject -> true);
+            List<Node> ancestors = objectNode == null ? Collections.emptyList() : getAncestorNodes(objectNode, oid);
+            for (Node node : ancestors) {
                 
                 Label label = Label.label(Constants.LABEL_ROOT); //If the parent node is the dummy root, just return null
                 if (node.hasLabel(label))
@@ -1433,6 +1461,21 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             Node objectNode = getInstanceOfClass(objectClassName, oid);
+            List<Node> ancestors = ancestorIndex.getAncestors(objectNode);
+            if (ancestors != null) {
+                tx.success();
+                for (Node parentNode : ancestors) {
+                    try {
+                        if (mem.isSubclassOf(objectToMatchClassName, Util.getClassName(parentNode)))
+                            return ogmService.createObjectFromNode(parentNode);
+                    } catch (MetadataObjectNotFoundException ex) { //If the parent object is either the Dummy Root or a pool
+                        return null;
+                    }
+                }
+                return null; //If the object is orphan
+            }
+            
+            // An ancestor has more than one parent. Follow the special one
             while (true) {
                 Node parentNode = null;
                 if (objectNode.hasRelationship(RelTypes.CHILD_OF, Direction.OUTGOING))
@@ -1469,12 +1512,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
 
         List<BusinessObjectLight> parents =  new ArrayList<>();
 
-        String cypherQuery = "MATCH (objectClass: inventoryObjects{_uuid: '" + objectId + "'})" +
-                " MATCH (objectClass)-[:" + RelTypes.CHILD_OF + "|" + RelTypes.CHILD_OF_SPECIAL + "]->(parentNode:inventoryObjects)" +
-                " RETURN parentNode";
-
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(QUERY_GET_MULTIPLE_PARENTS, Collections.singletonMap("objectId", objectId)); //NOI18N
             while (result.hasNext()) {
                 Map<String, Object> row = result.next();
                 Node node = (Node) row.get("parentNode");
@@ -1497,69 +1536,148 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             throw new InvalidArgumentException(ts.getTranslatedString("apis.persistence.bem.messages.is-parent.child-id"));
         
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            final String paramParentClass = "parentClass"; //NOI18N
-            final String paramParentId = "parentId"; //NOI18N
-            final String paramChildClass = "childId"; //NOI18N
-            final String paramChildId = "childClass"; //NOI18N
-            final String columnIsParent = "isParent"; //NOI18N
-            
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append("MATCH").append("\n"); //NOI18N
-            queryBuilder.append(String.format("(parentClass:classes {name: $%s})", paramParentClass)); //NOI18N
-            queryBuilder.append("<-[:INSTANCE_OF]-"); //NOI18N
-            queryBuilder.append(String.format("(parent:inventoryObjects {_uuid: $%s})", paramParentId)); //NOI18N
-            queryBuilder.append("<-[:CHILD_OF|:CHILD_OF_SPECIAL*]-"); //NOI18N
-            queryBuilder.append(String.format("(child:inventoryObjects {_uuid: $%s})", paramChildId)); //NOI18N
-            queryBuilder.append("-[:INSTANCE_OF]->"); //NOI18N
-            queryBuilder.append(String.format("(childClass:classes {name: $%s})", paramChildClass)).append("\n"); //NOI18N
-            queryBuilder.append("RETURN").append("\n"); //NOI18N
-            queryBuilder.append(String .format("count(DISTINCT parent) = 1 AS %s", columnIsParent)); //NOI18N
-            
-            HashMap<String, Object> parameters = new HashMap();
-            parameters.put(paramParentClass, parentClass);
-            parameters.put(paramParentId, parentId);
-            parameters.put(paramChildClass, childClass);
-            parameters.put(paramChildId, childId);
-            
-            Result queryResult = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            
-            return queryResult.hasNext() ? (boolean) queryResult.next().get(columnIsParent) : false;
+            Node parentNode = findObjectNode(parentId, anObject -> {
+                Node aClass = getClassNode(anObject);
+                return aClass != null && parentClass.equals(aClass.getProperty(Constants.PROPERTY_NAME, null));
+            });
+            Node childNode = parentNode == null ? null : findObjectNode(childId, anObject -> {
+                Node aClass = getClassNode(anObject);
+                return aClass != null && childClass.equals(aClass.getProperty(Constants.PROPERTY_NAME, null));
+            });
+            tx.success();
+            return childNode != null && getAncestorNodes(childNode, childId).contains(parentNode);
         }
     }
     
+    /**
+     * Deletes a set of objects and all their children. The objects are looked up with a single query per class 
+     * and checked before anything is deleted. The deletion itself is committed in chunks of <code>deleteBatchSize</code> 
+     * objects (see the business properties), so large subtrees don't end up in a single, huge transaction. Note that if 
+     * an error occurs while deleting (not while checking), the chunks committed up to that point are not rolled back.
+     */
     @Override
     public void deleteObjects(HashMap<String, List<String>> objects, boolean releaseRelationships)
             throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, OperationNotPermittedException, InvalidArgumentException {
-
+        // The objects to be deleted, children first, so every chunk can be deleted on its own
+        LinkedHashMap<Long, ObjectToDelete> objectsToDelete = new LinkedHashMap<>();
+        
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            //TODO: Optimize so it can find all objects of a single class in one query
+            // The unique attributes of the classes found along the way
+            HashMap<String, List<String>> uniqueAttributes = new HashMap<>();
             for (String className : objects.keySet()) {
-                for (String oid : objects.get(className)) {
-                    ClassMetadata classMetadata = Util.createClassMetadataFromNode(connectionManager.getConnectionHandler().findNode(classLabel, Constants.PROPERTY_NAME, className));
-                    
-                    if (!mem.isSubclassOf(Constants.CLASS_INVENTORYOBJECT, className))
-                        throw new OperationNotPermittedException(String.format("Class %s is not a business-related class", className));
-
-                    Node instance = getInstanceOfClass(className, oid);
-                    
-                    //Updates the unique attributes cache
-                    try {
-                        BusinessObject remoteObject = ogmService.createObjectFromNode(instance);
-                        for(AttributeMetadata attribute : classMetadata.getAttributes()) {
-                            if (attribute.isUnique()) { 
-                                Object attributeValue = remoteObject.getAttributes().get(attribute.getName());
-                                if (attributeValue != null)
-                                    CacheManager.getInstance().removeUniqueAttributeValue(className, attribute.getName(), attributeValue);
-                            }
-                        }
-                    } catch (InvalidArgumentException ex) {
-                        //Should not happen
-                    }
+                if (!mem.isSubclassOf(Constants.CLASS_INVENTORYOBJECT, className))
+                    throw new OperationNotPermittedException(String.format("Class %s is not a business-related class", className));
+                
+                for (Node instance : getInstancesOfClass(className, objects.get(className)))
+                    collectObjectsToDelete(instance, className, releaseRelationships, objectsToDelete, uniqueAttributes);
+            }
+            tx.success();
+        }
+        
+        int batchSize = Math.max(1, Integer.valueOf(configuration.getProperty("deleteBatchSize", DEFAULT_DELETE_BATCH_SIZE)));
+        List<ObjectToDelete> pendingObjects = new ArrayList<>(objectsToDelete.values());
+        for (int i = 0; i < pendingObjects.size(); i += batchSize) {
+            List<ObjectToDelete> chunk = pendingObjects.subList(i, Math.min(i + batchSize, pendingObjects.size()));
+            List<ObjectToDelete> deletedObjects = new ArrayList<>(chunk.size());
+            try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+                for (ObjectToDelete anObject : chunk) {
+                    Node instance = getNodeToDelete(anObject);
+                    if (instance == null)
+                        continue; // Deleted by someone else in the meantime
+                    // The children were deleted in the previous iterations, unless they were added after the objects were checked
                     deleteObject(instance, releaseRelationships);
+                    deletedObjects.add(anObject);
                 }
+                tx.success();
             }
-            tx.success();
+            releaseDeletedObjects(deletedObjects);
+        }
+    }
+    
+    /**
+     * Checks and adds to the list of objects to be deleted an object and all its children (children first). 
+     * Note that the transaction should be handled by the caller
+     * @param instance The object to be deleted
+     * @param className The class of the object
+     * @param unsafeDeletion True if the object should be deleted even if it has RELATED_TO_SPECIAL or HAS_PROCESS_INSTANCE relationships
+     * @param objectsToDelete The objects to be deleted, indexed by node id
+     * @param uniqueAttributes The unique attributes of the classes already found, indexed by class name
+     * @throws OperationNotPermittedException If the object or any of its children has relationships and unsafeDeletion is false
+     * @throws MetadataObjectNotFoundException If the class of any of the children could not be found
+     */
+    private void collectObjectsToDelete(Node instance, String className, boolean unsafeDeletion, LinkedHashMap<Long, ObjectToDelete> objectsToDelete, 
+            HashMap<String, List<String>> uniqueAttributes) throws OperationNotPermittedException, MetadataObjectNotFoundException {
+        if (objectsToDelete.containsKey(instance.getId())) // The object is a child of an object that was collected before
+            return;
+        
+        if (!unsafeDeletion && !canDeleteObject(instance)) 
+            throw new OperationNotPermittedException(String.format("The object %s (%s) can not be deleted since it has relationships", 
+                    instance.getProperty(Constants.PROPERTY_NAME), instance.getProperty(Constants.PROPERTY_UUID)));
+        
+        for (Relationship rel : instance.getRelationships(Direction.INCOMING, RelTypes.CHILD_OF, RelTypes.CHILD_OF_SPECIAL)) {
+            Node child = rel.getStartNode();
+            Relationship instanceOf = child.getSingleRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING);
+            collectObjectsToDelete(child, instanceOf == null ? null : (String) instanceOf.getEndNode().getProperty(Constants.PROPERTY_NAME), 
+                    unsafeDeletion, objectsToDelete, uniqueAttributes);
+        }
+        
+        HashMap<String, Object> uniqueValues = new HashMap<>();
+        if (className != null) {
+            if (!uniqueAttributes.containsKey(className)) 
+                uniqueAttributes.put(className, mem.getClass(className).getAttributes().stream()
+                        .filter(AttributeMetadata::isUnique)
+                        .map(AttributeMetadata::getName)
+                        .collect(Collectors.toList()));
+            
+            for (String attributeName : uniqueAttributes.get(className)) {
+                if (instance.hasProperty(attributeName))
+                    uniqueValues.put(attributeName, instance.getProperty(attributeName));
+            }
+        }
+        objectsToDelete.put(instance.getId(), new ObjectToDelete(instance.getId(), className, 
+                (String) instance.getProperty(Constants.PROPERTY_UUID, null), uniqueValues));
+    }
+    
+    /**
+     * Gets again the node of an object collected to be deleted by a previous transaction. The ids of the 
+     * deleted nodes are reused, so the node is only returned if it's still the same object (same id and class). 
+     * Note that the transaction should be handled by the caller
+     * @param anObject The object to be deleted
+     * @return The object node, or null if the object has been deleted since it was collected
+     */
+    private Node getNodeToDelete(ObjectToDelete anObject) {
+        Node instance;
+        try {
+            instance = connectionManager.getConnectionHandler().getNodeById(anObject.nodeId);
+        } catch (NotFoundException ex) {
+            return null;
+        }
+        if (!instance.hasLabel(inventoryObjectLabel) || !Objects.equals(anObject.oid, instance.getProperty(Constants.PROPERTY_UUID, null)))
+            return null;
+        Relationship instanceOf = instance.getSingleRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING);
+        String className = instanceOf == null ? null : (String) instanceOf.getEndNode().getProperty(Constants.PROPERTY_NAME, null);
+        return Objects.equals(anObject.className, className) ? instance : null;
+    }
+    
+    /**
+     * Releases the unique attribute values and the cached node ids of a set of deleted objects
+     * @param deletedObjects The deleted objects
+     */
+    private void releaseDeletedObjects(List<ObjectToDelete> deletedObjects) {
+        // class name -> attribute name -> values
+        HashMap<String, HashMap<String, List<Object>>> uniqueValues = new HashMap<>();
+        List<String> oids = new ArrayList<>();
+        for (ObjectToDelete anObject : deletedObjects) {
+            if (anObject.oid != null)
+                oids.add(anObject.oid);
+            anObject.uniqueValues.forEach((attributeName, value) -> 
+                    uniqueValues.computeIfAbsent(anObject.className, aClassName -> new HashMap<>())
+                            .computeIfAbsent(attributeName, anAttributeName -> new ArrayList<>()).add(value));
         }
+        
+        uniqueValues.forEach((className, attributeValues) -> attributeValues.forEach((attributeName, values) -> 
+                CacheManager.getInstance().removeUniqueAttributeValues(className, attributeName, values)));
+        CacheManager.getInstance().removeObjectNodeIds(oids.toArray(new String[0]));
     }
 
     @Override
@@ -1726,8 +1844,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 
                 if (instanceClassNode == null)
                     throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", myClass));
-                for (String oid : objects.get(myClass)) {
-                    Node instance = getInstanceOfClass(instanceClassNode, oid);
+                for (Node instance : getInstancesOfClass(instanceClassNode, Arrays.asList(objects.get(myClass)))) {
                     //If the object was specialChild of a poolNode
                     if (instance.getRelationships(RelTypes.CHILD_OF_SPECIAL, Direction.OUTGOING).iterator().hasNext()) {
                         Relationship rel = instance.getRelationships(RelTypes.CHILD_OF_SPECIAL, Direction.OUTGOING).iterator().next();
@@ -1776,8 +1893,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                     ex.setMessageArgs(myClass);
                     throw ex;
                 }
-                for (String oid : objects.get(myClass)) {
-                    Node instance = getInstanceOfClass(instanceClassNode, oid);
+                for (Node instance : getInstancesOfClass(instanceClassNode, Arrays.asList(objects.get(myClass)))) {
                     if (instance.getRelationships(RelTypes.CHILD_OF, Direction.OUTGOING).iterator().hasNext()) {
                         Relationship rel = instance.getRelationships(RelTypes.CHILD_OF, Direction.OUTGOING).iterator().next();
                         rel.delete();
@@ -1817,8 +1933,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 
                 if (instanceClassNode == null)
                     throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", myClass));
-                for (String oid : objects.get(myClass)) {
-                    Node instance = getInstanceOfClass(instanceClassNode, oid);
+                for (Node instance : getInstancesOfClass(instanceClassNode, Arrays.asList(objects.get(myClass)))) {
                     
                     if (instance.getRelationships(RelTypes.CHILD_OF, Direction.OUTGOING).iterator().hasNext()) {
                         Relationship rel = instance.getRelationships(RelTypes.CHILD_OF, Direction.OUTGOING).iterator().next();
@@ -1891,8 +2006,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 
                 if (instanceClassNode == null)
                     throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", myClass));
-                for (String oid : objects.get(myClass)) {
-                    Node templateObject = getInstanceOfClass(instanceClassNode, oid);
+                for (Node templateObject : getInstancesOfClass(instanceClassNode, objects.get(myClass))) {
                     Node newInstance = ogmService.copyObject(templateObject, recursive, inventoryObjectLabel);
                     newInstance.createRelationshipTo(newParentNode, RelTypes.CHILD_OF);
                     String newInstanceUuid = newInstance.hasProperty(Constants.PROPERTY_UUID) ? (String) newInstance.getProperty(Constants.PROPERTY_UUID) : null;
@@ -1924,8 +2038,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 
                 if (instanceClassNode == null)
                     throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", myClass));
-                for (String oid : objects.get(myClass)) {
-                    Node templateObject = getInstanceOfClass(instanceClassNode, oid);
+                for (Node templateObject : getInstancesOfClass(instanceClassNode, objects.get(myClass))) {
                     Node newInstance = ogmService.copyObject(templateObject, recursive, inventoryObjectLabel);
                     newInstance.createRelationshipTo(newParentNode, RelTypes.CHILD_OF_SPECIAL);
                     String newInstanceUuid = newInstance.hasProperty(Constants.PROPERTY_UUID) ? (String) newInstance.getProperty(Constants.PROPERTY_UUID) : null;
@@ -1986,21 +2099,19 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             
             Iterable<Relationship> children = parentNode.getRelationships(RelTypes.CHILD_OF,Direction.INCOMING);
             Iterator<Relationship> instances = children.iterator();
-            List<BusinessObjectLight> res = new ArrayList<>();
+            List<Node> childNodes = new ArrayList<>();
 
             if (maxResults > 0) {
                 int counter = 0;
                 while(children.iterator().hasNext() && (counter < maxResults)) {
                     counter++;
-                    Node child = children.iterator().next().getStartNode();
-                    res.add(ogmService.createObjectLightFromNode(child));
+                    childNodes.add(children.iterator().next().getStartNode());
                 }
             } else {
-                while(instances.hasNext()) {
-                    Node child = instances.next().getStartNode();
-                    res.add(ogmService.createObjectLightFromNode(child));
-                }
+                while(instances.hasNext())
+                    childNodes.add(instances.next().getStartNode());
             }
+            List<BusinessObjectLight> res = ogmService.createObjectLightsFromNodes(childNodes);
             tx.success();
             Collections.sort(res);
             return res;
@@ -2019,21 +2130,18 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             
             Iterable<Relationship> iterableChildren = parentNode.getRelationships(RelTypes.CHILD_OF,Direction.INCOMING);
             Iterator<Relationship> children = iterableChildren.iterator();
-            List<BusinessObjectLight> res = new ArrayList<>();
+            List<Node> childNodes = new ArrayList<>();
             if (maxResults > 0) {
                 int counter = 0;
                 while(children.hasNext() && (counter < maxResults)) {
                     counter++;
-                    Node child = children.next().getStartNode();
-                    res.add(ogmService.createObjectLightFromNode(child));
+                    childNodes.add(children.next().getStartNode());
                 }
             } else {
-                while(children.hasNext()) {
-                    Node child = children.next().getStartNode();
-                    res.add(ogmService.createObjectLightFromNode(child));
-                }
+                while(children.hasNext())
+                    childNodes.add(children.next().getStartNode());
             }
-            return res;
+            return ogmService.createObjectLightsFromNodes(childNodes);
         }
     }
     
@@ -2088,16 +2196,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryBuilder = new StringBuilder();
             StringBuilder queryFilterBuilder = new StringBuilder();
             
-            if(filters != null){
-                filters.entrySet().forEach(entry -> {
-                    String key = (String)entry.getKey();
-                    String val = (String)entry.getValue();
-                    if (val != null) {
-                        parameters.put(key, val);
-                        queryFilterBuilder.append(String.format("AND TOLOWER(instance.%s) CONTAINS TOLOWER($%s) ", key, key)); //NOI18N
-                    }
-                });
-            }
+            if (filters != null)
+                appendAttributeFilters(queryFilterBuilder, "instance", filters, parameters); //NOI18N
                         
             if ((Boolean) classMetadataNode.getProperty(Constants.PROPERTY_ABSTRACT))
                 queryBuilder.append("MATCH (class:classes)<-[:EXTENDS*]-(subclass:classes)<-[:INSTANCE_OF]-"); //NOI18N
@@ -2121,10 +2221,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             }
             parameters.put("className", className); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> objectChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectsOfClassLight", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> objectChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                objectChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get("instance")));
+                objectChildrenNodes.add((Node) result.next().get("instance"));
+            List<BusinessObjectLight> objectChildren = ogmService.createObjectLightsFromNodes(objectChildrenNodes);
             tx.success();
             return objectChildren;
         }
@@ -2168,10 +2269,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             }
             parameters.put("className", className); //NOI18N
 
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> objectChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectsOfClassLight", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> objectChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                objectChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get("instance")));
+                objectChildrenNodes.add((Node) result.next().get("instance"));
+            List<BusinessObjectLight> objectChildren = ogmService.createObjectLightsFromNodes(objectChildrenNodes);
             tx.success();
             return objectChildren;
         }
@@ -2191,18 +2293,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             
             boolean isAbstract = (Boolean) classMetadataNode.getProperty(Constants.PROPERTY_ABSTRACT);
             
-            String cypherQuery;
-            
-            if (isAbstract) {
-                cypherQuery = "MATCH (class:classes)<-[:EXTENDS*]-(subclass:classes)<-[:INSTANCE_OF]-(instance:" + Constants.LABEL_INVENTORY_OBJECTS + ") "
-                            + "WHERE class.name=\"" + className + "\" "
-                            + "RETURN instance ORDER BY instance.name ASC";                
-            } else {
-                cypherQuery = "MATCH (class:classes)<-[:INSTANCE_OF]-(instance:" + Constants.LABEL_INVENTORY_OBJECTS + ") "
-                            + "WHERE class.name=\"" + className + "\" "
-                            + "RETURN instance ORDER BY instance.name ASC";
-            }
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(isAbstract ? QUERY_GET_INSTANCES_OF_ABSTRACT_CLASS : QUERY_GET_INSTANCES_OF_CLASS,
+                    Collections.singletonMap("className", className)); //NOI18N
             ResourceIterator<Node> instanceColumn = result.columnAs("instance");
             List<Node> lstInstanceColumn = Iterators.asList(instanceColumn);
             
@@ -2243,16 +2335,16 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             queryBuilder.append(" RETURN o as child"); //NOI18N
             queryBuilder.append(" ORDER BY o.name "); //NOI18N
             
-            if(maxResults > 0) {
-                parameters.put("limit", maxResults); //NOI18N
-                queryBuilder.append("LIMIT $limit "); //NOI18N
-            }
             if(page > 0){
                 parameters.put("skip", page); //NOI18N
                 queryBuilder.append("SKIP $skip "); //NOI18N
             }
+            if(maxResults > 0) {
+                parameters.put("limit", maxResults); //NOI18N
+                queryBuilder.append("LIMIT $limit "); //NOI18N
+            }
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getChildrenOfClass", queryBuilder.toString()), parameters); //NOI18N
             while (result.hasNext()){
                 ClassMetadata classMetadata = mem.getClass(classToFilter);
                 res.add(ogmService.createObjectFromNode((Node) result.next().get("child"), classMetadata));
@@ -2305,16 +2397,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryFilterBuilder = new StringBuilder();
             
             //Attributes to filter
-            if(attributesToFilter != null){
-                attributesToFilter.entrySet().forEach(entry -> {
-                    String key = (String)entry.getKey();
-                    String val = (String)entry.getValue();
-                    if (val != null) {
-                        parameters.put(key, val);
-                        queryFilterBuilder.append(String.format("AND TOLOWER(o.%s) CONTAINS TOLOWER($%s) ", key, key)); //NOI18N
-                    }
-                });
-            }
+            if (attributesToFilter != null)
+                appendAttributeFilters(queryFilterBuilder, "o", attributesToFilter, parameters); //NOI18N
             
             boolean isAbstract = (Boolean) classMetadataNode.getProperty(Constants.PROPERTY_ABSTRACT);
             
@@ -2343,9 +2427,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             parameters.put("parentOid", parentOid); //NOI18N
             parameters.put("classToFilter", classToFilter); //NOI18N
         
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getChildrenOfClassLightRecursive", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> childNodes = new ArrayList<>();
             while (result.hasNext())
-                res.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD)));
+                childNodes.add((Node) result.next().get(CHILD));
+            res.addAll(ogmService.createObjectLightsFromNodes(childNodes));
             
             tx.success();
             return res;
@@ -2393,9 +2479,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 parameters.put("limit", maxResults); //NOI18N
             }
         
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getSpecialChildrenOfClassLightRecursive", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> childNodes = new ArrayList<>();
             while (result.hasNext())
-                res.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD)));
+                childNodes.add((Node) result.next().get(CHILD));
+            res.addAll(ogmService.createObjectLightsFromNodes(childNodes));
             
             tx.success();
             return res;
@@ -2527,28 +2615,27 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             final String CHILD_NODE = "specialInstance"; //NOI18N
                         
             if (objectClass == null || objectClass.equals(Constants.NODE_DUMMYROOT)){
-                queryBuilder.append("MATCH (specialNode:specialNodes {name:'DummyRoot'})"); //NOI18N
+                queryBuilder.append("MATCH (specialNode:specialNodes {name:$dummyRoot})"); //NOI18N
                 queryBuilder.append("<-[:").append(RelTypes.CHILD_OF).append("]-"); //NOI18N
-                queryBuilder.append("(object:inventoryObjects {_uuid:$objectId})"); //NOI18N
-                queryBuilder.append("<-[r:").append(RelTypes.CHILD_OF_SPECIAL).append("]-(").append(CHILD_NODE).append(") "); //NOI18N
-                queryBuilder.append("WHERE NOT EXISTS(r.name) OR (EXISTS (r.name) AND (r.name='").append(Constants.REL_PROPERTY_POOL).append("'))"); //NOI18N
-                queryBuilder.append(" RETURN ").append(CHILD_NODE).append(" ORDER BY specialInstance.name ASC"); //NOI18N
-            }
-                          
-            queryBuilder.append("MATCH (class:classes {name:$objectClass})"); //NOI18N
-            queryBuilder.append("<-[:").append(RelTypes.INSTANCE_OF).append("]-"); //NOI18N
+            } else {
+                queryBuilder.append("MATCH (class:classes {name:$objectClass})"); //NOI18N
+                queryBuilder.append("<-[:").append(RelTypes.INSTANCE_OF).append("]-"); //NOI18N
+            }
             queryBuilder.append("(object:inventoryObjects {_uuid:$objectId})"); //NOI18N
             queryBuilder.append("<-[r:").append(RelTypes.CHILD_OF_SPECIAL).append("]-(").append(CHILD_NODE).append(") "); //NOI18N
-            queryBuilder.append("WHERE NOT EXISTS(r.name) OR (EXISTS (r.name) AND (r.name='").append(Constants.REL_PROPERTY_POOL).append("'))"); //NOI18N
+            queryBuilder.append("WHERE NOT EXISTS(r.name) OR (EXISTS (r.name) AND (r.name=$poolRelationship))"); //NOI18N
             queryBuilder.append(" RETURN ").append(CHILD_NODE).append(" ORDER BY specialInstance.name ASC"); //NOI18N
            
             parameters.put("objectId", objectId); //NOI18N
             parameters.put("objectClass", objectClass); //NOI18N
+            parameters.put("dummyRoot", Constants.NODE_DUMMYROOT); //NOI18N
+            parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> instanceInPoolChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectSpecialChildren", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> instanceInPoolChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                instanceInPoolChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD_NODE)));
+                instanceInPoolChildrenNodes.add((Node) result.next().get(CHILD_NODE));
+            List<BusinessObjectLight> instanceInPoolChildren = ogmService.createObjectLightsFromNodes(instanceInPoolChildrenNodes);
             tx.success();
             return instanceInPoolChildren;
         }
@@ -2567,14 +2654,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryBuilder = new StringBuilder();
             final String CHILD_NODE = "specialInstance"; //NOI18N
             
-             //We create the class names to filter
-            for (int i = 0; i < childrenClassNamesToFilter.size(); i++) 
-                childrenClassNamesToFilter.set(i, "'".concat(childrenClassNamesToFilter.get(i)).concat("'"));
-        
-            String classes = String.join(" ,", childrenClassNamesToFilter);
-                        
             if (objectClass == null || objectClass.equals(Constants.NODE_DUMMYROOT)){
-                queryBuilder.append("MATCH (specialNode:specialNodes {name:'DummyRoot'})"); //NOI18N
+                queryBuilder.append("MATCH (specialNode:specialNodes {name:$dummyRoot})"); //NOI18N
                 queryBuilder.append("<-[:").append(RelTypes.CHILD_OF).append("]-"); //NOI18N
             } else{
                 queryBuilder.append("MATCH (class:classes {name:$objectClass})"); //NOI18N
@@ -2583,8 +2664,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             queryBuilder.append("(object:inventoryObjects {_uuid:$objectId})"); //NOI18N
             queryBuilder.append("<-[r:").append(RelTypes.CHILD_OF_SPECIAL).append("]-(specialInstance)"); //NOI18N
             queryBuilder.append("-[:").append(RelTypes.INSTANCE_OF).append("]->(child_class:classes) "); //NOI18N
-            queryBuilder.append("WHERE child_class.name IN [").append(classes).append("] "); //NOI18N
-            queryBuilder.append("AND (NOT EXISTS(r.name) OR (EXISTS (r.name) AND (r.name='").append(Constants.REL_PROPERTY_POOL).append("')))"); //NOI18N
+            queryBuilder.append("WHERE child_class.name IN $classesToFilter "); //NOI18N
+            queryBuilder.append("AND (NOT EXISTS(r.name) OR (EXISTS (r.name) AND (r.name=$poolRelationship)))"); //NOI18N
             queryBuilder.append(" RETURN ").append(CHILD_NODE).append(" ORDER BY specialInstance.name ASC"); //NOI18N
             
             //pagination
@@ -2599,11 +2680,15 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
 
             parameters.put("objectId", objectId); //NOI18N
             parameters.put("objectClass", objectClass); //NOI18N
+            parameters.put("classesToFilter", childrenClassNamesToFilter); //NOI18N
+            parameters.put("dummyRoot", Constants.NODE_DUMMYROOT); //NOI18N
+            parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> instanceInPoolChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectSpecialChildrenWithFilters", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> instanceInPoolChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                instanceInPoolChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD_NODE)));
+                instanceInPoolChildrenNodes.add((Node) result.next().get(CHILD_NODE));
+            List<BusinessObjectLight> instanceInPoolChildren = ogmService.createObjectLightsFromNodes(instanceInPoolChildrenNodes);
             tx.success();
             return instanceInPoolChildren;
         }
@@ -2620,15 +2705,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryBuilder = new StringBuilder();
             final String COUNT = "count"; //NOI18N
             
-            //We create the class names to filter
-            for (int i = 0; i < childrenClassNamesToFilter.length; i++) 
-                childrenClassNamesToFilter[i] = "'".concat(childrenClassNamesToFilter[i]).concat("'");
-        
-            String classes = String.join(" ,", childrenClassNamesToFilter);
-            
-                        
             if (objectClass == null || objectClass.equals(Constants.NODE_DUMMYROOT)){
-                queryBuilder.append("MATCH (specialNode:specialNodes {name: 'DummyRoot'})"); //NOI18N
+                queryBuilder.append("MATCH (specialNode:specialNodes {name: $dummyRoot})"); //NOI18N
                 queryBuilder.append("<-[:").append(RelTypes.CHILD_OF).append("]-"); //NOI18N
             }                          
             else{
@@ -2639,14 +2717,17 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             queryBuilder.append("(object:inventoryObjects {_uuid:$objectId})"); //NOI18N
             queryBuilder.append("<-[r:").append(RelTypes.CHILD_OF_SPECIAL).append("]-(specialInstance)"); //NOI18N
             queryBuilder.append("-[:").append(RelTypes.INSTANCE_OF).append("]->(child_class:classes) "); //NOI18N
-            queryBuilder.append("WHERE child_class.name IN [").append(classes).append("] "); //NOI18N
-            queryBuilder.append("AND (NOT EXISTS (r.name) OR EXISTS (r.name) AND (r.name='").append(Constants.REL_PROPERTY_POOL).append("'))"); //NOI18N
+            queryBuilder.append("WHERE child_class.name IN $classesToFilter "); //NOI18N
+            queryBuilder.append("AND (NOT EXISTS (r.name) OR EXISTS (r.name) AND (r.name=$poolRelationship))"); //NOI18N
             queryBuilder.append(" RETURN COUNT(specialInstance) AS ").append(COUNT); //NOI18N
                 
             parameters.put("objectId", objectId); //NOI18N
             parameters.put("objectClass", objectClass); //NOI18N
+            parameters.put("classesToFilter", Arrays.asList(childrenClassNamesToFilter)); //NOI18N
+            parameters.put("dummyRoot", Constants.NODE_DUMMYROOT); //NOI18N
+            parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectSpecialChildrenCount", queryBuilder.toString()), parameters); //NOI18N
             while (result.hasNext()){
                 tx.success();
                 return (long) result.next().get(COUNT);
@@ -2686,7 +2767,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryBuilder = new StringBuilder();
             queryBuilder.append("MATCH (class:classes {name: $className})<-[:INSTANCE_OF]-(object:inventoryObjects {_uuid: $objectId})-[:RELATED_TO_SPECIAL {name: $attributeName}]-() "); //NOI18N
             queryBuilder.append("RETURN count(*) > 0 AS hasSpecialAtribute"); //NOI18N
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), params);
+            Result result = executeQuery(CypherQuery.dynamic("bem.hasSpecialAttribute", queryBuilder.toString()), params); //NOI18N
             while (result.hasNext()) {
                 tx.success();
                 return (Boolean) result.next().get("hasSpecialAtribute"); //NOI18N
@@ -2709,7 +2790,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryBuilder = new StringBuilder();
             queryBuilder.append("MATCH (class:classes {name: $className})<-[:INSTANCE_OF]-(object:inventoryObjects {_uuid: $objectId})<-[:CHILD_OF]-() "); //NOI18N
             queryBuilder.append("RETURN count(*) AS children"); //NOI18N
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), params);
+            Result result = executeQuery(CypherQuery.dynamic("bem.countChildren", queryBuilder.toString()), params); //NOI18N
             while (result.hasNext()) {
                 tx.success();
                 return (long) result.next().get("children"); //NOI18N
@@ -2732,7 +2813,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryBuilder = new StringBuilder();
             queryBuilder.append("MATCH (class:classes {name:$className})<-[:INSTANCE_OF]-(object:inventoryObjects {_uuid:$objectId})<-[:CHILD_OF_SPECIAL]-() "); //NOI18N
             queryBuilder.append("RETURN count(*) AS specialChildren"); //NOI18N
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), params);
+            Result result = executeQuery(CypherQuery.dynamic("bem.countSpecialChildren", queryBuilder.toString()), params); //NOI18N
             while (result.hasNext()) {
                 tx.success();
                 return (long) result.next().get("specialChildren"); //NOI18N
@@ -2891,18 +2972,20 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             String cypherQuery;
             if (searchString == null || searchString.trim().isEmpty()) //Return all contacts
-                cypherQuery = "MATCH(n:contacts)  RETURN n AS contact ORDER BY n.name ASC" +
-                        (maxResults > 0 ? (" LIMIT " + maxResults) : ""); //NOI18N
+                cypherQuery = "MATCH(n:contacts)  RETURN n AS contact ORDER BY n.name ASC"; //NOI18N
             else //Search the string in the contact and customer name
                 cypherQuery = "MATCH (n:contacts)<-[r:" + RelTypes.RELATED_TO_SPECIAL + "]-(c) WHERE " +
-                        "TOLOWER(n.name) contains TOLOWER({searchString}) OR TOLOWER(c.name) contains TOLOWER({searchString}) RETURN n AS contact ORDER BY c.name, n.name ASC" +
-                        (maxResults > 0 ? (" LIMIT " + maxResults) : ""); //NOI18N
+                        "TOLOWER(n.name) contains TOLOWER($searchString) OR TOLOWER(c.name) contains TOLOWER($searchString) RETURN n AS contact ORDER BY c.name, n.name ASC"; //NOI18N
             
             List<Contact> res = new ArrayList<>();
             
             HashMap<String, Object> parameters = new HashMap();
             parameters.put("searchString", searchString);  //NOI18N
-            Result rawQueryResult = connectionManager.getConnectionHandler().execute(cypherQuery, parameters);
+            if (maxResults > 0) {
+                cypherQuery += " LIMIT $limit"; //NOI18N
+                parameters.put("limit", maxResults); //NOI18N
+            }
+            Result rawQueryResult = executeQuery(CypherQuery.dynamic("bem.searchForContacts", cypherQuery), parameters); //NOI18N
             ResourceIterator<Node> contactNodes = rawQueryResult.columnAs("contact");
             
             while (contactNodes.hasNext()) {
@@ -2962,10 +3045,14 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                     " WHERE " + contactName + " AND " + contactEmail1 + " AND " + contactEmail2 + " AND " + customer + " AND " + type)
                     + " RETURN contact, customer, type"
                     + " ORDER BY contact.creationDate DESC"
-                    + (page < 1 || limit < 1 ? "" : " SKIP " + page + " LIMIT " + limit);
+                    + (page < 1 || limit < 1 ? "" : " SKIP $skip LIMIT $limit"); //NOI18N
+            if (page >= 1 && limit >= 1) {
+                parameters.put("skip", page); //NOI18N
+                parameters.put("limit", limit); //NOI18N
+            }
             
             List<Contact> contacts = new ArrayList<>();
-            Result result = connectionManager.getConnectionHandler().execute(query, parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getContacts", query), parameters); //NOI18N
             ResourceIterator<Node> contactNodes = result.columnAs("contact");
             
             while (contactNodes.hasNext()) {
@@ -3159,12 +3246,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     @Override   
     public Map<BusinessObjectLight, List<FileObjectLight>> getFilesFromRelatedListTypeItems(String uuid) {
         try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            String cypherQuery = "MATCH (object:" + inventoryObjectLabel + " {" + Constants.PROPERTY_UUID + ":'" + uuid + "'}) -[:" + (RelTypes.RELATED_TO.toString() + "]-> (listTypeItem) - " +
-                                 " [:"+ RelTypes.HAS_ATTACHMENT + "] -> (file), (listTypeItem) - [:INSTANCE_OF]->(modelClass:classes)" +
-                                 " RETURN DISTINCT listTypeItem._uuid as ltiId, listTypeItem.name as ltiName, modelClass.name as modelClassName, modelClass.displayName as modelClassDisplayName, file");    
-                        
             Map<BusinessObjectLight, List<FileObjectLight>> attributeFiles = new HashMap<>();
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(QUERY_GET_FILES_FROM_RELATED_LIST_TYPE_ITEMS, Collections.singletonMap("uuid", uuid)); //NOI18N
                     
             while (result.hasNext()) {
                 Map<String, Object> row = result.next();
@@ -3188,42 +3271,16 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     @Override
     public List<BusinessObjectLightList> findRoutesThroughSpecialRelationships(String objectAClassName, 
             String objectAId, String objectBClassName, String objectBId, String relationshipName) throws InvalidArgumentException {
-        List<BusinessObjectLightList> paths = new ArrayList<>();
-
-        String cypherQuery = String.format("MATCH path = (a)-[:%s*1..30{name:\"%s\"}]-(b) " +
-                            "WHERE a._uuid = '%s' AND b._uuid = '%s' " +
-                            "RETURN nodes(path) as path LIMIT %s", RelTypes.RELATED_TO_SPECIAL, relationshipName, objectAId, objectBId, 
-                                                                    aem.getConfiguration().get("maxRoutes")); //NOI18N
-        try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-           
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
-            Iterator<List<Node>> column = result.columnAs("path");
-            
-            //Filtering the routes with repeated nodes didn't work using a cypher query, so we do it here
-            //at least while we figure out a working cypher query
-            for (List<Node> list : Iterators.asIterable(column)) {
-                BusinessObjectLightList aPath = new BusinessObjectLightList();
-                boolean discardPath = false;
-                for (Node aNode : list) {
-                    BusinessObjectLight aHop = ogmService.createObjectLightFromNode(aNode);
-                    if (aPath.getList().contains(aHop)) {
-                        discardPath = true;
-                        break;
-                    } else
-                        aPath.add(aHop);
-                }
-                if (!discardPath)
-                    paths.add(aPath);
-            }
-        }
-        
-        //We implement the path length sorting here since the cypher query seems to be too expensive (?) if the sort is done there
-        paths.sort((o1, o2) -> {
-            return Integer.compare(o1.getList().size(), o2.getList().size());
-        });
-        
-        return paths;
-        
+        return findRoutesThroughSpecialRelationships(objectAClassName, objectAId, objectBClassName, objectBId, relationshipName, 
+                new RouteConstraints(Integer.valueOf(String.valueOf(aem.getConfiguration().get("maxRoutes"))))); //NOI18N
+    }
+    
+    @Override
+    public List<BusinessObjectLightList> findRoutesThroughSpecialRelationships(String objectAClassName, String objectAId, 
+            String objectBClassName, String objectBId, String relationshipName, RouteConstraints constraints) throws InvalidArgumentException {
+        if (constraints == null)
+            throw new InvalidArgumentException("The route constraints can not be null");
+        return routingEngine.findRoutes(objectAId, objectBId, relationshipName, constraints);
     }
     
     //<editor-fold desc="Warehouse" defaultstate="collapsed">
@@ -3239,11 +3296,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             
             List<BusinessObjectLight> warehouses = new ArrayList();
                                     
-            String cypherQuery = ""
-                + "MATCH (warehouse:inventoryObjects)-[:RELATED_TO_SPECIAL{ name: 'warehouseHas' }]-(child:inventoryObjects)-[:CHILD_OF*]->(parent:inventoryObjects)-[:INSTANCE_OF]->(class:classes{name: '" + objectClassName + "'}) "
-                + "WHERE parent._uuid = '" + objectId + "' RETURN warehouse;";
-            
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(QUERY_GET_WAREHOUSES_IN_OBJECT, getWarehouseParameters(objectClassName, objectId));
             ResourceIterator<Node> warehouseColumn = result.columnAs("warehouse");
             List<Node> lstWarehouseColumn = Iterators.asList(warehouseColumn);
             
@@ -3266,16 +3319,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             if (classNode == null)
                 throw new MetadataObjectNotFoundException(objectClassName);
             
-            getObjectLight(objectClassName, objectId);
+            getInstanceOfClass(objectClassName, objectId);
             
             List<BusinessObjectLight> warehouses = new ArrayList();
                                                 
-            String cypherQuery = ""
-                + "MATCH (class{name:'" + objectClassName + "'})<-[:INSTANCE_OF]-(inventoryObject)-[:CHILD_OF_SPECIAL{name: 'pool'}]->(pool)-[:CHILD_OF_SPECIAL{name: 'pool'}]->(warehouse) "
-                + "WHERE inventoryObject._uuid = '" + objectId + "' "
-                + "RETURN warehouse;";
-            
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(QUERY_GET_WAREHOUSE_TO_OBJECT, getWarehouseParameters(objectClassName, objectId));
             ResourceIterator<Node> warehouseColumn = result.columnAs("warehouse");
             List<Node> lstWarehouseColumn = Iterators.asList(warehouseColumn);
             
@@ -3301,16 +3349,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             if (classNode == null)
                 throw new MetadataObjectNotFoundException(objectClassName);
             
-            getObjectLight(objectClassName, objectId);
+            getInstanceOfClass(objectClassName, objectId);
             
             List<BusinessObjectLight> physicalNodes = new ArrayList();
                                     
-            String cypherQuery = ""
-                + "MATCH (class{name:'" + objectClassName + "'})<-[:INSTANCE_OF]-(inventoryObject)-[:CHILD_OF_SPECIAL{name: 'pool'}]->(pool)-[:CHILD_OF_SPECIAL{name: 'pool'}]->(warehouse)-[:RELATED_TO_SPECIAL{name: 'warehouseHas'}]->(physicalNode) "
-                + "WHERE inventoryObject._uuid = '" + objectId + "' "
-                + "RETURN physicalNode;";
-            
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(QUERY_GET_PHYSICAL_NODE_TO_OBJECT_IN_WAREHOUSE, getWarehouseParameters(objectClassName, objectId));
             ResourceIterator<Node> physicalNodeColumn = result.columnAs("physicalNode");
             List<Node> lstphysicalNodeColumn = Iterators.asList(physicalNodeColumn);
             
@@ -3403,6 +3446,8 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             reportNode.delete();
             
             tx.success();
+            ScriptCache.getInstance().evict(String.format("report:%s", reportId)); //NOI18N
+            ReportExecutor.getInstance().evict(reportId);
             return new ChangeDescriptor("","","", String.format("Deleted report %s", reportName));
         }
     }
@@ -3455,9 +3500,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 newValues += " " + script;
                 
                 reportNode.setProperty(Constants.PROPERTY_SCRIPT, script);
+                ScriptCache.getInstance().evict(String.format("report:%s", reportId)); //NOI18N
             }
 
             tx.success();
+            ReportExecutor.getInstance().evict(reportId);
             return new ChangeDescriptor(affectedProperties.trim(), oldValues.trim(), 
                 newValues.trim(), String.format("Updated Report %s", reportName));
         }
@@ -3512,7 +3559,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             String cypherQuery;
             
             if (recursive)
-                cypherQuery = "MATCH (theClass:classes)-[:EXTENDS*]->(aSuperClass) WHERE (aSuperClass.name = \"" + className + "\" OR theClass.name = \"" + className + "\")" +
+                cypherQuery = "MATCH (theClass:classes)-[:EXTENDS*]->(aSuperClass) WHERE (aSuperClass.name = $className OR theClass.name = $className)" +
                         " WITH Collect(theClass)+Collect(aSuperClass) as res " +
                         " UNWIND res as nodes" +
                         " MATCH (theReport:reports)<-[:HAS_REPORT]-(aClass) WHERE "
@@ -3520,9 +3567,9 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                         " RETURN DISTINCT theReport ORDER BY theReport.name ASC";
             else
                 cypherQuery = "MATCH(theReport:reports)<-[:HAS_REPORT]-(aClass) "
-                    + "WHERE aClass.name=\"" + className + "\"" + (includeDisabled ? "" : " AND theReport.enabled = true") + " RETURN theReport ORDER BY theReport.name ASC ";
+                    + "WHERE aClass.name = $className" + (includeDisabled ? "" : " AND theReport.enabled = true") + " RETURN theReport ORDER BY theReport.name ASC ";
                 
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getClassLevelReports", cypherQuery), Collections.singletonMap("className", className)); //NOI18N
             ResourceIterator<Node> reports = result.columnAs("theReport");
             List<Node> lstReports = Iterators.asList(reports);
 
@@ -3589,86 +3636,137 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
 
     @Override
     public byte[] executeClassLevelReport(String objectClassName, String objectId, long reportId) throws MetadataObjectNotFoundException, ApplicationObjectNotFoundException, BusinessObjectNotFoundException, InvalidArgumentException {
+        return readReportResult(submitClassLevelReport(objectClassName, objectId, reportId));
+    }
+
+    @Override
+    public byte[] executeInventoryLevelReport(long reportId, List<StringPair> parameters) throws ApplicationObjectNotFoundException, InvalidArgumentException {
+        return readReportResult(submitInventoryLevelReport(reportId, parameters));
+    }
+    
+    /**
+     * {@inheritDoc} The result is written to a temporary file as the report is generated, instead of being kept in memory.
+     */
+    @Override
+    public ReportJob submitClassLevelReport(String objectClassName, String objectId, long reportId) 
+            throws MetadataObjectNotFoundException, ApplicationObjectNotFoundException, BusinessObjectNotFoundException, InvalidArgumentException {
+        Node instanceNode;
+        String script;
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            
             Node reportNode = Util.findNodeByLabelAndId(connectionManager.getConnectionHandler(), reportsLabel, reportId);
             
             if (reportNode == null)
                 throw new ApplicationObjectNotFoundException(String.format("The report with id %s could not be found", reportId)); 
             
-            Node instanceNode = getInstanceOfClass(objectClassName, objectId);
-            
-            String script = (String)reportNode.getProperty(Constants.PROPERTY_SCRIPT);
-            
-            Binding environmentParameters = new Binding();
-            environmentParameters.setVariable("instanceNode", instanceNode); //NOI18N
-            environmentParameters.setVariable("connectionHandler", connectionManager.getConnectionHandler()); //NOI18N
-            environmentParameters.setVariable("mem", mem); //NOI18N
-            environmentParameters.setVariable("aem", aem); //NOI18N
-            environmentParameters.setVariable("bem", this); //NOI18N
-            
-            //To keep backwards compatibility
-            environmentParameters.setVariable("objectClassName", objectClassName); //NOI18N
-            environmentParameters.setVariable("objectId", objectId); //NOI18N
-            
-            try {
-                GroovyShell shell = new GroovyShell(BusinessEntityManager.class.getClassLoader(), environmentParameters);
-                Object theResult = shell.evaluate(script);
-                
+            instanceNode = getInstanceOfClass(objectClassName, objectId);
+            script = (String)reportNode.getProperty(Constants.PROPERTY_SCRIPT);
+        }
+        
+        return submitReport(reportId, objectClassName + "/" + objectId, out -> { //NOI18N
+            try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+                Binding environmentParameters = new Binding();
+                environmentParameters.setVariable("instanceNode", instanceNode); //NOI18N
+                environmentParameters.setVariable("connectionHandler", connectionManager.getConnectionHandler()); //NOI18N
+                environmentParameters.setVariable("mem", mem); //NOI18N
+                environmentParameters.setVariable("aem", aem); //NOI18N
+                environmentParameters.setVariable("bem", this); //NOI18N
+
+                //To keep backwards compatibility
+                environmentParameters.setVariable("objectClassName", objectClassName); //NOI18N
+                environmentParameters.setVariable("objectId", objectId); //NOI18N
+
+                Object theResult = ScriptCache.getInstance().run(String.format("report:%s", reportId), script, //NOI18N
+                        BusinessEntityManager.class.getClassLoader(), environmentParameters);
+
                 if (theResult == null)
                     throw new InvalidArgumentException("The script returned a null object. Please check the syntax.");
                 else {
                     if (theResult instanceof InventoryReport)
-                        return ((InventoryReport)theResult).asByteArray();
+                        ((InventoryReport)theResult).writeTo(out);
                     else
                         throw new InvalidArgumentException("The script does not return an InventoryReport object. Please check the return value.");
                 }
-            } catch(Exception ex) {
-                return ("<html><head><title>Error</title></head><body><center>" + ex.getMessage() + "</center></body></html>").getBytes(StandardCharsets.UTF_8);
             }
-        }
+        });
     }
-
+    
+    /**
+     * {@inheritDoc} The result is written to a temporary file as the report is generated, instead of being kept in memory.
+     */
     @Override
-    public byte[] executeInventoryLevelReport(long reportId, List<StringPair> parameters) throws ApplicationObjectNotFoundException, InvalidArgumentException {
+    public ReportJob submitInventoryLevelReport(long reportId, List<StringPair> parameters) 
+            throws ApplicationObjectNotFoundException, InvalidArgumentException {
+        String script;
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            
             Node reportNode = Util.findNodeByLabelAndId(connectionManager.getConnectionHandler(), reportsLabel, reportId);
             
             if (reportNode == null)
                 throw new ApplicationObjectNotFoundException(String.format("Report with id %s could not be found", reportId)); 
                      
-            String script = (String)reportNode.getProperty(Constants.PROPERTY_SCRIPT);
-            
-            HashMap<String, String> scriptParameters = new HashMap<>();
-            for(StringPair parameter : parameters)
-                scriptParameters.put(parameter.getKey(), parameter.getValue());
-            
-            Binding environmentParameters = new Binding();
-            environmentParameters.setVariable("parameters", scriptParameters); //NOI18N
-            environmentParameters.setVariable("connectionHandler", connectionManager.getConnectionHandler()); //NOI18N
-            environmentParameters.setVariable("inventoryObjectLabel", inventoryObjectLabel); //NOI18N
-            environmentParameters.setVariable("classLabel", classLabel); //NOI18N
-            environmentParameters.setVariable("mem", mem); //NOI18N
-            environmentParameters.setVariable("aem", aem); //NOI18N
-            environmentParameters.setVariable("bem", this); //NOI18N
-            
-            try {
-                GroovyShell shell = new GroovyShell(BusinessEntityManager.class.getClassLoader(), environmentParameters);
-                Object theResult = shell.evaluate(script);
-                
+            script = (String)reportNode.getProperty(Constants.PROPERTY_SCRIPT);
+        }
+        
+        HashMap<String, String> scriptParameters = new HashMap<>();
+        for(StringPair parameter : parameters)
+            scriptParameters.put(parameter.getKey(), parameter.getValue());
+        // The parameters are sorted, so the same parameters in a different order are cached as one
+        String cacheKey = scriptParameters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(Comparator.nullsFirst(Comparator.naturalOrder())))
+                .map(parameter -> parameter.getKey() + "=" + parameter.getValue()) //NOI18N
+                .collect(Collectors.joining("&")); //NOI18N
+        
+        return submitReport(reportId, cacheKey, out -> {
+            try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
+                Binding environmentParameters = new Binding();
+                environmentParameters.setVariable("parameters", scriptParameters); //NOI18N
+                environmentParameters.setVariable("connectionHandler", connectionManager.getConnectionHandler()); //NOI18N
+                environmentParameters.setVariable("inventoryObjectLabel", inventoryObjectLabel); //NOI18N
+                environmentParameters.setVariable("classLabel", classLabel); //NOI18N
+                environmentParameters.setVariable("mem", mem); //NOI18N
+                environmentParameters.setVariable("aem", aem); //NOI18N
+                environmentParameters.setVariable("bem", this); //NOI18N
+
+                Object theResult = ScriptCache.getInstance().run(String.format("report:%s", reportId), script, //NOI18N
+                        BusinessEntityManager.class.getClassLoader(), environmentParameters);
+
                 if (theResult == null)
                     throw new InvalidArgumentException("The script returned a null object. Please check the syntax.");
                 else {
                     if (theResult instanceof InventoryReport) {
+                        ((InventoryReport)theResult).writeTo(out);
                         tx.success();
-                        return ((InventoryReport)theResult).asByteArray();
                     } else
                         throw new InvalidArgumentException("The script does not return an InventoryReport instance. Please check the return value.");
                 }
-            } catch(Exception ex) {
-                return ("<html><head><title>Error</title></head><body><center>" + ex.getMessage() + "</center></body></html>").getBytes(StandardCharsets.UTF_8);
             }
+        });
+    }
+    
+    /**
+     * Finds a report job submitted previously
+     * @param jobId The job id
+     * @return The job, or null if it doesn't exist or its result has been discarded already
+     */
+    public ReportJob getReportJob(String jobId) {
+        return ReportExecutor.getInstance().getJob(jobId);
+    }
+    
+    private ReportJob submitReport(long reportId, String parameters, ReportExecutor.ReportTask task) throws InvalidArgumentException {
+        try {
+            return ReportExecutor.getInstance().submit(reportId, parameters, task);
+        } catch (RejectedExecutionException ex) {
+            throw new InvalidArgumentException(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Waits for a report to finish and reads its result. If the report failed, the result is a page with the error message
+     */
+    private byte[] readReportResult(ReportJob job) {
+        try {
+            return job.asByteArray();
+        } catch (IOException ex) {
+            return ReportResult.getErrorPage(ex.getMessage());
         }
     }
     //</editor-fold>
@@ -3756,7 +3854,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             parameters.put("className", poolClassName); //NOI18N
             parameters.put("classN", poolClassName); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getPoolsInPool", queryBuilder.toString()), parameters); //NOI18N
             List<InventoryObjectPool> pools = new ArrayList();
             while (result.hasNext())
                 pools.add(Util.createPoolFromNode((Node) result.next().get(CHILD_NODE), ts));
@@ -3790,7 +3888,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             parameters.put("className", poolClassName); //NOI18N
             parameters.put("classN", poolClassName); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getPoolsInPoolCount", queryBuilder.toString()), parameters); //NOI18N
             
             while (result.hasNext()){
                 f = (long) result.next().get(COUNT);
@@ -3841,7 +3939,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             queryBuilder.append("MATCH (pool:pools {_uuid:$_uuid})"); //NOI18N
             queryBuilder.append("<-[r:").append(RelTypes.CHILD_OF_SPECIAL).append("]-"); //NOI18N
             queryBuilder.append("(childNode)\n"); //NOI18N
-            queryBuilder.append("WHERE EXISTS(r.name) AND r.name='").append(Constants.REL_PROPERTY_POOL).append("' "); //NOI18N
+            queryBuilder.append("WHERE EXISTS(r.name) AND r.name=$poolRelationship "); //NOI18N
             queryBuilder.append("AND NOT childNode:").append(poolLabel).append(" "); //NOI18N
             
             queryBuilder.append(String.format("RETURN childNode AS %s ORDER BY childNode.name ASC \n", CHILD_NODE)); //NOI18N
@@ -3850,11 +3948,13 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append(" LIMIT $limit"); //NOI18N
             }
             parameters.put("_uuid", poolId); //NOI18N
+            parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> objectChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getPoolItems", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> objectChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                objectChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD_NODE)));
+                objectChildrenNodes.add((Node) result.next().get(CHILD_NODE));
+            List<BusinessObjectLight> objectChildren = ogmService.createObjectLightsFromNodes(objectChildrenNodes);
             tx.success();
             return objectChildren;
         }
@@ -3880,7 +3980,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append("-[:INSTANCE_OF]->(c:").append(classLabel).append(" {name:$className}) "); //NOI18N
                 parameters.put("className", className);
             }
-            queryBuilder.append("WHERE EXISTS(r.name) AND r.name='").append(Constants.REL_PROPERTY_POOL).append("' "); //NOI18N
+            queryBuilder.append("WHERE EXISTS(r.name) AND r.name=$poolRelationship "); //NOI18N
             queryBuilder.append("AND NOT childNode:").append(poolLabel).append(" "); //NOI18N
             
             queryBuilder.append(String.format("RETURN childNode AS %s ORDER BY childNode.name ASC \n", CHILD_NODE)); //NOI18N
@@ -3894,11 +3994,13 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append(" LIMIT $limit"); //NOI18N
             }
             parameters.put("_uuid", poolId); //NOI18N
+            parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> objectChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getPoolItemsByClassName", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> objectChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                objectChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD_NODE)));
+                objectChildrenNodes.add((Node) result.next().get(CHILD_NODE));
+            List<BusinessObjectLight> objectChildren = ogmService.createObjectLightsFromNodes(objectChildrenNodes);
             tx.success();
             return objectChildren;
         }
@@ -3923,13 +4025,14 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append("-[:INSTANCE_OF]->(c:").append(classLabel).append(" {name:$className}) "); //NOI18N
                 parameters.put("className", className);
             }
-            queryBuilder.append("WHERE EXISTS(r.name) AND r.name='").append(Constants.REL_PROPERTY_POOL).append("' "); //NOI18N
+            queryBuilder.append("WHERE EXISTS(r.name) AND r.name=$poolRelationship "); //NOI18N
             queryBuilder.append("AND NOT childNode:").append(poolLabel).append(" "); //NOI18N
             queryBuilder.append("RETURN COUNT(childNode) AS ").append(COUNT); //NOI18N
             
             parameters.put("_uuid", poolId); //NOI18N
+            parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
             
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getPoolItemsCount", queryBuilder.toString()), parameters); //NOI18N
             while (result.hasNext())
                  return (long) result.next().get(COUNT);
             tx.success();
@@ -3939,9 +4042,63 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
     //</editor-fold>
     
     //<editor-fold desc="Helpers" defaultstate="collapsed">
+    /**
+     * Runs a Cypher query and times it. Callers must handle associated transactions
+     * @param query The query
+     * @param parameters The query parameters
+     * @return The result of the query
+     */
+    private Result executeQuery(CypherQuery query, Map<String, Object> parameters) {
+        return cypherQueryExecutor.execute(query, parameters);
+    }
+    
+    /**
+     * Adds a case insensitive <code>CONTAINS</code> condition per attribute to a query. The values are passed as parameters,
+     * and the attribute names are escaped, since they can't be parameters.
+     * @param queryFilterBuilder The builder of the <code>WHERE</code> clause. The conditions are appended with <code>AND</code>
+     * @param variable The variable of the filtered objects in the query
+     * @param filters The attributes and values to filter by. The null values are ignored
+     * @param parameters The query parameters, where the values are added
+     */
+    private static void appendAttributeFilters(StringBuilder queryFilterBuilder, String variable, 
+            Map<String, String> filters, Map<String, Object> parameters) {
+        int i = 0;
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            if (filter.getValue() != null) {
+                String parameter = "filter" + i++; //NOI18N
+                parameters.put(parameter, filter.getValue());
+                queryFilterBuilder.append(String.format("AND TOLOWER(%s.`%s`) CONTAINS TOLOWER($%s) ", //NOI18N
+                        variable, filter.getKey().replace("`", "``"), parameter)); //NOI18N
+            }
+        }
+    }
+    
+    /**
+     * The parameters of {@link #QUERY_GET_OBJECTS_WITH_FILTER}
+     */
+    private static Map<String, Object> getFilterParameters(String className, String filterName, String filterValue) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("className", className); //NOI18N
+        parameters.put("filterName", filterName); //NOI18N
+        parameters.put("filterValue", filterValue); //NOI18N
+        return parameters;
+    }
+    
+    /**
+     * The parameters of the warehouse queries
+     */
+    private static Map<String, Object> getWarehouseParameters(String objectClassName, String objectId) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("className", objectClassName); //NOI18N
+        parameters.put("objectId", objectId); //NOI18N
+        parameters.put("poolRelationship", Constants.REL_PROPERTY_POOL); //NOI18N
+        parameters.put("warehouseRelationship", "warehouseHas"); //NOI18N
+        return parameters;
+    }
+
     /**
      * Boiler-plate code. Gets a particular instance given the class name and the oid. Callers must handle associated transactions
-     * @param className object class name
+     * @param className object class name. If null or DummyRoot, the object must be a direct child of the navigation tree root
      * @param oid object id
      * @return a Node representing the entity
      * @throws MetadataObjectNotFoundException id the class could not be found
@@ -3956,20 +4113,22 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             throw ex;
         }
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            HashMap<String, Object> params = new HashMap<>();
-            params.put("className", className); //NOI18N
-            params.put("objectId", oid); //NOI18N
-            StringBuilder queryBuilder = new StringBuilder();
+            Node instance;
             if (className == null || className.equals(Constants.NODE_DUMMYROOT))
-                queryBuilder.append("MATCH (specialNode:specialNodes {name: 'DummyRoot'})<-[:CHILD_OF]-(object:inventoryObjects {_uuid: $objectId}) RETURN object"); //NOI18N
-            queryBuilder.append("MATCH (class:classes {name: $className})<-[:INSTANCE_OF]-(object:inventoryObjects{_uuid: $objectId}) RETURN object"); //NOI18N
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), params);
-            while (result.hasNext()) {
-                tx.success();
-                return (Node) result.next().get("object"); //NOI18N
-            }
+                instance = findObjectNode(oid, anObject -> {
+                    Relationship childOf = anObject.getSingleRelationship(RelTypes.CHILD_OF, Direction.OUTGOING);
+                    return childOf != null && childOf.getEndNode().hasLabel(specialNodeLabel) && 
+                            Constants.NODE_DUMMYROOT.equals(childOf.getEndNode().getProperty(Constants.PROPERTY_NAME, null));
+                });
+            else
+                instance = findObjectNode(oid, anObject -> {
+                    Node aClass = getClassNode(anObject);
+                    return aClass != null && className.equals(aClass.getProperty(Constants.PROPERTY_NAME, null));
+                });
             tx.success();
-            throw new BusinessObjectNotFoundException(className, oid);
+            if (instance == null)
+                throw new BusinessObjectNotFoundException(className, oid);
+            return instance;
         }
     }
     /**
@@ -3986,35 +4145,183 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         if (classId == -1)
             return connectionManager.getConnectionHandler().findNode(specialNodeLabel, Constants.PROPERTY_NAME, Constants.NODE_DUMMYROOT);
         
+        Node instance = oid == null ? null : findObjectNode(oid, anObject -> {
+            Node aClass = getClassNode(anObject);
+            return aClass != null && aClass.getId() == classId;
+        });
+        if (instance != null)
+            return instance;
+        
         Node classNode = Util.findNodeByLabelAndId(connectionManager.getConnectionHandler(), classLabel, classId);
         
         if (classNode == null)
             throw new MetadataObjectNotFoundException(String.format("Class with id %s could not be found", classId));
-
-        Iterable<Relationship> iteratorInstances = classNode.getRelationships(RelTypes.INSTANCE_OF);
-        Iterator<Relationship> instances = iteratorInstances.iterator();
-        while (instances.hasNext()) {
-            Node otherSide = instances.next().getStartNode();
-            
-            String otherSideUuid = otherSide.hasProperty(Constants.PROPERTY_UUID) ? (String) otherSide.getProperty(Constants.PROPERTY_UUID) : null;
-            if (otherSideUuid != null && otherSideUuid.equals(oid))
-                return otherSide;
-        }
+        
         throw new BusinessObjectNotFoundException((String)classNode.getProperty(Constants.PROPERTY_NAME), oid);
     }
 
     public Node getInstanceOfClass(Node classNode, String oid) throws BusinessObjectNotFoundException{
-        Iterable<Relationship> iterableInstances = classNode.getRelationships(RelTypes.INSTANCE_OF);
-        Iterator<Relationship> instances = iterableInstances.iterator();
+        Node instance = oid == null ? null : findObjectNode(oid, anObject -> classNode.equals(getClassNode(anObject)));
+        if (instance == null)
+            throw new BusinessObjectNotFoundException((String)classNode.getProperty(Constants.PROPERTY_NAME), oid);
+        return instance;
+    }
+    
+    /**
+     * Gets a set of instances of a given class in one go. See {@link #getInstancesOfClass(org.neo4j.graphdb.Node, java.util.Collection)}
+     * @param className The class of the objects
+     * @param oids The object ids
+     * @return The nodes, in the same order as the ids
+     * @throws MetadataObjectNotFoundException If the class could not be found
+     * @throws BusinessObjectNotFoundException If any of the objects could not be found or is not an instance of the class
+     * @throws InvalidArgumentException If any of the ids is null
+     */
+    public List<Node> getInstancesOfClass(String className, Collection<String> oids) 
+            throws MetadataObjectNotFoundException, BusinessObjectNotFoundException, InvalidArgumentException {
+        Node classNode = connectionManager.getConnectionHandler().findNode(classLabel, Constants.PROPERTY_NAME, className);
+        if (classNode == null)
+            throw new MetadataObjectNotFoundException(String.format("Class %s could not be found", className));
+        return getInstancesOfClass(classNode, oids);
+    }
+    
+    /**
+     * Gets a set of instances of a given class in one go. The objects whose node id is not cached are looked up 
+     * with a single query. Callers must handle associated transactions
+     * @param classNode The class of the objects. The objects must be instances of this very class, not of a subclass
+     * @param oids The object ids
+     * @return The nodes, in the same order as the ids
+     * @throws BusinessObjectNotFoundException If any of the objects could not be found or is not an instance of the class
+     * @throws InvalidArgumentException If any of the ids is null
+     */
+    public List<Node> getInstancesOfClass(Node classNode, Collection<String> oids) throws BusinessObjectNotFoundException, InvalidArgumentException {
+        HashMap<String, Node> instances = new HashMap<>();
+        List<String> pendingOids = new ArrayList<>();
+        for (String oid : oids) {
+            if (oid == null) {
+                InvalidArgumentException ex = new InvalidArgumentException(ts.getTranslatedString(KEY_PREFIX + ".32"));
+                ex.setPrefix(KEY_PREFIX);
+                ex.setCode(32);
+                throw ex;
+            }
+            Node instance = getCachedObjectNode(oid);
+            if (instance != null && classNode.equals(getClassNode(instance)))
+                instances.put(oid, instance);
+            else
+                pendingOids.add(oid);
+        }
         
-        while (instances.hasNext()) {
-            Node otherSide = instances.next().getStartNode();
-            
-            String otherSideUuid = otherSide.hasProperty(Constants.PROPERTY_UUID) ? (String) otherSide.getProperty(Constants.PROPERTY_UUID) : null;
-            if (otherSideUuid != null && otherSideUuid.equals(oid))
-                return otherSide;
+        if (!pendingOids.isEmpty()) {
+            HashMap<String, Object> parameters = new HashMap<>();
+            parameters.put("classId", classNode.getId()); //NOI18N
+            parameters.put("objectIds", pendingOids); //NOI18N
+            try (Result result = executeQuery(QUERY_GET_INSTANCES_OF_CLASS_BY_ID, parameters)) {
+                while (result.hasNext()) {
+                    Map<String, Object> row = result.next();
+                    Node instance = (Node) row.get("object"); //NOI18N
+                    instances.put((String) row.get("objectId"), instance); //NOI18N
+                    CacheManager.getInstance().putObjectNodeId((String) row.get("objectId"), instance.getId()); //NOI18N
+                }
+            }
         }
-        throw new BusinessObjectNotFoundException((String)classNode.getProperty(Constants.PROPERTY_NAME), oid);
+        
+        List<Node> res = new ArrayList<>();
+        for (String oid : oids) {
+            Node instance = instances.get(oid);
+            if (instance == null)
+                throw new BusinessObjectNotFoundException((String) classNode.getProperty(Constants.PROPERTY_NAME), oid);
+            res.add(instance);
+        }
+        return res;
+    }
+    
+    /**
+     * Finds an inventory object by its id using the node id cache or, if it's not cached, the uuid index. 
+     * Callers must handle associated transactions
+     * @param oid The object id
+     * @param classCheck Tells if the node found is an instance of the right class
+     * @return The object node, or null if there's no object with that id that passes the class check
+     */
+    private Node findObjectNode(String oid, Predicate<Node> classCheck) {
+        Node instance = getCachedObjectNode(oid);
+        if (instance != null)
+            return classCheck.test(instance) ? instance : null;
+        
+        // There should be only one, but the uniqueness constraint could not be created if the database has duplicates
+        try (ResourceIterator<Node> candidates = connectionManager.getConnectionHandler().findNodes(inventoryObjectLabel, Constants.PROPERTY_UUID, oid)) {
+            while (candidates.hasNext()) {
+                Node candidate = candidates.next();
+                if (classCheck.test(candidate)) {
+                    CacheManager.getInstance().putObjectNodeId(oid, candidate.getId());
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Gets the node of an inventory object whose node id is cached, if it's still there
+     * @param oid The object id
+     * @return The object node, or null if the id is not cached or the node is no longer the object
+     */
+    private Node getCachedObjectNode(String oid) {
+        Long nodeId = CacheManager.getInstance().getObjectNodeId(oid);
+        if (nodeId == null)
+            return null;
+        
+        try {
+            // The ids of deleted nodes are reused, so make sure it's still the same object
+            Node candidate = connectionManager.getConnectionHandler().getNodeById(nodeId);
+            if (candidate.hasLabel(inventoryObjectLabel) && oid.equals(candidate.getProperty(Constants.PROPERTY_UUID, null)))
+                return candidate;
+        } catch (NotFoundException ex) { } // Deleted
+        
+        CacheManager.getInstance().removeObjectNodeIds(oid);
+        return null;
+    }
+    
+    /**
+     * Gets the ancestors of an object, the parent first. They're taken from the ancestor index, unless one of them 
+     * has more than one parent, in which case they're all looked up with a query. Callers must handle associated transactions
+     * @param objectNode The object node
+     * @param oid The object id
+     * @return The ancestor nodes
+     */
+    private List<Node> getAncestorNodes(Node objectNode, String oid) {
+        List<Node> ancestors = ancestorIndex.getAncestors(objectNode);
+        if (ancestors != null)
+            return ancestors;
+        
+        ancestors = new ArrayList<>();
+        try (Result result = executeQuery(QUERY_GET_PARENTS, Collections.singletonMap("oid", oid))) { //NOI18N
+            Iterator<Node> column = result.columnAs("parents"); //NOI18N
+            for (Node node : Iterators.asIterable(column))
+                ancestors.add(node);
+        }
+        return ancestors;
+    }
+    
+    /**
+     * Maps an ancestor of an object, that may be an inventory object, a pool or the navigation tree root
+     * @param node The ancestor node
+     * @return The ancestor
+     */
+    private BusinessObjectLight createParentFromNode(Node node) {
+        if (Constants.NODE_DUMMYROOT.equals(node.getProperty(Constants.PROPERTY_NAME, null)))
+            return new BusinessObjectLight(Constants.NODE_DUMMYROOT, "-1", Constants.NODE_DUMMYROOT, "Navigation Tree Root");
+        if (node.hasRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING))
+            return ogmService.createObjectLightFromNode(node);
+        return Util.createRemoteObjectLightFromPoolNode(node); //the node is a pool
+    }
+    
+    /**
+     * Gets the class node of an inventory object
+     * @param instance The object node
+     * @return The class node, or null if the object is not related to any class
+     */
+    private Node getClassNode(Node instance) {
+        Relationship instanceOf = instance.getSingleRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING);
+        return instanceOf == null ? null : instanceOf.getEndNode();
     }
     
     public Node createObject(Node classNode, ClassMetadata classToMap, HashMap<String,String> attributes) 
@@ -4216,6 +4523,125 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         return newInstance;
     }
     
+    /**
+     * Reads a template and its children into memory, so it can be spawned many times without traversing 
+     * the template again (see {@link #spawnTemplateElement(org.neotropic.kuwaiba.core.persistence.reference.neo4j.BusinessEntityManagerImpl.TemplateElement)}). 
+     * The transaction should be handled by the caller
+     * @param templateId The id of the template
+     * @param className The class of the objects to be created from the template, used only in the error messages
+     * @return The expanded template
+     * @throws ApplicationObjectNotFoundException If the template can not be found
+     * @throws InvalidArgumentException If the template is malformed or a mandatory attribute is empty
+     */
+    private TemplateElement expandTemplate(String templateId, String className) throws ApplicationObjectNotFoundException, InvalidArgumentException {
+        Node templateNode = connectionManager.getConnectionHandler().findNode(templateLabel, Constants.PROPERTY_UUID, templateId);
+        if (templateNode == null)
+            throw new ApplicationObjectNotFoundException(String.format("No template with id %s was found for class %s", templateId, className));
+        if (!templateNode.hasRelationship(Direction.INCOMING, RelTypes.HAS_TEMPLATE))
+            throw new InvalidArgumentException(String.format("The template with id %s is malformed", templateId));
+        
+        TemplateElement template = expandTemplateElement(templateNode, new HashMap<>());
+        template.className = (String) templateNode.getSingleRelationship(RelTypes.HAS_TEMPLATE, Direction.INCOMING).getStartNode().getProperty(Constants.PROPERTY_NAME);
+        return template;
+    }
+    
+    /**
+     * Reads [recursively] a template element into memory. The checks done by 
+     * {@link #copyTemplateElement(org.neo4j.graphdb.Node, org.neotropic.kuwaiba.core.apis.persistence.metadata.ClassMetadata, boolean)} 
+     * are performed here, once per template element
+     * @param templateObject The template element
+     * @param classes The metadata of the classes found so far, indexed by class node id
+     * @return The template element and its children
+     * @throws InvalidArgumentException If a mandatory attribute is empty
+     */
+    private TemplateElement expandTemplateElement(Node templateObject, HashMap<Long, ClassMetadata> classes) throws InvalidArgumentException {
+        Node classNode = templateObject.getRelationships(RelTypes.INSTANCE_OF_SPECIAL).iterator().next().getEndNode();
+        ClassMetadata classToMap = classes.get(classNode.getId());
+        if (classToMap == null) {
+            classToMap = Util.createClassMetadataFromNode(classNode);
+            classes.put(classNode.getId(), classToMap);
+        }
+        TemplateElement element = new TemplateElement(classNode);
+        
+        for (String property : templateObject.getPropertyKeys()) {
+            if (!property.equals(Constants.PROPERTY_UUID)) {
+                if (classToMap.isMandatory(property) && ((String)templateObject.getProperty(property)).isEmpty()) {
+                    InvalidArgumentException ex = new InvalidArgumentException(String.format(ts.getTranslatedString(KEY_PREFIX + ".33"), property));
+                    ex.setPrefix(KEY_PREFIX);
+                    ex.setCode(33);
+                    ex.setMessageArgs(property);
+                    throw ex;
+                }
+                element.properties.put(property, templateObject.getProperty(property));
+            }
+        }
+        
+        for (Relationship rel : templateObject.getRelationships(RelTypes.RELATED_TO, Direction.OUTGOING)) {
+            element.listTypeItems.add(rel.getEndNode());
+            element.listTypeAttributes.add(rel.getProperty(Constants.PROPERTY_NAME));
+        }
+        
+        HashMap<Node, Integer> childIndexes = new HashMap<>();
+        for (Relationship rel : templateObject.getRelationships(RelTypes.CHILD_OF, Direction.INCOMING)) {
+            childIndexes.put(rel.getStartNode(), element.children.size());
+            element.children.add(expandTemplateElement(rel.getStartNode(), classes));
+        }
+        for (Relationship rel : templateObject.getRelationships(RelTypes.CHILD_OF_SPECIAL, Direction.INCOMING))
+            element.specialChildren.add(expandTemplateElement(rel.getStartNode(), classes));
+        
+        // The special relationships between children (e.g. mirror ports) are recreated among the copies
+        for (Map.Entry<Node, Integer> entry : childIndexes.entrySet()) {
+            for (Relationship rel : entry.getKey().getRelationships(RelTypes.RELATED_TO_SPECIAL, Direction.OUTGOING)) {
+                Integer endIndex = childIndexes.get(rel.getEndNode());
+                if (endIndex != null) {
+                    element.childRelationships.add(new int[] { entry.getValue(), endIndex });
+                    element.childRelationshipNames.add(rel.hasProperty(Constants.PROPERTY_NAME) ? rel.getProperty(Constants.PROPERTY_NAME) : null);
+                }
+            }
+        }
+        
+        for (TemplateElement child : element.children)
+            element.size += child.size;
+        for (TemplateElement child : element.specialChildren)
+            element.size += child.size;
+        return element;
+    }
+    
+    /**
+     * Spawns [recursively] an inventory object from a template element previously read into memory. The transaction should be handled by the caller
+     * @param element The template element
+     * @return The root copied object
+     */
+    private Node spawnTemplateElement(TemplateElement element) {
+        Node newInstance = connectionManager.getConnectionHandler().createNode(inventoryObjectLabel);
+        for (Map.Entry<String, Object> property : element.properties.entrySet())
+            newInstance.setProperty(property.getKey(), property.getValue());
+        
+        for (int i = 0; i < element.listTypeItems.size(); i++)
+            newInstance.createRelationshipTo(element.listTypeItems.get(i), RelTypes.RELATED_TO).setProperty(Constants.PROPERTY_NAME, element.listTypeAttributes.get(i));
+        
+        newInstance.setProperty(Constants.PROPERTY_CREATION_DATE, Calendar.getInstance().getTimeInMillis());
+        newInstance.createRelationshipTo(element.classNode, RelTypes.INSTANCE_OF);
+        
+        Node[] newChildren = new Node[element.children.size()];
+        for (int i = 0; i < newChildren.length; i++) {
+            newChildren[i] = spawnTemplateElement(element.children.get(i));
+            newChildren[i].createRelationshipTo(newInstance, RelTypes.CHILD_OF);
+        }
+        for (TemplateElement specialChild : element.specialChildren)
+            spawnTemplateElement(specialChild).createRelationshipTo(newInstance, RelTypes.CHILD_OF_SPECIAL);
+        
+        for (int i = 0; i < element.childRelationships.size(); i++) {
+            int[] ends = element.childRelationships.get(i);
+            Relationship relCreated = newChildren[ends[0]].createRelationshipTo(newChildren[ends[1]], RelTypes.RELATED_TO_SPECIAL);
+            if (element.childRelationshipNames.get(i) != null)
+                relCreated.setProperty(Constants.PROPERTY_NAME, element.childRelationshipNames.get(i));
+        }
+        
+        newInstance.setProperty(Constants.PROPERTY_UUID, UUID.randomUUID().toString());
+        return newInstance;
+    }
+    
     @Override
     public boolean canDeleteObject(String className, String oid) throws BusinessObjectNotFoundException, MetadataObjectNotFoundException, OperationNotPermittedException, InvalidArgumentException {
         if (!mem.isSubclassOf(Constants.CLASS_INVENTORYOBJECT, className))
@@ -4253,6 +4679,61 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         }
     }
     
+    /**
+     * An object scheduled for deletion and the cached values that have to be released once it's deleted
+     */
+    private static class ObjectToDelete {
+        private final long nodeId;
+        private final String className;
+        private final String oid;
+        /**
+         * The values of the unique attributes of the object, indexed by attribute name
+         */
+        private final HashMap<String, Object> uniqueValues;
+
+        private ObjectToDelete(long nodeId, String className, String oid, HashMap<String, Object> uniqueValues) {
+            this.nodeId = nodeId;
+            this.className = className;
+            this.oid = oid;
+            this.uniqueValues = uniqueValues;
+        }
+    }
+    
+    /**
+     * A template element read into memory, so it can be spawned many times without traversing the template
+     */
+    private static class TemplateElement {
+        /**
+         * The class of the template, only set in the root element
+         */
+        private String className;
+        private final Node classNode;
+        /**
+         * The properties copied to the new objects
+         */
+        private final HashMap<String, Object> properties = new HashMap<>();
+        /**
+         * The list type items the element is related to, and the name of the attribute of each relationship
+         */
+        private final List<Node> listTypeItems = new ArrayList<>();
+        private final List<Object> listTypeAttributes = new ArrayList<>();
+        private final List<TemplateElement> children = new ArrayList<>();
+        private final List<TemplateElement> specialChildren = new ArrayList<>();
+        /**
+         * The special relationships between children, as pairs of indexes in the children list, and the name of each relationship
+         */
+        private final List<int[]> childRelationships = new ArrayList<>();
+        private final List<Object> childRelationshipNames = new ArrayList<>();
+        /**
+         * The number of nodes created every time the element is spawned
+         */
+        private int size = 1;
+
+        private TemplateElement(Node classNode) {
+            this.classNode = classNode;
+        }
+    }
+    
     //</editor-fold>
     /**
      * Deletes recursively and object and all its children. Note that the transaction should be handled by the caller
@@ -4340,22 +4821,15 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             StringBuilder queryFilterBuilder = new StringBuilder();
             final String COUNT = "count"; //NOI18N
 
-            if(filters != null){
-                filters.entrySet().forEach(entry -> {
-                    String key = (String)entry.getKey();
-                    String val = (String)entry.getValue();
-                    if (val != null) {
-                        parameters.put(key, val);
-                        queryFilterBuilder.append(String.format("AND TOLOWER(instance.%s) CONTAINS TOLOWER($%s) ", key, key)); //NOI18N
-                    }
-                });
-            }
+            if (filters != null)
+                appendAttributeFilters(queryFilterBuilder, "childNode", filters, parameters); //NOI18N
                                     
             if (oid == null) {
                 queryBuilder.append("MATCH (dummyRoot:root:specialNodes)"); //NOI18N
                 queryBuilder.append("<-[:CHILD_OF]-"); //NOI18N
                 queryBuilder.append("(childNode:inventoryObjects)\n"); //NOI18N
                 queryBuilder.append("WHERE dummyRoot.name = $name\n"); //NOI18N
+                queryBuilder.append(queryFilterBuilder);
                 queryBuilder.append("RETURN count(childNode) AS ").append(COUNT); //NOI18N
                 
                 parameters.put("name", Constants.DUMMY_ROOT); //NOI18N
@@ -4367,12 +4841,13 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append("(childNode:inventoryObjects)\n"); //NOI18N
                 queryBuilder.append("WHERE classNode.name = $className\n"); //NOI18N
                 queryBuilder.append("AND parentNode._uuid = $oid\n"); //NOI18N
+                queryBuilder.append(queryFilterBuilder);
                 queryBuilder.append("RETURN count(childNode) AS ").append(COUNT); //NOI18N
                 
                 parameters.put("className", className); //NOI18N
                 parameters.put("oid", oid); //NOI18N
             }
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectChildrenCount", queryBuilder.toString()), parameters); //NOI18N
             while (result.hasNext()) {
                 tx.success();
                 return (long) result.next().get(COUNT);
@@ -4397,22 +4872,15 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             final String CHILD_NODE = "childNode"; //NOI18N
             
             
-            if(filters != null){
-                filters.entrySet().forEach(entry -> {
-                    String key = (String)entry.getKey();
-                    String val = (String)entry.getValue();
-                    if (val != null) {
-                        parameters.put(key, val);
-                        queryFilterBuilder.append(String.format("AND TOLOWER(instance.%s) CONTAINS TOLOWER($%s) ", key, key)); //NOI18N
-                    }
-                });
-            }
+            if (filters != null)
+                appendAttributeFilters(queryFilterBuilder, "childNode", filters, parameters); //NOI18N
                                     
             if (oid == null) {
                 queryBuilder.append("MATCH (dummyRoot:root:specialNodes)"); //NOI18N
                 queryBuilder.append("<-[:CHILD_OF]-"); //NOI18N
                 queryBuilder.append("(childNode:inventoryObjects)\n"); //NOI18N
                 queryBuilder.append("WHERE dummyRoot.name = $name\n"); //NOI18N
+                queryBuilder.append(queryFilterBuilder);
                 queryBuilder.append("RETURN childNode ORDER BY toLower(childNode.name) ASC\n"); //NOI18N
                 queryBuilder.append((skip >= 0 && limit >= 0)  ? "SKIP $skip LIMIT $limit;" : ""); //NOI18N
                 
@@ -4425,6 +4893,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append("(childNode:inventoryObjects)\n"); //NOI18N
                 queryBuilder.append("WHERE classNode.name = $className\n"); //NOI18N
                 queryBuilder.append("AND parentNode._uuid = $oid\n"); //NOI18N
+                queryBuilder.append(queryFilterBuilder);
                 queryBuilder.append("RETURN childNode ORDER BY toLower(childNode.name) ASC\n"); //NOI18N
                 queryBuilder.append((skip >= 0 && limit >= 0)  ? "SKIP $skip LIMIT $limit;" : ""); //NOI18N
                 
@@ -4435,10 +4904,11 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 parameters.put("skip", skip); //NOI18N
                 parameters.put("limit", limit); //NOI18N
             }
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            List<BusinessObjectLight> objectChildren = new ArrayList();
+            Result result = executeQuery(CypherQuery.dynamic("bem.getObjectChildren", queryBuilder.toString()), parameters); //NOI18N
+            List<Node> objectChildrenNodes = new ArrayList<>();
             while (result.hasNext())
-                objectChildren.add(ogmService.createObjectLightFromNode((Node) result.next().get(CHILD_NODE)));
+                objectChildrenNodes.add((Node) result.next().get(CHILD_NODE));
+            List<BusinessObjectLight> objectChildren = ogmService.createObjectLightsFromNodes(objectChildrenNodes);
             tx.success();
             return objectChildren;
         }
@@ -4453,80 +4923,34 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             if (filter == null)
                 throw new InvalidArgumentException("The className cannot be null");
-                        
-            HashMap<String, Object> parameters = new HashMap();
-            StringBuilder queryBuilder = new StringBuilder();
-            parameters.put("searchString", filter); //NOI18N
-            
-            if(classesNamesToFilter == null){
-                queryBuilder.append("MATCH (object:").append(inventoryObjectLabel).append(")-[:INSTANCE_OF]->(class:").append(classLabel).append(") "); //NOI18N
-                queryBuilder.append("WHERE TOLOWER(class.name) CONTAINS TOLOWER($searchString) OR TOLOWER(class.displayName) CONTAINS TOLOWER($searchString) OR TOLOWER(object.name) CONTAINS TOLOWER($searchString)"); //NOI18N
-                queryBuilder.append("RETURN class {.name, .displayName, objects: collect(distinct object {.name, ._uuid})");
-                queryBuilder.append("[").append(objectSkip).append("..").append(objectLimit).append("]} "); //NOI18N
-                
-                queryBuilder.append("ORDER BY class.name ASC "); 
-                if(classesSkip >= 0 && classesLimit >= 0){
-                    queryBuilder.append("SKIP $skip LIMIT $limit ");
-                    parameters.put("skip", classesSkip); //NOI18N
-                    parameters.put("limit", classesLimit); //NOI18N
-                }
-            }else if(!classesNamesToFilter.isEmpty()){
-                queryBuilder.append("MATCH (class:").append(classLabel).append(")"); //NOI18N
-                queryBuilder.append("-[:EXTENDS*]->"); //NOI18N
-                queryBuilder.append("(pclass:").append(classLabel).append(") "); //NOI18N
-                queryBuilder.append("WHERE "); //NOI18N
-                
-                String instanceClasses = classesNamesToFilter.stream()
-                    .map(s -> String.format("class.name= '%s'", s)) // add double quotes around each string
-                    .collect(Collectors.joining(" OR "));
-                
-                queryBuilder.append(instanceClasses).append(" OR "); //NOI18N
-                //We also compare with possible parent classes in case a GenericClassName was provided
-                String possibleParentClasses = classesNamesToFilter.stream()
-                    .map(s -> String.format("pclass.name = '%s'", s)) // add double quotes around each string
-                    .collect(Collectors.joining(" OR "));
-                queryBuilder.append(possibleParentClasses);
-                queryBuilder.append(" WITH class "); //NOI18N
-                
-                queryBuilder.append("MATCH (object:").append(inventoryObjectLabel).append(")"); //NOI18N
-                queryBuilder.append("-[:INSTANCE_OF]->(class:").append(classLabel).append(") "); //NOI18N
-                queryBuilder.append("WHERE TOLOWER(object.name) CONTAINS TOLOWER($searchString) "); //NOI18N
-                queryBuilder.append("WITH class, COLLECT(distinct object)[").append(objectSkip).append("..").append(objectLimit).append("] as objs "); //NOI18N
-                queryBuilder.append("UNWIND objs as obj "); //NOI18N
-            
-                queryBuilder.append("RETURN class {.name, .displayName, objects: collect(obj {.name, ._uuid})} "); //NOI18N
-                queryBuilder.append("ORDER BY class.name ASC "); 
-                if(classesSkip >= 0 && classesLimit >= 0){
-                    queryBuilder.append("SKIP $skip LIMIT $limit ");
-                    parameters.put("skip", classesSkip); //NOI18N
-                    parameters.put("limit", classesLimit); //NOI18N
-                }
-            }
             
             HashMap<String, List<BusinessObjectLight>> res  = new HashMap<>();
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
-            //format {name: className1, Objects[{}, {}]} {name: className2, Objects[{}, {}]} 
-            while (result.hasNext()){
-                Map<String, Object> row = result.next();
-                
-                row.entrySet().forEach(entry_ -> {
-                    //format of the json result {name: className1, Objects[{}, {}]} {name: className2, Objects[{}, {}]} 
-                    HashMap val = (HashMap)entry_.getValue();
-                    String className = (String)val.get("name"); //name: className
-                    String classDisplayName = (String)val.get("displayName");
-                    //objects: list the objects attributes of the className in a map: [{name, _uuid:}, {name:, uuid:}, {name:, _uuid:}]
-                    ArrayList objects = (ArrayList)val.get("objects");
-
-                    if(res.get(className) == null)
-                        res.put(className, new ArrayList<>());
-
-                    objects.forEach(inventoryObjectData -> {
-                        res.get(className).add(new BusinessObjectLight(className,
-                                (String)((HashMap)inventoryObjectData).get("_uuid"), 
-                                (String)((HashMap)inventoryObjectData).get("name"), 
-                                classDisplayName));
+            if (classesNamesToFilter != null && classesNamesToFilter.isEmpty())
+                return res;
+            
+            // If no classes are provided, the objects whose class name matches the filter are included too
+            List<String> classNames = classesNamesToFilter == null ? null : 
+                    ObjectSearchIndex.getSubclassNames(connectionManager.getConnectionHandler(), classesNamesToFilter);
+            // Only the objects up to objectLimit are kept for each class, the rest are just counted as a match of the class
+            HashMap<Node, List<Node>> objectsByClass = new HashMap<>();
+            ObjectSearchIndex.search(connectionManager.getConnectionHandler(), filter, ObjectSearchIndex.MatchMode.INFIX, 
+                    classNames, classNames == null, object -> {
+                        List<Node> objects = objectsByClass.computeIfAbsent(
+                                object.getSingleRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING).getEndNode(), classNode -> new ArrayList<>());
+                        if (objectLimit < 0 || objects.size() < objectLimit)
+                            objects.add(object);
+                        return true;
                     });
-                });
+            
+            List<Node> classNodes = new ArrayList<>(objectsByClass.keySet());
+            classNodes.sort(Comparator.comparing(classNode -> (String) classNode.getProperty(Constants.PROPERTY_NAME)));
+            if (classesSkip >= 0 && classesLimit >= 0)
+                classNodes = classNodes.subList((int) Math.min(classesSkip, classNodes.size()), (int) Math.min(classesSkip + classesLimit, classNodes.size()));
+            
+            for (Node classNode : classNodes) {
+                List<Node> objects = objectsByClass.get(classNode);
+                res.put((String) classNode.getProperty(Constants.PROPERTY_NAME), ogmService.createObjectLightsFromNodes(
+                        objects.subList((int) Math.min(Math.max(0, objectSkip), objects.size()), objects.size()), false));
             }
             tx.success();
             return res;
@@ -4549,15 +4973,14 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
                 queryBuilder.append("WHERE TOLOWER(pool.className) CONTAINS TOLOWER($searchString) OR "); //NOI18N
             
             else if(!classesNamesToFilter.isEmpty()){
-                  String classesNames = classesNamesToFilter.stream()
-                        .map(s -> String.format("'%s'", s)) // add double quotes around each string
-                        .collect(Collectors.joining(","));
-                  
-                queryBuilder.append("WHERE (pool.className) IN [").append(classesNames).append("] AND "); //NOI18N
+                queryBuilder.append("WHERE (pool.className) IN $classesToFilter AND "); //NOI18N
+                parameters.put("classesToFilter", classesNamesToFilter); //NOI18N
             }
             queryBuilder.append("TOLOWER(pool.name) CONTAINS TOLOWER($searchString) "); //NOI18N
             queryBuilder.append("RETURN pool {.className, pools: collect(distinct pool {.name, ._uuid, .description, .type})"); //NOI18N
-            queryBuilder.append("[").append(objectSkip).append("..").append(objectLimit).append("]").append("} "); //NOI18N
+            queryBuilder.append("[$objectSkip..$objectLimit]} "); //NOI18N
+            parameters.put("objectSkip", objectSkip); //NOI18N
+            parameters.put("objectLimit", objectLimit); //NOI18N
             queryBuilder.append("ORDER BY pool.name ASC ");
             if(poolLimit >= 0 && poolSkip >= 0){
                 queryBuilder.append("SKIP $skip LIMIT $limit ");
@@ -4568,7 +4991,7 @@ public class BusinessEntityManagerImpl implements BusinessEntityManager {
             parameters.put("searchString", nameTofilter);//NOI18N
             
             HashMap<String, List<InventoryObjectPool>> res  = new HashMap<>();
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString(), parameters);
+            Result result = executeQuery(CypherQuery.dynamic("bem.getSuggestedPoolsByName", queryBuilder.toString()), parameters); //NOI18N
             while (result.hasNext()){
                 Map<String, Object> row = result.next();
                 
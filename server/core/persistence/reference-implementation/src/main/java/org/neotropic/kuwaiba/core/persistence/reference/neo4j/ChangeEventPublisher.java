@@ -0,0 +1,644 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEvent;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEventBus;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEventListener;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeSubscription;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Derives the changes to the inventory from the data written by every committed transaction and publishes them to
+ * the subscribers. The handler is registered in the database by the connection manager, so nothing escapes it:
+ * the changes made by the entity managers, the scripts and the raw Cypher queries are all published.
+ * The changes are read before the transaction commits, while the deleted nodes can still be told apart, and published
+ * once it has committed (and discarded if it's rolled back), so the subscribers never see changes that didn't happen.
+ * When there are no subscribers, the transactions pay nothing but a check.
+ * Publishing never blocks the transaction: every subscriber has a bounded, lock-free queue, drained by a thread of a
+ * shared pool, and the transactions that don't fit in the queue of a slow subscriber are dropped for it alone, and reported
+ * with an {@link ChangeEvent.Type#EVENTS_LOST} event.
+ * Optionally, the events are also appended to a local file, one JSON document per line, that external consumers can tail.
+ */
+@Service
+public class ChangeEventPublisher implements ChangeEventBus, TransactionEventHandler<List<ChangeEvent>> {
+    /**
+     * Configuration property with the default max number of transactions waiting to be delivered to a subscriber
+     */
+    public static final String PROPERTY_QUEUE_SIZE = "changeEventQueueSize"; //NOI18N
+    /**
+     * Default max number of transactions waiting to be delivered to a subscriber
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    /**
+     * Configuration property with the path of the file the events are appended to. If empty, the events are not written to a file
+     */
+    public static final String PROPERTY_LOG_PATH = "changeEventLogPath"; //NOI18N
+    /**
+     * Name of the subscriber that writes the events to a file
+     */
+    private static final String LOG_SUBSCRIBER = "change-event-log"; //NOI18N
+    /**
+     * Label of the inventory objects
+     */
+    private static final Label LABEL_INVENTORY_OBJECTS = Label.label(Constants.LABEL_INVENTORY_OBJECTS);
+    /**
+     * Label of the classes
+     */
+    private static final Label LABEL_CLASS = Label.label(Constants.LABEL_CLASS);
+    /**
+     * Label of the attributes of the classes
+     */
+    private static final Label LABEL_ATTRIBUTE = Label.label(Constants.LABEL_ATTRIBUTE);
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * The current subscriptions
+     */
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    /**
+     * The threads that deliver the events. A subscriber is drained by one thread at a time
+     */
+    private final ExecutorService deliveryExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "kuwaiba-change-events"); //NOI18N
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Number of transactions with changes to the inventory published
+     */
+    private final AtomicLong publishedTransactions = new AtomicLong();
+    /**
+     * Number of transactions dropped by the subscriptions already closed
+     */
+    private final AtomicLong closedLostTransactions = new AtomicLong();
+    /**
+     * The database the handler is registered in
+     */
+    private volatile GraphDatabaseService graphDb;
+    private volatile int defaultQueueSize = DEFAULT_QUEUE_SIZE;
+    private ChangeSubscription logSubscription;
+    private BufferedWriter logWriter;
+
+    /**
+     * Starts receiving the changes of the transactions of a database. To be called by the connection manager
+     * every time the connection is opened, before anything is written
+     * @param graphDb The database
+     */
+    public void register(GraphDatabaseService graphDb) {
+        this.graphDb = graphDb;
+        graphDb.registerTransactionEventHandler(this);
+    }
+
+    /**
+     * Reads the configuration and, if a log file is set, starts writing the events to it
+     * @param configuration The configuration properties: changeEventQueueSize and changeEventLogPath. Those not set
+     * take their default values
+     * @throws IOException If the log file could not be opened
+     * @throws IllegalArgumentException If the queue size is not a number
+     */
+    public synchronized void start(Properties configuration) throws IOException {
+        stop();
+        defaultQueueSize = Math.max(1, Integer.valueOf(configuration.getProperty(PROPERTY_QUEUE_SIZE, String.valueOf(DEFAULT_QUEUE_SIZE)).trim()));
+        String logPathString = configuration.getProperty(PROPERTY_LOG_PATH, "").trim();
+        if (!logPathString.isEmpty()) {
+            Path logPath = Paths.get(logPathString);
+            if (logPath.getParent() != null)
+                Files.createDirectories(logPath.getParent());
+            logWriter = Files.newBufferedWriter(logPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            logSubscription = subscribe(LOG_SUBSCRIBER, this::writeToLog);
+        }
+    }
+
+    /**
+     * Stops writing the events to the log file, if they were. The rest of the subscriptions are left untouched,
+     * since their owners may outlive a restart of the persistence service
+     */
+    public synchronized void stop() {
+        if (logSubscription != null) {
+            logSubscription.close();
+            logSubscription = null;
+        }
+        if (logWriter != null) {
+            try {
+                synchronized (logWriter) {
+                    logWriter.close();
+                }
+            } catch (IOException ex) {
+                log.writeLogMessage(LoggerType.ERROR, ChangeEventPublisher.class, "The change event log could not be closed", ex);
+            }
+            logWriter = null;
+        }
+    }
+
+    @Override
+    public ChangeSubscription subscribe(String name, ChangeEventListener listener) {
+        return subscribe(name, listener, defaultQueueSize);
+    }
+
+    @Override
+    public ChangeSubscription subscribe(String name, ChangeEventListener listener, int queueSize) {
+        if (queueSize <= 0)
+            throw new IllegalArgumentException(String.format("The queue size of the subscriber %s must be positive", name));
+        Subscription subscription = new Subscription(name, listener, queueSize);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * @return Number of current subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return Number of transactions with changes to the inventory published so far
+     */
+    public long getPublishedTransactions() {
+        return publishedTransactions.get();
+    }
+
+    /**
+     * @return Number of transactions not delivered to a subscriber because its queue was full, added up over all the subscribers
+     */
+    public long getLostTransactions() {
+        return closedLostTransactions.get() + subscriptions.stream().mapToLong(Subscription::getLostTransactions).sum();
+    }
+
+    // <editor-fold desc="TransactionEventHandler implementation" defaultstate="collapsed">
+    @Override
+    public List<ChangeEvent> beforeCommit(TransactionData data) throws Exception {
+        if (subscriptions.isEmpty())
+            return null;
+        List<ChangeEvent> events = new TransactionChanges(graphDb, data).toEvents();
+        return events.isEmpty() ? null : events;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, List<ChangeEvent> state) {
+        if (state == null)
+            return;
+        List<ChangeEvent> events = new ArrayList<>(state.size());
+        for (ChangeEvent anEvent : state)
+            events.add(new ChangeEvent(anEvent, data.getTransactionId(), data.getCommitTime()));
+        events = Collections.unmodifiableList(events);
+        publishedTransactions.incrementAndGet();
+        for (Subscription aSubscription : subscriptions)
+            aSubscription.offer(events);
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, List<ChangeEvent> state) {
+        // Nothing happened, so there's nothing to publish
+    }
+    // </editor-fold>
+
+    // <editor-fold desc="Helpers" defaultstate="collapsed">
+    /**
+     * Appends the events of a transaction to the log file, one JSON document per line
+     */
+    private void writeToLog(List<ChangeEvent> events) {
+        BufferedWriter writer = logWriter;
+        if (writer == null)
+            return;
+        try {
+            synchronized (writer) {
+                for (ChangeEvent anEvent : events) {
+                    writer.write(toJson(anEvent));
+                    writer.newLine();
+                }
+                writer.flush();
+            }
+        } catch (IOException ex) {
+            log.writeLogMessage(LoggerType.ERROR, ChangeEventPublisher.class, "The changes could not be written to the change event log", ex);
+        }
+    }
+
+    private static String toJson(ChangeEvent event) {
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"transactionId\":").append(event.getTransactionId()) //NOI18N
+            .append(",\"commitTime\":").append(event.getCommitTime()) //NOI18N
+            .append(",\"type\":\"").append(event.getType()).append('"'); //NOI18N
+        appendJsonField(json, "className", event.getClassName()); //NOI18N
+        appendJsonField(json, "objectId", event.getObjectId()); //NOI18N
+        if (!event.getAttributes().isEmpty()) {
+            json.append(",\"attributes\":["); //NOI18N
+            boolean first = true;
+            for (String anAttribute : event.getAttributes()) {
+                if (!first)
+                    json.append(',');
+                appendJsonString(json, anAttribute);
+                first = false;
+            }
+            json.append(']');
+        }
+        appendJsonField(json, "relatedClassName", event.getRelatedClassName()); //NOI18N
+        appendJsonField(json, "relatedObjectId", event.getRelatedObjectId()); //NOI18N
+        appendJsonField(json, "relationshipName", event.getRelationshipName()); //NOI18N
+        return json.append('}').toString();
+    }
+
+    private static void appendJsonField(StringBuilder json, String name, String value) {
+        if (value == null)
+            return;
+        json.append(",\"").append(name).append("\":"); //NOI18N
+        appendJsonString(json, value);
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\""); //NOI18N
+                    break;
+                case '\\':
+                    json.append("\\\\"); //NOI18N
+                    break;
+                case '\n':
+                    json.append("\\n"); //NOI18N
+                    break;
+                case '\r':
+                    json.append("\\r"); //NOI18N
+                    break;
+                case '\t':
+                    json.append("\\t"); //NOI18N
+                    break;
+                default:
+                    if (c < 0x20)
+                        json.append(String.format("\\u%04x", (int) c)); //NOI18N
+                    else
+                        json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    // </editor-fold>
+
+    /**
+     * Turns the raw changes of a transaction into events. Must be used before the transaction commits, since it
+     * reads the nodes around the changes. The deleted nodes can't be read anymore, so what's known about them
+     * (their labels, properties and class) is taken from the changes themselves.
+     */
+    private static class TransactionChanges {
+        private final GraphDatabaseService graphDb;
+        private final TransactionData data;
+        /**
+         * Ids of the nodes created and deleted in the transaction
+         */
+        private final Set<Long> createdNodes = new HashSet<>();
+        private final Set<Long> deletedNodes = new HashSet<>();
+        /**
+         * Id of a deleted node, its labels
+         */
+        private final Map<Long, Set<String>> deletedLabels = new HashMap<>();
+        /**
+         * Id of a deleted node, its properties
+         */
+        private final Map<Long, Map<String, Object>> deletedProperties = new HashMap<>();
+        /**
+         * Id of a deleted relationship, its properties. Read only if a deleted relationship needs them
+         */
+        private Map<Long, Map<String, Object>> deletedRelationshipProperties;
+        /**
+         * Id of an object created or deleted, the id of its class node
+         */
+        private final Map<Long, Long> instanceOf = new HashMap<>();
+        /**
+         * Id of a class node, its name. Caches the class names read in the transaction
+         */
+        private final Map<Long, String> classNames = new HashMap<>();
+
+        TransactionChanges(GraphDatabaseService graphDb, TransactionData data) {
+            this.graphDb = graphDb;
+            this.data = data;
+        }
+
+        List<ChangeEvent> toEvents() {
+            for (Node aNode : data.createdNodes())
+                createdNodes.add(aNode.getId());
+            for (Node aNode : data.deletedNodes())
+                deletedNodes.add(aNode.getId());
+            for (LabelEntry anEntry : data.removedLabels()) {
+                if (deletedNodes.contains(anEntry.node().getId()))
+                    deletedLabels.computeIfAbsent(anEntry.node().getId(), id -> new HashSet<>()).add(anEntry.label().name());
+            }
+            for (PropertyEntry<Node> anEntry : data.removedNodeProperties()) {
+                if (deletedNodes.contains(anEntry.entity().getId()))
+                    deletedProperties.computeIfAbsent(anEntry.entity().getId(), id -> new HashMap<>())
+                            .put(anEntry.key(), anEntry.previouslyCommitedValue());
+            }
+            for (Relationship aRelationship : data.createdRelationships()) {
+                if (aRelationship.isType(RelTypes.INSTANCE_OF))
+                    instanceOf.put(aRelationship.getStartNodeId(), aRelationship.getEndNodeId());
+            }
+            for (Relationship aRelationship : data.deletedRelationships()) {
+                if (aRelationship.isType(RelTypes.INSTANCE_OF))
+                    instanceOf.put(aRelationship.getStartNodeId(), aRelationship.getEndNodeId());
+            }
+
+            List<ChangeEvent> events = new ArrayList<>();
+            // Id of an existing object, the attributes changed
+            Map<Long, Set<String>> updatedObjects = new LinkedHashMap<>();
+            // Id of an existing object, the id of its new parent, or null if it's not an inventory object or the object was taken out of its parent
+            Map<Long, Long> movedObjects = new LinkedHashMap<>();
+            Set<String> changedClasses = new LinkedHashSet<>();
+
+            for (Node aNode : data.createdNodes()) {
+                if (aNode.hasLabel(LABEL_INVENTORY_OBJECTS))
+                    events.add(new ChangeEvent(ChangeEvent.Type.OBJECT_CREATED, getClassName(aNode.getId()), getUuid(aNode.getId())));
+                else if (aNode.hasLabel(LABEL_CLASS))
+                    changedClasses.add(getName(aNode.getId()));
+            }
+            for (Node aNode : data.deletedNodes()) {
+                if (hasLabel(aNode.getId(), LABEL_INVENTORY_OBJECTS))
+                    events.add(new ChangeEvent(ChangeEvent.Type.OBJECT_DELETED, getClassName(aNode.getId()), getUuid(aNode.getId())));
+                else if (hasLabel(aNode.getId(), LABEL_CLASS))
+                    changedClasses.add(getName(aNode.getId()));
+            }
+
+            for (PropertyEntry<Node> anEntry : data.assignedNodeProperties())
+                collectPropertyChange(anEntry, updatedObjects, changedClasses);
+            for (PropertyEntry<Node> anEntry : data.removedNodeProperties())
+                collectPropertyChange(anEntry, updatedObjects, changedClasses);
+
+            for (Relationship aRelationship : data.createdRelationships())
+                collectRelationshipChange(aRelationship, true, events, updatedObjects, movedObjects, changedClasses);
+            for (Relationship aRelationship : data.deletedRelationships())
+                collectRelationshipChange(aRelationship, false, events, updatedObjects, movedObjects, changedClasses);
+
+            updatedObjects.forEach((nodeId, attributes) ->
+                    events.add(new ChangeEvent(ChangeEvent.Type.OBJECT_UPDATED, getClassName(nodeId), getUuid(nodeId),
+                            attributes, null, null, null)));
+            movedObjects.forEach((nodeId, parentId) ->
+                    events.add(new ChangeEvent(ChangeEvent.Type.OBJECT_MOVED, getClassName(nodeId), getUuid(nodeId), null,
+                            parentId == null ? null : getClassName(parentId), parentId == null ? null : getUuid(parentId), null)));
+            changedClasses.remove(null);
+            changedClasses.forEach(aClass -> events.add(new ChangeEvent(ChangeEvent.Type.CLASS_CHANGED, aClass, null)));
+            return events;
+        }
+
+        private void collectPropertyChange(PropertyEntry<Node> entry, Map<Long, Set<String>> updatedObjects, Set<String> changedClasses) {
+            long nodeId = entry.entity().getId();
+            if (createdNodes.contains(nodeId) || deletedNodes.contains(nodeId))
+                return;
+            Node node = entry.entity();
+            if (node.hasLabel(LABEL_INVENTORY_OBJECTS))
+                updatedObjects.computeIfAbsent(nodeId, id -> new LinkedHashSet<>()).add(entry.key());
+            else if (node.hasLabel(LABEL_CLASS))
+                changedClasses.add(getName(nodeId));
+            else if (node.hasLabel(LABEL_ATTRIBUTE)) {
+                Relationship hasAttribute = node.getSingleRelationship(RelTypes.HAS_ATTRIBUTE, Direction.INCOMING);
+                if (hasAttribute != null)
+                    changedClasses.add(getName(hasAttribute.getStartNodeId()));
+            }
+        }
+
+        private void collectRelationshipChange(Relationship relationship, boolean created, List<ChangeEvent> events,
+                Map<Long, Set<String>> updatedObjects, Map<Long, Long> movedObjects, Set<String> changedClasses) {
+            long startNodeId = relationship.getStartNodeId();
+            long endNodeId = relationship.getEndNodeId();
+            boolean existingStartNode = !createdNodes.contains(startNodeId) && !deletedNodes.contains(startNodeId);
+
+            if (relationship.isType(RelTypes.RELATED_TO_SPECIAL)) {
+                if (hasLabel(startNodeId, LABEL_INVENTORY_OBJECTS) && hasLabel(endNodeId, LABEL_INVENTORY_OBJECTS))
+                    events.add(new ChangeEvent(created ? ChangeEvent.Type.SPECIAL_RELATIONSHIP_ADDED : ChangeEvent.Type.SPECIAL_RELATIONSHIP_RELEASED,
+                            getClassName(startNodeId), getUuid(startNodeId), null, getClassName(endNodeId), getUuid(endNodeId),
+                            (String) getRelationshipProperty(relationship, created, Constants.PROPERTY_NAME)));
+            } else if (relationship.isType(RelTypes.RELATED_TO)) {
+                // The list type attributes of a new object are part of its creation, and those of a deleted one, of its deletion
+                if (existingStartNode && hasLabel(startNodeId, LABEL_INVENTORY_OBJECTS)) {
+                    Object attributeName = getRelationshipProperty(relationship, created, Constants.PROPERTY_NAME);
+                    if (attributeName != null)
+                        updatedObjects.computeIfAbsent(startNodeId, id -> new LinkedHashSet<>()).add((String) attributeName);
+                }
+            } else if (relationship.isType(RelTypes.CHILD_OF) || relationship.isType(RelTypes.CHILD_OF_SPECIAL)) {
+                if (existingStartNode && hasLabel(startNodeId, LABEL_INVENTORY_OBJECTS)) {
+                    if (created)
+                        movedObjects.put(startNodeId, hasLabel(endNodeId, LABEL_INVENTORY_OBJECTS) ? endNodeId : null);
+                    else
+                        movedObjects.putIfAbsent(startNodeId, null);
+                }
+            } else if (relationship.isType(RelTypes.EXTENDS) || relationship.isType(RelTypes.POSSIBLE_CHILD)
+                    || relationship.isType(RelTypes.POSSIBLE_SPECIAL_CHILD) || relationship.isType(RelTypes.HAS_ATTRIBUTE)) {
+                // The class at the start of the relationship is the subclass, the possible parent, or the owner of the attribute
+                if (hasLabel(startNodeId, LABEL_CLASS))
+                    changedClasses.add(getName(startNodeId));
+            }
+        }
+
+        private boolean hasLabel(long nodeId, Label label) {
+            if (deletedNodes.contains(nodeId))
+                return deletedLabels.getOrDefault(nodeId, Collections.emptySet()).contains(label.name());
+            return getNode(nodeId).hasLabel(label);
+        }
+
+        private Node getNode(long nodeId) {
+            return graphDb.getNodeById(nodeId);
+        }
+
+        private Object getProperty(long nodeId, String key) {
+            if (deletedNodes.contains(nodeId))
+                return deletedProperties.getOrDefault(nodeId, Collections.emptyMap()).get(key);
+            return getNode(nodeId).getProperty(key, null);
+        }
+
+        private String getName(long nodeId) {
+            return (String) getProperty(nodeId, Constants.PROPERTY_NAME);
+        }
+
+        private String getUuid(long nodeId) {
+            return (String) getProperty(nodeId, Constants.PROPERTY_UUID);
+        }
+
+        private String getClassName(long objectNodeId) {
+            Long classNodeId = instanceOf.get(objectNodeId);
+            if (classNodeId == null) {
+                if (deletedNodes.contains(objectNodeId))
+                    return null;
+                Relationship instanceOfRelationship = getNode(objectNodeId).getSingleRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING);
+                if (instanceOfRelationship == null)
+                    return null;
+                classNodeId = instanceOfRelationship.getEndNodeId();
+                instanceOf.put(objectNodeId, classNodeId);
+            }
+            return classNames.computeIfAbsent(classNodeId, this::getName);
+        }
+
+        /**
+         * The properties of a deleted relationship can't be read from it, only from the changes
+         */
+        private Object getRelationshipProperty(Relationship relationship, boolean created, String key) {
+            if (created)
+                return relationship.getProperty(key, null);
+            if (deletedRelationshipProperties == null) {
+                deletedRelationshipProperties = new HashMap<>();
+                for (PropertyEntry<Relationship> anEntry : data.removedRelationshipProperties())
+                    deletedRelationshipProperties.computeIfAbsent(anEntry.entity().getId(), id -> new HashMap<>())
+                            .put(anEntry.key(), anEntry.previouslyCommitedValue());
+            }
+            return deletedRelationshipProperties.getOrDefault(relationship.getId(), Collections.emptyMap()).get(key);
+        }
+    }
+
+    /**
+     * Queued in place of the transactions dropped by a subscription, so the loss is reported after the transactions
+     * that were queued before it. Compared by identity
+     */
+    private static final List<ChangeEvent> LOST_MARKER = Collections.singletonList(new ChangeEvent(ChangeEvent.Type.EVENTS_LOST, null, null));
+
+    /**
+     * A listener, its queue, and the state of its delivery
+     */
+    private class Subscription implements ChangeSubscription, Runnable {
+        private final String name;
+        private final ChangeEventListener listener;
+        private final int queueSize;
+        private final ConcurrentLinkedQueue<List<ChangeEvent>> queue = new ConcurrentLinkedQueue<>();
+        /**
+         * The number of transactions in the queue, kept apart since the queue doesn't know it in constant time. 
+         * The loss markers are not counted
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong lost = new AtomicLong();
+        /**
+         * Set when the last thing queued is a loss marker, so a run of dropped transactions is reported only once
+         */
+        private final AtomicBoolean lossQueued = new AtomicBoolean();
+        /**
+         * Set while a thread is delivering the queued transactions
+         */
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscription(String name, ChangeEventListener listener, int queueSize) {
+            this.name = name;
+            this.listener = listener;
+            this.queueSize = queueSize;
+        }
+
+        void offer(List<ChangeEvent> events) {
+            if (closed)
+                return;
+            if (pending.incrementAndGet() > queueSize) {
+                pending.decrementAndGet();
+                lost.incrementAndGet();
+                if (lossQueued.compareAndSet(false, true))
+                    queue.add(LOST_MARKER);
+            } else {
+                lossQueued.set(false);
+                queue.add(events);
+            }
+            scheduleDelivery();
+        }
+
+        private void scheduleDelivery() {
+            if (draining.compareAndSet(false, true))
+                deliveryExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                List<ChangeEvent> events = queue.poll();
+                if (events == null) {
+                    draining.set(false);
+                    // Something may have been queued after the last poll, but before the flag was cleared
+                    if (queue.isEmpty() || !draining.compareAndSet(false, true))
+                        return;
+                    continue;
+                }
+                if (events != LOST_MARKER)
+                    pending.decrementAndGet();
+                try {
+                    listener.onChanges(events);
+                } catch (Exception ex) {
+                    log.writeLogMessage(LoggerType.ERROR, ChangeEventPublisher.class,
+                            String.format("The subscriber %s could not process the changes", name), ex);
+                }
+            }
+            draining.set(false);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getPendingTransactions() {
+            return pending.get();
+        }
+
+        @Override
+        public long getLostTransactions() {
+            return lost.get();
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            if (subscriptions.remove(this))
+                closedLostTransactions.addAndGet(lost.get());
+            queue.clear();
+            pending.set(0);
+        }
+    }
+}
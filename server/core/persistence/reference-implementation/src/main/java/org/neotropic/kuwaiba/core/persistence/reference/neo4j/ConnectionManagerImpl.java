@@ -26,6 +26,7 @@ import org.neo4j.graphdb.config.Setting;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.kernel.configuration.BoltConnector;
 import org.neo4j.kernel.configuration.Settings;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import static org.neo4j.kernel.configuration.Settings.buildSetting;
 
@@ -64,6 +65,21 @@ public class ConnectionManagerImpl implements ConnectionManager<GraphDatabaseSer
      * Neo4J Transaction handler
      */
     private Transaction tx;
+    /**
+     * Publishes the changes committed to the database. Not set when the connection manager is used outside the container
+     */
+    @Autowired(required = false)
+    private ChangeEventPublisher changeEventPublisher;
+    /**
+     * Keeps the cached containment hierarchy consistent with the changes committed to the database. Not set when the connection manager is used outside the container
+     */
+    @Autowired(required = false)
+    private AncestorIndex ancestorIndex;
+    /**
+     * Evicts the cached validators of the objects changed by the committed transactions. Not set when the connection manager is used outside the container
+     */
+    @Autowired(required = false)
+    private ValidatorCacheInvalidator validatorCacheInvalidator;
     
 
     public ConnectionManagerImpl() {
@@ -109,6 +125,12 @@ public class ConnectionManagerImpl implements ConnectionManager<GraphDatabaseSer
                         .setConfig(bolt.listen_address,  dbHost + ":" + dbPort)
                         .setConfig(udc_enabled, "false")
                         .newGraphDatabase();
+            if (changeEventPublisher != null)
+                changeEventPublisher.register(graphDb);
+            if (ancestorIndex != null)
+                ancestorIndex.register(graphDb);
+            if (validatorCacheInvalidator != null)
+                validatorCacheInvalidator.register(graphDb);
         }catch(Exception e) {
             throw new ConnectionException(e.getMessage());
         }
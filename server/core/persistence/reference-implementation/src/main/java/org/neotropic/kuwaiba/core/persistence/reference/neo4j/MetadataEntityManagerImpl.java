@@ -45,10 +45,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
@@ -493,19 +496,19 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
             if (includeListTypes && myClassGenericObjectListNode != null)
                 cml.add(Util.createClassMetadataLightFromNode(myClassGenericObjectListNode));
             
-            String rootClasses;
+            List<String> rootClasses;
 
             if(includeListTypes)
-                rootClasses = "'" + Constants.CLASS_INVENTORYOBJECT + "', '" + Constants.CLASS_GENERICOBJECTLIST + "'";
+                rootClasses = Arrays.asList(Constants.CLASS_INVENTORYOBJECT, Constants.CLASS_GENERICOBJECTLIST);
             else
-                rootClasses = "'" + Constants.CLASS_INVENTORYOBJECT + "'";
+                rootClasses = Arrays.asList(Constants.CLASS_INVENTORYOBJECT);
             
             String cypherQuery = "MATCH (inventory:classes)<-[:EXTENDS*]-(classmetadata) "
-                + "WHERE inventory.name IN [" + rootClasses + "] "
+                + "WHERE inventory.name IN $rootClasses "
                 + "RETURN classmetadata, inventory "
                 + "ORDER BY classmetadata.name ASC;";
             
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = connectionManager.getConnectionHandler().execute(cypherQuery, Collections.singletonMap("rootClasses", rootClasses)); //NOI18N
             Iterator<Node> n_column = result.columnAs("classmetadata"); 
             
             for (Node node : Iterators.asIterable(n_column))
@@ -538,14 +541,14 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
         }
         // Retrieving all subclasses to update the cache
         String cypherQuery = "MATCH (inventory:classes)<-[:EXTENDS*]-(classmetadata) "
-                           + "WHERE inventory.name IN ['" + className + "'] "
+                           + "WHERE inventory.name = $className "
                            + "RETURN classmetadata "
                            + "ORDER BY classmetadata.name ASC;";
                 
         subclasses = new ArrayList();
             
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = connectionManager.getConnectionHandler().execute(cypherQuery, Collections.singletonMap("className", className)); //NOI18N
             Iterator<Node> n_column = result.columnAs("classmetadata"); //NOI18N
             if (includeSelf && (includeAbstractClasses ? true : !aClass.isAbstract()))
                 classManagerResultList.add(aClass);
@@ -593,7 +596,7 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
         
         String cypherQuery = ""
             + "MATCH (inventory:classes)<-[:EXTENDS]-(classmetadata) "
-            + "WHERE inventory.name IN ['" + className + "'] "
+            + "WHERE inventory.name = $className "
             + "RETURN classmetadata "
             + "ORDER BY classmetadata.name ASC;";
         
@@ -601,7 +604,7 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
 
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = connectionManager.getConnectionHandler().execute(cypherQuery, Collections.singletonMap("className", className)); //NOI18N
             Iterator<Node> n_column = result.columnAs("classmetadata"); //NOI18N
             if (includeSelf && (includeAbstractClasses ? true : !aClass.isAbstract()))
                 classManagerResultList.add(aClass);
@@ -624,12 +627,13 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
     @Override
     public List<ClassMetadataLight> getSuperClassesLight(String className, boolean includeSelf) throws MetadataObjectNotFoundException {
         List<ClassMetadataLight> res = new ArrayList<>();
-        String cypherQuery = "MATCH path = (aClass:classes)-[:EXTENDS*]->(topClass{name:\"" + Constants.CLASS_INVENTORYOBJECT + "\"}) "
-                + "WHERE aClass.name = {className} RETURN nodes(path) AS superClasses";
+        String cypherQuery = "MATCH path = (aClass:classes)-[:EXTENDS*]->(topClass {name: $topClass}) "
+                + "WHERE aClass.name = $className RETURN nodes(path) AS superClasses";
         
         try(Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             HashMap<String, Object> parameters = new HashMap<>();
             parameters.put("className", className);
+            parameters.put("topClass", Constants.CLASS_INVENTORYOBJECT); //NOI18N
             Result result = connectionManager.getConnectionHandler().execute(cypherQuery, parameters);
             if (!result.hasNext())
                 throw new MetadataObjectNotFoundException(String.format("Class %s could not be found. Contact your administrator.", className));
@@ -659,12 +663,12 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
         
         String cypherQuery = ""
             + "MATCH (inventory:classes)<-[:EXTENDS]-(classmetadata) "
-            + "WHERE inventory.name IN ['" + className + "'] "
+            + "WHERE inventory.name = $className "
             + "RETURN COUNT(classmetadata) as Count";     
 
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
             
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = connectionManager.getConnectionHandler().execute(cypherQuery, Collections.singletonMap("className", className)); //NOI18N
             
             while (result.hasNext()) {
                 tx.success();
@@ -1480,12 +1484,12 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
                             ts.getTranslatedString("module.general.messages.class-not-found"), className));
             
             String cypherQuery = "MATCH (possibleParentClassNode:classes)-[:POSSIBLE_CHILD" + (recursive ? "*" : "") + "]->(classNode:classes) "+
-                                 "WHERE classNode.name = \"" + className + "\" "+
-                                 "AND possibleParentClassNode.name <> \"" + Constants.NODE_DUMMYROOT + "\" "+
+                                 "WHERE classNode.name = $className "+
+                                 "AND possibleParentClassNode.name <> $dummyRoot "+
                                  "RETURN DISTINCT possibleParentClassNode " +
                                  "ORDER BY possibleParentClassNode.name ASC";
 
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = connectionManager.getConnectionHandler().execute(cypherQuery, getPossibleParentsParameters(className));
 
             Iterator<Node> directPossibleChildren = result.columnAs("possibleParentClassNode"); //NOI18N
             for (Node node : Iterators.asIterable(directPossibleChildren))
@@ -1508,12 +1512,12 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
                             ts.getTranslatedString("module.general.messages.class-not-found"), className));
             
             String cypherQuery = "MATCH (possibleParentClassNode:classes)-[:POSSIBLE_SPECIAL_CHILD"+ (recursive ? "*" : "") + "]->(classNode:classes) "+
-                                 "WHERE classNode.name = \""+ className + "\" " +
-                                 "AND possibleParentClassNode.name <> \""+ Constants.NODE_DUMMYROOT +"\" " +
+                                 "WHERE classNode.name = $className " +
+                                 "AND possibleParentClassNode.name <> $dummyRoot " +
                                  "RETURN distinct possibleParentClassNode "+
                                  "ORDER BY possibleParentClassNode.name ASC";
 
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+            Result result = connectionManager.getConnectionHandler().execute(cypherQuery, getPossibleParentsParameters(className));
 
             Iterator<Node> directPossibleChildren = result.columnAs("possibleParentClassNode"); //NOI18N
             for (Node node : Iterators.asIterable(directPossibleChildren))
@@ -1811,39 +1815,35 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
     private List<ClassMetadataLight> refreshPossibleChildren(Node classNode) {
         String className = (String) classNode.getProperty(Constants.PROPERTY_NAME);
 
-        if (cm.getPossibleChildren(className) != null)
-            cm.getPossibleChildren(className).clear();
-        else
-            cm.putPossibleChildren(className, new ArrayList());
-
         List<ClassMetadataLight> possibleChildren = new ArrayList();
+        // The cached lists are shared with the readers, so a new list replaces the old one instead of updating it
+        List<ClassMetadata> cachedPossibleChildren = new ArrayList<>();
 
         for (Relationship relationship : classNode.getRelationships(Direction.OUTGOING, RelTypes.POSSIBLE_CHILD)) {
             if ((Boolean) relationship.getEndNode().getProperty(Constants.PROPERTY_ABSTRACT)) {
                 Iterable<Node> allSubclasses = Util.getAllSubclasses(relationship.getEndNode());
                 for (Node childNode : allSubclasses) {
                     ClassMetadata aSubclass = Util.createClassMetadataFromNode(childNode);
-                    cm.putPossibleChild(className, aSubclass);
+                    cachedPossibleChildren.add(aSubclass);
                     possibleChildren.add(aSubclass);
                }
             } else {
                 ClassMetadata aSubclass = Util.createClassMetadataFromNode(relationship.getEndNode());
-                cm.putPossibleChild(className, aSubclass);
+                cachedPossibleChildren.add(aSubclass);
                 possibleChildren.add(aSubclass);
            }
        }
+       cachedPossibleChildren.sort((classA, classB) -> classA.getName().compareTo(classB.getName()));
+       cm.putPossibleChildren(className, cachedPossibleChildren);
        return possibleChildren;
     }
     
     private List<ClassMetadataLight> refreshPossibleSpecialChildren(Node classNode) {
         String className = (String) classNode.getProperty(Constants.PROPERTY_NAME);
         
-        if (cm.getPossibleSpecialChildren(className) != null)
-            cm.getPossibleSpecialChildren(className).clear();
-        else
-            cm.putPossibleSpecialChildren(className, new ArrayList());
-        
         List<ClassMetadataLight> possibleSpecialChildren = new ArrayList();
+        // The cached lists are shared with the readers, so a new list replaces the old one instead of updating it
+        List<String> cachedPossibleSpecialChildren = new ArrayList<>();
         
         for (Relationship relationship : classNode.getRelationships(Direction.OUTGOING, RelTypes.POSSIBLE_SPECIAL_CHILD)) {
             
@@ -1851,15 +1851,17 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
                 Iterable<Node> allSubclasses = Util.getAllSubclasses(relationship.getEndNode());
                 for (Node childNode : allSubclasses) {
                     if (!(Boolean) childNode.getProperty(Constants.PROPERTY_ABSTRACT)) {
-                        cm.putPossibleSpecialChild(className, (String) childNode.getProperty(Constants.PROPERTY_NAME));
+                        cachedPossibleSpecialChildren.add((String) childNode.getProperty(Constants.PROPERTY_NAME));
                         possibleSpecialChildren.add(Util.createClassMetadataLightFromNode(childNode));
                     }
                 }
             } else {
-                cm.putPossibleSpecialChild(className, (String) relationship.getEndNode().getProperty(Constants.PROPERTY_NAME));
+                cachedPossibleSpecialChildren.add((String) relationship.getEndNode().getProperty(Constants.PROPERTY_NAME));
                 possibleSpecialChildren.add(Util.createClassMetadataLightFromNode(relationship.getEndNode()));
             }
        }
+       Collections.sort(cachedPossibleSpecialChildren);
+       cm.putPossibleSpecialChildren(className, cachedPossibleSpecialChildren);
        return possibleSpecialChildren;
    }
    
@@ -1888,11 +1890,11 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
             return false;
         //then check every object of the subclasses of the given class
         String cypherQuery = "MATCH (inventory:classes) <-[:".concat(RelTypes.EXTENDS.toString()).concat("*]-(classmetadata) ").concat(
-                             "WHERE inventory.name = \""+ className + "\" ").concat(
+                             "WHERE inventory.name = $className ").concat(
                              "RETURN classmetadata ").concat(
                              "ORDER BY classmetadata.name ASC");
 
-        Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
+        Result result = connectionManager.getConnectionHandler().execute(cypherQuery, Collections.singletonMap("className", className)); //NOI18N
         Iterator<Node> n_column = result.columnAs("classmetadata");
         for (Node nodeClass : Iterators.asIterable(n_column))
             return objectsHasAttribute(nodeClass, attributeName, attributeType);
@@ -1945,6 +1947,18 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
     }
      
     
+    /**
+     * The parameters of the queries of the possible parents of a class
+     * @param className The name of the class
+     * @return The parameters
+     */
+    private Map<String, Object> getPossibleParentsParameters(String className) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("className", className); //NOI18N
+        parameters.put("dummyRoot", Constants.NODE_DUMMYROOT); //NOI18N
+        return parameters;
+    }
+    
     /**
      * Checks if the attribute can be unique 
      * @param classNode node of the class to which the unique attribute will be set
@@ -1953,20 +1967,22 @@ public class MetadataEntityManagerImpl implements MetadataEntityManager {
      * true if the attribute i s empty or are unique
      */
     private boolean canAttributeBeUnique(Node classNode, String attributeName) {
-        String className = (String)classNode.getProperty(Constants.PROPERTY_NAME);
+        Map<String, Object> parameters = Collections.singletonMap("className", classNode.getProperty(Constants.PROPERTY_NAME)); //NOI18N
+        // The attribute name can't be a parameter
+        String attribute = "instance.`" + attributeName.replace("`", "``") + "`"; //NOI18N
         
         if (classNode.hasRelationship(Direction.INCOMING, RelTypes.EXTENDS)) {
             //First we check the instances of the subclasses 
-            String cypherQuery = String.format("MATCH (instance)-[:INSTANCE_OF]->(subclass)-[:EXTENDS*]->(class:classes) WHERE class.name='%s' AND EXISTS(instance.%s) WITH instance.%s as attributeValue, collect(instance) as matchingNodes WHERE SIZE(matchingNodes) > 1 RETURN matchingNodes", className, attributeName, attributeName);
-            if (connectionManager.getConnectionHandler().execute(cypherQuery).hasNext())
+            String cypherQuery = String.format("MATCH (instance)-[:INSTANCE_OF]->(subclass)-[:EXTENDS*]->(class:classes) WHERE class.name = $className AND EXISTS(%s) WITH %s as attributeValue, collect(instance) as matchingNodes WHERE SIZE(matchingNodes) > 1 RETURN matchingNodes", attribute, attribute);
+            if (connectionManager.getConnectionHandler().execute(cypherQuery, parameters).hasNext())
                 return false;
             
             //Then the class itself
-            cypherQuery = String.format("MATCH (instance)-[:INSTANCE_OF]->(class:classes) WHERE class.name='%s' AND EXISTS(instance.%s) WITH instance.%s as attributeValue, collect(instance) as matchingNodes WHERE SIZE(matchingNodes) > 1 RETURN matchingNodes", className, attributeName, attributeName);
-            return !connectionManager.getConnectionHandler().execute(cypherQuery).hasNext();
+            cypherQuery = String.format("MATCH (instance)-[:INSTANCE_OF]->(class:classes) WHERE class.name = $className AND EXISTS(%s) WITH %s as attributeValue, collect(instance) as matchingNodes WHERE SIZE(matchingNodes) > 1 RETURN matchingNodes", attribute, attribute);
+            return !connectionManager.getConnectionHandler().execute(cypherQuery, parameters).hasNext();
         } else {
-            String cypherQuery = String.format("MATCH (instance)-[:INSTANCE_OF]->(class:classes) WHERE class.name='%s' AND EXISTS(instance.%s) WITH instance.%s as attributeValue, collect(instance) as matchingNodes WHERE SIZE(matchingNodes) > 1 RETURN matchingNodes", className, attributeName, attributeName);
-            return !connectionManager.getConnectionHandler().execute(cypherQuery).hasNext();
+            String cypherQuery = String.format("MATCH (instance)-[:INSTANCE_OF]->(class:classes) WHERE class.name = $className AND EXISTS(%s) WITH %s as attributeValue, collect(instance) as matchingNodes WHERE SIZE(matchingNodes) > 1 RETURN matchingNodes", attribute, attribute);
+            return !connectionManager.getConnectionHandler().execute(cypherQuery, parameters).hasNext();
         }        
         
     }
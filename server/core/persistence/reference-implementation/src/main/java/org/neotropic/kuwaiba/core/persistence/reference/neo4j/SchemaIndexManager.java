@@ -0,0 +1,395 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.neo4j.graphdb.ExecutionPlanDescription;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.ConstraintDefinition;
+import org.neo4j.graphdb.schema.ConstraintType;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.Schema;
+import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectSearchIndex;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Creates the schema indexes and uniqueness constraints the lookups by id and by name rely on.
+ * Without them, every <code>findNode(label, property, value)</code> or <code>MATCH (n:label {property: value})</code>
+ * is served by a scan of all the nodes with that label. The manager is run when the Persistence Service starts.
+ * Existing databases are migrated: missing indexes are created, plain indexes are replaced by constraints when
+ * a constraint is declared, and if a constraint can not be created because the existing data has duplicates,
+ * a plain index is created instead and the problem is reported.
+ */
+@Service
+public class SchemaIndexManager {
+    /**
+     * The indexes and constraints required by the persistence layer.
+     */
+    public static final List<IndexDeclaration> DECLARATIONS = Collections.unmodifiableList(Arrays.asList(
+            new IndexDeclaration(Constants.LABEL_INVENTORY_OBJECTS, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_CLASS, Constants.PROPERTY_NAME, true),
+            new IndexDeclaration(Constants.LABEL_USER, Constants.PROPERTY_NAME, true),
+            new IndexDeclaration(Constants.LABEL_POOLS, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_TEMPLATES, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_TEMPLATE_ELEMENTS, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_LIST_TYPE_ITEMS, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_PROXIES, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_PROXY_POOLS, Constants.PROPERTY_UUID, true),
+            new IndexDeclaration(Constants.LABEL_SPECIAL_NODE, Constants.PROPERTY_NAME, false),
+            new IndexDeclaration(Constants.LABEL_GROUP, Constants.PROPERTY_NAME, false),
+            new IndexDeclaration(Constants.LABEL_ATTRIBUTE, Constants.PROPERTY_NAME, false),
+            new IndexDeclaration(Constants.LABEL_VALIDATOR_DEFINITIONS, Constants.PROPERTY_CLASSNAME, false),
+            new IndexDeclaration(Constants.LABEL_PROCESS_INSTANCE, Constants.PROPERTY_UUID, false),
+            new IndexDeclaration(Constants.LABEL_GENERAL_ACTIVITY_LOGS, Constants.PROPERTY_CREATION_DATE, false),
+            new IndexDeclaration(Constants.LABEL_GENERAL_ACTIVITY_LOGS, Constants.PROPERTY_TYPE, false),
+            new IndexDeclaration("scheduledJobs", "jobId", false), //NOI18N
+            new IndexDeclaration("scheduledJobsPools", Constants.PROPERTY_UUID, false), //NOI18N
+            new IndexDeclaration(SessionStore.LABEL_SESSIONS, SessionStore.PROPERTY_TOKEN_HASH, false)
+    ));
+    /**
+     * Operators of the execution plans that read all the nodes with a label (or all the nodes).
+     */
+    private static final List<String> SCAN_OPERATORS = Arrays.asList("NodeByLabelScan", "AllNodesScan"); //NOI18N
+    /**
+     * Reference to the Connection Manager.
+     */
+    @Autowired
+    private ConnectionManager<GraphDatabaseService> connectionManager;
+    /**
+     * Reference to the Logging service.
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * The state of the indexes when the unindexed lookups were last checked (see {@link #getSchemaState()}), 
+     * null if they have not been checked yet
+     */
+    private String checkedSchemaState;
+    /**
+     * The unindexed lookups found in the last check
+     */
+    private List<IndexDeclaration> unindexedLookups;
+
+    /**
+     * Creates the declared indexes and constraints that don't exist yet, as well as the full-text indexes used in
+     * the searches (see {@link ObjectSearchIndex}), and logs the state of those that are not online yet.
+     * The indexes are populated in the background, so this method doesn't wait for them.
+     */
+    public void createIndexes() {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        for (IndexDeclaration declaration : DECLARATIONS) {
+            try {
+                createIndex(graphDb, declaration);
+            } catch (RuntimeException ex) {
+                log.writeLogMessage(LoggerType.ERROR, SchemaIndexManager.class,
+                        String.format("The index on %s could not be created", declaration), ex);
+            }
+        }
+        ObjectSearchIndex.createIndexes(graphDb);
+
+        for (IndexStatus status : getIndexStatuses()) {
+            if (!IndexStatus.STATE_ONLINE.equals(status.getState()))
+                log.writeLogMessage(LoggerType.INFO, SchemaIndexManager.class, status.toString());
+        }
+    }
+
+    /**
+     * Gets the state of all the indexes in the database (including the ones backing the constraints).
+     * @return The indexes and their population progress.
+     */
+    public List<IndexStatus> getIndexStatuses() {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        List<IndexStatus> res = new ArrayList<>();
+        try (Transaction tx = graphDb.beginTx()) {
+            Schema schema = graphDb.schema();
+            for (IndexDefinition index : schema.getIndexes()) {
+                List<String> labels = new ArrayList<>();
+                index.getLabels().forEach(label -> labels.add(label.name()));
+                List<String> properties = new ArrayList<>();
+                index.getPropertyKeys().forEach(properties::add);
+                res.add(new IndexStatus(index.getName(), labels, properties, index.isConstraintIndex(),
+                        schema.getIndexState(index).name(), schema.getIndexPopulationProgress(index).getCompletedPercentage()));
+            }
+            tx.success();
+        }
+        return res;
+    }
+
+    /**
+     * Checks which of the declared lookups would still be served by a label scan, for example,
+     * because the index is still being populated or it could not be created. Planning the lookups is 
+     * expensive, so the result is cached until an index is created, dropped or changes its state.
+     * @return The declarations whose lookups are not using an index. The list can not be modified.
+     */
+    public synchronized List<IndexDeclaration> getUnindexedLookups() {
+        String schemaState = getSchemaState();
+        if (schemaState.equals(checkedSchemaState))
+            return unindexedLookups;
+        
+        List<IndexDeclaration> res = new ArrayList<>();
+        for (IndexDeclaration declaration : DECLARATIONS) {
+            String query = String.format("MATCH (node:`%s` {`%s`: $value}) RETURN node", declaration.getLabel(), declaration.getProperty()); //NOI18N
+            if (!getLabelScans(query, Collections.singletonMap("value", "")).isEmpty()) //NOI18N
+                res.add(declaration);
+        }
+        unindexedLookups = Collections.unmodifiableList(res);
+        checkedSchemaState = schemaState;
+        return unindexedLookups;
+    }
+    
+    /**
+     * Describes the indexes in the database and their states, but not their population progress, 
+     * so two descriptions are equal only if the planner sees the same indexes. It's read from the schema, 
+     * nothing is planned.
+     * @return The description.
+     */
+    private String getSchemaState() {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        List<String> indexes = new ArrayList<>();
+        try (Transaction tx = graphDb.beginTx()) {
+            Schema schema = graphDb.schema();
+            for (IndexDefinition index : schema.getIndexes())
+                indexes.add(String.format("%s:%s", index.getName(), schema.getIndexState(index))); //NOI18N
+            tx.success();
+        }
+        Collections.sort(indexes);
+        return String.join(",", indexes); //NOI18N
+    }
+
+    /**
+     * Tells if a query would scan all the nodes with a given label (or all the nodes in the database) instead of using an index.
+     * The query is planned, but not executed.
+     * @param query The Cypher query.
+     * @param parameters The query parameters.
+     * @return The scan operators found in the execution plan, along with the variables they bind (e.g. NodeByLabelScan(object)).
+     * Empty if the query doesn't scan any label.
+     */
+    public List<String> getLabelScans(String query, Map<String, Object> parameters) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        List<String> res = new ArrayList<>();
+        try (Transaction tx = graphDb.beginTx()) {
+            try (Result result = graphDb.execute("EXPLAIN " + query, parameters)) { //NOI18N
+                findLabelScans(result.getExecutionPlanDescription(), res);
+            }
+            tx.success();
+        }
+        return res;
+    }
+
+    private void findLabelScans(ExecutionPlanDescription plan, List<String> res) {
+        if (SCAN_OPERATORS.contains(plan.getName()))
+            res.add(String.format("%s(%s)", plan.getName(), String.join(", ", plan.getIdentifiers()))); //NOI18N
+        for (ExecutionPlanDescription child : plan.getChildren())
+            findLabelScans(child, res);
+    }
+
+    /**
+     * Creates an index or a constraint if it doesn't exist yet. If a constraint is declared and there's
+     * a plain index on the same property, the index is replaced. Schema changes can not be mixed
+     * with data changes, so every change is made in its own transaction.
+     * @param graphDb The database handle.
+     * @param declaration The index to be created.
+     */
+    private void createIndex(GraphDatabaseService graphDb, IndexDeclaration declaration) {
+        Label label = Label.label(declaration.getLabel());
+        IndexDefinition existingIndex = null;
+        try (Transaction tx = graphDb.beginTx()) {
+            for (ConstraintDefinition constraint : graphDb.schema().getConstraints(label)) {
+                if (constraint.isConstraintType(ConstraintType.UNIQUENESS) &&
+                        constraint.getPropertyKeys().iterator().next().equals(declaration.getProperty()))
+                    return; // A constraint is backed by an index, so there's nothing to do
+            }
+            for (IndexDefinition index : graphDb.schema().getIndexes(label)) {
+                List<String> properties = new ArrayList<>();
+                index.getPropertyKeys().forEach(properties::add);
+                if (!index.isConstraintIndex() && properties.equals(Collections.singletonList(declaration.getProperty())))
+                    existingIndex = index;
+            }
+            tx.success();
+        }
+
+        if (!declaration.isUnique()) {
+            if (existingIndex == null) {
+                try (Transaction tx = graphDb.beginTx()) {
+                    graphDb.schema().indexFor(label).on(declaration.getProperty()).create();
+                    tx.success();
+                }
+                log.writeLogMessage(LoggerType.INFO, SchemaIndexManager.class, String.format("Index on %s created", declaration));
+            }
+            return;
+        }
+
+        // The duplicates have to be fixed by hand. Meanwhile, the lookups still need an index
+        if (hasDuplicates(graphDb, declaration)) {
+            if (existingIndex == null) {
+                try (Transaction tx = graphDb.beginTx()) {
+                    graphDb.schema().indexFor(label).on(declaration.getProperty()).create();
+                    tx.success();
+                }
+            }
+            log.writeLogMessage(LoggerType.WARN, SchemaIndexManager.class, 
+                    String.format("The uniqueness constraint on %s could not be created because there are duplicate values. A plain index is used instead", declaration));
+            return;
+        }
+        
+        // A constraint can not be created while there's an index on the same property
+        if (existingIndex != null) {
+            try (Transaction tx = graphDb.beginTx()) {
+                existingIndex.drop();
+                tx.success();
+            }
+        }
+        try {
+            try (Transaction tx = graphDb.beginTx()) {
+                graphDb.schema().constraintFor(label).assertPropertyIsUnique(declaration.getProperty()).create();
+                tx.success();
+            }
+            log.writeLogMessage(LoggerType.INFO, SchemaIndexManager.class, String.format("Uniqueness constraint on %s created", declaration));
+        } catch (RuntimeException ex) {
+            try (Transaction tx = graphDb.beginTx()) {
+                graphDb.schema().indexFor(label).on(declaration.getProperty()).create();
+                tx.success();
+            }
+            log.writeLogMessage(LoggerType.WARN, SchemaIndexManager.class, 
+                    String.format("The uniqueness constraint on %s could not be created. A plain index was created instead: %s", declaration, ex.getMessage()));
+        }
+    }
+    
+    /**
+     * Checks if two or more nodes with the label of a declaration have the same value in the indexed property.
+     * @param graphDb The database handle.
+     * @param declaration The index declaration.
+     * @return True if there's at least one duplicate value.
+     */
+    private boolean hasDuplicates(GraphDatabaseService graphDb, IndexDeclaration declaration) {
+        String query = String.format("MATCH (node:`%s`) WHERE exists(node.`%s`) " //NOI18N
+                + "WITH node.`%s` AS value, count(node) AS occurrences WHERE occurrences > 1 RETURN value LIMIT 1", //NOI18N
+                declaration.getLabel(), declaration.getProperty(), declaration.getProperty());
+        try (Transaction tx = graphDb.beginTx(); Result result = graphDb.execute(query)) {
+            boolean res = result.hasNext();
+            tx.success();
+            return res;
+        }
+    }
+
+    /**
+     * An index (or uniqueness constraint) on a single property of the nodes with a given label.
+     */
+    public static class IndexDeclaration {
+        private final String label;
+        private final String property;
+        /**
+         * If the values have to be unique. Unique values are indexed through a uniqueness constraint.
+         */
+        private final boolean unique;
+
+        public IndexDeclaration(String label, String property, boolean unique) {
+            this.label = label;
+            this.property = property;
+            this.unique = unique;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public boolean isUnique() {
+            return unique;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(":%s(%s)", label, property); //NOI18N
+        }
+    }
+
+    /**
+     * The state of an index at a given moment.
+     */
+    public static class IndexStatus {
+        public static final String STATE_ONLINE = "ONLINE"; //NOI18N
+        private final String name;
+        private final List<String> labels;
+        private final List<String> properties;
+        /**
+         * If the index backs a uniqueness constraint.
+         */
+        private final boolean constraint;
+        /**
+         * ONLINE, POPULATING or FAILED.
+         */
+        private final String state;
+        /**
+         * How much of the index has been populated, from 0 to 100.
+         */
+        private final float progress;
+
+        public IndexStatus(String name, List<String> labels, List<String> properties, boolean constraint, String state, float progress) {
+            this.name = name;
+            this.labels = labels;
+            this.properties = properties;
+            this.constraint = constraint;
+            this.state = state;
+            this.progress = progress;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getLabels() {
+            return labels;
+        }
+
+        public List<String> getProperties() {
+            return properties;
+        }
+
+        public boolean isConstraint() {
+            return constraint;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public float getProgress() {
+            return progress;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Index %s on %s(%s): %s (%.1f%%)", name, labels, properties, state, progress); //NOI18N
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+/**
+ * A snapshot of the session counters
+ */
+public class SessionStatistics {
+    /**
+     * Number of open sessions when the snapshot was taken
+     */
+    private final long activeSessions;
+    /**
+     * Number of users with at least one open session when the snapshot was taken
+     */
+    private final long activeUsers;
+    /**
+     * Number of sessions created since the application started
+     */
+    private final long createdSessions;
+    /**
+     * Number of sessions closed by the users or replaced by a newer session of the same type
+     */
+    private final long closedSessions;
+    /**
+     * Number of sessions removed because they were idle for too long
+     */
+    private final long expiredSessions;
+
+    public SessionStatistics(long activeSessions, long activeUsers, long createdSessions, long closedSessions, long expiredSessions) {
+        this.activeSessions = activeSessions;
+        this.activeUsers = activeUsers;
+        this.createdSessions = createdSessions;
+        this.closedSessions = closedSessions;
+        this.expiredSessions = expiredSessions;
+    }
+
+    public long getActiveSessions() {
+        return activeSessions;
+    }
+
+    public long getActiveUsers() {
+        return activeUsers;
+    }
+
+    public long getCreatedSessions() {
+        return createdSessions;
+    }
+
+    public long getClosedSessions() {
+        return closedSessions;
+    }
+
+    public long getExpiredSessions() {
+        return expiredSessions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s active sessions of %s users, %s created, %s closed, %s expired", //NOI18N
+                activeSessions, activeUsers, createdSessions, closedSessions, expiredSessions);
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
+import org.neotropic.kuwaiba.core.apis.persistence.application.Session;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.Util;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the open sessions. The sessions are indexed by token and by user and session type, so validating a token
+ * and replacing the previous session of a user are constant-time operations.
+ * Sessions not used for longer than the idle timeout expire. Using a session only updates its last access time: the
+ * sessions are placed in a timing wheel by their expiration time, and when their slot comes up, the sessions used
+ * in the meantime are placed again and the rest are removed. Sessions are also checked when they are looked up,
+ * so a session is never used past its idle timeout even if its slot has not come up yet.
+ * Optionally, the sessions can be kept in the database too, so they survive a restart. The last access times are
+ * saved when the expiration of a session is checked and when the store is stopped. Only a hash of the token is
+ * saved, so the restored sessions are kept apart, indexed by that hash, until they are used again and the token
+ * is known. The saved sessions are bound to the id and the name of the user, and discarded if either doesn't match
+ * when they are restored (e.g. if the user was deleted, or the id reused by another user).
+ */
+@Service
+public class SessionStore {
+    /**
+     * Configuration property with the idle timeout in minutes. 0 means the sessions never expire
+     */
+    public static final String PROPERTY_IDLE_TIMEOUT = "sessionIdleTimeout"; //NOI18N
+    /**
+     * Configuration property with where the sessions are kept: memory or database
+     */
+    public static final String PROPERTY_BACKEND = "sessionBackend"; //NOI18N
+    /**
+     * The sessions are lost when the application stops
+     */
+    public static final String BACKEND_MEMORY = "memory"; //NOI18N
+    /**
+     * The sessions are kept in the database too, and restored when the application starts
+     */
+    public static final String BACKEND_DATABASE = "database"; //NOI18N
+    /**
+     * Label of the nodes where the sessions are kept when the database backend is used
+     */
+    static final String LABEL_SESSIONS = "sessions"; //NOI18N
+    /**
+     * Property of the session nodes with the hash of the session token
+     */
+    static final String PROPERTY_TOKEN_HASH = "tokenHash"; //NOI18N
+    private static final String PROPERTY_USER_ID = "userId"; //NOI18N
+    private static final String PROPERTY_USER_NAME = "userName"; //NOI18N
+    private static final String PROPERTY_SESSION_TYPE = "sessionType"; //NOI18N
+    private static final String PROPERTY_LOGIN_TIME = "loginTime"; //NOI18N
+    private static final String PROPERTY_LAST_ACCESS_TIME = "lastAccessTime"; //NOI18N
+    /**
+     * Number of slots of the timing wheel
+     */
+    private static final int WHEEL_SIZE = 256;
+    /**
+     * Min time covered by a slot of the timing wheel, in milliseconds
+     */
+    private static final long MIN_TICK_DURATION = 1000;
+    /**
+     * Time in milliseconds to wait for the expiration check in progress to finish when the store is stopped
+     */
+    private static final long STOP_TIMEOUT = 10000;
+    /**
+     * Reference to the Connection Manager
+     */
+    @Autowired
+    private ConnectionManager<GraphDatabaseService> connectionManager;
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * Session token, session
+     */
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    /**
+     * User id, session type, session token. The inner maps are only accessed inside compute operations on the outer one
+     */
+    private final ConcurrentHashMap<Long, Map<Integer, String>> tokensByUser = new ConcurrentHashMap<>();
+    /**
+     * Token hash, session. The sessions restored from the database that have not been used since
+     */
+    private final ConcurrentHashMap<String, Session> restoredSessions = new ConcurrentHashMap<>();
+    private final AtomicLong createdSessions = new AtomicLong();
+    private final AtomicLong closedSessions = new AtomicLong();
+    private final AtomicLong expiredSessions = new AtomicLong();
+    /**
+     * Idle timeout in milliseconds, 0 if the sessions never expire
+     */
+    private volatile long idleTimeout;
+    private volatile boolean persistent;
+    /**
+     * Time covered by a slot of the timing wheel, in milliseconds
+     */
+    private long tickDuration;
+    /**
+     * The slots of the timing wheel. Every slot is guarded by its own monitor
+     */
+    private ArrayDeque<WheelEntry>[] wheel;
+    /**
+     * The last tick processed. A tick is the number of tick durations since the epoch
+     */
+    private volatile long currentTick;
+    private ScheduledExecutorService expirationScheduler;
+
+    /**
+     * Restores the sessions kept in the database if the database backend is used, and starts checking the expiration
+     * of the sessions if there's an idle timeout. Must be called after the connection to the database is open
+     * @param configuration The configuration properties: sessionIdleTimeout and sessionBackend. Those not set take their default values
+     * @throws IllegalArgumentException If the idle timeout is not a number
+     */
+    @SuppressWarnings("unchecked")
+    public void start(Properties configuration) {
+        stop();
+        idleTimeout = TimeUnit.MINUTES.toMillis(Math.max(0, Long.valueOf(configuration.getProperty(PROPERTY_IDLE_TIMEOUT, "0").trim())));
+        persistent = BACKEND_DATABASE.equalsIgnoreCase(configuration.getProperty(PROPERTY_BACKEND, BACKEND_MEMORY).trim());
+
+        if (persistent) {
+            sessions.clear();
+            tokensByUser.clear();
+            restoredSessions.clear();
+            restoreSessions();
+        }
+
+        if (idleTimeout > 0) {
+            tickDuration = Math.max(MIN_TICK_DURATION, idleTimeout / WHEEL_SIZE);
+            wheel = new ArrayDeque[WHEEL_SIZE];
+            for (int i = 0; i < WHEEL_SIZE; i++)
+                wheel[i] = new ArrayDeque<>();
+            currentTick = System.currentTimeMillis() / tickDuration;
+            sessions.values().forEach(this::schedule);
+
+            expirationScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "kuwaiba-session-expiration"); //NOI18N
+                thread.setDaemon(true);
+                return thread;
+            });
+            expirationScheduler.scheduleWithFixedDelay(this::expireSessions, tickDuration, tickDuration, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops checking the expiration of the sessions and, if the database backend is used, saves their last access times.
+     * Must be called before the connection to the database is closed
+     */
+    public void stop() {
+        if (expirationScheduler != null) {
+            expirationScheduler.shutdownNow();
+            try {
+                expirationScheduler.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            expirationScheduler = null;
+        }
+        if (persistent)
+            saveLastAccessTimes(sessions.values());
+    }
+
+    /**
+     * Gets the open sessions. The sessions restored from the database are included once they are used again
+     * @return A map whose keys are the session tokens and the values are the sessions
+     */
+    public ConcurrentHashMap<String, Session> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Gets a session and updates its last access time
+     * @param token The session token
+     * @return The session, or null if there's no such session or it has expired
+     */
+    public Session get(String token) {
+        if (token == null)
+            return null;
+        Session aSession = sessions.get(token);
+        if (aSession == null)
+            return restoredSessions.isEmpty() ? null : reattach(token);
+        long now = System.currentTimeMillis();
+        if (isExpired(aSession, now)) {
+            expire(aSession);
+            return null;
+        }
+        aSession.setLastAccessTime(now);
+        return aSession;
+    }
+
+    /**
+     * Moves a restored session to the open sessions the first time it's used after the restart
+     * @return The session, or null if there's no such session or it has expired
+     */
+    private Session reattach(String token) {
+        String tokenHash = hash(token);
+        Session aSession = restoredSessions.remove(tokenHash);
+        if (aSession == null)
+            return null;
+        long now = System.currentTimeMillis();
+        if (isExpired(aSession, now)) {
+            expiredSessions.incrementAndGet();
+            deleteSessionNodes(Collections.singletonList(tokenHash));
+            return null;
+        }
+        aSession.setToken(token);
+        aSession.setLastAccessTime(now);
+        index(aSession);
+        if (idleTimeout > 0)
+            schedule(aSession);
+        return aSession;
+    }
+
+    /**
+     * Adds a new session. Since a user can only have one session per session type, the previous session of the
+     * same user and type, if any, is removed
+     * @param aSession The new session
+     */
+    public void put(Session aSession) {
+        String previousToken = index(aSession);
+        Session previousSession = previousToken == null || previousToken.equals(aSession.getToken())
+                ? null : sessions.remove(previousToken);
+        createdSessions.incrementAndGet();
+        List<String> closedHashes = new ArrayList<>();
+        if (previousSession != null)
+            closedHashes.add(hash(previousSession.getToken()));
+        // The restored sessions are not in the index until they are used again
+        restoredSessions.entrySet().removeIf(entry -> {
+            boolean replaced = entry.getValue().getUser().getId() == aSession.getUser().getId()
+                    && entry.getValue().getSessionType() == aSession.getSessionType();
+            if (replaced)
+                closedHashes.add(entry.getKey());
+            return replaced;
+        });
+        closedSessions.addAndGet(closedHashes.size());
+
+        if (persistent) {
+            if (!closedHashes.isEmpty())
+                deleteSessionNodes(closedHashes);
+            createSessionNode(aSession);
+        }
+        if (idleTimeout > 0)
+            schedule(aSession);
+    }
+
+    /**
+     * Removes a session
+     * @param token The session token
+     * @return The removed session, or null if there was no such session
+     */
+    public Session remove(String token) {
+        if (token == null)
+            return null;
+        Session aSession = sessions.get(token);
+        if (aSession == null) {
+            if (restoredSessions.isEmpty() || (aSession = restoredSessions.remove(hash(token))) == null)
+                return null;
+        } else if (!removeSession(aSession))
+            return null;
+        closedSessions.incrementAndGet();
+        if (persistent)
+            deleteSessionNodes(Collections.singletonList(hash(token)));
+        return aSession;
+    }
+
+    /**
+     * Removes all the sessions of a user, e.g. when the user is deleted or disabled
+     * @param userId The id of the user
+     */
+    public void removeSessionsForUser(long userId) {
+        List<String> closedHashes = new ArrayList<>();
+        for (Session aSession : getSessionsForUser(userId)) {
+            if (aSession.getToken() != null && removeSession(aSession))
+                closedHashes.add(hash(aSession.getToken()));
+        }
+        restoredSessions.entrySet().removeIf(entry -> {
+            boolean removed = entry.getValue().getUser().getId() == userId;
+            if (removed)
+                closedHashes.add(entry.getKey());
+            return removed;
+        });
+        closedSessions.addAndGet(closedHashes.size());
+        if (persistent && !closedHashes.isEmpty())
+            deleteSessionNodes(closedHashes);
+    }
+
+    /**
+     * Gets the sessions of a user, including those restored from the database and not used since
+     * @param userId The id of the user
+     * @return The sessions of the user
+     */
+    public List<Session> getSessionsForUser(long userId) {
+        List<Session> userSessions = new ArrayList<>();
+        tokensByUser.computeIfPresent(userId, (id, tokens) -> {
+            tokens.values().forEach(token -> {
+                Session aSession = sessions.get(token);
+                if (aSession != null)
+                    userSessions.add(aSession);
+            });
+            return tokens;
+        });
+        restoredSessions.values().stream()
+                .filter(aSession -> aSession.getUser().getId() == userId)
+                .forEach(userSessions::add);
+        return userSessions;
+    }
+
+    /**
+     * Gets the session counters
+     * @return A snapshot of the counters
+     */
+    public SessionStatistics getStatistics() {
+        return new SessionStatistics(sessions.size() + restoredSessions.size(), tokensByUser.size(), createdSessions.get(),
+                closedSessions.get(), expiredSessions.get());
+    }
+
+    /**
+     * Adds a session to the indexes
+     * @return The token of the previous session of the same user and type, if any
+     */
+    private String index(Session aSession) {
+        String[] previousToken = new String[1];
+        tokensByUser.compute(aSession.getUser().getId(), (userId, tokens) -> {
+            Map<Integer, String> userTokens = tokens == null ? new HashMap<>() : tokens;
+            previousToken[0] = userTokens.put(aSession.getSessionType(), aSession.getToken());
+            return userTokens;
+        });
+        sessions.put(aSession.getToken(), aSession);
+        return previousToken[0];
+    }
+
+    private boolean isExpired(Session aSession, long now) {
+        long timeout = idleTimeout;
+        return timeout > 0 && now - aSession.getLastAccessTime() >= timeout;
+    }
+
+    private void expire(Session aSession) {
+        if (removeSession(aSession)) {
+            expiredSessions.incrementAndGet();
+            if (persistent)
+                deleteSessionNodes(Collections.singletonList(hash(aSession.getToken())));
+        }
+    }
+
+    /**
+     * Removes a session from the indexes and the database
+     * @return false if the session had already been removed
+     */
+    private boolean removeSession(Session aSession) {
+        if (!sessions.remove(aSession.getToken(), aSession))
+            return false;
+        tokensByUser.computeIfPresent(aSession.getUser().getId(), (userId, tokens) -> {
+            tokens.remove(aSession.getSessionType(), aSession.getToken());
+            return tokens.isEmpty() ? null : tokens;
+        });
+        return true;
+    }
+
+    /**
+     * Places a session in the slot of the timing wheel of its expiration time
+     */
+    private void schedule(Session aSession) {
+        ArrayDeque<WheelEntry>[] currentWheel = wheel;
+        if (currentWheel == null)
+            return;
+        long expirationTick = Math.max(currentTick + 1,
+                (aSession.getLastAccessTime() + idleTimeout + tickDuration - 1) / tickDuration);
+        ArrayDeque<WheelEntry> slot = currentWheel[(int) (expirationTick % WHEEL_SIZE)];
+        synchronized (slot) {
+            slot.add(new WheelEntry(aSession.getToken(), expirationTick));
+        }
+    }
+
+    /**
+     * Processes the slots of the timing wheel up to the current time. Called periodically by the expiration scheduler
+     */
+    private void expireSessions() {
+        try {
+            long now = System.currentTimeMillis();
+            long nowTick = now / tickDuration;
+            // Past a whole turn (e.g. if the system clock jumped forward), all the slots are processed only once
+            long tick = Math.max(currentTick, nowTick - WHEEL_SIZE);
+            List<Session> activeSessions = new ArrayList<>();
+            List<String> expiredHashes = new ArrayList<>();
+            while (tick < nowTick && !Thread.currentThread().isInterrupted()) {
+                tick++;
+                currentTick = tick;
+                // The restored sessions are not in the wheel, they are checked once per turn
+                if (tick % WHEEL_SIZE == 0 && !restoredSessions.isEmpty()) {
+                    restoredSessions.entrySet().removeIf(entry -> {
+                        boolean expired = isExpired(entry.getValue(), now);
+                        if (expired)
+                            expiredHashes.add(entry.getKey());
+                        return expired;
+                    });
+                }
+                List<WheelEntry> dueEntries = new ArrayList<>();
+                ArrayDeque<WheelEntry> slot = wheel[(int) (tick % WHEEL_SIZE)];
+                synchronized (slot) {
+                    for (Iterator<WheelEntry> entries = slot.iterator(); entries.hasNext();) {
+                        WheelEntry entry = entries.next();
+                        if (entry.expirationTick <= tick) {
+                            dueEntries.add(entry);
+                            entries.remove();
+                        }
+                    }
+                }
+                for (WheelEntry entry : dueEntries) {
+                    Session aSession = sessions.get(entry.token);
+                    if (aSession == null) // Closed in the meantime
+                        continue;
+                    if (isExpired(aSession, now)) {
+                        if (removeSession(aSession))
+                            expiredHashes.add(hash(aSession.getToken()));
+                    } else {
+                        schedule(aSession);
+                        activeSessions.add(aSession);
+                    }
+                }
+            }
+            expiredSessions.addAndGet(expiredHashes.size());
+            if (persistent) {
+                if (!expiredHashes.isEmpty())
+                    deleteSessionNodes(expiredHashes);
+                if (!activeSessions.isEmpty())
+                    saveLastAccessTimes(activeSessions);
+            }
+            if (!expiredHashes.isEmpty())
+                log.writeLogMessage(LoggerType.INFO, SessionStore.class, String.format("%s idle sessions expired", expiredHashes.size()));
+        } catch (RuntimeException ex) {
+            // An exception would cancel the periodic execution
+            log.writeLogMessage(LoggerType.ERROR, SessionStore.class, "Unexpected error checking the expiration of the sessions", ex);
+        }
+    }
+
+    private void createSessionNode(Session aSession) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        try (Transaction tx = graphDb.beginTx()) {
+            Node sessionNode = graphDb.createNode(Label.label(LABEL_SESSIONS));
+            sessionNode.setProperty(PROPERTY_TOKEN_HASH, hash(aSession.getToken()));
+            sessionNode.setProperty(PROPERTY_USER_ID, aSession.getUser().getId());
+            sessionNode.setProperty(PROPERTY_USER_NAME, aSession.getUser().getUserName());
+            sessionNode.setProperty(PROPERTY_SESSION_TYPE, aSession.getSessionType());
+            sessionNode.setProperty(PROPERTY_LOGIN_TIME, aSession.getLoginTime().getTime());
+            sessionNode.setProperty(PROPERTY_LAST_ACCESS_TIME, aSession.getLastAccessTime());
+            tx.success();
+        } catch (RuntimeException ex) {
+            log.writeLogMessage(LoggerType.ERROR, SessionStore.class,
+                    String.format("Session %s could not be saved, it won't be restored after a restart", aSession), ex);
+        }
+    }
+
+    private void deleteSessionNodes(List<String> tokenHashes) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        try (Transaction tx = graphDb.beginTx()) {
+            for (String tokenHash : tokenHashes) {
+                try (ResourceIterator<Node> sessionNodes = graphDb.findNodes(Label.label(LABEL_SESSIONS), PROPERTY_TOKEN_HASH, tokenHash)) {
+                    sessionNodes.forEachRemaining(Node::delete);
+                }
+            }
+            tx.success();
+        } catch (RuntimeException ex) {
+            log.writeLogMessage(LoggerType.ERROR, SessionStore.class, "The closed sessions could not be deleted from the database", ex);
+        }
+    }
+
+    private void saveLastAccessTimes(Collection<Session> sessionsToSave) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        if (graphDb == null)
+            return;
+        try (Transaction tx = graphDb.beginTx()) {
+            for (Session aSession : sessionsToSave) {
+                Node sessionNode = graphDb.findNode(Label.label(LABEL_SESSIONS), PROPERTY_TOKEN_HASH, hash(aSession.getToken()));
+                if (sessionNode != null)
+                    sessionNode.setProperty(PROPERTY_LAST_ACCESS_TIME, aSession.getLastAccessTime());
+            }
+            tx.success();
+        } catch (RuntimeException ex) {
+            log.writeLogMessage(LoggerType.ERROR, SessionStore.class, "The last access times of the sessions could not be saved", ex);
+        }
+    }
+
+    /**
+     * Loads the sessions kept in the database. The sessions of users that no longer exist, were renamed or are disabled,
+     * the sessions saved by previous versions (with no token hash or user name), and the sessions that expired
+     * while the application was stopped are deleted
+     */
+    private void restoreSessions() {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        long now = System.currentTimeMillis();
+        int restored = 0, discarded = 0;
+        try (Transaction tx = graphDb.beginTx()) {
+            try (ResourceIterator<Node> sessionNodes = graphDb.findNodes(Label.label(LABEL_SESSIONS))) {
+                while (sessionNodes.hasNext()) {
+                    Node sessionNode = sessionNodes.next();
+                    Object userName = sessionNode.getProperty(PROPERTY_USER_NAME, null);
+                    Node userNode = userName instanceof String
+                            ? graphDb.findNode(Label.label(Constants.LABEL_USER), Constants.PROPERTY_NAME, userName) : null;
+                    if (userNode == null || !sessionNode.hasProperty(PROPERTY_TOKEN_HASH)
+                            || !Long.valueOf(userNode.getId()).equals(sessionNode.getProperty(PROPERTY_USER_ID, null))
+                            || !(boolean) userNode.getProperty(Constants.PROPERTY_ENABLED, false)) {
+                        sessionNode.delete();
+                        discarded++;
+                        continue;
+                    }
+                    Session aSession;
+                    try {
+                        aSession = new Session(Util.createUserProfileWithGroupPrivilegesFromNode(userNode),
+                                (int) sessionNode.getProperty(PROPERTY_SESSION_TYPE));
+                        aSession.setToken(null); // Unknown until the session is used again
+                        aSession.setLoginTime(new Date((long) sessionNode.getProperty(PROPERTY_LOGIN_TIME)));
+                        aSession.setLastAccessTime((long) sessionNode.getProperty(PROPERTY_LAST_ACCESS_TIME));
+                    } catch (NotFoundException | ClassCastException ex) {
+                        log.writeLogMessage(LoggerType.WARN, SessionStore.class,
+                                String.format("Saved session %s is not valid: %s", sessionNode.getId(), ex.getMessage()));
+                        aSession = null;
+                    }
+                    if (aSession == null || isExpired(aSession, now)) {
+                        sessionNode.delete();
+                        discarded++;
+                        continue;
+                    }
+                    restoredSessions.put((String) sessionNode.getProperty(PROPERTY_TOKEN_HASH), aSession);
+                    restored++;
+                }
+            }
+            tx.success();
+        } catch (RuntimeException ex) {
+            log.writeLogMessage(LoggerType.ERROR, SessionStore.class, "The saved sessions could not be restored", ex);
+        }
+        log.writeLogMessage(LoggerType.INFO, SessionStore.class,
+                String.format("%s sessions restored, %s expired or invalid sessions discarded", restored, discarded));
+    }
+
+    /**
+     * Hashes a session token, so the tokens saved in the database can't be used to take over the sessions
+     */
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)); //NOI18N
+            StringBuilder res = new StringBuilder();
+            for (byte aByte : digest)
+                res.append(String.format("%02x", aByte)); //NOI18N
+            return res.toString();
+        } catch (NoSuchAlgorithmException ex) { // Every JVM must support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A session placed in a slot of the timing wheel
+     */
+    private static class WheelEntry {
+        private final String token;
+        /**
+         * The tick when the session expires if it's not used before
+         */
+        private final long expirationTick;
+
+        private WheelEntry(String token, long expirationTick) {
+            this.token = token;
+            this.expirationTick = expirationTick;
+        }
+    }
+}
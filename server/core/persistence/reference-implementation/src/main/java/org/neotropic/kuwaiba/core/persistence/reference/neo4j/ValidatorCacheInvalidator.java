@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEvent;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEventListener;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeSubscription;
+import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Removes the cached validators of the objects changed by the committed transactions, as published by the 
+ * {@link ChangeEventPublisher}, so the changes made by scripts and raw queries are caught too. The validators of an 
+ * object are removed when its attributes change, when it's moved or deleted (and those of its new parent), and when 
+ * a special relationship it's an end of is added or released. All the validators are removed when the metadata of 
+ * a class changes or when some events could not be delivered.
+ * The events are delivered shortly after the commit, so the validators computed before them are not cached if their 
+ * object has been evicted since they started to be computed (see {@link CacheManager#putValidators(java.lang.String, java.util.Map, long)}), 
+ * and neither are the ones computed by a transaction that has written anything, since its changes may be rolled back.
+ */
+@Service
+public class ValidatorCacheInvalidator implements ChangeEventListener {
+    /**
+     * Name of the subscription to the change events
+     */
+    private static final String SUBSCRIBER_NAME = "validator-cache"; //NOI18N
+    /**
+     * Publishes the changes committed to the database
+     */
+    @Autowired
+    private ChangeEventPublisher changeEventPublisher;
+    /**
+     * Gives access to the transaction of the current thread, to tell if it has written anything
+     */
+    private ThreadToStatementContextBridge transactionBridge;
+    private ChangeSubscription subscription;
+
+    /**
+     * Starts evicting the cached validators of the objects changed in a database. Call it right after opening the database
+     * @param graphDb The database handle
+     */
+    public synchronized void register(GraphDatabaseService graphDb) {
+        this.transactionBridge = ((GraphDatabaseAPI) graphDb).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        if (subscription == null)
+            subscription = changeEventPublisher.subscribe(SUBSCRIBER_NAME, this);
+        CacheManager.getInstance().clearValidators();
+    }
+
+    /**
+     * Tells if the validators computed by the current thread can be cached
+     * @return false if the transaction of the current thread, if any, has written anything
+     */
+    public boolean canCacheValidators() {
+        if (transactionBridge == null)
+            return true;
+        KernelTransaction transaction = transactionBridge.getKernelTransactionBoundToThisThread(false);
+        return !(transaction instanceof TxStateHolder && ((TxStateHolder) transaction).hasTxStateWithChanges());
+    }
+
+    // <editor-fold desc="ChangeEventListener implementation" defaultstate="collapsed">
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        Set<String> changedObjectIds = new HashSet<>();
+        for (ChangeEvent anEvent : events) {
+            switch (anEvent.getType()) {
+                case OBJECT_CREATED:
+                    break; // Nothing can have been cached for it yet
+                case CLASS_CHANGED:
+                case EVENTS_LOST:
+                    CacheManager.getInstance().clearValidators();
+                    return;
+                default:
+                    if (anEvent.getObjectId() != null)
+                        changedObjectIds.add(anEvent.getObjectId());
+                    if (anEvent.getRelatedObjectId() != null)
+                        changedObjectIds.add(anEvent.getRelatedObjectId());
+            }
+        }
+        if (!changedObjectIds.isEmpty())
+            CacheManager.getInstance().removeValidators(changedObjectIds.toArray(new String[0]));
+    }
+    // </editor-fold>
+}
@@ -0,0 +1,308 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Predicate;
+
+/**
+ * Finds the k cheapest loopless routes between two objects of a {@link RouteGraph}, using Yen's algorithm
+ * (with Lawler's improvement, so only the deviations after the previous deviation point are explored) on top of
+ * Dijkstra's. The cost of a route is the sum of the costs of the objects it enters, so the links of the domain specific
+ * models, which are objects too, can carry their own cost. The working arrays are reused across the Dijkstra runs
+ * of a search, and reset by stamping them instead of clearing them.
+ * A finder is meant to be used for a single search, by a single thread holding the read lock of the graph.
+ */
+class RouteFinder {
+    private final RouteGraph graph;
+    /**
+     * The cost of entering an object, by number. Must not be negative. Infinite means the object can't be entered
+     */
+    private final IntToDoubleFunction nodeCost;
+    /**
+     * The objects no route can go through
+     */
+    private final BitSet excludedNodes;
+    private final double[] distances;
+    private final int[] previous;
+    /**
+     * The search that last touched the entry of every object. An entry with an older stamp is not set
+     */
+    private final int[] stamps;
+    private int stamp;
+    private final BitSet settled;
+    private final NodeHeap heap;
+
+    RouteFinder(RouteGraph graph, IntToDoubleFunction nodeCost, BitSet excludedNodes) {
+        this.graph = graph;
+        this.nodeCost = nodeCost;
+        this.excludedNodes = excludedNodes;
+        int nodeCount = graph.getNodeCount();
+        this.distances = new double[nodeCount];
+        this.previous = new int[nodeCount];
+        this.stamps = new int[nodeCount];
+        this.settled = new BitSet(nodeCount);
+        this.heap = new NodeHeap(Math.max(16, nodeCount / 4));
+    }
+
+    /**
+     * Finds the cheapest routes, cheapest first. Among routes with the same cost, the shortest come first
+     * @param source The number of the first object
+     * @param target The number of the last object
+     * @param maxRoutes Max number of routes to be returned
+     * @param maxCandidates Max number of routes to be examined. Routes are examined in order, so the limit only matters
+     * if many of them are rejected by the filter
+     * @param filter The routes that must be returned. The routes rejected are still used to find the next ones
+     * @param stopOnRejection If the first route rejected means that none of the following will be accepted either,
+     * e.g. when the routes are sorted by hops and the filter is a max number of hops
+     * @return The routes, as arrays with the numbers of the objects, both ends included
+     */
+    List<int[]> findRoutes(int source, int target, int maxRoutes, int maxCandidates, Predicate<int[]> filter, boolean stopOnRejection) {
+        List<int[]> routes = new ArrayList<>();
+        if (source == target || excludedNodes.get(source) || excludedNodes.get(target))
+            return routes;
+
+        Route first = shortestRoute(source, target, null, null);
+        if (first == null)
+            return routes;
+
+        // The routes already examined, in order, and the candidates to be the next one
+        List<Route> examined = new ArrayList<>();
+        PriorityQueue<Route> candidates = new PriorityQueue<>();
+        Set<Route> known = new HashSet<>();
+        candidates.add(first);
+        known.add(first);
+
+        BitSet blockedNodes = new BitSet(graph.getNodeCount());
+        BitSet blockedFirstHops = new BitSet(graph.getNodeCount());
+        while (!candidates.isEmpty() && routes.size() < maxRoutes && examined.size() < maxCandidates) {
+            Route route = candidates.poll();
+            examined.add(route);
+            if (filter.test(route.nodes))
+                routes.add(route.nodes);
+            else if (stopOnRejection)
+                break;
+            if (routes.size() == maxRoutes)
+                break;
+
+            // Every object of the route from the deviation point on is a spur node. The route up to it is the root,
+            // whose objects can't be entered again, and the next hops taken by the routes examined with the same root
+            // are blocked, so the spur route is a new one
+            double rootCost = 0;
+            for (int i = 1; i < route.deviation; i++)
+                rootCost += nodeCost.applyAsDouble(route.nodes[i]);
+            for (int i = route.deviation; i < route.nodes.length - 1; i++) {
+                if (i > 0)
+                    rootCost += nodeCost.applyAsDouble(route.nodes[i]);
+                int spurNode = route.nodes[i];
+                blockedNodes.clear();
+                blockedFirstHops.clear();
+                for (int j = 0; j < i; j++)
+                    blockedNodes.set(route.nodes[j]);
+                for (Route anExaminedRoute : examined) {
+                    if (anExaminedRoute.nodes.length > i + 1 && sharesRoot(anExaminedRoute.nodes, route.nodes, i))
+                        blockedFirstHops.set(anExaminedRoute.nodes[i + 1]);
+                }
+                Route spurRoute = shortestRoute(spurNode, target, blockedNodes, blockedFirstHops);
+                if (spurRoute == null)
+                    continue;
+                int[] nodes = new int[i + spurRoute.nodes.length];
+                System.arraycopy(route.nodes, 0, nodes, 0, i);
+                System.arraycopy(spurRoute.nodes, 0, nodes, i, spurRoute.nodes.length);
+                Route candidate = new Route(nodes, rootCost + spurRoute.cost, i);
+                if (known.add(candidate))
+                    candidates.add(candidate);
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Dijkstra's algorithm
+     * @param source Where the route starts
+     * @param target Where the route ends
+     * @param blockedNodes Objects that can't be entered. Optional
+     * @param blockedFirstHops Objects that can't be entered right from the source. Optional
+     * @return The cheapest route, or null if the target can't be reached
+     */
+    private Route shortestRoute(int source, int target, BitSet blockedNodes, BitSet blockedFirstHops) {
+        stamp++;
+        settled.clear();
+        heap.clear();
+        reach(source, 0, -1);
+        heap.add(source, 0);
+        while (!heap.isEmpty()) {
+            double distance = heap.peekKey();
+            int node = heap.poll();
+            if (settled.get(node) || distance > distances[node])
+                continue;
+            if (node == target)
+                return buildRoute(source, target);
+            settled.set(node);
+            for (int i = 0; i < graph.getDegree(node); i++) {
+                int neighbor = graph.getNeighbor(node, i);
+                if (settled.get(neighbor) || excludedNodes.get(neighbor)
+                        || (blockedNodes != null && blockedNodes.get(neighbor))
+                        || (node == source && blockedFirstHops != null && blockedFirstHops.get(neighbor)))
+                    continue;
+                double cost = nodeCost.applyAsDouble(neighbor);
+                if (cost == Double.POSITIVE_INFINITY)
+                    continue;
+                double newDistance = distance + cost;
+                if (stamps[neighbor] != stamp || newDistance < distances[neighbor]) {
+                    reach(neighbor, newDistance, node);
+                    heap.add(neighbor, newDistance);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void reach(int node, double distance, int from) {
+        stamps[node] = stamp;
+        distances[node] = distance;
+        previous[node] = from;
+    }
+
+    private Route buildRoute(int source, int target) {
+        int length = 1;
+        for (int node = target; node != source; node = previous[node])
+            length++;
+        int[] nodes = new int[length];
+        int node = target;
+        for (int i = length - 1; i >= 0; i--) {
+            nodes[i] = node;
+            node = previous[node];
+        }
+        return new Route(nodes, distances[target], 0);
+    }
+
+    /**
+     * Checks if two routes share their first objects, up to a given position (inclusive)
+     */
+    private static boolean sharesRoot(int[] routeA, int[] routeB, int position) {
+        for (int i = 0; i <= position; i++) {
+            if (routeA[i] != routeB[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A route, its cost and the position where it deviated from the route it was derived from
+     */
+    private static class Route implements Comparable<Route> {
+        private final int[] nodes;
+        private final double cost;
+        private final int deviation;
+
+        Route(int[] nodes, double cost, int deviation) {
+            this.nodes = nodes;
+            this.cost = cost;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public int compareTo(Route other) {
+            int comparison = Double.compare(cost, other.cost);
+            return comparison != 0 ? comparison : Integer.compare(nodes.length, other.nodes.length);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Route && Arrays.equals(nodes, ((Route) obj).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
+        }
+    }
+
+    /**
+     * A binary min-heap of object numbers keyed by distance. An object may be added more than once, with
+     * decreasing distances; the stale entries are skipped when polled
+     */
+    private static class NodeHeap {
+        private int[] nodes;
+        private double[] keys;
+        private int size;
+
+        NodeHeap(int capacity) {
+            nodes = new int[capacity];
+            keys = new double[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void add(int node, double key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key)
+                    break;
+                nodes[i] = nodes[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        int poll() {
+            int top = nodes[0];
+            int node = nodes[--size];
+            double key = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[child + 1] < keys[child])
+                    child++;
+                if (keys[child] >= key)
+                    break;
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+            return top;
+        }
+    }
+}
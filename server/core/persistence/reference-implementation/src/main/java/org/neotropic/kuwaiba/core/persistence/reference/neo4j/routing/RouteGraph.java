@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.routing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A compact, undirected snapshot of the objects connected by the special relationships of a given name.
+ * The objects are numbered as they're added, and the neighbors of every object are kept in an array of those numbers,
+ * so the searches don't create any object per hop. Parallel relationships between the same two objects are kept
+ * as one neighbor with a count, so releasing one of them doesn't disconnect the objects.
+ * The graph is not thread safe by itself: the searches must hold the read lock and the changes, the write lock.
+ */
+class RouteGraph {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int[] NO_NEIGHBORS = new int[0];
+    private final String relationshipName;
+    /**
+     * Object id, object number
+     */
+    private final Map<String, Integer> nodeNumbers = new HashMap<>();
+    /**
+     * Object number, object id
+     */
+    private String[] nodeIds = new String[INITIAL_CAPACITY];
+    /**
+     * Object number, the numbers of its neighbors. Only the first degree entries are used
+     */
+    private int[][] neighbors = new int[INITIAL_CAPACITY][];
+    /**
+     * Object number, the number of relationships to each of its neighbors
+     */
+    private int[][] multiplicities = new int[INITIAL_CAPACITY][];
+    private int[] degrees = new int[INITIAL_CAPACITY];
+    private int nodeCount;
+    private int linkCount;
+    /**
+     * The changes made by the transactions with ids up to this one are already in the snapshot
+     */
+    private long lastTransactionId;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    RouteGraph(String relationshipName) {
+        this.relationshipName = relationshipName;
+    }
+
+    String getRelationshipName() {
+        return relationshipName;
+    }
+
+    ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    long getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    void setLastTransactionId(long lastTransactionId) {
+        this.lastTransactionId = lastTransactionId;
+    }
+
+    /**
+     * @return Number of objects ever connected, even if they're not anymore
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return Number of distinct pairs of connected objects
+     */
+    int getLinkCount() {
+        return linkCount;
+    }
+
+    /**
+     * @param objectId The id of an object
+     * @return The number of the object, or -1 if it has never been connected
+     */
+    int getNodeNumber(String objectId) {
+        Integer number = nodeNumbers.get(objectId);
+        return number == null ? -1 : number;
+    }
+
+    String getNodeId(int node) {
+        return nodeIds[node];
+    }
+
+    int getDegree(int node) {
+        return degrees[node];
+    }
+
+    int getNeighbor(int node, int index) {
+        return neighbors[node][index];
+    }
+
+    /**
+     * Adds a relationship between two objects. Relationships from an object to itself are ignored, since they're never part of a route
+     */
+    void addLink(String objectAId, String objectBId) {
+        if (objectAId.equals(objectBId))
+            return;
+        int nodeA = addNode(objectAId);
+        int nodeB = addNode(objectBId);
+        boolean newLink = increment(nodeA, nodeB);
+        increment(nodeB, nodeA);
+        if (newLink)
+            linkCount++;
+    }
+
+    /**
+     * Removes a relationship between two objects. Nothing happens if they're not connected
+     */
+    void removeLink(String objectAId, String objectBId) {
+        int nodeA = getNodeNumber(objectAId);
+        int nodeB = getNodeNumber(objectBId);
+        if (nodeA == -1 || nodeB == -1)
+            return;
+        boolean removedLink = decrement(nodeA, nodeB);
+        decrement(nodeB, nodeA);
+        if (removedLink)
+            linkCount--;
+    }
+
+    private int addNode(String objectId) {
+        Integer number = nodeNumbers.get(objectId);
+        if (number != null)
+            return number;
+        if (nodeCount == nodeIds.length) {
+            int capacity = nodeIds.length * 2;
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            neighbors = Arrays.copyOf(neighbors, capacity);
+            multiplicities = Arrays.copyOf(multiplicities, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+        }
+        nodeIds[nodeCount] = objectId;
+        neighbors[nodeCount] = NO_NEIGHBORS;
+        multiplicities[nodeCount] = NO_NEIGHBORS;
+        nodeNumbers.put(objectId, nodeCount);
+        return nodeCount++;
+    }
+
+    /**
+     * @return true if the neighbor is new
+     */
+    private boolean increment(int node, int neighbor) {
+        int index = indexOf(node, neighbor);
+        if (index != -1) {
+            multiplicities[node][index]++;
+            return false;
+        }
+        int degree = degrees[node];
+        if (degree == neighbors[node].length) {
+            int capacity = Math.max(4, degree * 2);
+            neighbors[node] = Arrays.copyOf(neighbors[node], capacity);
+            multiplicities[node] = Arrays.copyOf(multiplicities[node], capacity);
+        }
+        neighbors[node][degree] = neighbor;
+        multiplicities[node][degree] = 1;
+        degrees[node]++;
+        return true;
+    }
+
+    /**
+     * @return true if the neighbor was removed
+     */
+    private boolean decrement(int node, int neighbor) {
+        int index = indexOf(node, neighbor);
+        if (index == -1)
+            return false;
+        if (--multiplicities[node][index] > 0)
+            return false;
+        int last = --degrees[node];
+        neighbors[node][index] = neighbors[node][last];
+        multiplicities[node][index] = multiplicities[node][last];
+        return true;
+    }
+
+    private int indexOf(int node, int neighbor) {
+        int[] nodeNeighbors = neighbors[node];
+        for (int i = 0; i < degrees[node]; i++) {
+            if (nodeNeighbors[i] == neighbor)
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Predicate;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.transaction.log.TransactionIdStore;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
+import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLightList;
+import org.neotropic.kuwaiba.core.apis.persistence.business.RouteConstraints;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEvent;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeEventBus;
+import org.neotropic.kuwaiba.core.apis.persistence.events.ChangeSubscription;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQuery;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.CypherQueryExecutor;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectGraphMappingService;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Finds routes between inventory objects through the special relationships of a given name (e.g. the transport
+ * and container links of SDH, or any other domain specific model). Instead of letting the database enumerate every path,
+ * it keeps an in-memory snapshot of the objects connected by every relationship name used so far, built the first
+ * time the name is used, and kept up to date with the change events, and runs a k-shortest loopless paths search on it.
+ * A snapshot is discarded and built again if some change events were lost, or if a route found in it turns out not to
+ * exist anymore, since every route is checked against the database before it's returned.
+ */
+@Service
+public class RoutingEngine {
+    /**
+     * Name of the subscriber to the change events
+     */
+    private static final String SUBSCRIBER_NAME = "routing-engine"; //NOI18N
+    /**
+     * Every route can be rejected by the constraints. At most this many times the number of routes
+     * requested are examined before giving up
+     */
+    private static final int MAX_CANDIDATES_FACTOR = 10;
+    /**
+     * Min number of routes examined before giving up, no matter how few routes were requested
+     */
+    private static final int MIN_CANDIDATES = 100;
+    private static final CypherQuery QUERY_GET_LINKS = CypherQuery.template("routing.getLinks", //NOI18N
+            "MATCH (a:" + Constants.LABEL_INVENTORY_OBJECTS + ")-[relationship:" + RelTypes.RELATED_TO_SPECIAL + "]->(b:" //NOI18N
+            + Constants.LABEL_INVENTORY_OBJECTS + ") WHERE relationship.name = $relationshipName " //NOI18N
+            + "RETURN a._uuid AS a, b._uuid AS b"); //NOI18N
+    private static final Label LABEL_INVENTORY_OBJECTS = Label.label(Constants.LABEL_INVENTORY_OBJECTS);
+    /**
+     * Reference to the Connection Manager
+     */
+    @Autowired
+    private ConnectionManager<GraphDatabaseService> connectionManager;
+    /**
+     * Reference to the bus with the changes committed to the inventory
+     */
+    @Autowired
+    private ChangeEventBus changeEventBus;
+    /**
+     * Runs the Cypher statements
+     */
+    @Autowired
+    private CypherQueryExecutor cypherQueryExecutor;
+    /**
+     * Reference to the service that maps nodes to inventory objects
+     */
+    @Autowired
+    private ObjectGraphMappingService ogmService;
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * Relationship name, the snapshot of the objects it connects
+     */
+    private final Map<String, RouteGraph> graphs = new ConcurrentHashMap<>();
+    private ChangeSubscription subscription;
+
+    /**
+     * Discards the snapshots and stops following the changes. To be called when the connection to the database is closed.
+     * The snapshots are built again the next time they're needed
+     */
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+        graphs.clear();
+    }
+
+    /**
+     * Finds the cheapest loopless routes between two objects
+     * @param objectAId The id of the object where the routes start
+     * @param objectBId The id of the object where the routes end
+     * @param relationshipName The name of the special relationships the routes go through
+     * @param constraints The max number of routes and hops, the cost model and the objects to be included or excluded
+     * @return The routes, cheapest first, both ends included
+     * @throws InvalidArgumentException If the ids are not set or the constraints are not valid
+     */
+    public List<BusinessObjectLightList> findRoutes(String objectAId, String objectBId, String relationshipName,
+            RouteConstraints constraints) throws InvalidArgumentException {
+        if (objectAId == null || objectBId == null)
+            throw new InvalidArgumentException("The ids of the ends of the route can not be null");
+        if (relationshipName == null)
+            throw new InvalidArgumentException("The relationship name can not be null");
+        if (constraints.getMaxRoutes() <= 0 || constraints.getMaxHops() <= 0)
+            throw new InvalidArgumentException("The max number of routes and hops must be positive");
+        if (constraints.getCostType() != RouteConstraints.CostType.HOPS && constraints.getCostAttribute() == null)
+            throw new InvalidArgumentException(String.format("The cost type %s needs a cost attribute", constraints.getCostType()));
+        if (!(constraints.getDefaultCost() >= 0)) // Also rejects NaN
+            throw new InvalidArgumentException("The default cost can not be negative");
+
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        RouteGraph graph = getGraph(relationshipName);
+        List<String[]> routeIds = new ArrayList<>();
+        try (Transaction tx = graphDb.beginTx()) { // The costs may have to be read from the database
+            graph.getLock().readLock().lock();
+            try {
+                int source = graph.getNodeNumber(objectAId);
+                int target = graph.getNodeNumber(objectBId);
+                if (source == -1 || target == -1)
+                    return new ArrayList<>();
+
+                BitSet excludedNodes = new BitSet(graph.getNodeCount());
+                for (String anObjectId : constraints.getExcludedObjects()) {
+                    int node = graph.getNodeNumber(anObjectId);
+                    if (node != -1)
+                        excludedNodes.set(node);
+                }
+                int[] includedNodes = new int[constraints.getIncludedObjects().size()];
+                int i = 0;
+                for (String anObjectId : constraints.getIncludedObjects()) {
+                    includedNodes[i] = graph.getNodeNumber(anObjectId);
+                    if (includedNodes[i++] == -1) // An object that is not connected can't be part of any route
+                        return new ArrayList<>();
+                }
+                int maxHops = constraints.getMaxHops();
+                Predicate<int[]> filter = route -> {
+                    if (route.length - 1 > maxHops)
+                        return false;
+                    for (int anIncludedNode : includedNodes) {
+                        boolean found = false;
+                        for (int aNode : route) {
+                            if (aNode == anIncludedNode) {
+                                found = true;
+                                break;
+                            }
+                        }
+                        if (!found)
+                            return false;
+                    }
+                    return true;
+                };
+                // Sorted by hops, once a route is too long, the rest are too
+                boolean stopOnRejection = constraints.getCostType() == RouteConstraints.CostType.HOPS && includedNodes.length == 0;
+
+                RouteFinder finder = new RouteFinder(graph, getNodeCost(graphDb, graph, constraints), excludedNodes);
+                int maxRoutes = constraints.getMaxRoutes();
+                int maxCandidates = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_CANDIDATES, (long) maxRoutes * MAX_CANDIDATES_FACTOR));
+                for (int[] aRoute : finder.findRoutes(source, target, maxRoutes, maxCandidates, filter, stopOnRejection)) {
+                    String[] ids = new String[aRoute.length];
+                    for (int j = 0; j < aRoute.length; j++)
+                        ids[j] = graph.getNodeId(aRoute[j]);
+                    routeIds.add(ids);
+                }
+            } finally {
+                graph.getLock().readLock().unlock();
+            }
+            return toObjects(graphDb, graph, routeIds);
+        }
+    }
+
+    /**
+     * Gets the snapshot of a relationship name, building it if it's not there
+     */
+    private RouteGraph getGraph(String relationshipName) {
+        RouteGraph graph = graphs.get(relationshipName);
+        if (graph != null)
+            return graph;
+        synchronized (this) {
+            graph = graphs.get(relationshipName);
+            if (graph != null)
+                return graph;
+            if (subscription == null)
+                subscription = changeEventBus.subscribe(SUBSCRIBER_NAME, this::applyChanges);
+            graph = new RouteGraph(relationshipName);
+            // The snapshot is published before it's built, and built holding the write lock, so the changes committed
+            // while it's built are not lost: they wait for the lock, and are applied afterwards
+            graph.getLock().writeLock().lock();
+            try {
+                graphs.put(relationshipName, graph);
+                buildGraph(graph);
+            } catch (RuntimeException ex) {
+                graphs.remove(relationshipName);
+                throw ex;
+            } finally {
+                graph.getLock().writeLock().unlock();
+            }
+            return graph;
+        }
+    }
+
+    private void buildGraph(RouteGraph graph) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        long start = System.currentTimeMillis();
+        // The changes committed before the scan starts are part of it. The ones committed while the scan runs are applied
+        // again when their events arrive, at worst leaving a link that doesn't exist, which is found out when a route is checked
+        graph.setLastTransactionId(getLastTransactionId(graphDb));
+        try (Transaction tx = graphDb.beginTx()) {
+            Result result = cypherQueryExecutor.execute(QUERY_GET_LINKS, Collections.singletonMap("relationshipName", graph.getRelationshipName())); //NOI18N
+            while (result.hasNext()) {
+                Map<String, Object> row = result.next();
+                if (row.get("a") != null && row.get("b") != null) //NOI18N
+                    graph.addLink((String) row.get("a"), (String) row.get("b")); //NOI18N
+            }
+            tx.success();
+        }
+        log.writeLogMessage(LoggerType.INFO, RoutingEngine.class, String.format("Route graph for %s built with %s objects and %s links in %s ms",
+                graph.getRelationshipName(), graph.getNodeCount(), graph.getLinkCount(), System.currentTimeMillis() - start));
+    }
+
+    private long getLastTransactionId(GraphDatabaseService graphDb) {
+        if (graphDb instanceof GraphDatabaseAPI)
+            return ((GraphDatabaseAPI) graphDb).getDependencyResolver().resolveDependency(TransactionIdStore.class).getLastClosedTransactionId();
+        return 0;
+    }
+
+    /**
+     * Applies the special relationships added and released to the snapshots
+     */
+    private void applyChanges(List<ChangeEvent> events) {
+        for (ChangeEvent anEvent : events) {
+            switch (anEvent.getType()) {
+                case EVENTS_LOST:
+                    log.writeLogMessage(LoggerType.WARN, RoutingEngine.class, "Some changes were lost, the route graphs will be built again");
+                    graphs.clear();
+                    break;
+                case SPECIAL_RELATIONSHIP_ADDED:
+                case SPECIAL_RELATIONSHIP_RELEASED:
+                    RouteGraph graph = anEvent.getRelationshipName() == null ? null : graphs.get(anEvent.getRelationshipName());
+                    if (graph == null)
+                        break;
+                    graph.getLock().writeLock().lock();
+                    try {
+                        if (anEvent.getTransactionId() <= graph.getLastTransactionId())
+                            break;
+                        if (anEvent.getType() == ChangeEvent.Type.SPECIAL_RELATIONSHIP_ADDED)
+                            graph.addLink(anEvent.getObjectId(), anEvent.getRelatedObjectId());
+                        else
+                            graph.removeLink(anEvent.getObjectId(), anEvent.getRelatedObjectId());
+                    } finally {
+                        graph.getLock().writeLock().unlock();
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Creates the function that gives the cost of entering an object. The costs read from the database are cached for the search
+     */
+    private IntToDoubleFunction getNodeCost(GraphDatabaseService graphDb, RouteGraph graph, RouteConstraints constraints) {
+        if (constraints.getCostType() == RouteConstraints.CostType.HOPS)
+            return node -> 1;
+        double[] costs = new double[graph.getNodeCount()];
+        Arrays.fill(costs, Double.NaN);
+        boolean inverse = constraints.getCostType() == RouteConstraints.CostType.INVERSE_ATTRIBUTE;
+        return node -> {
+            if (Double.isNaN(costs[node])) {
+                double value = getNumericAttribute(graphDb, graph.getNodeId(node), constraints.getCostAttribute());
+                if (value > 0 && !Double.isInfinite(value))
+                    costs[node] = inverse ? 1 / value : value;
+                else
+                    costs[node] = constraints.getDefaultCost();
+            }
+            return costs[node];
+        };
+    }
+
+    /**
+     * @return The value of the attribute, or NaN if the object doesn't exist or the attribute is not set or is not a number
+     */
+    private double getNumericAttribute(GraphDatabaseService graphDb, String objectId, String attributeName) {
+        Node node = graphDb.findNode(LABEL_INVENTORY_OBJECTS, Constants.PROPERTY_UUID, objectId);
+        Object value = node == null ? null : node.getProperty(attributeName, null);
+        if (value instanceof Number)
+            return ((Number) value).doubleValue();
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException ex) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Checks the routes against the database and maps their objects. If a route doesn't exist anymore, it's dropped
+     * and the snapshot is discarded, so it's built again the next time it's used
+     */
+    private List<BusinessObjectLightList> toObjects(GraphDatabaseService graphDb, RouteGraph graph, List<String[]> routeIds) {
+        Map<String, Node> nodes = new HashMap<>();
+        List<Node[]> routeNodes = new ArrayList<>();
+        for (String[] aRoute : routeIds) {
+            Node[] hops = new Node[aRoute.length];
+            boolean valid = true;
+            for (int i = 0; i < aRoute.length && valid; i++) {
+                hops[i] = nodes.computeIfAbsent(aRoute[i], id -> graphDb.findNode(LABEL_INVENTORY_OBJECTS, Constants.PROPERTY_UUID, id));
+                valid = hops[i] != null && (i == 0 || areConnected(hops[i - 1], hops[i], graph.getRelationshipName()));
+            }
+            if (valid)
+                routeNodes.add(hops);
+            else if (graphs.remove(graph.getRelationshipName(), graph))
+                log.writeLogMessage(LoggerType.WARN, RoutingEngine.class,
+                        String.format("The route graph for %s is out of date, it will be built again", graph.getRelationshipName()));
+        }
+
+        // The objects are mapped all together, so the validators of the objects of the same class are run only once
+        Set<Node> uniqueNodes = new LinkedHashSet<>();
+        for (Node[] aRoute : routeNodes)
+            uniqueNodes.addAll(Arrays.asList(aRoute));
+        List<Node> distinctNodes = new ArrayList<>(uniqueNodes);
+        List<BusinessObjectLight> objects = ogmService.createObjectLightsFromNodes(distinctNodes);
+        Map<Node, BusinessObjectLight> objectsByNode = new HashMap<>();
+        for (int i = 0; i < distinctNodes.size(); i++)
+            objectsByNode.put(distinctNodes.get(i), objects.get(i));
+
+        List<BusinessObjectLightList> routes = new ArrayList<>();
+        for (Node[] aRoute : routeNodes) {
+            BusinessObjectLightList route = new BusinessObjectLightList();
+            for (Node aNode : aRoute)
+                route.add(objectsByNode.get(aNode));
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    private boolean areConnected(Node nodeA, Node nodeB, String relationshipName) {
+        // Start from the end with fewer relationships
+        Node from = nodeA.getDegree(RelTypes.RELATED_TO_SPECIAL) <= nodeB.getDegree(RelTypes.RELATED_TO_SPECIAL) ? nodeA : nodeB;
+        Node to = from == nodeA ? nodeB : nodeA;
+        for (Relationship aRelationship : from.getRelationships(RelTypes.RELATED_TO_SPECIAL, Direction.BOTH)) {
+            if (aRelationship.getOtherNodeId(from.getId()) == to.getId()
+                    && relationshipName.equals(aRelationship.getProperty(Constants.PROPERTY_NAME, null)))
+                return true;
+        }
+        return false;
+    }
+}
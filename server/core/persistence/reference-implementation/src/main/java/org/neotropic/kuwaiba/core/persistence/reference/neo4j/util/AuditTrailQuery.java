@@ -0,0 +1,380 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.function.Predicate;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.Schema;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogEntry;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogPage;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
+
+/**
+ * Reads the audit trail (the activity log entries) newest first, optionally filtered by user, type,
+ * affected object and time range.
+ * Cypher can not read the creationDate index in order when the bounds of the range are parameters, as they are in
+ * the page queries, so sorting the whole log to get a page takes longer the larger the log gets. Instead, the log is read in consecutive time windows going back from the newest entry
+ * (or from the cursor), using a range seek on the creationDate index, and only the entries of each window are
+ * sorted. The windows get wider while they contain few entries and narrower when they contain too many, and the
+ * periods without entries are skipped.
+ * When the entries of a single user with not too many entries or of a single object are requested,
+ * they are read from the user or the object node instead.
+ * Pages are identified by the position of their last entry (creation date and entry id, see {@link #getCursor(Node)}),
+ * so reading the next page costs the same no matter how deep into the log it is.
+ * Transactions are not handled here.
+ */
+public class AuditTrailQuery {
+    /**
+     * Width in milliseconds of the first time window (one hour).
+     */
+    private static final long INITIAL_WINDOW = 3600000;
+    /**
+     * Number of entries per window the width of the windows is adjusted to.
+     */
+    private static final int TARGET_WINDOW_SIZE = 1000;
+    /**
+     * Max number of entries a user can have for them to be read from the user node and sorted in memory.
+     */
+    private static final int MAX_USER_ENTRIES = 10000;
+    /**
+     * Newest first. Entries created at the same time are sorted by id, so the order is stable.
+     */
+    private static final Comparator<Node> NEWEST_FIRST = Comparator
+            .comparingLong((Node entry) -> (long) entry.getProperty(Constants.PROPERTY_CREATION_DATE)).reversed()
+            .thenComparing(Comparator.comparingLong(Node::getId).reversed());
+
+    private final GraphDatabaseService graphDb;
+    private final Object userName;
+    private final Object type;
+    private final String objectId;
+    private final long from;
+    private final long to;
+
+    /**
+     * Prepares a query.
+     * @param graphDb The database handle.
+     * @param filters The filters (see the ActivityLogPage.FILTER_* constants). Null or empty to read the whole log.
+     * @throws IllegalArgumentException If the time range filters are not timestamps or dates.
+     */
+    public AuditTrailQuery(GraphDatabaseService graphDb, Map<String, Object> filters) {
+        this.graphDb = graphDb;
+        Map<String, Object> theFilters = filters == null ? Collections.emptyMap() : filters;
+        this.userName = theFilters.get(ActivityLogPage.FILTER_USER);
+        this.type = theFilters.get(ActivityLogPage.FILTER_TYPE);
+        this.objectId = theFilters.get(ActivityLogPage.FILTER_OBJECT) == null ? null : theFilters.get(ActivityLogPage.FILTER_OBJECT).toString();
+        this.from = toTimestamp(theFilters.get(ActivityLogPage.FILTER_FROM), Long.MIN_VALUE);
+        this.to = toTimestamp(theFilters.get(ActivityLogPage.FILTER_TO), Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the entries matching the filters newest first, until there are no more or the consumer asks to stop.
+     * @param cursor Position of the last entry read (see {@link #getCursor(Node)}), only older entries will be read. Null to start from the newest entry.
+     * @param consumer Receives the entries, one at a time. Returns false to stop reading.
+     * @throws IllegalArgumentException If the cursor is not valid.
+     */
+    public void forEach(String cursor, Predicate<Node> consumer) {
+        long cursorDate = Long.MAX_VALUE, cursorId = Long.MAX_VALUE;
+        if (cursor != null) {
+            String[] tokens = cursor.split(":"); //NOI18N
+            try {
+                if (tokens.length != 2)
+                    throw new NumberFormatException();
+                cursorDate = Long.parseLong(tokens[0]);
+                cursorId = Long.parseLong(tokens[1]);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(String.format("Invalid audit trail cursor %s", cursor));
+            }
+        }
+
+        if (objectId != null) {
+            Node objectNode = graphDb.findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, objectId);
+            if (objectNode != null)
+                forEachOf(objectNode, RelTypes.HAS_HISTORY_ENTRY, Direction.OUTGOING, cursorDate, cursorId, consumer);
+            return;
+        }
+
+        if (userName != null) {
+            Node userNode = graphDb.findNode(Label.label(Constants.LABEL_USER), Constants.PROPERTY_NAME, userName);
+            if (userNode == null)
+                return;
+            if (userNode.getDegree(RelTypes.PERFORMED_BY, Direction.INCOMING) <= MAX_USER_ENTRIES) {
+                forEachOf(userNode, RelTypes.PERFORMED_BY, Direction.INCOMING, cursorDate, cursorId, consumer);
+                return;
+            }
+        }
+
+        forEachInWindows(cursorDate, cursorId, consumer);
+    }
+
+    /**
+     * Reads a page of entries.
+     * @param cursor Position of the last entry of the previous page, null to get the first page.
+     * @param limit Max number of entries in the page.
+     * @return The page.
+     * @throws IllegalArgumentException If the cursor is not valid or the limit is not positive.
+     */
+    public ActivityLogPage getPage(String cursor, int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException(String.format("Invalid page size %s", limit));
+        List<ActivityLogEntry> entries = new ArrayList<>();
+        Node[] lastEntry = new Node[1];
+        boolean[] hasMore = new boolean[1];
+        forEach(cursor, entry -> {
+            if (entries.size() == limit) {
+                hasMore[0] = true;
+                return false;
+            }
+            entries.add(toActivityLogEntry(entry, 0));
+            lastEntry[0] = entry;
+            return true;
+        });
+        return new ActivityLogPage(entries, hasMore[0] ? getCursor(lastEntry[0]) : null);
+    }
+
+    /**
+     * Counts the entries matching the filters.
+     * @return The number of entries.
+     */
+    public long count() {
+        if (objectId == null && type == null && from == Long.MIN_VALUE && to == Long.MAX_VALUE) {
+            if (userName == null) // Served by the count store
+                return count("MATCH (auditTrailEntry:generalActivityLogs) RETURN count(auditTrailEntry) AS count", new HashMap<>()); //NOI18N
+            Node userNode = graphDb.findNode(Label.label(Constants.LABEL_USER), Constants.PROPERTY_NAME, userName);
+            return userNode == null ? 0 : userNode.getDegree(RelTypes.PERFORMED_BY, Direction.INCOMING);
+        }
+
+        HashMap<String, Object> parameters = new HashMap<>();
+        String query = "MATCH " //NOI18N
+                + (objectId == null ? "" : "(:inventoryObjects {_uuid: $objectId})-[:HAS_HISTORY_ENTRY]->") //NOI18N
+                + "(auditTrailEntry:generalActivityLogs)-[:PERFORMED_BY]->(user) WHERE " //NOI18N
+                + buildConditions(parameters) + " RETURN count(auditTrailEntry) AS count"; //NOI18N
+        if (objectId != null)
+            parameters.put("objectId", objectId); //NOI18N
+        return count(query, parameters);
+    }
+
+    /**
+     * Builds the position of an entry in the log, to be used as the cursor to read the entries older than it.
+     * @param entry The log entry node.
+     * @return The position of the entry.
+     */
+    public static String getCursor(Node entry) {
+        return entry.getProperty(Constants.PROPERTY_CREATION_DATE) + ":" + entry.getId(); //NOI18N
+    }
+
+    /**
+     * Builds a log entry from its node.
+     * @param entry The log entry node.
+     * @param objectId The id of the node of the affected object. 0 for general entries.
+     * @return The log entry.
+     */
+    public static ActivityLogEntry toActivityLogEntry(Node entry, long objectId) {
+        Relationship performedBy = entry.getSingleRelationship(RelTypes.PERFORMED_BY, Direction.OUTGOING);
+        return new ActivityLogEntry(entry.getId(), objectId, (Integer)entry.getProperty(Constants.PROPERTY_TYPE),
+                performedBy == null ? null : (String)performedBy.getEndNode().getProperty(Constants.PROPERTY_NAME),
+                (Long)entry.getProperty(Constants.PROPERTY_CREATION_DATE),
+                entry.hasProperty(Constants.PROPERTY_AFFECTED_PROPERTY) ? (String)entry.getProperty(Constants.PROPERTY_AFFECTED_PROPERTY) : null,
+                entry.hasProperty(Constants.PROPERTY_OLD_VALUE) ? (String)entry.getProperty(Constants.PROPERTY_OLD_VALUE) :  null,
+                entry.hasProperty(Constants.PROPERTY_NEW_VALUE) ? (String)entry.getProperty(Constants.PROPERTY_NEW_VALUE) : null,
+                entry.hasProperty(Constants.PROPERTY_NOTES) ? (String)entry.getProperty(Constants.PROPERTY_NOTES) : null);
+    }
+
+    /**
+     * Reads the entries related to a node (a user or an object), sorting them in memory.
+     */
+    private void forEachOf(Node node, RelTypes relType, Direction direction, long cursorDate, long cursorId, Predicate<Node> consumer) {
+        List<Node> entries = new ArrayList<>();
+        for (Relationship rel : node.getRelationships(relType, direction)) {
+            Node entry = rel.getOtherNode(node);
+            if (matches(entry, cursorDate, cursorId))
+                entries.add(entry);
+        }
+        entries.sort(NEWEST_FIRST);
+        for (Node entry : entries) {
+            if (!consumer.test(entry))
+                return;
+        }
+    }
+
+    private boolean matches(Node entry, long cursorDate, long cursorId) {
+        long creationDate = (long) entry.getProperty(Constants.PROPERTY_CREATION_DATE);
+        if (creationDate < from || creationDate > to)
+            return false;
+        if (creationDate > cursorDate || (creationDate == cursorDate && entry.getId() >= cursorId))
+            return false;
+        if (type != null && !sameValue(entry.getProperty(Constants.PROPERTY_TYPE, null), type))
+            return false;
+        Relationship performedBy = entry.getSingleRelationship(RelTypes.PERFORMED_BY, Direction.OUTGOING);
+        return performedBy != null && (userName == null || userName.equals(performedBy.getEndNode().getProperty(Constants.PROPERTY_NAME, null)));
+    }
+
+    /**
+     * Compares two values the way Cypher does, that is, numbers of different types are equal if they have the same value
+     */
+    private static boolean sameValue(Object value, Object otherValue) {
+        if (value instanceof Number && otherValue instanceof Number)
+            return ((Number) value).doubleValue() == ((Number) otherValue).doubleValue();
+        return Objects.equals(value, otherValue);
+    }
+
+    /**
+     * Reads the log in consecutive time windows, newest first, using the creationDate index.
+     */
+    private void forEachInWindows(long cursorDate, long cursorId, Predicate<Node> consumer) {
+        boolean indexed = isCreationDateIndexed();
+        HashMap<String, Object> parameters = new HashMap<>();
+        String query = "MATCH (auditTrailEntry:generalActivityLogs)-[:PERFORMED_BY]->(user) " //NOI18N
+                + (indexed ? "USING INDEX auditTrailEntry:generalActivityLogs(creationDate) " : "") //NOI18N
+                + "WHERE auditTrailEntry.creationDate >= $low AND auditTrailEntry.creationDate <= $high AND " //NOI18N
+                + "(auditTrailEntry.creationDate < $cursorDate OR id(auditTrailEntry) < $cursorId) AND " //NOI18N
+                + buildConditions(parameters)
+                + " RETURN auditTrailEntry ORDER BY auditTrailEntry.creationDate DESC, id(auditTrailEntry) DESC"; //NOI18N
+        parameters.put("cursorDate", cursorDate); //NOI18N
+        parameters.put("cursorId", cursorId); //NOI18N
+
+        long high = Math.min(to, cursorDate);
+        if (!indexed) { // Without the index, every window would be a label scan, so everything is read in one go
+            parameters.put("low", from); //NOI18N
+            parameters.put("high", high); //NOI18N
+            try (ResourceIterator<Node> entries = graphDb.execute(query, parameters).columnAs("auditTrailEntry")) { //NOI18N
+                while (entries.hasNext() && consumer.test(entries.next()));
+            }
+            return;
+        }
+
+        long window = INITIAL_WINDOW;
+        OptionalLong newest = findNewest(high);
+        while (newest.isPresent()) {
+            high = newest.getAsLong();
+            long low = Math.max(from, subtract(high, window - 1));
+            parameters.put("low", low); //NOI18N
+            parameters.put("high", high); //NOI18N
+
+            int windowSize = 0;
+            try (ResourceIterator<Node> entries = graphDb.execute(query, parameters).columnAs("auditTrailEntry")) { //NOI18N
+                while (entries.hasNext()) {
+                    windowSize++;
+                    if (!consumer.test(entries.next()))
+                        return;
+                }
+            }
+
+            if (low == from)
+                return;
+            // The next window starts at the next entry, so the periods without entries are skipped
+            newest = findNewest(low - 1);
+            if (windowSize < TARGET_WINDOW_SIZE)
+                window = window > Long.MAX_VALUE / 2 ? Long.MAX_VALUE : window * 2;
+            else if (windowSize > 4 * TARGET_WINDOW_SIZE)
+                window = Math.max(1, window / 2);
+        }
+    }
+
+    private String buildConditions(HashMap<String, Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        conditions.add("true"); //NOI18N
+        if (userName != null) {
+            conditions.add("user.name = $userName"); //NOI18N
+            parameters.put("userName", userName); //NOI18N
+        }
+        if (type != null) {
+            conditions.add("auditTrailEntry.type = $type"); //NOI18N
+            parameters.put("type", type); //NOI18N
+        }
+        if (from != Long.MIN_VALUE) {
+            conditions.add("auditTrailEntry.creationDate >= $from"); //NOI18N
+            parameters.put("from", from); //NOI18N
+        }
+        if (to != Long.MAX_VALUE) {
+            conditions.add("auditTrailEntry.creationDate <= $to"); //NOI18N
+            parameters.put("to", to); //NOI18N
+        }
+        return String.join(" AND ", conditions); //NOI18N
+    }
+
+    /**
+     * Finds the creation date of the newest entry created at or before a given time (and within the time range filter),
+     * with a range seek that reads the creationDate index backwards and stops at the first entry. The bounds are 
+     * written as literals: when they are parameters, the planner doesn't know they are numbers, so it can't use the 
+     * order of the index and sorts the whole range instead. Cypher extracts the literals by itself, so the plan is still reused.
+     */
+    private OptionalLong findNewest(long high) {
+        if (high < from)
+            return OptionalLong.empty();
+        try (Result result = graphDb.execute("MATCH (auditTrailEntry:generalActivityLogs) " //NOI18N
+                + "WHERE auditTrailEntry.creationDate >= " + Long.toString(from) //NOI18N
+                + " AND auditTrailEntry.creationDate <= " + Long.toString(high) //NOI18N
+                + " RETURN auditTrailEntry.creationDate AS creationDate ORDER BY auditTrailEntry.creationDate DESC LIMIT 1")) { //NOI18N
+            return result.hasNext() ? OptionalLong.of(((Number) result.next().get("creationDate")).longValue()) : OptionalLong.empty(); //NOI18N
+        }
+    }
+
+    private boolean isCreationDateIndexed() {
+        Schema schema = graphDb.schema();
+        for (IndexDefinition index : schema.getIndexes(Label.label(Constants.LABEL_GENERAL_ACTIVITY_LOGS))) {
+            for (String propertyKey : index.getPropertyKeys()) {
+                if (Constants.PROPERTY_CREATION_DATE.equals(propertyKey))
+                    return schema.getIndexState(index) == Schema.IndexState.ONLINE;
+            }
+        }
+        return false;
+    }
+
+    private long count(String query, HashMap<String, Object> parameters) {
+        try (Result result = graphDb.execute(query, parameters)) {
+            return result.hasNext() ? (long) result.next().get("count") : 0; //NOI18N
+        }
+    }
+
+    /**
+     * Subtracts without overflowing, the result is Long.MIN_VALUE if it would be lower
+     */
+    private static long subtract(long minuend, long subtrahend) {
+        long result = minuend - subtrahend;
+        return ((minuend ^ subtrahend) & (minuend ^ result)) < 0 ? Long.MIN_VALUE : result;
+    }
+
+    private static long toTimestamp(Object value, long defaultValue) {
+        if (value == null)
+            return defaultValue;
+        if (value instanceof Date)
+            return ((Date) value).getTime();
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("Invalid audit trail time filter %s", value));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A named Cypher statement. Neo4j caches the execution plans by statement text, so the values (ids, names, limits)
+ * must be passed as parameters (<code>$name</code>) and never spliced into the text, otherwise every call is planned again.
+ * Only what can't be a parameter (labels, relationship types, property keys, variable length bounds) may be part of
+ * the text, and it should come from constants or from a small, fixed set of values.
+ * <p>
+ * The text is checked for string literals, for literal <code>SKIP</code>/<code>LIMIT</code> values and for numbers
+ * compared with a value (e.g. <code>WHERE id(n) = 42</code>), the usual signs of spliced values. Comparisons with 0 and 1
+ * (e.g. <code>count(n) &gt; 0</code>) are allowed, since they are part of the logic of the statement rather than arguments. Fixed statements are created with {@link #template(java.lang.String, java.lang.String) },
+ * which rejects them right away. Statements whose structure depends on the arguments (e.g. optional filters) are created with
+ * {@link #dynamic(java.lang.String, java.lang.String) } and checked by {@link CypherQueryExecutor} when they are run.
+ */
+public final class CypherQuery {
+    /**
+     * A string literal, single or double-quoted
+     */
+    private static final Pattern STRING_LITERAL = Pattern.compile("'[^']*'|\"[^\"]*\""); //NOI18N
+    /**
+     * A literal number after SKIP or LIMIT
+     */
+    private static final Pattern PAGING_LITERAL = Pattern.compile("(?i)\\b(SKIP|LIMIT)\\s+\\d+"); //NOI18N
+    /**
+     * A number compared with something, other than 0 and 1, or a list of numbers after IN
+     */
+    private static final Pattern COMPARED_NUMBER = Pattern.compile(
+            "(=|<>|<|>)\\s*-?(?!(0|1)(?![\\d.]))\\d+(\\.\\d+)?|(?i)\\bIN\\s*\\[\\s*-?\\d+"); //NOI18N
+    /**
+     * The name of the statement, used to tag its metrics (e.g. bem.getParents)
+     */
+    private final String name;
+    /**
+     * The Cypher text
+     */
+    private final String text;
+
+    private CypherQuery(String name, String text) {
+        this.name = name;
+        this.text = text;
+    }
+
+    /**
+     * Creates a fixed statement.
+     * @param name The name of the statement, used to tag its metrics (e.g. bem.getParents)
+     * @param text The Cypher text. The values must be parameters
+     * @return The statement
+     * @throws IllegalArgumentException If the text has literals that should be parameters
+     */
+    public static CypherQuery template(String name, String text) {
+        String literal = findLiteral(text);
+        if (literal != null)
+            throw new IllegalArgumentException(String.format("The Cypher statement %s has the literal %s. Use a parameter instead", name, literal));
+        return new CypherQuery(name, text);
+    }
+
+    /**
+     * Creates a statement whose text depends on the arguments of the call. It's checked for literals when it's run.
+     * @param name The name of the statement, used to tag its metrics (e.g. bem.getObjectChildren). It's the same for all the variants
+     * @param text The Cypher text. The values must be parameters
+     * @return The statement
+     */
+    public static CypherQuery dynamic(String name, String text) {
+        return new CypherQuery(name, text);
+    }
+
+    /**
+     * Looks for literals that should be parameters.
+     * @param text The Cypher text
+     * @return The first literal found, or null if there's none
+     */
+    public static String findLiteral(String text) {
+        Matcher matcher = STRING_LITERAL.matcher(text);
+        if (matcher.find())
+            return matcher.group();
+        matcher = PAGING_LITERAL.matcher(text);
+        if (matcher.find())
+            return matcher.group();
+        matcher = COMPARED_NUMBER.matcher(text);
+        if (matcher.find())
+            return matcher.group();
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
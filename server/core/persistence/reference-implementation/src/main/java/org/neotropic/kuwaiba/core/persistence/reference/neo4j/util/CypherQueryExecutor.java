@@ -0,0 +1,196 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.neo4j.cypher.internal.StringCacheMonitor;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.helpers.collection.Pair;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.monitoring.Monitors;
+import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs the {@link CypherQuery} statements of the entity managers. Every statement is timed under its name,
+ * the statements built on the fly are checked for spliced values, and the hits and misses of the Neo4j
+ * query plan cache are counted, so it's possible to tell whether the plans are actually reused.
+ */
+@Service
+public class CypherQueryExecutor {
+    /**
+     * Name of the timer of the Cypher statements
+     */
+    public static final String METRIC_CYPHER = "kuwaiba_cypher_seconds"; //NOI18N
+    /**
+     * Name of the counter of the statements run with literals that should have been parameters
+     */
+    public static final String METRIC_SPLICED_LITERALS = "kuwaiba_cypher_spliced_literals_total"; //NOI18N
+    /**
+     * Max number of distinct dynamic statement texts remembered as already checked
+     */
+    private static final int MAX_CHECKED_STATEMENTS = 5000;
+    /**
+     * Reference to the connection manager
+     */
+    @Autowired
+    private ConnectionManager<GraphDatabaseService> connectionManager;
+    /**
+     * Reference to the metrics service
+     */
+    @Autowired
+    private MetricsService metrics;
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
+    /**
+     * The texts of the dynamic statements already checked for literals
+     */
+    private final Map<String, Boolean> checkedStatements = new ConcurrentHashMap<>();
+    /**
+     * Counts the hits and misses of the Neo4j query plan cache
+     */
+    private final PlanCacheMonitor planCacheMonitor = new PlanCacheMonitor();
+
+    /**
+     * Runs a statement without parameters. Callers must handle associated transactions
+     * @param query The statement
+     * @return The result of the statement
+     */
+    public Result execute(CypherQuery query) {
+        return execute(query, Collections.emptyMap());
+    }
+
+    /**
+     * Runs a statement and times it. Only the execution is timed, not the iteration over the result.
+     * Callers must handle associated transactions
+     * @param query The statement
+     * @param parameters The statement parameters
+     * @return The result of the statement
+     */
+    public Result execute(CypherQuery query, Map<String, Object> parameters) {
+        checkLiterals(query);
+        Timer timer = metrics.timer(METRIC_CYPHER, "Time spent executing Cypher statements", "query", query.getName()); //NOI18N
+        long start = timer.start();
+        try {
+            return connectionManager.getConnectionHandler().execute(query.getText(), parameters);
+        } finally {
+            timer.stop(start, query.getText());
+        }
+    }
+
+    /**
+     * Starts counting the hits and misses of the query plan cache of a database.
+     * To be called every time the connection is opened.
+     * @param graphDb The database
+     */
+    public void monitorPlanCache(GraphDatabaseService graphDb) {
+        try {
+            ((GraphDatabaseAPI) graphDb).getDependencyResolver().resolveDependency(Monitors.class)
+                    .addMonitorListener(planCacheMonitor);
+        } catch (RuntimeException | LinkageError ex) { // The monitors are not part of the public API of Neo4j
+            log.writeLogMessage(LoggerType.WARN, CypherQueryExecutor.class,
+                    "The query plan cache can not be monitored in this database", ex);
+        }
+    }
+
+    /**
+     * @return Number of statements whose plan was found in the query plan cache
+     */
+    public long getPlanCacheHits() {
+        return planCacheMonitor.hits.sum();
+    }
+
+    /**
+     * @return Number of statements that had to be planned because their plan was not in the query plan cache
+     */
+    public long getPlanCacheMisses() {
+        return planCacheMonitor.misses.sum();
+    }
+
+    /**
+     * @return Number of cached plans discarded as stale because the data changed significantly
+     */
+    public long getPlanCacheReplans() {
+        return planCacheMonitor.discards.sum();
+    }
+
+    /**
+     * Checks a dynamic statement for literals the first time its text is seen. A statement with literals
+     * is still run, but it's logged and counted, since it's most likely spliced values that defeat the plan cache.
+     */
+    private void checkLiterals(CypherQuery query) {
+        if (checkedStatements.containsKey(query.getText()))
+            return;
+        if (checkedStatements.size() >= MAX_CHECKED_STATEMENTS) // Spliced values would make this grow forever
+            checkedStatements.clear();
+        if (checkedStatements.putIfAbsent(query.getText(), Boolean.TRUE) != null)
+            return;
+
+        String literal = CypherQuery.findLiteral(query.getText());
+        if (literal != null) {
+            metrics.counter(METRIC_SPLICED_LITERALS, "Cypher statements run with literals that should be parameters", //NOI18N
+                    "query", query.getName()).increment(); //NOI18N
+            log.writeLogMessage(LoggerType.WARN, CypherQueryExecutor.class,
+                    "The Cypher statement %s has the literal %s. Use a parameter instead: %s", query.getName(), literal, query.getText());
+        }
+    }
+
+    /**
+     * Listens to the query plan cache of the Cypher engine
+     */
+    private static class PlanCacheMonitor implements StringCacheMonitor {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder discards = new LongAdder();
+
+        @Override
+        public void cacheHit(Pair<String, scala.collection.immutable.Map<String, Class<?>>> key) {
+            hits.increment();
+        }
+
+        @Override
+        public void cacheMiss(Pair<String, scala.collection.immutable.Map<String, Class<?>>> key) {
+            misses.increment();
+        }
+
+        @Override
+        public void cacheDiscard(Pair<String, scala.collection.immutable.Map<String, Class<?>>> key, String userKey, int secondsSinceReplan) {
+            discards.increment();
+        }
+
+        @Override
+        public void cacheRecompile(Pair<String, scala.collection.immutable.Map<String, Class<?>>> key) {
+            // Not relevant, the recompilation of a cached plan is not a miss
+        }
+
+        @Override
+        public void cacheFlushDetected(long sizeBeforeFlush) {
+            // The misses after the flush are counted anyway
+        }
+    }
+}
@@ -20,8 +20,13 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -30,6 +35,7 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
 import org.neotropic.kuwaiba.core.apis.persistence.ChangeDescriptor;
 import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
@@ -48,6 +54,9 @@ import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.core.persistence.reference.extras.caching.CacheManager;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.ValidatorCacheInvalidator;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -57,6 +66,14 @@ import org.springframework.stereotype.Service;
  */
 @Service
 public class ObjectGraphMappingService {
+    /**
+     * Looks for an object of a class or its subclasses with a given value in an attribute. The attribute
+     * is read by name, so the statement is the same for every attribute and its name is never part of the text
+     */
+    private static final CypherQuery QUERY_FIND_ATTRIBUTE_VALUE = CypherQuery.template("ogm.findAttributeValue", //NOI18N
+            "MATCH (class:classes {name: $className})<-[:EXTENDS*0..]-(:classes)<-[:INSTANCE_OF|INSTANCE_OF_SPECIAL]-(object:inventoryObjects) " + //NOI18N
+            "WHERE toString(object[$attributeName]) = $attributeValue " + //NOI18N
+            "RETURN object LIMIT $limit"); //NOI18N
     /**
      * A class loader to place all the validator definition classes created on-the-fly.
      */
@@ -86,18 +103,98 @@ public class ObjectGraphMappingService {
      */
     @Autowired
     private TranslationService ts;
+    /**
+     * Runs the Cypher statements
+     */
+    @Autowired
+    private CypherQueryExecutor cypherQueryExecutor;
+    /**
+     * Evicts the cached validators of the objects changed by every committed transaction
+     */
+    @Autowired
+    private ValidatorCacheInvalidator validatorCacheInvalidator;
+    /**
+     * Reference to the Logging Service
+     */
+    @Autowired
+    private LoggingService log;
     
     private final String PREFIX = "api.service.object-graph-mapping";
     
+    /**
+     * Creates a BusinessObjectLight from a node, including the validators of the object 
+     * (see {@link #createObjectLightFromNode(org.neo4j.graphdb.Node, boolean)})
+     * @param instance The object node
+     * @return The light object
+     */
     public BusinessObjectLight createObjectLightFromNode (Node instance) {
+        return createObjectLightFromNode(instance, true);
+    }
+    
+    /**
+     * Creates a BusinessObjectLight from a node. The validators of the object are only 
+     * evaluated once, then they are cached until the object changes or the cache entry expires
+     * @param instance The object node
+     * @param includeValidators Should the validators be evaluated? Callers that don't display 
+     * the object (e.g. bulk or internal operations) should skip them
+     * @return The light object
+     */
+    public BusinessObjectLight createObjectLightFromNode (Node instance, boolean includeValidators) {
+        BusinessObjectLight res = createNakedObjectLightFromNode(instance);
+        if (includeValidators)
+            setValidators(res.getClassName(), Collections.singletonList(res));
+        return res;
+    }
+    
+    /**
+     * Creates BusinessObjectLights from a list of nodes, including their validators. The validators of 
+     * all the objects of the same class are evaluated together (see {@link ValidatorDefinition#run(java.lang.String, java.util.List, org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager, org.neotropic.kuwaiba.core.apis.persistence.metadata.MetadataEntityManager, org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager, org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager)}), 
+     * which is cheaper than creating the objects one by one when the list is large
+     * @param instances The object nodes
+     * @return The light objects, in the same order as the nodes
+     */
+    public List<BusinessObjectLight> createObjectLightsFromNodes(List<Node> instances) {
+        return createObjectLightsFromNodes(instances, true);
+    }
+    
+    /**
+     * Creates BusinessObjectLights from a list of nodes
+     * @param instances The object nodes
+     * @param includeValidators Should the validators be evaluated? Callers that don't display 
+     * the objects (e.g. bulk or internal operations) should skip them
+     * @return The light objects, in the same order as the nodes
+     */
+    public List<BusinessObjectLight> createObjectLightsFromNodes(List<Node> instances, boolean includeValidators) {
+        List<BusinessObjectLight> res = new ArrayList<>(instances.size());
+        HashMap<String, List<BusinessObjectLight>> objectsByClass = new HashMap<>();
+        for (Node instance : instances) {
+            BusinessObjectLight object = createNakedObjectLightFromNode(instance);
+            res.add(object);
+            if (includeValidators)
+                objectsByClass.computeIfAbsent(object.getClassName(), className -> new ArrayList<>()).add(object);
+        }
+        objectsByClass.forEach(this::setValidators);
+        return res;
+    }
+    
+    /**
+     * Creates a BusinessObjectLight without validators
+     * @param instance The object node
+     * @return The light object
+     */
+    private BusinessObjectLight createNakedObjectLightFromNode(Node instance) {
         Node classNode = instance.getSingleRelationship(RelTypes.INSTANCE_OF, Direction.OUTGOING).getEndNode();
-        String className = (String)classNode.getProperty(Constants.PROPERTY_NAME);
-        
-        //First, we create the naked business object, without validators
-        BusinessObjectLight res = new BusinessObjectLight(className, (String)instance.getProperty(Constants.PROPERTY_UUID), 
+        return new BusinessObjectLight((String)classNode.getProperty(Constants.PROPERTY_NAME), (String)instance.getProperty(Constants.PROPERTY_UUID), 
                 (String)instance.getProperty(Constants.PROPERTY_NAME), (String)classNode.getProperty(Constants.PROPERTY_DISPLAY_NAME, null));
-        
-        //Then, we check the cache for validator definitions
+    }
+    
+    /**
+     * Gets the validator definitions applicable to a class and its super classes
+     * @param className The class name
+     * @return The validator definitions, the ones of the super classes first
+     */
+    private List<ValidatorDefinition> getValidatorDefinitions(String className) {
+        //We check the cache for validator definitions
         List<ValidatorDefinition> validatorDefinitions = CacheManager.getInstance().getValidatorDefinitions(className);
         if (validatorDefinitions == null) { //Since the validator definitions are not cached, we retrieve them for the object class and its super classes
             validatorDefinitions = new ArrayList<>();
@@ -136,8 +233,8 @@ public class ObjectGraphMappingService {
 
                                 validatorDefinitions.add(validatorDefinitionInstance);
                             } catch (Exception ex) { //If there's an error parsing the script or instantiating the class, this validator definition will be ignored and the error logged
-                                System.out.println(String.format("[KUWAIBA] %s", ex.getLocalizedMessage()));
-                                //ex.printStackTrace();
+                                log.writeLogMessage(LoggerType.ERROR, ObjectGraphMappingService.class, 
+                                        "The validator definition {} could not be loaded: {}", aValidatorDefinitionNode.getId(), ex.getLocalizedMessage());
                             }
                         }
                     }
@@ -150,26 +247,100 @@ public class ObjectGraphMappingService {
             }    
         }
         
-        List<Validator> validators = new ArrayList<>();
+        return validatorDefinitions;
+    }
+    
+    /**
+     * Evaluates the validators of a set of objects of the same class. The results already 
+     * cached are reused, and the missing ones are evaluated for all the objects at once
+     * @param className The class of the objects
+     * @param objects The objects
+     */
+    private void setValidators(String className, List<BusinessObjectLight> objects) {
+        List<ValidatorDefinition> enabledValidatorDefinitions = new ArrayList<>();
+        for (ValidatorDefinition aValidatorDefinition : getValidatorDefinitions(className)) {
+            if (aValidatorDefinition.isEnabled())
+                enabledValidatorDefinitions.add(aValidatorDefinition);
+        }
+        if (enabledValidatorDefinitions.isEmpty()) {
+            objects.forEach(object -> object.setValidators(new ArrayList<>()));
+            return;
+        }
         
-        //Now we run the applicable validator definitions
-        validatorDefinitions.forEach((aValidatorDefinition) -> {
-            try {
-                if (aValidatorDefinition.isEnabled()) {
-                    Validator validator = aValidatorDefinition.run(className, (String)instance.getProperty(Constants.PROPERTY_UUID), 
-                            connectionManager, mem, bem, aem);
-                    if (validator != null) //It's possible that after evaluating the condition nothing should be done, so the method "run" could actually return null
-                        validators.add(validator);
+        CacheManager cm = CacheManager.getInstance();
+        //Read before the objects, so the results computed from a version of the objects that has changed meanwhile are not cached
+        long generation = cm.getValidatorsGeneration();
+        boolean cacheResults = validatorCacheInvalidator.canCacheValidators();
+        //The results per object, the key of the inner map is the validator definition id
+        HashMap<String, Map<Long, Validator>> results = new HashMap<>();
+        Set<String> changedObjects = new HashSet<>();
+        for (BusinessObjectLight object : objects) {
+            Map<Long, Validator> cachedResults = cm.getValidators(object.getId());
+            results.put(object.getId(), cachedResults == null ? new HashMap<>() : cachedResults);
+        }
+        
+        for (ValidatorDefinition aValidatorDefinition : enabledValidatorDefinitions) {
+            Set<String> pendingObjects = new LinkedHashSet<>();
+            for (BusinessObjectLight object : objects) {
+                if (!results.get(object.getId()).containsKey(aValidatorDefinition.getId()))
+                    pendingObjects.add(object.getId());
+            }
+            if (pendingObjects.isEmpty())
+                continue;
+            
+            HashMap<String, Validator> newResults = null;
+            Set<String> failedObjects = new HashSet<>();
+            if (pendingObjects.size() > 1) {
+                try {
+                    newResults = aValidatorDefinition.run(className, new ArrayList<>(pendingObjects), connectionManager, mem, bem, aem);
+                } catch (Exception ex) { //If the whole batch fails, the objects are evaluated one by one, so only the failing ones are skipped
+                    log.writeLogMessage(LoggerType.WARN, ObjectGraphMappingService.class, 
+                            "An unexpected error occurred while evaluating validator {} in {} objects of class {}: {}", 
+                            aValidatorDefinition.getName(), pendingObjects.size(), className, ex.getLocalizedMessage());
+                }
+            }
+            if (newResults == null) {
+                newResults = new HashMap<>();
+                for (String objectId : pendingObjects) {
+                    try {
+                        newResults.put(objectId, aValidatorDefinition.run(className, objectId, connectionManager, mem, bem, aem));
+                    } catch (Exception ex) { //Errors will be logged and the validator definition skipped (and not cached, so it's evaluated again next time)
+                        failedObjects.add(objectId);
+                        log.writeLogMessage(LoggerType.ERROR, ObjectGraphMappingService.class, 
+                                "An unexpected error occurred while evaluating validator {} in object {}({}): {}", 
+                                aValidatorDefinition.getName(), objectId, className, ex.getLocalizedMessage());
+                    }
+                }
+            }
+            for (String objectId : pendingObjects) {
+                if (failedObjects.contains(objectId))
+                    continue;
+                Map<Long, Validator> objectResults = results.get(objectId);
+                if (!changedObjects.contains(objectId)) { //Cached results are never modified, a copy is used instead
+                    objectResults = new HashMap<>(objectResults);
+                    results.put(objectId, objectResults);
+                    changedObjects.add(objectId);
                 }
-            } catch (Exception ex) { //Errors will be logged and the validator definition skipped
-                System.out.println(String.format("[KUWAIBA] An unexpected error occurred while evaluating validator %s in object %s(%s): %s", 
-                        aValidatorDefinition.getName(), instance.getProperty(Constants.PROPERTY_NAME), 
-                        instance.getId(), ex.getLocalizedMessage()));
+                //It's possible that after evaluating the condition nothing should be done, so the method "run" could actually return null
+                objectResults.put(aValidatorDefinition.getId(), newResults.get(objectId));
             }
-        });
+        }
         
-        res.setValidators(validators);
-        return res;
+        if (cacheResults) {
+            for (String objectId : changedObjects)
+                cm.putValidators(objectId, Collections.unmodifiableMap(results.get(objectId)), generation);
+        }
+        
+        for (BusinessObjectLight object : objects) {
+            Map<Long, Validator> objectResults = results.get(object.getId());
+            List<Validator> validators = new ArrayList<>();
+            for (ValidatorDefinition aValidatorDefinition : enabledValidatorDefinitions) {
+                Validator validator = objectResults.get(aValidatorDefinition.getId());
+                if (validator != null)
+                    validators.add(validator);
+            }
+            object.setValidators(validators);
+        }
     }
     
     public ChangeDescriptor updateObject(String id, ClassMetadata classMetadata, HashMap<String, String> attributes) 
@@ -414,22 +585,56 @@ public class ObjectGraphMappingService {
     
     /**
      * Check if the value of the given attribute name is unique across other 
-     * objects in the class and its subclasses
+     * objects in the class and its subclasses. Must be called within the transaction 
+     * that sets the value
      * @param className the class name
      * @param attributeName attribute name
      * @param attributeValue attribute value
      * @return true if the attribute value is unique
      */
     public boolean isObjectAttributeUnique(String className, String attributeName, Object attributeValue) {
-        List<Object> uniqueAttributeValues = CacheManager.getInstance().getUniqueAttributeValues(className, attributeName);
-        if (uniqueAttributeValues != null) {
-            for (Object uniqueAttributeValue : uniqueAttributeValues) {
-                if (uniqueAttributeValue.equals(attributeValue))
-                    return false;
-            }
+        Boolean unique = CacheManager.getInstance().putUniqueAttributeValueIfAbsent(className, attributeName, attributeValue);
+        if (unique != null)
+            return unique;
+        // The values of this attribute are not cached (there are too many of them), so the database is checked instead
+        if (attributeValue == null)
+            return true;
+        lockClassHierarchy(className);
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("className", className); //NOI18N
+        parameters.put("attributeName", attributeName); //NOI18N
+        parameters.put("attributeValue", String.valueOf(attributeValue)); //NOI18N
+        parameters.put("limit", 1); //NOI18N
+        try (Result result = cypherQueryExecutor.execute(QUERY_FIND_ATTRIBUTE_VALUE, parameters)) {
+            return !result.hasNext();
+        }
+    }
+    
+    /**
+     * Locks a class against the unique attribute checks made by other transactions until the transaction 
+     * of the caller ends, so the value checked can't be taken by someone else before it's committed. The class 
+     * is write locked and its superclasses read locked, since their checks include the objects of this class, 
+     * but the checks on sibling classes don't. The locks are always taken from the root of the hierarchy down
+     * @param className The class name
+     */
+    private void lockClassHierarchy(String className) {
+        GraphDatabaseService graphDb = connectionManager.getConnectionHandler();
+        Node classNode = graphDb.findNode(Label.label(Constants.LABEL_CLASS), Constants.PROPERTY_NAME, className);
+        if (classNode == null)
+            return;
+        LinkedList<Node> superclassNodes = new LinkedList<>();
+        Relationship extendsRelationship = classNode.getSingleRelationship(RelTypes.EXTENDS, Direction.OUTGOING);
+        while (extendsRelationship != null) {
+            superclassNodes.addFirst(extendsRelationship.getEndNode());
+            extendsRelationship = extendsRelationship.getEndNode().getSingleRelationship(RelTypes.EXTENDS, Direction.OUTGOING);
+        }
+        // Joins the transaction of the caller. The locks are held until that transaction ends
+        try (Transaction tx = graphDb.beginTx()) {
+            for (Node superclassNode : superclassNodes)
+                tx.acquireReadLock(superclassNode);
+            tx.acquireWriteLock(classNode);
+            tx.success();
         }
-        CacheManager.getInstance().putUniqueAttributeValueIndex(className, attributeName, attributeValue);
-        return true;
     }
     
     /**
@@ -0,0 +1,312 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+
+/**
+ * Searches inventory objects by name, class name or class display name using two full-text indexes 
+ * (one over the objects, one over the classes) built with the {@link SuffixAnalyzerProvider}. 
+ * The indexes are maintained by the database itself when the objects are created, renamed or deleted.
+ * Only the matches are read, instead of scanning all the inventory objects, and when a page of them is 
+ * requested, only the objects in that page are kept while they are sorted by name. The index hits are checked again against the actual 
+ * value, so the results are the same a CONTAINS/STARTS WITH comparison would return. The objects with no name 
+ * never match by name, but they are returned if their class matches. If the indexes don't exist or are still being 
+ * populated, the search falls back to a scan. The state of the indexes is cached: once they are online, it's not 
+ * checked again until the indexes are created again or a search through them fails, and while they are not, 
+ * it's checked at most once every {@link #INDEX_STATE_CHECK_INTERVAL} milliseconds. 
+ * Transactions are not handled here.
+ */
+public class ObjectSearchIndex {
+    /**
+     * Index over the names of the inventory objects.
+     */
+    public static final String OBJECTS_INDEX = "inventoryObjectNames_v2"; //NOI18N
+    /**
+     * Index over the names and display names of the classes.
+     */
+    public static final String CLASSES_INDEX = "classNames_v2"; //NOI18N
+    /**
+     * Indexes built by previous versions of the {@link SuffixAnalyzerProvider}. They are dropped at startup.
+     */
+    private static final List<String> OBSOLETE_INDEXES = Arrays.asList("inventoryObjectNames", "classNames"); //NOI18N
+    /**
+     * Min time in milliseconds between two checks of the state of the indexes while they are not online.
+     */
+    public static final long INDEX_STATE_CHECK_INTERVAL = 5000;
+    /**
+     * If both indexes were online the last time they were checked.
+     */
+    private static volatile boolean indexesOnline;
+    /**
+     * When the state of the indexes was last checked.
+     */
+    private static volatile long lastIndexStateCheck;
+    /**
+     * The order of the search results: by name, the objects with no name last, like an ORDER BY would do. 
+     * The ties are broken by node id, so the pages are consistent.
+     */
+    private static final Comparator<Node> BY_NAME = Comparator.<Node, String>comparing(
+            object -> (String) object.getProperty(Constants.PROPERTY_NAME, null), Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingLong(Node::getId);
+    /**
+     * How the search string is compared to the names.
+     */
+    public enum MatchMode {
+        /**
+         * The name starts with the search string.
+         */
+        PREFIX("STARTS WITH"), //NOI18N
+        /**
+         * The name contains the search string anywhere.
+         */
+        INFIX("CONTAINS"); //NOI18N
+        
+        private final String operator;
+
+        private MatchMode(String operator) {
+            this.operator = operator;
+        }
+    }
+    
+    /**
+     * Creates the full-text indexes if they don't exist yet, and drops the ones built by previous versions. 
+     * The indexes are populated in the background, in the meantime, the searches are performed with a scan. 
+     * Must not be called within a transaction.
+     * @param graphDb The database handle.
+     */
+    public static void createIndexes(GraphDatabaseService graphDb) {
+        List<String> existingIndexes = new ArrayList<>();
+        try (Result result = graphDb.execute("CALL db.indexes() YIELD indexName RETURN indexName")) { //NOI18N
+            result.<String>columnAs("indexName").forEachRemaining(existingIndexes::add); //NOI18N
+        }
+        
+        for (String anIndex : OBSOLETE_INDEXES) {
+            if (existingIndexes.contains(anIndex))
+                graphDb.execute("CALL db.index.fulltext.drop($indexName)", Collections.singletonMap("indexName", anIndex)).close(); //NOI18N
+        }
+        if (!existingIndexes.contains(OBJECTS_INDEX))
+            createIndex(graphDb, OBJECTS_INDEX, Constants.LABEL_INVENTORY_OBJECTS, Constants.PROPERTY_NAME);
+        if (!existingIndexes.contains(CLASSES_INDEX))
+            createIndex(graphDb, CLASSES_INDEX, Constants.LABEL_CLASS, Constants.PROPERTY_NAME, Constants.PROPERTY_DISPLAY_NAME);
+        refreshIndexState();
+    }
+    
+    /**
+     * Discards the cached state of the indexes, so it's checked again before the next search. 
+     * Call it after creating or dropping the indexes.
+     */
+    public static void refreshIndexState() {
+        indexesOnline = false;
+        lastIndexStateCheck = 0;
+    }
+    
+    /**
+     * Searches the inventory objects whose name, class name or class display name match a given string. 
+     * The results are sorted by name, the same as <code>ORDER BY object.name SKIP $skip LIMIT $limit</code>. 
+     * All the matches are read, but only <code>skip + limit</code> of them are kept at any time.
+     * @param graphDb The database handle.
+     * @param filter The string to search. Case insensitive. If null or empty, any object matches.
+     * @param mode How the string is compared to the names.
+     * @param classNames The classes the objects have to be instance of (subclasses are not considered, 
+     * see {@link #getSubclassNames(org.neo4j.graphdb.GraphDatabaseService, java.util.Collection)}). Null to search in all classes.
+     * @param matchClassNames Should the objects whose class name or display name match the string be returned too?
+     * @param skip Number of matches to skip.
+     * @param limit Max number of matches to return. A negative number to return all of them.
+     * @return The object nodes.
+     */
+    public static List<Node> search(GraphDatabaseService graphDb, String filter, MatchMode mode, 
+            Collection<String> classNames, boolean matchClassNames, int skip, int limit) {
+        if (limit == 0)
+            return new ArrayList<>();
+        
+        int first = Math.max(0, skip);
+        List<Node> res;
+        if (limit < 0) {
+            res = new ArrayList<>();
+            search(graphDb, filter, mode, classNames, matchClassNames, res::add);
+        } else {
+            // The last object of the page is at the head of the queue, and it's evicted when a lower one is found
+            int toKeep = (int) Math.min(Integer.MAX_VALUE, (long) first + limit);
+            PriorityQueue<Node> page = new PriorityQueue<>(BY_NAME.reversed());
+            search(graphDb, filter, mode, classNames, matchClassNames, object -> {
+                page.add(object);
+                if (page.size() > toKeep)
+                    page.poll();
+                return true;
+            });
+            res = new ArrayList<>(page);
+        }
+        res.sort(BY_NAME);
+        return res.subList(Math.min(first, res.size()), res.size());
+    }
+    
+    /**
+     * Same as {@link #search(org.neo4j.graphdb.GraphDatabaseService, java.lang.String, org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectSearchIndex.MatchMode, java.util.Collection, boolean, int, int)}, 
+     * but the matches are handed to a collector as they are found, in no particular order, so the caller decides 
+     * when to stop without keeping all of them in memory. The objects matched by name come first, followed by 
+     * the ones matched by class.
+     * @param graphDb The database handle.
+     * @param filter The string to search. Case insensitive. If null or empty, any object matches.
+     * @param mode How the string is compared to the names.
+     * @param classNames The classes the objects have to be instance of. Null to search in all classes.
+     * @param matchClassNames Should the objects whose class name or display name match the string be returned too?
+     * @param collector Receives the object nodes and returns false when no more matches are needed.
+     */
+    public static void search(GraphDatabaseService graphDb, String filter, MatchMode mode, 
+            Collection<String> classNames, boolean matchClassNames, Predicate<Node> collector) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("filter", filter == null ? "" : filter); //NOI18N
+        parameters.put("query", buildQuery(filter)); //NOI18N
+        parameters.put("classNames", classNames); //NOI18N
+        parameters.put("objectsIndex", OBJECTS_INDEX); //NOI18N
+        parameters.put("classesIndex", CLASSES_INDEX); //NOI18N
+        String classFilter = classNames == null ? "" : "WHERE class.name IN $classNames "; //NOI18N
+        
+        if (filter == null || filter.isEmpty()) {
+            readObjects(graphDb, "MATCH (object:" + Constants.LABEL_INVENTORY_OBJECTS + ")-[:INSTANCE_OF]->(class:" + Constants.LABEL_CLASS + ") " //NOI18N
+                    + classFilter, parameters, collector);
+            return;
+        }
+        
+        boolean indexed = areIndexesOnline(graphDb);
+        String nameCondition = "toLower(object.name) " + mode.operator + " toLower($filter) "; //NOI18N
+        String classCondition = "(toLower(class.name) " + mode.operator + " toLower($filter) " //NOI18N
+                + "OR toLower(class.displayName) " + mode.operator + " toLower($filter)) "; //NOI18N
+        
+        try {
+            boolean more = readObjects(graphDb, (indexed ? "CALL db.index.fulltext.queryNodes($objectsIndex, $query) YIELD node AS object " //NOI18N
+                        : "MATCH (object:" + Constants.LABEL_INVENTORY_OBJECTS + ") ") //NOI18N
+                    + "WHERE " + nameCondition //NOI18N
+                    + "MATCH (object)-[:INSTANCE_OF]->(class:" + Constants.LABEL_CLASS + ") " //NOI18N
+                    + classFilter, parameters, collector);
+
+            // All the objects matching by name have been read already, so they are excluded here. 
+            // The ones with no name can't have matched, and the comparison is null for them
+            if (more && matchClassNames)
+                readObjects(graphDb, (indexed ? "CALL db.index.fulltext.queryNodes($classesIndex, $query) YIELD node AS class " //NOI18N
+                            : "MATCH (class:" + Constants.LABEL_CLASS + ") ") //NOI18N
+                        + "WHERE " + classCondition + (classNames == null ? "" : "AND class.name IN $classNames ") //NOI18N
+                        + "MATCH (object:" + Constants.LABEL_INVENTORY_OBJECTS + ")-[:INSTANCE_OF]->(class) " //NOI18N
+                        + "WHERE object.name IS NULL OR NOT " + nameCondition, parameters, collector); //NOI18N
+        } catch (RuntimeException ex) {
+            // The indexes may have been dropped since their state was cached
+            if (indexed)
+                refreshIndexState();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Gets the names of the given classes and all their subclasses.
+     * @param graphDb The database handle.
+     * @param classNames The names of the superclasses.
+     * @return The names of the classes and their subclasses.
+     */
+    public static List<String> getSubclassNames(GraphDatabaseService graphDb, Collection<String> classNames) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("classNames", classNames); //NOI18N
+        List<String> res = new ArrayList<>();
+        try (Result result = graphDb.execute("MATCH (class:" + Constants.LABEL_CLASS + ")-[:EXTENDS*0..]->(superclass:" + Constants.LABEL_CLASS + ") " //NOI18N
+                + "WHERE superclass.name IN $classNames RETURN DISTINCT class.name AS className", parameters)) { //NOI18N
+            result.<String>columnAs("className").forEachRemaining(res::add); //NOI18N
+        }
+        return res;
+    }
+    
+    /**
+     * Hands the objects returned by a query to a collector until the collector is satisfied.
+     * @return True if the collector wants more objects.
+     */
+    private static boolean readObjects(GraphDatabaseService graphDb, String query, Map<String, Object> parameters, Predicate<Node> collector) {
+        try (Result result = graphDb.execute(query + "RETURN object", parameters)) { //NOI18N
+            ResourceIterator<Node> objects = result.columnAs("object"); //NOI18N
+            while (objects.hasNext()) {
+                if (!collector.test(objects.next()))
+                    return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Builds the Lucene query that finds the values containing a string. Every suffix of the values is indexed, 
+     * so it's a prefix query. The whole string is a single term, so the special characters and the whitespaces are escaped.
+     * @param filter The search string.
+     * @return The query.
+     */
+    private static String buildQuery(String filter) {
+        if (filter == null || filter.isEmpty())
+            return ""; //NOI18N
+        String term = filter.toLowerCase();
+        if (term.length() > SuffixAnalyzerProvider.MAX_SUFFIX_LENGTH)
+            term = term.substring(0, SuffixAnalyzerProvider.MAX_SUFFIX_LENGTH);
+        
+        StringBuilder query = new StringBuilder();
+        for (char c : term.toCharArray()) {
+            if ("\\+-!():^[]\"{}~*?|&/".indexOf(c) != -1 || Character.isWhitespace(c)) //NOI18N
+                query.append('\\');
+            query.append(c);
+        }
+        return query.append('*').toString();
+    }
+    
+    /**
+     * Tells if both indexes are online, using the cached state when possible.
+     */
+    private static boolean areIndexesOnline(GraphDatabaseService graphDb) {
+        if (indexesOnline)
+            return true;
+        long now = System.currentTimeMillis();
+        if (now - lastIndexStateCheck < INDEX_STATE_CHECK_INTERVAL)
+            return false;
+        lastIndexStateCheck = now;
+        indexesOnline = isOnline(graphDb, OBJECTS_INDEX) && isOnline(graphDb, CLASSES_INDEX);
+        return indexesOnline;
+    }
+    
+    private static boolean isOnline(GraphDatabaseService graphDb, String indexName) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("indexName", indexName); //NOI18N
+        try (Result result = graphDb.execute("CALL db.indexes() YIELD indexName, state WHERE indexName = $indexName RETURN state", parameters)) { //NOI18N
+            return result.hasNext() && "ONLINE".equals(result.next().get("state")); //NOI18N
+        }
+    }
+    
+    private static void createIndex(GraphDatabaseService graphDb, String indexName, String label, String... properties) {
+        HashMap<String, Object> parameters = new HashMap<>();
+        parameters.put("indexName", indexName); //NOI18N
+        parameters.put("labels", new String[] { label }); //NOI18N
+        parameters.put("properties", properties); //NOI18N
+        parameters.put("analyzer", SuffixAnalyzerProvider.ANALYZER_NAME); //NOI18N
+        graphDb.execute("CALL db.index.fulltext.createNodeIndex($indexName, $labels, $properties, {analyzer: $analyzer})", parameters).close(); //NOI18N
+    }
+}
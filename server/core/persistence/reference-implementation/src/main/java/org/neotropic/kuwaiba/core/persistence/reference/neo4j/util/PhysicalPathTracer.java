@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
+import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
+
+/**
+ * Traces physical paths (port - link - port - mirror - port...) using the embedded graph API.
+ * Only the special relationships named after the physical connection endpoints and the port mirrors are followed.
+ * The trace is a single depth first traversal that enters every endpoint once, so a chain of single connections 
+ * and mirrors is walked linearly, hop by hop, and the time taken grows with the number of nodes reached, 
+ * not with the number of paths between them. The traversal is bounded by {@link #MAX_NODES}: 
+ * if there are more nodes to reach, the trace fails instead of returning a partial path. 
+ * Transactions are not handled here.
+ */
+public class PhysicalPathTracer {
+    /**
+     * Names of the special relationships that can be followed while tracing a physical path.
+     */
+    public static final Set<String> PHYSICAL_RELATIONSHIPS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("mirror", "mirrorMultiple", "endpointA", "endpointB"))); //NOI18N
+    /**
+     * Max number of nodes reached by a trace.
+     */
+    public static final int MAX_NODES = 100000;
+
+    /**
+     * Gets the longest physical path that starts in a given node, that is, the deepest branch of the 
+     * tree returned by {@link #getPhysicalTree(org.neo4j.graphdb.Node)}. When the connections form a tree 
+     * (the usual case, even with heavily mirrored patch panels) it's the longest sequence of physical connections 
+     * and mirrors that doesn't go through the same node twice. When mirrors close a cycle, every node in the cycle 
+     * is entered once, so the path goes around the cycle, but it's not guaranteed to be the longest one.
+     * @param startNode The node to start the trace from (usually a port).
+     * @return The nodes in the path, starting with <code>startNode</code>. An empty
+     * list if the node is not connected or mirrored at all.
+     * @throws InvalidArgumentException If more than {@link #MAX_NODES} nodes can be reached from the start node.
+     */
+    public static List<Node> getPhysicalPath(Node startNode) throws InvalidArgumentException {
+        return trace(startNode).getPath();
+    }
+
+    /**
+     * Gets a tree representation of all physical paths starting in a given node.
+     * The nodes in the longest path (see {@link #getPhysicalPath(org.neo4j.graphdb.Node)}) come first,
+     * and the children of every node are sorted from the deepest branch to the shallowest. Every node 
+     * appears only once, hanging from the node it was first reached from.
+     * @param startNode The node to start the trace from (usually a port).
+     * @return A map whose keys are the nodes in the tree and whose values are their
+     * direct descendants. An empty map if the node is not connected or mirrored at all.
+     * @throws InvalidArgumentException If more than {@link #MAX_NODES} nodes can be reached from the start node.
+     */
+    public static LinkedHashMap<Node, List<Node>> getPhysicalTree(Node startNode) throws InvalidArgumentException {
+        return trace(startNode).getTree();
+    }
+
+    /**
+     * Gets the nodes directly connected to a given node through physical relationships, without duplicates.
+     * @param node The node.
+     * @return The neighbors.
+     */
+    private static Set<Node> getNeighbors(Node node) {
+        Set<Node> neighbors = new LinkedHashSet<>();
+        for (Relationship rel : node.getRelationships(RelTypes.RELATED_TO_SPECIAL, Direction.BOTH)) {
+            if (PHYSICAL_RELATIONSHIPS.contains((String) rel.getProperty(Constants.PROPERTY_NAME, null)))
+                neighbors.add(rel.getOtherNode(node));
+        }
+        return neighbors;
+    }
+
+    /**
+     * Performs a depth first traversal from a given node, entering every node once, 
+     * and records the node each node was reached from.
+     * @param startNode The node to start the traversal from.
+     * @return The trace.
+     * @throws InvalidArgumentException If more than {@link #MAX_NODES} nodes can be reached from the start node.
+     */
+    private static Trace trace(Node startNode) throws InvalidArgumentException {
+        Trace trace = new Trace(startNode);
+        Deque<Node> currentBranch = new ArrayDeque<>();
+        Deque<Iterator<Node>> pendingNeighbors = new ArrayDeque<>();
+        trace.enter(startNode, null);
+        currentBranch.push(startNode);
+        pendingNeighbors.push(getNeighbors(startNode).iterator());
+        while (!pendingNeighbors.isEmpty()) {
+            Iterator<Node> neighbors = pendingNeighbors.peek();
+            Node nextNode = null;
+            while (nextNode == null && neighbors.hasNext()) {
+                Node aNeighbor = neighbors.next();
+                if (!trace.children.containsKey(aNeighbor))
+                    nextNode = aNeighbor;
+            }
+            if (nextNode == null) { // Every neighbor has been entered already, backtrack
+                pendingNeighbors.pop();
+                currentBranch.pop();
+            } else {
+                if (trace.children.size() == MAX_NODES)
+                    throw new InvalidArgumentException(String.format("The physical path starting in node %s has more than %s objects and can not be traced", 
+                            startNode.getId(), MAX_NODES));
+                trace.enter(nextNode, currentBranch.peek());
+                currentBranch.push(nextNode);
+                pendingNeighbors.push(getNeighbors(nextNode).iterator());
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * The result of a depth first traversal.
+     */
+    private static class Trace {
+        private final Node startNode;
+        /**
+         * The direct descendants of every node entered, in the order the nodes were entered.
+         */
+        private final LinkedHashMap<Node, List<Node>> children = new LinkedHashMap<>();
+
+        public Trace(Node startNode) {
+            this.startNode = startNode;
+        }
+
+        private void enter(Node node, Node parent) {
+            children.put(node, new ArrayList<>());
+            if (parent != null)
+                children.get(parent).add(node);
+        }
+
+        /**
+         * Calculates the number of nodes in the deepest branch hanging from every node, and 
+         * sorts the children of every node from the deepest branch to the shallowest.
+         */
+        private void sortByDepth() {
+            HashMap<Node, Integer> depths = new HashMap<>();
+            List<Node> nodes = new ArrayList<>(children.keySet());
+            // A node is always entered after its parent, so the descendants are processed before their ancestors
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                List<Node> nodeChildren = children.get(nodes.get(i));
+                int depth = 0;
+                for (Node child : nodeChildren)
+                    depth = Math.max(depth, depths.get(child));
+                depths.put(nodes.get(i), depth + 1);
+                nodeChildren.sort((child1, child2) -> Integer.compare(depths.get(child2), depths.get(child1)));
+            }
+        }
+
+        private List<Node> getPath() {
+            List<Node> path = new ArrayList<>();
+            if (children.size() > 1) { // Otherwise, the start node is not connected at all
+                sortByDepth();
+                for (Node currentNode = startNode; currentNode != null; ) {
+                    path.add(currentNode);
+                    List<Node> nodeChildren = children.get(currentNode);
+                    currentNode = nodeChildren.isEmpty() ? null : nodeChildren.get(0);
+                }
+            }
+            return path;
+        }
+
+        private LinkedHashMap<Node, List<Node>> getTree() {
+            LinkedHashMap<Node, List<Node>> tree = new LinkedHashMap<>();
+            if (children.size() > 1) {
+                sortByDepth();
+                // Preorder, the deepest child first, so the nodes of the longest path are the first keys
+                Deque<Node> pendingNodes = new ArrayDeque<>();
+                pendingNodes.push(startNode);
+                while (!pendingNodes.isEmpty()) {
+                    Node currentNode = pendingNodes.pop();
+                    List<Node> nodeChildren = children.get(currentNode);
+                    tree.put(currentNode, nodeChildren);
+                    for (int i = nodeChildren.size() - 1; i >= 0; i--)
+                        pendingNodes.push(nodeChildren.get(i));
+                }
+            }
+            return tree;
+        }
+    }
+}
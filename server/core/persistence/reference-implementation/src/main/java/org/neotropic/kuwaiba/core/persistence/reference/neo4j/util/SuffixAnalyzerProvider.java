@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.core.persistence.reference.neo4j.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.neo4j.graphdb.index.fulltext.AnalyzerProvider;
+
+/**
+ * A full-text analyzer that indexes every suffix of the whole (lower-cased) value, so a prefix query
+ * over the index finds the values that contain a given string anywhere, not only at the beginning
+ * of a word. The suffixes are truncated to their first {@link #MAX_SUFFIX_LENGTH} characters, so the 
+ * size of the index grows linearly with the length of the values, and a search string no longer than 
+ * that is found anywhere in a value of any length. Used by the {@link ObjectSearchIndex}. Registered 
+ * in META-INF/services, so Neo4j picks it up when the database is started.
+ */
+public class SuffixAnalyzerProvider extends AnalyzerProvider {
+    /**
+     * The name used to refer to this analyzer when an index is created.
+     */
+    public static final String ANALYZER_NAME = "kuwaiba_suffixes"; //NOI18N
+    /**
+     * The suffixes are truncated to this length. Longer search strings have to be truncated too, 
+     * and the values found checked against the whole string.
+     */
+    public static final int MAX_SUFFIX_LENGTH = 64;
+
+    public SuffixAnalyzerProvider() {
+        super(ANALYZER_NAME);
+    }
+
+    @Override
+    public Analyzer createAnalyzer() {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer source = new KeywordTokenizer();
+                TokenStream result = new LowerCaseFilter(source);
+                result = new TruncatedSuffixFilter(result);
+                return new TokenStreamComponents(source, result);
+            }
+        };
+    }
+
+    @Override
+    public String description() {
+        return "Indexes all the suffixes of the lower-cased value, so it can be searched by substring using prefix queries"; //NOI18N
+    }
+    
+    /**
+     * Replaces every token with all its suffixes, each one truncated to {@link #MAX_SUFFIX_LENGTH} characters, 
+     * at the same position.
+     */
+    private static final class TruncatedSuffixFilter extends TokenFilter {
+        private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+        private final PositionIncrementAttribute positionAttribute = addAttribute(PositionIncrementAttribute.class);
+        /**
+         * The token whose suffixes are being emitted, or null if the next token has to be read
+         */
+        private char[] token;
+        /**
+         * Where the next suffix of the token starts
+         */
+        private int start;
+
+        private TruncatedSuffixFilter(TokenStream input) {
+            super(input);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            while (token == null) {
+                if (!input.incrementToken())
+                    return false;
+                if (termAttribute.length() > 0) {
+                    token = Arrays.copyOf(termAttribute.buffer(), termAttribute.length());
+                    start = 0;
+                }
+            }
+            termAttribute.copyBuffer(token, start, Math.min(MAX_SUFFIX_LENGTH, token.length - start));
+            if (start > 0)
+                positionAttribute.setPositionIncrement(0);
+            if (++start == token.length)
+                token = null;
+            return true;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            token = null;
+        }
+    }
+}
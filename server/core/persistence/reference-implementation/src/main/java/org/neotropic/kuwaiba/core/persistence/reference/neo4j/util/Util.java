@@ -1006,6 +1006,24 @@ public class Util {
             throw ex;
         }
         
+        return createActivityLogEntry(objectNode, userNode, type, timestamp, affectedProperty, oldValue, newValue, notes, graphDb);
+    }
+    
+    /**
+     * Creates a new log entry upon an action performed by an user whose node has already been found. Transactions are not managed here
+     * @param objectNode The node corresponding to the object that was affected by the action. Null if it's a general activity log entry (that is, it's not related to any specific object)
+     * @param userNode The node of the user that performed the action. Null if the user could not be found
+     * @param type The type of action. See the ActivityLogEntry.ACTIVITY_TYPE_* constants
+     * @param timestamp When the action was performed
+     * @param affectedProperty The affected properties, if any
+     * @param oldValue The old values, if any
+     * @param newValue The new values, if any
+     * @param notes The notes, if any
+     * @param graphDb A reference to the connection handler.
+     * @return The new log entry node
+     */
+    public static Node createActivityLogEntry(Node objectNode, Node userNode, 
+            int type, long timestamp, String affectedProperty, String oldValue, String newValue, String notes, GraphDatabaseService graphDb) {
         Node newEntry = graphDb.createNode(Label.label(Constants.LABEL_GENERAL_ACTIVITY_LOGS));
         
         newEntry.setProperty(Constants.PROPERTY_TYPE, type);
@@ -1019,7 +1037,8 @@ public class Util {
         if (notes != null)
             newEntry.setProperty(Constants.PROPERTY_NOTES, notes);
         
-        newEntry.createRelationshipTo(userNode, RelTypes.PERFORMED_BY);
+        if (userNode != null)
+            newEntry.createRelationshipTo(userNode, RelTypes.PERFORMED_BY);
         if (objectNode != null)
             objectNode.createRelationshipTo(newEntry, RelTypes.HAS_HISTORY_ENTRY);
         return newEntry;
@@ -1088,10 +1107,10 @@ public class Util {
      */
     public static Node findNodeByLabelAndId(GraphDatabaseService graphDb, Label label, long id) {
         String cypherQuery = "MATCH (node:" + label.name() + ") " +
-                             "WHERE id(node) = " + id + " " +
+                             "WHERE id(node) = $id " +
                              "RETURN node";
 
-        Result result = graphDb.execute(cypherQuery);
+        Result result = graphDb.execute(cypherQuery, Collections.singletonMap("id", id)); //NOI18N
         ResourceIterator<Node> node = result.columnAs("node");
 
         return node.hasNext() ? node.next() : null;
@@ -1099,10 +1118,10 @@ public class Util {
     
     public static Node findNodeByLabelAndUuid(GraphDatabaseService graphDb, Label label, String id) {
         String cypherQuery = "MATCH (node:" + label.name() + ") " +
-                             "WHERE node._uuid = '" + id + "' " +
+                             "WHERE node._uuid = $id " +
                              "RETURN node";
 
-        Result result = graphDb.execute(cypherQuery);
+        Result result = graphDb.execute(cypherQuery, Collections.singletonMap("id", id)); //NOI18N
         ResourceIterator<Node> node = result.columnAs("node");
 
         return node.hasNext() ? node.next() : null;
@@ -39,7 +39,14 @@ public abstract class ManagedJob<T> implements Supplier {
     public ManagedJobDescriptor getDescriptor() {
         return this.descriptor;
     }
-    
+
+    /**
+     * Called by the threading service when the job is killed. Cancelling the future of the job does not
+     * interrupt the thread running it, so jobs that block or spawn work of their own should override this
+     * method to stop it. The default implementation does nothing.
+     */
+    public void kill() { }
+
     @Override
     public abstract T get();
 }
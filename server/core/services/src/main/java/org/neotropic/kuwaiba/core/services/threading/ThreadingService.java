@@ -21,7 +21,9 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import javax.annotation.PostConstruct;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -40,11 +42,19 @@ public class ThreadingService {
      * Max number of jobs that can be managed by the threading service at once.
      */
     public static final int TABLE_SIZE = 100;
+    /**
+     * Name of the timer of the jobs.
+     */
+    public static final String METRIC_JOBS = "kuwaiba_job_seconds"; //NOI18N
     /**
      * The list of jobs created (new, not yet running), running, or finished (with error, successfully or killed). The latter 
      * are cleaned up periodically or are removed from the table when whomever started it 
      */
     private ConcurrentHashMap<ManagedJobDescriptor, CompletableFuture> jobTable;
+    /**
+     * The jobs in the job table, so they can be notified when they are killed.
+     */
+    private ConcurrentHashMap<ManagedJobDescriptor, ManagedJob> managedJobs;
     /**
      * Reference to the translation service.
      */
@@ -55,9 +65,22 @@ public class ThreadingService {
      */
     @Autowired
     private Executor taskExecutor;
+    /**
+     * Reference to the metrics service.
+     */
+    @Autowired
+    private MetricsService metrics;
     
     public ThreadingService() {
         this.jobTable = new ConcurrentHashMap<>();
+        this.managedJobs = new ConcurrentHashMap<>();
+    }
+    
+    @PostConstruct
+    protected void init() {
+        metrics.gauge("kuwaiba_job_table_size", "Jobs in the job table, running or not", () -> jobTable.size()); //NOI18N
+        metrics.gauge("kuwaiba_jobs_running", "Jobs currently running", () -> jobTable.keySet().stream() //NOI18N
+                .filter(aJobDescriptor -> aJobDescriptor.getState() == ManagedJobDescriptor.STATE_RUNNING).count());
     }
     
     /**
@@ -89,28 +112,76 @@ public class ThreadingService {
             aThreadEntry.getKey().setState(ManagedJobDescriptor.STATE_END_KILLED);
             aThreadEntry.getKey().setEndTime(Calendar.getInstance().getTimeInMillis());
             aThreadEntry.getValue().cancel(true);
+            ManagedJob theJob = this.managedJobs.get(aThreadEntry.getKey());
+            if (theJob != null)
+                theJob.kill();
         }
     }
     
     /**
-     * Registers and starts a job.
+     * Registers and starts a job. When the job finishes, its state is set to {@link ManagedJobDescriptor#STATE_END_SUCCESS} 
+     * or {@link ManagedJobDescriptor#STATE_END_ERROR}, unless it was killed.
      * @param theJob The job to be started.
      * @throws IllegalArgumentException If the job could not be started, most likely because of its state. Also, if <code>theDescriptor</code> 
      * is a job that already exists in the table, or if {@link #TABLE_SIZE} limit has been reached.
      */
     public void startJob(ManagedJob theJob) throws IllegalArgumentException {
+        submitJob(theJob);
+    }
+    
+    /**
+     * Registers and starts a job, like {@link #startJob(org.neotropic.kuwaiba.core.services.threading.ManagedJob)}, 
+     * and returns its future, so the caller can wait for the result.
+     * @param <T> The type of the result of the job.
+     * @param theJob The job to be started.
+     * @return The future of the job, completed once the job state has been updated. It completes exceptionally if the job is killed.
+     * @throws IllegalArgumentException If the job could not be started, most likely because of its state. Also, if <code>theDescriptor</code> 
+     * is a job that already exists in the table, or if {@link #TABLE_SIZE} limit has been reached.
+     */
+    public <T> CompletableFuture<T> submitJob(ManagedJob<T> theJob) throws IllegalArgumentException {
         if (this.jobTable.size() >= TABLE_SIZE)
             throw new IllegalArgumentException(String.format(
                     ts.getTranslatedString("apis.services.threading.messages.job-limit-reached"), TABLE_SIZE));
-        if (this.jobTable.contains(theJob.getDescriptor()))
+        if (this.jobTable.containsKey(theJob.getDescriptor()))
             throw new IllegalArgumentException(String.format(
                     ts.getTranslatedString("apis.services.threading.messages.job-already-exists"), theJob.getDescriptor().getId()));
         if (theJob.getDescriptor().getState() != ManagedJobDescriptor.STATE_CREATED)
             throw new IllegalArgumentException(String.format(
                     ts.getTranslatedString("apis.services.threading.messages.job-can-not-restart"), theJob.getDescriptor().getId()));
         
-        theJob.getDescriptor().setState(ManagedJobDescriptor.STATE_RUNNING);
-        this.jobTable.put(theJob.getDescriptor(), CompletableFuture.supplyAsync(theJob, taskExecutor));
+        ManagedJobDescriptor theDescriptor = theJob.getDescriptor();
+        theDescriptor.setState(ManagedJobDescriptor.STATE_RUNNING);
+        CompletableFuture<T> theFuture = CompletableFuture.supplyAsync(theJob::get, taskExecutor);
+        this.managedJobs.put(theDescriptor, theJob);
+        this.jobTable.put(theDescriptor, theFuture);
+        long start = System.nanoTime();
+        return theFuture.whenComplete((result, ex) -> {
+            if (theDescriptor.getState() == ManagedJobDescriptor.STATE_RUNNING) {
+                theDescriptor.setState(ex == null ? ManagedJobDescriptor.STATE_END_SUCCESS : ManagedJobDescriptor.STATE_END_ERROR);
+                theDescriptor.setEndTime(Calendar.getInstance().getTimeInMillis());
+            }
+            String outcome = theDescriptor.getState() == ManagedJobDescriptor.STATE_END_SUCCESS ? "success" //NOI18N
+                    : theDescriptor.getState() == ManagedJobDescriptor.STATE_END_KILLED ? "killed" : "error"; //NOI18N
+            metrics.timer(METRIC_JOBS, "Time spent running the managed jobs", "outcome", outcome) //NOI18N
+                    .record(System.nanoTime() - start, theDescriptor.getDescription() == null 
+                            ? theDescriptor.getId() : theDescriptor.getDescription());
+        });
+    }
+    
+    /**
+     * Removes a finished job from the job table. Whomever started a job should remove it once its result has been collected.
+     * @param jobId The id of the job.
+     * @throws IllegalArgumentException If the job could not be found or if it's still running.
+     */
+    public void removeJob(String jobId) throws IllegalArgumentException {
+        ManagedJobDescriptor aJobDescriptor = getJob(jobId);
+        if (aJobDescriptor == null)
+            throw new IllegalArgumentException(String.format(ts.getTranslatedString("apis.services.threading.messages.job-not-found"), jobId));
+        if (aJobDescriptor.getState() == ManagedJobDescriptor.STATE_RUNNING)
+            throw new IllegalArgumentException(ts.getTranslatedString("apis.services.threading.messages.can-not-remove-running-job"));
+        
+        this.jobTable.remove(aJobDescriptor);
+        this.managedJobs.remove(aJobDescriptor);
     }
     
     /**
@@ -124,6 +195,7 @@ public class ThreadingService {
         }
         
         this.jobTable.clear();
+        this.managedJobs.clear();
     }
     
     /**
@@ -132,8 +204,10 @@ public class ThreadingService {
      */
     public synchronized  void clearCompletedJobs() throws IllegalArgumentException {
         jobTable.keySet().forEach((aJobDescriptor) -> {
-            if (aJobDescriptor.getState() != ManagedJobDescriptor.STATE_RUNNING)
+            if (aJobDescriptor.getState() != ManagedJobDescriptor.STATE_RUNNING) {
                 jobTable.remove(aJobDescriptor);
+                managedJobs.remove(aJobDescriptor);
+            }
         });
     }
 }
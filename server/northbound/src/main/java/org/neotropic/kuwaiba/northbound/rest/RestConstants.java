@@ -55,6 +55,7 @@ public class RestConstants {
     public static final String CLASS_NAME_TO_FILTER = "classNameToFilter";
     public static final String DISPLAY_NAME = "displayName";
     public static final String PAGE = "page";
+    public static final String CURSOR = "cursor";
     public static final String SKIP = "skip";
     public static final String OBJECT_SKIP = "objectSkip";
     public static final String OBJECT_LIMIT = "objectLimit";
@@ -15,11 +15,20 @@
  */
 package org.neotropic.kuwaiba.northbound.rest.aem;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.apache.commons.codec.binary.Base64;
 import org.neotropic.kuwaiba.core.apis.persistence.ChangeDescriptor;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogEntry;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogPage;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.BusinessRule;
 import org.neotropic.kuwaiba.core.apis.persistence.application.FileObject;
@@ -45,8 +54,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Set of resources to manage the application entities.
@@ -338,6 +349,91 @@ public class ApplicationEntityManagerRestController implements ApplicationEntity
                     ts.getTranslatedString("api.rest.general.error.unexpected-error"));
         }
     }
+    
+    /**
+     * Retrieves a page of general activity log entries, newest first. The pages are addressed by the cursor returned 
+     * with the previous page instead of an offset, so getting a page takes the same time no matter how deep into the log it is.
+     * @param cursor The cursor returned with the previous page. Omit it to get the first page.
+     * @param limit Max number of entries in the page.
+     * @param filters The response may be filtered by user (use key <code>user</code>, value the user name, a String), event type (use key <code>type</code>, 
+     * value any from ActivityLogEntry.ACTIVITY_TYPE_XXXX, an integer), affected object (use key <code>objectId</code>, value the object id) or 
+     * time range (use keys <code>from</code> and <code>to</code>, values timestamps). If a key is not present, it won't be used as filter. 
+     * If several are present, a logical AND will be applied.
+     * @param sessionId The session token id.
+     * @return The entries and the cursor of the next page (null if this is the last page).
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "getGeneralActivityAuditTrailPage/{limit}/{sessionId}", 
+            produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ActivityLogPage getGeneralActivityAuditTrailPage(
+            @RequestParam(value = RestConstants.CURSOR, required = false) String cursor,
+            @PathVariable(RestConstants.LIMIT) int limit,
+            @RequestBody HashMap<String, Object> filters,
+            @PathVariable(RestConstants.SESSION_ID) String sessionId)
+    {
+        try {
+            aem.validateCall("getGeneralActivityAuditTrailPage", "127.0.0.1", sessionId);
+            return aem.getGeneralActivityAuditTrailPage(cursor, limit, filters);
+        } catch (InvalidArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+        } catch (NotAuthorizedException ex) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, ex.getMessage());
+        } catch (Exception ex) {
+            log.writeLogMessage(LoggerType.ERROR, ApplicationEntityManagerRestController.class, ex.getMessage(), ex);
+          
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    ts.getTranslatedString("api.rest.general.error.unexpected-error"));
+        }
+    }
+    
+    /**
+     * Exports the general activity log entries as CSV, newest first. The entries are streamed as they are read, 
+     * so the whole log can be exported without holding it in memory.
+     * @param filters The filters. See {@link #getGeneralActivityAuditTrailPage(java.lang.String, int, java.util.HashMap, java.lang.String)}.
+     * @param sessionId The session token id.
+     * @return The entries, one per line, after a header line.
+     */
+    @RequestMapping(method = RequestMethod.POST, value = "exportGeneralActivityAuditTrail/{sessionId}", 
+            produces = {"text/csv"}) //NOI18N
+    public StreamingResponseBody exportGeneralActivityAuditTrail(
+            @RequestBody HashMap<String, Object> filters,
+            @PathVariable(RestConstants.SESSION_ID) String sessionId)
+    {
+        try {
+            aem.validateCall("exportGeneralActivityAuditTrail", "127.0.0.1", sessionId);
+        } catch (NotAuthorizedException ex) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, ex.getMessage());
+        }
+        
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(toCsvLine("id", "type", "userName", "timestamp", "affectedProperty", "oldValue", "newValue", "notes")); //NOI18N
+            try {
+                aem.exportGeneralActivityAuditTrail(filters, entry -> {
+                    try {
+                        writer.write(toCsvLine(String.valueOf(entry.getId()), String.valueOf(entry.getType()), entry.getUserName(), 
+                                String.valueOf(entry.getTimestamp()), entry.getAffectedProperty(), entry.getOldValue(), 
+                                entry.getNewValue(), entry.getNotes()));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } catch (InvalidArgumentException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+            writer.flush();
+        };
+    }
+    
+    /**
+     * Builds a CSV line. Every value is quoted, so the separators and line breaks in the values are kept.
+     */
+    private static String toCsvLine(String... values) {
+        return Arrays.stream(values)
+                .map(value -> value == null ? "" : "\"" + value.replace("\"", "\"\"") + "\"") //NOI18N
+                .collect(Collectors.joining(",", "", "\r\n")); //NOI18N
+    }
     // </editor-fold>
     
     // <editor-fold desc="views" defaultstate="collapsed">
@@ -29,6 +29,7 @@ import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import org.neotropic.kuwaiba.core.apis.persistence.ChangeDescriptor;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogEntry;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogPage;
 import org.neotropic.kuwaiba.core.apis.persistence.application.BusinessRule;
 import org.neotropic.kuwaiba.core.apis.persistence.application.FileObject;
 import org.neotropic.kuwaiba.core.apis.persistence.application.FileObjectLight;
@@ -41,6 +42,8 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Swagger documentation for Application Entity Manager.
@@ -211,6 +214,41 @@ public interface ApplicationEntityManagerRestOpenApi {
             @Valid @RequestBody HashMap<String, Object> filters,
             @NotNull @Parameter(in = ParameterIn.PATH, description = "The session token id.", required = true, schema = @Schema())
             @Valid @PathVariable(value = RestConstants.SESSION_ID, required = true) String sessionId);
+    
+    @Operation(summary = "Retrieves a page of general activity log entries, newest first. The pages are addressed by the cursor returned with the previous page instead of an offset, so getting a page takes the same time no matter how deep into the log it is.", description = "The entries and the cursor of the next page (null if this is the last page).", tags = {"audit-trail"})
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ActivityLogPage.class))),
+        @ApiResponse(responseCode = "400", description = "Bad Request", content = @Content),
+        @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+        @ApiResponse(responseCode = "500", description = "An unexpected error occurred. Contact your administrator for details", content = @Content)
+    })
+    @RequestMapping(method = RequestMethod.POST, value = "getGeneralActivityAuditTrailPage/{limit}/{sessionId}", produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ActivityLogPage getGeneralActivityAuditTrailPage(
+            @Parameter(in = ParameterIn.QUERY, description = "The cursor returned with the previous page. Omit it to get the first page.", required = false, schema = @Schema())
+            @RequestParam(value = RestConstants.CURSOR, required = false) String cursor,
+            @NotNull @Parameter(in = ParameterIn.PATH, description = "Max number of entries in the page.", required = true, schema = @Schema())
+            @Valid @PathVariable(value = RestConstants.LIMIT, required = true) int limit,
+            @NotNull @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "The response may be filtered by user (use key <code>user</code>, value the user name, a String), event type (use key <code>type</code>, "
+                    + "value any from ActivityLogEntry.ACTIVITY_TYPE_XXXX, an integer), affected object (use key <code>objectId</code>, value the object id) or time range (use keys <code>from</code> and <code>to</code>, values timestamps). "
+                    + "If a key is not present, it won't be used as filter. If several are present, a logical AND will be applied.",
+                    required = true, content = @Content(schema = @Schema(implementation = HashMap.class)))
+            @Valid @RequestBody HashMap<String, Object> filters,
+            @NotNull @Parameter(in = ParameterIn.PATH, description = "The session token id.", required = true, schema = @Schema())
+            @Valid @PathVariable(value = RestConstants.SESSION_ID, required = true) String sessionId);
+    
+    @Operation(summary = "Exports the general activity log entries as CSV, newest first. The entries are streamed as they are read, so the whole log can be exported without holding it in memory.", description = "The entries, one per line, after a header line.", tags = {"audit-trail"})
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = "text/csv", schema = @Schema(implementation = String.class))),
+        @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content),
+        @ApiResponse(responseCode = "500", description = "An unexpected error occurred. Contact your administrator for details", content = @Content)
+    })
+    @RequestMapping(method = RequestMethod.POST, value = "exportGeneralActivityAuditTrail/{sessionId}", produces = {"text/csv"}) //NOI18N
+    public StreamingResponseBody exportGeneralActivityAuditTrail(
+            @NotNull @io.swagger.v3.oas.annotations.parameters.RequestBody(description = "The filters. The same ones getGeneralActivityAuditTrailPage takes.",
+                    required = true, content = @Content(schema = @Schema(implementation = HashMap.class)))
+            @Valid @RequestBody HashMap<String, Object> filters,
+            @NotNull @Parameter(in = ParameterIn.PATH, description = "The session token id.", required = true, schema = @Schema())
+            @Valid @PathVariable(value = RestConstants.SESSION_ID, required = true) String sessionId);
     // </editor-fold>
    
     // <editor-fold desc="views" defaultstate="collapsed">
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.neotropic.kuwaiba.northbound.rest.metrics;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import javax.servlet.http.HttpServletRequest;
+import org.neotropic.kuwaiba.core.i18n.TranslationService;
+import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
+import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Metrics Rest Controller. The metrics are only exported to clients running in the server itself
+ * (e.g. a Prometheus agent or a reverse proxy that enforces its own authentication).
+ */
+@RestController
+@RequestMapping(MetricsRestController.PATH)
+public class MetricsRestController implements MetricsRestOpenApi {
+    
+    /**
+     * Reference to the Metrics service
+     */
+    @Autowired
+    private MetricsService metrics;
+    
+    /**
+     * Reference to the translation service.
+     */
+    @Autowired
+    private TranslationService ts;
+    
+    /**
+     * Reference to the Logging service.
+     */
+    @Autowired
+    private LoggingService log;
+    
+    /**
+     * Path that includes the Kuwaiba version and the module id
+     */
+    public static final String PATH = "/v2.1.1/metrics/"; //NOI18N
+    
+    // <editor-fold desc="metrics" defaultstate="collapsed">
+    /**
+     * Exports the server metrics.
+     * @param request The request, used to check that it comes from the server itself.
+     * @return The metrics in the Prometheus text exposition format.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "prometheus", produces = {PROMETHEUS_CONTENT_TYPE})
+    @Override
+    public String getPrometheusMetrics(HttpServletRequest request) {
+        if (!isLoopbackAddress(request.getRemoteAddr()))
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "The metrics are only available from the server itself");
+        try {
+            return metrics.scrape();
+        } catch (Exception ex) {
+            log.writeLogMessage(LoggerType.ERROR, MetricsRestController.class, ex.getMessage());
+            log.writeLogMessage(LoggerType.DEBUG, MetricsRestController.class, "", ex);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    ts.getTranslatedString("api.rest.general.error.unexpected-error"));
+        }
+    }
+    //  </editor-fold>
+    
+    private boolean isLoopbackAddress(String address) {
+        try {
+            // The remote address is always a literal IP, so no name lookup is made
+            return address != null && InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.neotropic.kuwaiba.northbound.rest.metrics;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Swagger documentation for the metrics endpoint.
+ */
+@RequestMapping(MetricsRestOpenApi.PATH)
+public interface MetricsRestOpenApi {
+    
+    // <editor-fold desc="metrics" defaultstate="collapsed">
+    public static final String PATH = "/v2.1.1/metrics/"; //NOI18N
+    /**
+     * Content type of the Prometheus text exposition format
+     */
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8"; //NOI18N
+    
+    @Operation(summary = "Exports the server metrics (call times, caches, sessions, jobs, etc). Only available from the server itself.", description = "The metrics in the Prometheus text exposition format.", tags = {"metrics"})
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successful operation", content = @Content(mediaType = PROMETHEUS_CONTENT_TYPE, schema = @Schema(implementation = String.class))),
+        @ApiResponse(responseCode = "403", description = "Forbidden. The request does not come from the server itself", content = @Content),
+        @ApiResponse(responseCode = "500", description = "An unexpected error occurred. Contact your administrator for details", content = @Content)
+    })
+    @RequestMapping(method = RequestMethod.GET, value = "prometheus", produces = {PROMETHEUS_CONTENT_TYPE})
+    public String getPrometheusMetrics(@Parameter(hidden = true) HttpServletRequest request);
+    //  </editor-fold>
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.neotropic.kuwaiba.northbound.rest.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Times the calls to the REST endpoints. Every endpoint has its own timer, tagged with the controller,
+ * the method and the response status.
+ */
+@Component
+public class RestMetricsInterceptor implements HandlerInterceptor {
+    /**
+     * Name of the timer of the REST calls
+     */
+    public static final String METRIC_CALLS = "kuwaiba_rest_call_seconds"; //NOI18N
+    /**
+     * Request attribute with the time the call started
+     */
+    private static final String ATTRIBUTE_START = RestMetricsInterceptor.class.getName() + ".start"; //NOI18N
+    /**
+     * Reference to the Metrics service.
+     */
+    @Autowired
+    private MetricsService metrics;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod)
+            request.setAttribute(ATTRIBUTE_START, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(ATTRIBUTE_START);
+        if (!(start instanceof Long) || !(handler instanceof HandlerMethod))
+            return;
+        
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        // Unhandled exceptions are reported as a 500 error, even though the response status is not set yet
+        int status = ex != null && response.getStatus() < 400 ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+        metrics.timer(METRIC_CALLS, "Time spent serving the REST calls", //NOI18N
+                "controller", handlerMethod.getBeanType().getSimpleName(), //NOI18N
+                "method", handlerMethod.getMethod().getName(), //NOI18N
+                "status", String.valueOf(status)) //NOI18N
+                .record(System.nanoTime() - (Long) start, request.getMethod() + " " + request.getRequestURI()); //NOI18N
+    }
+}
@@ -23,6 +23,7 @@ import javax.jws.WebService;
 import org.neotropic.kuwaiba.core.apis.persistence.util.StringPair;
 import org.neotropic.kuwaiba.northbound.ws.todeserialize.TransientQuery;
 import org.neotropic.kuwaiba.northbound.ws.model.application.ApplicationLogEntry;
+import org.neotropic.kuwaiba.northbound.ws.model.application.ApplicationLogEntryPage;
 import org.neotropic.kuwaiba.northbound.ws.model.application.GroupInfo;
 import org.neotropic.kuwaiba.northbound.ws.model.application.GroupInfoLight;
 import org.neotropic.kuwaiba.northbound.ws.model.application.PrivilegeInfo;
@@ -2848,6 +2849,22 @@ public interface KuwaibaSoapWebService {
             @WebParam(name = "limit")int limit,
             @WebParam(name = "sessionId")String sessionId) throws ServerSideException;
     
+    /**
+     * Retrieves a page of activity log entries, newest first. The pages are addressed by the cursor returned with the 
+     * previous page instead of an offset, so getting a page takes the same time no matter how deep into the log it is
+     * @param cursor The cursor returned with the previous page. Null to get the first page
+     * @param limit Max number of entries in the page
+     * @param sessionId The session id
+     * @return The entries and the cursor of the next page (null if this is the last page)
+     * @throws ServerSideException If the user is not allowed to invoke the method, 
+     *                             If the cursor is not valid or the limit is not a positive number
+     */
+    @WebMethod(operationName = "getGeneralActivityAuditTrailPage")
+    public ApplicationLogEntryPage getGeneralActivityAuditTrailPage (
+            @WebParam(name = "cursor")String cursor,
+            @WebParam(name = "limit")int limit,
+            @WebParam(name = "sessionId")String sessionId) throws ServerSideException;
+    
     /**
      * Attaches a file to an inventory object
      * @param name The name of the file. It's more like its title, instead of the file name
@@ -99,6 +99,7 @@ import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
 import org.neotropic.kuwaiba.modules.optional.physcon.PhysicalConnectionsService;
 import org.neotropic.kuwaiba.modules.optional.serviceman.ServiceManagerService;
 import org.neotropic.kuwaiba.northbound.ws.model.application.ApplicationLogEntry;
+import org.neotropic.kuwaiba.northbound.ws.model.application.ApplicationLogEntryPage;
 import org.neotropic.kuwaiba.northbound.ws.model.application.GroupInfo;
 import org.neotropic.kuwaiba.northbound.ws.model.application.GroupInfoLight;
 import org.neotropic.kuwaiba.northbound.ws.model.application.PrivilegeInfo;
@@ -4136,6 +4137,22 @@ public class KuwaibaSoapWebServiceImpl implements KuwaibaSoapWebService {
         }
     }
 
+    @Override
+    public ApplicationLogEntryPage getGeneralActivityAuditTrailPage(String cursor, int limit, String sessionId) throws ServerSideException {
+        if (aem == null)
+            throw new ServerSideException(ts.getTranslatedString("module.general.messages.cant-reach-backend"));
+        try {
+            aem.validateCall("getGeneralActivityAuditTrailPage", "127.0.0.1", sessionId);
+            return new ApplicationLogEntryPage(aem.getGeneralActivityAuditTrailPage(cursor, limit, null)); // No filters, like getGeneralActivityAuditTrail
+        } catch (InventoryException ex) {
+            throw new ServerSideException(ex.getMessage());
+        } catch (Exception ex) { // Unexpected error. Log the stach trace and 
+            log.writeLogMessage(LoggerType.ERROR, KuwaibaSoapWebServiceImpl.class, 
+                    String.format(ts.getTranslatedString("module.webservice.messages.unexpected-error"), "getGeneralActivityAuditTrailPage"), ex);
+            throw new ServerSideException(ex.getMessage());
+        }
+    }
+
     @Override
     public long attachFileToObject(String name, String tags, byte[] file, String className, String objectId, String sessionId) throws ServerSideException {
         if (bem == null)
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.neotropic.kuwaiba.northbound.ws;
+
+import java.util.Collections;
+import java.util.Set;
+import javax.xml.namespace.QName;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.soap.SOAPHandler;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+import org.neotropic.kuwaiba.modules.core.logging.metrics.MetricsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times the calls to the SOAP web service. Every operation has its own timer, tagged with the outcome of the call (success or fault).
+ * It must be added to the handler chain of the endpoint before it's published.
+ */
+@Component
+public class SoapMetricsHandler implements SOAPHandler<SOAPMessageContext> {
+    /**
+     * Name of the timer of the SOAP calls
+     */
+    public static final String METRIC_CALLS = "kuwaiba_soap_call_seconds"; //NOI18N
+    /**
+     * Message context property with the time the call started
+     */
+    private static final String PROPERTY_START = SoapMetricsHandler.class.getName() + ".start"; //NOI18N
+    /**
+     * Reference to the Metrics service.
+     */
+    @Autowired
+    private MetricsService metrics;
+
+    @Override
+    public boolean handleMessage(SOAPMessageContext context) {
+        if (Boolean.TRUE.equals(context.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY)))
+            record(context, "success"); //NOI18N
+        else {
+            context.put(PROPERTY_START, System.nanoTime());
+            context.setScope(PROPERTY_START, MessageContext.Scope.HANDLER);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context) {
+        record(context, "fault"); //NOI18N
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context) { }
+
+    @Override
+    public Set<QName> getHeaders() {
+        return Collections.emptySet();
+    }
+
+    private void record(SOAPMessageContext context, String outcome) {
+        Object start = context.get(PROPERTY_START);
+        if (!(start instanceof Long))
+            return;
+        
+        Object operation = context.get(MessageContext.WSDL_OPERATION);
+        String operationName = operation instanceof QName ? ((QName) operation).getLocalPart() : "unknown"; //NOI18N
+        metrics.timer(METRIC_CALLS, "Time spent serving the SOAP calls", //NOI18N
+                "operation", operationName, "outcome", outcome) //NOI18N
+                .record(System.nanoTime() - (Long) start, operationName);
+        // A fault after the response was recorded must not be counted twice
+        context.remove(PROPERTY_START);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ *  Copyright 2010-2024 Neotropic SAS <contact@neotropic.co>.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://apache.org/licenses/LICENSE-2.0.txt
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.neotropic.kuwaiba.northbound.ws.model.application;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogPage;
+
+/**
+ * Wrapper of ActivityLogPage
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public final class ApplicationLogEntryPage implements Serializable {
+    /**
+     * The entries, newest first
+     */
+    private ApplicationLogEntry[] entries;
+    /**
+     * Cursor to get the next page, null if this is the last one
+     */
+    private String nextCursor;
+
+    //No-arg constructor required
+    public ApplicationLogEntryPage() {   }
+
+    public ApplicationLogEntryPage(ActivityLogPage page) {
+        this.entries = new ApplicationLogEntry[page.getEntries().size()];
+        for (int i = 0; i < entries.length; i++)
+            entries[i] = new ApplicationLogEntry(page.getEntries().get(i));
+        this.nextCursor = page.getNextCursor();
+    }
+
+    public ApplicationLogEntry[] getEntries() {
+        return entries;
+    }
+
+    public void setEntries(ApplicationLogEntry[] entries) {
+        this.entries = entries;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
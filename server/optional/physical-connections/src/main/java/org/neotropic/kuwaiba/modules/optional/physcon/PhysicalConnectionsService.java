@@ -17,14 +17,13 @@ package org.neotropic.kuwaiba.modules.optional.physcon;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
-import org.neo4j.helpers.collection.Iterators;
 import org.neotropic.kuwaiba.core.apis.persistence.ConnectionManager;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ActivityLogEntry;
 import org.neotropic.kuwaiba.core.apis.persistence.application.ApplicationEntityManager;
@@ -41,8 +40,8 @@ import org.neotropic.kuwaiba.core.apis.persistence.util.Constants;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.core.persistence.PersistenceService;
 import org.neotropic.kuwaiba.core.persistence.PersistenceService.EXECUTION_STATE;
-import org.neotropic.kuwaiba.core.persistence.reference.neo4j.RelTypes;
 import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.ObjectGraphMappingService;
+import org.neotropic.kuwaiba.core.persistence.reference.neo4j.util.PhysicalPathTracer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -217,18 +216,10 @@ public class PhysicalConnectionsService {
             throw new IllegalStateException(ts.getTranslatedString("module.general.messages.cant-reach-backend"));
         
         List<BusinessObjectLight> path = new ArrayList<>();
-        //The first part of the query will return many paths, the longest is the one we need. The others are subsets of the longest
-        String cypherQuery = "MATCH paths = (o)-[r:" + RelTypes.RELATED_TO_SPECIAL + "*]-(c) "
-                + "WHERE o._uuid = '" + objectId + "' AND all(rel in r where rel.name IN ['mirror','mirrorMultiple'] "
-                + "or rel.name = 'endpointA' or rel.name = 'endpointB') "
-                + "WITH nodes(paths) as path "
-                + "RETURN path ORDER BY length(path) DESC LIMIT 1";
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            Result result = connectionManager.getConnectionHandler().execute(cypherQuery);
-            Iterator<List<Node>> column = result.columnAs("path");
-            
-            for (List<Node> listOfNodes : Iterators.asIterable(column)) {
-                for(Node node : listOfNodes)
+            Node objectNode = connectionManager.getConnectionHandler().findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, objectId);
+            if (objectNode != null) {
+                for (Node node : PhysicalPathTracer.getPhysicalPath(objectNode))
                     path.add(ogmService.createObjectLightFromNode(node));
             }
         }
@@ -254,30 +245,14 @@ public class PhysicalConnectionsService {
         HashMap<BusinessObjectLight, List<BusinessObjectLight>> tree = new LinkedHashMap();
         // If the port is a logical port (virtual port, Pseudowire or service instance, we look for the first physical parent port)
         try (Transaction tx = connectionManager.getConnectionHandler().beginTx()) {
-            //The first part of the query will return many paths, that we build as a tree
-            StringBuilder queryBuilder = new StringBuilder();
-            queryBuilder.append(String.format("MATCH paths = (o)-[r:%s*]-(c) ", RelTypes.RELATED_TO_SPECIAL));
-            queryBuilder.append(String.format("WHERE o._uuid = '%s' AND all(rel in r where rel.name IN "
-                    + "['mirror','mirrorMultiple'] or rel.name = 'endpointA' or rel.name = 'endpointB') ", objectId));
-            queryBuilder.append("WITH nodes(paths) as path ");
-            queryBuilder.append("RETURN path ORDER BY length(path) DESC");
-
-            Result result = connectionManager.getConnectionHandler().execute(queryBuilder.toString());
-            Iterator<List<Node>> column = result.columnAs("path"); //NOI18N
-
-            for (List<Node> listOfNodes : Iterators.asIterable(column)) {
-                for (int i = 0; i < listOfNodes.size(); i++) {
-                    BusinessObjectLight object = ogmService.createObjectLightFromNode(listOfNodes.get(i));
-
-                    if (!tree.containsKey(object))
-                        tree.put(object, new ArrayList());
-
-                    if (i < listOfNodes.size() - 1) {
-                        BusinessObjectLight nextObject = ogmService.createObjectLightFromNode(listOfNodes.get(i + 1));
-
-                        if (!tree.get(object).contains(nextObject))
-                            tree.get(object).add(nextObject);
-                    }
+            Node objectNode = connectionManager.getConnectionHandler().findNode(Label.label(Constants.LABEL_INVENTORY_OBJECTS), Constants.PROPERTY_UUID, objectId);
+            if (objectNode != null) {
+                HashMap<Node, BusinessObjectLight> objects = new HashMap<>();
+                for (Map.Entry<Node, List<Node>> branch : PhysicalPathTracer.getPhysicalTree(objectNode).entrySet()) {
+                    List<BusinessObjectLight> nextObjects = new ArrayList<>();
+                    for (Node nextNode : branch.getValue())
+                        nextObjects.add(objects.computeIfAbsent(nextNode, ogmService::createObjectLightFromNode));
+                    tree.put(objects.computeIfAbsent(branch.getKey(), ogmService::createObjectLightFromNode), nextObjects);
                 }
             }
             tx.success();
@@ -43,6 +43,7 @@ import com.vaadin.flow.server.StreamRegistration;
 import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.VaadinSession;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -52,6 +53,7 @@ import org.neotropic.kuwaiba.core.apis.integration.modules.ModuleActionParameter
 import org.neotropic.kuwaiba.core.apis.integration.modules.ModuleActionParameterSet;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadata;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadataLight;
+import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportResult;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ApplicationObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
@@ -486,11 +488,17 @@ public class ReportsUI extends VerticalLayout implements HasDynamicTitle, Abstra
 
     private void executeInventoryReport(List<StringPair> parameters) {
         try {
-            byte[] reportBody = bem.executeInventoryLevelReport(selectedReport.getId(),
+            // The report is generated in the background, the download waits for it instead of the UI
+            ReportResult reportResult = bem.submitInventoryLevelReport(selectedReport.getId(),
                     parameters);
             
-            final StreamResource resource = new StreamResource("Report",
-                () -> new ByteArrayInputStream(reportBody));
+            final StreamResource resource = new StreamResource("Report", () -> {
+                try {
+                    return reportResult.openStream();
+                } catch (IOException ex) {
+                    return new ByteArrayInputStream(ReportResult.getErrorPage(ex.getMessage()));
+                }
+            });
             resource.setContentType(ReportMetadataLight.getMimeTypeForReport(selectedReport.getType()));         
             final StreamRegistration registration = VaadinSession.getCurrent().getResourceRegistry().registerResource(resource);
             UI.getCurrent().getPage().open(registration.getResourceUri().toString());
@@ -23,11 +23,13 @@ import com.vaadin.flow.server.StreamRegistration;
 import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.VaadinSession;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.List;
 import org.neotropic.kuwaiba.core.apis.integration.modules.ModuleActionParameterSet;
 import org.neotropic.kuwaiba.core.apis.integration.modules.actions.AbstractAction;
 import org.neotropic.kuwaiba.core.apis.integration.modules.actions.AbstractVisualAdvancedAction;
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportMetadataLight;
+import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.ReportResult;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessEntityManager;
 import org.neotropic.kuwaiba.core.apis.persistence.business.BusinessObjectLight;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InventoryException;
@@ -70,11 +72,17 @@ public class LaunchClassLevelReportAction extends AbstractVisualAdvancedAction {
                                 ts.getTranslatedString("module.general.messages.select-items"), AbstractNotification.NotificationType.WARNING, ts).open();
         else {
             try {
-                byte[] reportBody = bem.executeClassLevelReport(selectedObject.getClassName(), selectedObject.getId(), 
+                // The report is generated in the background, the download waits for it instead of the UI
+                ReportResult reportResult = bem.submitClassLevelReport(selectedObject.getClassName(), selectedObject.getId(), 
                         selectedReport.getId());
 
-                final StreamResource resource = new StreamResource("class-level-report" + selectedReport.getId(),
-                    () -> new ByteArrayInputStream(reportBody));
+                final StreamResource resource = new StreamResource("class-level-report" + selectedReport.getId(), () -> {
+                    try {
+                        return reportResult.openStream();
+                    } catch (IOException ex) {
+                        return new ByteArrayInputStream(ReportResult.getErrorPage(ex.getMessage()));
+                    }
+                });
                 resource.setContentType(ReportMetadataLight.getMimeTypeForReport(selectedReport.getType()));         
                 final StreamRegistration registration = VaadinSession.getCurrent().getResourceRegistry().registerResource(resource);
                 UI.getCurrent().getPage().open(registration.getResourceUri().toString());
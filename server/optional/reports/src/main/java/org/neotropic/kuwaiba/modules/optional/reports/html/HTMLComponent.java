@@ -15,6 +15,10 @@
  */
 package org.neotropic.kuwaiba.modules.optional.reports.html;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
 /**
  * The root of all HTML components.
  * @author Charles Edward Bedon Cortazar {@literal <charles.bedon@kuwaiba.org>}
@@ -57,4 +61,26 @@ public abstract class HTMLComponent {
      * @return 
      */
     public abstract String asHTML();
+    
+    /**
+     * Writes the HTML of the component to a writer. By default, it writes the result of {@link #asHTML()}. 
+     * Components with many children (like tables) write them one by one instead, so large documents are never built as a single string.
+     * @param writer The writer
+     * @throws IOException If the writer fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write(asHTML());
+    }
+    
+    /**
+     * Builds the HTML of a component that implements {@link #writeTo(java.io.Writer)} instead of {@link #asHTML()}.
+     * @return The HTML of the component
+     */
+    protected String writeToString() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException ex) { } // StringWriter does not throw IOExceptions
+        return writer.toString();
+    }
 }
\ No newline at end of file
@@ -16,6 +16,12 @@
 package org.neotropic.kuwaiba.modules.optional.reports.html;
 
 import org.neotropic.kuwaiba.core.apis.persistence.application.reporting.InventoryReport;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -60,63 +66,82 @@ public class HTMLReport extends InventoryReport {
     }
 
     public String asHTML() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("<!DOCTYPE html><html lang=\"en\"><head><meta charset=\"utf-8\">"); //NOI18N
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException ex) { } // StringWriter does not throw IOExceptions
+        return writer.toString();
+    }
+    
+    /**
+     * Writes the HTML document to a writer. The components are written one after another, 
+     * so the document is never built as a single string.
+     * @param writer The writer. It is not closed
+     * @throws IOException If the writer fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write("<!DOCTYPE html><html lang=\"en\"><head><meta charset=\"utf-8\">"); //NOI18N
         
         if (embeddedStyleSheet != null) {
-            builder.append("<style type=\"text/css\">"); //NOI18N
-            builder.append(embeddedStyleSheet);
-            builder.append("</style>"); //NOI18N
+            writer.write("<style type=\"text/css\">"); //NOI18N
+            writer.write(embeddedStyleSheet);
+            writer.write("</style>"); //NOI18N
         }
         
         if (linkedStyleSheets != null) {
             for (String linkedStyleSheet : linkedStyleSheets) {
-                builder.append("<link rel=\"stylesheet\" type=\"text/css\" href=\"");  //NOI18N
-                builder.append(linkedStyleSheet);
-                builder.append("\">"); //NOI18N
+                writer.write("<link rel=\"stylesheet\" type=\"text/css\" href=\"");  //NOI18N
+                writer.write(String.valueOf(linkedStyleSheet));
+                writer.write("\">"); //NOI18N
             }
         }
         
         if (linkedJavascriptFiles != null) {
             for (String linkedJavascriptFile : linkedJavascriptFiles) {
-                builder.append("<script src=\"");  //NOI18N
-                builder.append(linkedJavascriptFile);
-                builder.append("\"></script>"); //NOI18N
+                writer.write("<script src=\"");  //NOI18N
+                writer.write(String.valueOf(linkedJavascriptFile));
+                writer.write("\"></script>"); //NOI18N
             }
         }
             
         if (embeddedJavascript != null) {
-            builder.append("<script type=\"text/javascript\">"); //NOI18N
+            writer.write("<script type=\"text/javascript\">"); //NOI18N
             
             for (String embedded : embeddedJavascript)
-                builder.append(embedded);
+                writer.write(String.valueOf(embedded));
             
-            builder.append("</script>"); //NOI18N
+            writer.write("</script>"); //NOI18N
         }
         
-        builder.append("<title>"); //NOI18N
-        builder.append(title);
-        builder.append(" - Kuwaiba Open Network Inventory</title>"); //NOI18N
+        writer.write("<title>"); //NOI18N
+        writer.write(String.valueOf(title));
+        writer.write(" - Kuwaiba Open Network Inventory</title>"); //NOI18N
         
         if(!favicon.isEmpty()){
-            builder.append("<link rel=\"shortcut icon\" href=\""); //NOI18N
-            builder.append(favicon);
-            builder.append("\"/>");
+            writer.write("<link rel=\"shortcut icon\" href=\""); //NOI18N
+            writer.write(favicon);
+            writer.write("\"/>");
         }
             
-        builder.append("</head><body>"); //NOI18N
+        writer.write("</head><body>"); //NOI18N
         
         for (HTMLComponent component : components)
-            builder.append(component.asHTML());
+            component.writeTo(writer);
         
-        builder.append("</body></html>"); //NOI18N
-        return builder.toString();
+        writer.write("</body></html>"); //NOI18N
     }
     
     @Override
     public byte[] asByteArray() {
         return asHTML().getBytes(StandardCharsets.UTF_8);
     }
+    
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeTo(writer);
+        writer.flush();
+    }
 
     public String getEmbeddedStyleSheet() {
         return embeddedStyleSheet;
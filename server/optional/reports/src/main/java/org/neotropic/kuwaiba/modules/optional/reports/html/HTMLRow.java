@@ -15,6 +15,9 @@
  */
 package org.neotropic.kuwaiba.modules.optional.reports.html;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * A simple HTML table row (<code>tr</code>)
  * @author Charles Edward Bedon Cortazar {@literal <charles.bedon@kuwaiba.org>}
@@ -47,13 +50,17 @@ public class HTMLRow extends HTMLComponent {
 
     @Override
     public String asHTML() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("<tr").append(style == null ? "" : " style=\"" + style + "\"") //NOI18N
-                .append(cssClass == null ? "" : " class=\"" + cssClass + "\"").append(">"); //NOI18N
-        for (HTMLColumn column : columns)
-            builder.append(column.asHTML());
-        builder.append("</tr>"); //NOI18N
+        return writeToString();
+    }
 
-        return builder.toString();
+    @Override
+    public void writeTo(Writer writer) throws IOException {
+        writer.write("<tr"); //NOI18N
+        writer.write(style == null ? "" : " style=\"" + style + "\""); //NOI18N
+        writer.write(cssClass == null ? "" : " class=\"" + cssClass + "\""); //NOI18N
+        writer.write(">"); //NOI18N
+        for (HTMLColumn column : columns)
+            column.writeTo(writer);
+        writer.write("</tr>"); //NOI18N
     }
 }
@@ -15,6 +15,8 @@
  */
 package org.neotropic.kuwaiba.modules.optional.reports.html;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -59,21 +61,28 @@ public class HTMLTable extends HTMLComponent {
 
     @Override
     public String asHTML() {
-        StringBuilder builder = new StringBuilder();
-        builder.append("<table").append(style == null ? "" : " style=\"" + style + "\"") //NOI18N
-                .append(cssClass == null ? "" : " class=\"" + cssClass + "\"").append(">"); //NOI18N
+        return writeToString();
+    }
+
+    @Override
+    public void writeTo(Writer writer) throws IOException {
+        writer.write("<table"); //NOI18N
+        writer.write(style == null ? "" : " style=\"" + style + "\""); //NOI18N
+        writer.write(cssClass == null ? "" : " class=\"" + cssClass + "\""); //NOI18N
+        writer.write(">"); //NOI18N
         if (columnHeaders != null) {
-            builder.append("<tr>"); //NOI18N
-            for (String columnHeader : columnHeaders)
-                builder.append("<th>").append(columnHeader).append("</th>"); //NOI18N
-            builder.append("</tr>"); //NOI18N
+            writer.write("<tr>"); //NOI18N
+            for (String columnHeader : columnHeaders) {
+                writer.write("<th>"); //NOI18N
+                writer.write(String.valueOf(columnHeader));
+                writer.write("</th>"); //NOI18N
+            }
+            writer.write("</tr>"); //NOI18N
         }
 
         for (HTMLRow row : rows)
-            builder.append(row.asHTML());
-
-        builder.append("</table>"); //NOI18N
+            row.writeTo(writer);
 
-        return builder.toString();
+        writer.write("</table>"); //NOI18N
     }
 }
\ No newline at end of file
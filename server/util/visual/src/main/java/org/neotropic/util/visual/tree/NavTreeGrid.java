@@ -18,6 +18,7 @@ package org.neotropic.util.visual.tree;
 import com.vaadin.flow.component.treegrid.TreeGrid;
 import com.vaadin.flow.shared.Registration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
@@ -33,9 +34,9 @@ import org.neotropic.util.visual.tree.nodes.AbstractNode;
  */
 public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
     /**
-     * A plain list of all the current nodes in the tree grid
+     * The current nodes in the tree grid, by id
      */
-    private final List<T> rawData;
+    private final LinkedHashMap<String, T> nodesById;
     /**
      * A custom lazy tree data provider that loads 2 levels at a time
      */
@@ -48,7 +49,7 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
     private Registration expandListener;
             
     public NavTreeGrid() {
-        rawData = new ArrayList<>();
+        nodesById = new LinkedHashMap<>();
         addExpandListener_();
         //we set an isExpaded boolean in case we are updating the node's icon when collapses
         addCollapseListener(e -> 
@@ -59,14 +60,16 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
         );
     }
     
+    /**
+     * The nodes currently loaded
+     * @return A copy of the list of nodes
+     */
     public List<T> getAllNodesAsList(){
-        return rawData;
+        return new ArrayList<>(nodesById.values());
     }
     
     public Optional<T> findNodeById(String id) throws NoSuchElementException {
-        return rawData.stream()
-            .filter(n -> n.getId().equals(id))
-            .findFirst();
+        return Optional.ofNullable(nodesById.get(id));
     }
     
     public boolean contains(T node){
@@ -104,6 +107,7 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
      * @param node the root node of the tree grid
      */
     public void createDataProvider(T node){
+        nodesById.clear();
         this.getTreeData().clear();
         this.dataProvider = new TreeDataProvider(){};
         this.dataProvider.loadDataProvider(node);
@@ -149,7 +153,7 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
                 parent = getTreeData().getParent(node);
 
             getTreeData().removeItem(node);
-            rawData.remove(node);
+            nodesById.remove(node.getId());
 
             if(isRoot)
                 getDataProvider().refreshAll();
@@ -256,7 +260,7 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
             for(T childNode : childrenNodes){
                 if(!NavTreeGrid.this.getTreeData().contains(childNode)){
                     NavTreeGrid.this.getTreeData().addItem(!NavTreeGrid.this.getTreeData().contains(node) ? null : node, childNode);
-                    rawData.add(childNode);
+                    nodesById.put(childNode.getId(), childNode);
                     //we must check if the new added childnode has children e.g. if we are adding a template
                     TreeDataProvider.this.loadChildren(childNode, 0);
                 }
@@ -277,7 +281,7 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
                 if(!NavTreeGrid.this.getTreeData().contains(child)){
                     level++;
                     NavTreeGrid.this.getTreeData().addItem(node, child); 
-                    rawData.add(child);
+                    nodesById.put(child.getId(), child);
                 }
                 TreeDataProvider.this.loadChildren(child, level);
             }
@@ -297,7 +301,7 @@ public abstract class NavTreeGrid <T extends AbstractNode> extends TreeGrid<T> {
             List<T> childrenNodes = fetchData(node);
             for (T child : childrenNodes) {
                 NavTreeGrid.this.getTreeData().addItem(level == 1 ? null : node, child); 
-                rawData.add(child);                    
+                nodesById.put(child.getId(), child);
                 loadData(child, level);
             }
         }
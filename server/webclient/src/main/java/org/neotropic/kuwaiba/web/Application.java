@@ -16,15 +16,19 @@
 
 package org.neotropic.kuwaiba.web;
 
+import com.neotropic.kuwaiba.modules.commercial.ipam.IpamService;
 import com.neotropic.kuwaiba.modules.commercial.sdh.SdhModule;
 import com.vaadin.flow.component.page.Push;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ApplicationObjectNotFoundException;
 import org.neotropic.kuwaiba.core.apis.persistence.exceptions.ExecutionException;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.InvalidArgumentException;
+import org.neotropic.kuwaiba.core.apis.persistence.exceptions.MetadataObjectNotFoundException;
 import org.neotropic.kuwaiba.core.i18n.TranslationService;
 import org.neotropic.kuwaiba.core.persistence.PersistenceService;
 import org.neotropic.kuwaiba.core.persistence.reference.extras.processman.ProcessManagerService;
 import org.neotropic.kuwaiba.core.services.scheduling.SchedulingService;
 import org.neotropic.kuwaiba.northbound.ws.KuwaibaSoapWebService;
+import org.neotropic.kuwaiba.northbound.ws.SoapMetricsHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
@@ -35,6 +39,8 @@ import org.springframework.stereotype.Component;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.xml.ws.Endpoint;
+import javax.xml.ws.handler.Handler;
+import java.util.List;
 import java.util.Properties;
 import org.neotropic.kuwaiba.modules.core.logging.LoggerType;
 import org.neotropic.kuwaiba.modules.core.logging.LoggingService;
@@ -61,6 +67,10 @@ public class Application extends SpringBootServletInitializer {
         private boolean enableSecurityManager;
         @Value("${general.locale}")
         private String locale;
+        @Value("${metrics.slow-operation-threshold:1000}")
+        private String slowOperationThreshold;
+        @Value("${metrics.slow-operation-thresholds:}")
+        private String slowOperationThresholds;
         
         // Connection properties
         @Value("${db.path}")
@@ -81,12 +91,48 @@ public class Application extends SpringBootServletInitializer {
         private String maxRoutes;
         @Value("${aem.backgrounds-path}")
         private String backgroundsPath;
+        @Value("${aem.unique-attributes-cache-max-size:500000}")
+        private String uniqueAttributesCacheMaxSize;
+        @Value("${aem.object-ids-cache-max-size:100000}")
+        private String objectIdsCacheMaxSize;
+        @Value("${aem.parents-cache-max-size:500000}")
+        private String parentsCacheMaxSize;
+        @Value("${aem.script-cache-max-size:500}")
+        private String scriptCacheMaxSize;
+        @Value("${aem.activity-log-mode:synchronous}")
+        private String activityLogMode;
+        @Value("${aem.activity-log-queue-size:10000}")
+        private String activityLogQueueSize;
+        @Value("${aem.activity-log-batch-size:500}")
+        private String activityLogBatchSize;
+        @Value("${aem.activity-log-journal-path:}")
+        private String activityLogJournalPath;
+        @Value("${aem.change-event-queue-size:1000}")
+        private String changeEventQueueSize;
+        @Value("${aem.change-event-log-path:}")
+        private String changeEventLogPath;
+        @Value("${aem.session-idle-timeout:0}")
+        private String sessionIdleTimeout;
+        @Value("${aem.session-backend:memory}")
+        private String sessionBackend;
         
         // Business properties
         @Value("${bem.attachments-path}")
         private String attachmentsPath;
         @Value("${bem.max-attachment-size}")
         private String maxAttachmentSize;
+        @Value("${bem.delete-batch-size:1000}")
+        private String deleteBatchSize;
+        @Value("${bem.create-batch-size:1000}")
+        private String createBatchSize;
+        @Value("${bem.report-threads:2}")
+        private String reportThreads;
+        @Value("${bem.report-queue-size:20}")
+        private String reportQueueSize;
+        @Value("${bem.report-cache-time-to-live:0}")
+        private String reportCacheTimeToLive;
+        @Value("${bem.report-cache-max-size:100}")
+        private String reportCacheMaxSize;
         
         @Autowired
         private PersistenceService persistenceService;
@@ -95,12 +141,16 @@ public class Application extends SpringBootServletInitializer {
         @Autowired
         private KuwaibaSoapWebService ws;
         @Autowired
+        private SoapMetricsHandler soapMetricsHandler;
+        @Autowired
         private SdhModule modSdh;
         @Autowired
         private ProcessManagerService processManagerService;
         @Autowired
         private SchedulingService shs;
         @Autowired
+        private IpamService ipamService;
+        @Autowired
         private LoggingService log;
         
         @PostConstruct
@@ -114,6 +164,8 @@ public class Application extends SpringBootServletInitializer {
             
             Properties generalProperties = new Properties();
             generalProperties.put("enableSecurityManager", enableSecurityManager);
+            generalProperties.put("slowOperationThreshold", slowOperationThreshold);
+            generalProperties.put("slowOperationThresholds", slowOperationThresholds);
             persistenceService.setGeneralProperties(generalProperties);
             
             Properties connectionProperties = new Properties();
@@ -130,11 +182,29 @@ public class Application extends SpringBootServletInitializer {
             applicationProperties.put("processesPath", processesPath);
             applicationProperties.put("maxRoutes", maxRoutes);
             applicationProperties.put("backgroundsPath", backgroundsPath);
+            applicationProperties.put("uniqueAttributesCacheMaxSize", uniqueAttributesCacheMaxSize);
+            applicationProperties.put("objectIdsCacheMaxSize", objectIdsCacheMaxSize);
+            applicationProperties.put("parentsCacheMaxSize", parentsCacheMaxSize);
+            applicationProperties.put("scriptCacheMaxSize", scriptCacheMaxSize);
+            applicationProperties.put("activityLogMode", activityLogMode);
+            applicationProperties.put("activityLogQueueSize", activityLogQueueSize);
+            applicationProperties.put("activityLogBatchSize", activityLogBatchSize);
+            applicationProperties.put("activityLogJournalPath", activityLogJournalPath);
+            applicationProperties.put("changeEventQueueSize", changeEventQueueSize);
+            applicationProperties.put("changeEventLogPath", changeEventLogPath);
+            applicationProperties.put("sessionIdleTimeout", sessionIdleTimeout);
+            applicationProperties.put("sessionBackend", sessionBackend);
             persistenceService.setApplicationProperties(applicationProperties);
             
             Properties businessProperties = new Properties();
             businessProperties.put("attachmentsPath", attachmentsPath);
             businessProperties.put("maxAttachmentSize", maxAttachmentSize);
+            businessProperties.put("deleteBatchSize", deleteBatchSize);
+            businessProperties.put("createBatchSize", createBatchSize);
+            businessProperties.put("reportThreads", reportThreads);
+            businessProperties.put("reportQueueSize", reportQueueSize);
+            businessProperties.put("reportCacheTimeToLive", reportCacheTimeToLive);
+            businessProperties.put("reportCacheMaxSize", reportCacheMaxSize);
             persistenceService.setBusinessProperties(businessProperties);
             
             try {
@@ -154,13 +224,25 @@ public class Application extends SpringBootServletInitializer {
                 // the mapping has to be done manually.
                 System.setProperty("javax.xml.soap.MetaFactory","com.sun.xml.messaging.saaj.soap.SAAJMetaFactoryImpl");
                 
-                Endpoint.publish(String.format("http://0.0.0.0:%s/kuwaiba/KuwaibaService", wsPort), ws);
+                Endpoint endpoint = Endpoint.create(ws);
+                List<Handler> handlerChain = endpoint.getBinding().getHandlerChain();
+                handlerChain.add(soapMetricsHandler);
+                endpoint.getBinding().setHandlerChain(handlerChain);
+                endpoint.publish(String.format("http://0.0.0.0:%s/kuwaiba/KuwaibaService", wsPort));
                 log.writeLogMessage(LoggerType.INFO, PersistenceService.class,  
                         String.format(ts.getTranslatedString("module.webservice.messages.initialized"), wsPort));
             } else
                 log.writeLogMessage(LoggerType.ERROR, PersistenceService.class, 
                         ts.getTranslatedString("module.webservice.messages.cant-start-web-service"));
 
+            if (persistenceService.getState().equals(PersistenceService.EXECUTION_STATE.RUNNING)) {
+                try {
+                    ipamService.loadSubnetIndex();
+                } catch (InvalidArgumentException | MetadataObjectNotFoundException ex) {
+                    log.writeLogMessage(LoggerType.ERROR, Application.class, ex.getMessage());
+                }
+            }
+            
             try {
                 shs.scheduleJobs();
             } catch (ExecutionException | ApplicationObjectNotFoundException ex) {